@@ -1029,8 +1029,6 @@ public class SPAnnotationProcessor implements AnnotationProcessor {
 		final String exceptionField = "e";
 		final String dataTypeField = "dataType";
 		
-		boolean firstIf = true;
-		
 		// commitProperty method header.
 		// public void commitProperty(
 		// 		SPObject o,
@@ -1077,114 +1075,131 @@ public class SPAnnotationProcessor implements AnnotationProcessor {
 								genericObjectField));
 			}
 
-			// Search for the matching property name and set the value.
-			for (Entry<String, Class<?>> e : setters.entrySet()) {
-				String methodName = e.getKey();
-				Class<?> type = e.getValue();
-
-				print(sb, tabs, "");
-
-				if (!firstIf) {
-					niprint(sb, "} else ");
-				}
-
-				// if (propertyName.equals("<method to property name>") {
-				niprintln(sb, 
-						String.format("if (%s.equals(\"%s\")) {",
-								propertyNameField,
-								SPAnnotationProcessorUtils.convertMethodToProperty(methodName)));
+			// Search for the matching property name and set the value. The
+			// property name's hash code is switched on first so the property
+			// is found without comparing it to every property name.
+			// switch (propertyName.hashCode()) {
+			println(sb, tabs, 
+					String.format("switch (%s.hashCode()) {", propertyNameField));
+			
+			Multimap<Integer, String> settersByHash = groupByPropertyNameHash(setters.keySet());
+			for (Integer hash : settersByHash.keySet()) {
+				// case <property name hash>:
+				println(sb, tabs, String.format("case %d:", hash));
 				tabs++;
+				
+				boolean firstIf = true;
+				for (String methodName : settersByHash.get(hash)) {
+					Class<?> type = setters.get(methodName);
+
+					print(sb, tabs, "");
 
-				boolean throwsExceptions = mutatorThrownTypes.containsKey(e.getKey());
+					if (!firstIf) {
+						niprint(sb, "} else ");
+					}
 
-				if (throwsExceptions) {
-					println(sb, tabs, "try {");
+					// if (propertyName.equals("<method to property name>") {
+					niprintln(sb, 
+							String.format("if (%s.equals(\"%s\")) {",
+									propertyNameField,
+									SPAnnotationProcessorUtils.convertMethodToProperty(methodName)));
 					tabs++;
-				}
 
-				// Assign each extra argument value of setter methods to variables
-				// to pass into the call to the setter afterwards.
-				for (MutatorParameterObject extraParam : mutatorExtraParameters.get(methodName)) {
-					// <extraParam type> <extraParam name> = 
-					// 		<extraParam type>.valueOf("<extraParam name>");
-					println(sb, tabs, 
-							String.format("%s %s = %s.valueOf(\"%s\");",
-									extraParam.getType().getSimpleName(),
-									extraParam.getName(),
-									extraParam.getType().getSimpleName(),
-									extraParam.getValue()));
-				}
+					boolean throwsExceptions = mutatorThrownTypes.containsKey(methodName);
 
-				// Pass in the actual property value as the first argument to the setter.
-				String conversionType;
-				if (type == Object.class) {
-					conversionType = dataTypeField + ".getRepresentation()";
-				} else {
-					conversionType = type.getSimpleName() + ".class";
-				}
+					if (throwsExceptions) {
+						println(sb, tabs, "try {");
+						tabs++;
+					}
 
-				// castedObject.<setter>(
-				// 		(<type>) converter.convertToComplexType(
-				// 				newValue, <dataType.getRepresentation | type.class>);
-				print(sb, tabs, 
-						String.format("%s.%s((%s) %s.%s(%s, %s)",
-								objectField,
-								methodName,
-								type.getSimpleName(),
-								converterField,
-								CONVERT_TO_COMPLEX_TYPE_METHOD_NAME,
-								newValueField,
-								conversionType));
-
-				// Pass in the variables holding the extra argument values.
-				for (MutatorParameterObject extraParam : mutatorExtraParameters.get(methodName)) {
-					// , <extraParam name>
-					niprint(sb, ", " + extraParam.getName());
-				}
+					// Assign each extra argument value of setter methods to variables
+					// to pass into the call to the setter afterwards.
+					for (MutatorParameterObject extraParam : mutatorExtraParameters.get(methodName)) {
+						// <extraParam type> <extraParam name> = 
+						// 		<extraParam type>.valueOf("<extraParam name>");
+						println(sb, tabs, 
+								String.format("%s %s = %s.valueOf(\"%s\");",
+										extraParam.getType().getSimpleName(),
+										extraParam.getName(),
+										extraParam.getType().getSimpleName(),
+										extraParam.getValue()));
+					}
 
-				niprintln(sb, ");");
-				tabs--;
+					// Pass in the actual property value as the first argument to the setter.
+					String conversionType;
+					if (type == Object.class) {
+						conversionType = dataTypeField + ".getRepresentation()";
+					} else {
+						conversionType = type.getSimpleName() + ".class";
+					}
 
-				// Catch any exceptions that the setter throws.
-				if (throwsExceptions) {
-					for (Class<? extends Exception> thrownType : 
-						mutatorThrownTypes.get(methodName)) {
+					// castedObject.<setter>(
+					// 		(<type>) converter.convertToComplexType(
+					// 				newValue, <dataType.getRepresentation | type.class>);
+					print(sb, tabs, 
+							String.format("%s.%s((%s) %s.%s(%s, %s)",
+									objectField,
+									methodName,
+									type.getSimpleName(),
+									converterField,
+									CONVERT_TO_COMPLEX_TYPE_METHOD_NAME,
+									newValueField,
+									conversionType));
 
-						// } catch (<Exception type> e) {
-						println(sb, tabs, 
-								String.format("} catch (%s %s) {",
-										thrownType.getSimpleName(),
-										exceptionField));
-						tabs++;
+					// Pass in the variables holding the extra argument values.
+					for (MutatorParameterObject extraParam : mutatorExtraParameters.get(methodName)) {
+						// , <extraParam name>
+						niprint(sb, ", " + extraParam.getName());
+					}
 
-						// throw new SPPersistenceException(
-						// 		castedObject.getUUID(),
-						// 		createSPPersistenceExceptionMessage(
-						// 				castedObject,
-						// 				propertyName),
-						// 		e);
-						println(sb, tabs, 
-								String.format("throw new %s(%s.%s(), %s(%s, %s), %s);",
-										SPPersistenceException.class.getSimpleName(),
-										objectField,
-										GET_UUID_METHOD_NAME,
-										CREATE_EXCEPTION_MESSAGE_METHOD_NAME,
-										objectField,
-										propertyNameField,
-										exceptionField));
+					niprintln(sb, ");");
+
+					// Catch any exceptions that the setter throws.
+					if (throwsExceptions) {
 						tabs--;
+						for (Class<? extends Exception> thrownType : 
+							mutatorThrownTypes.get(methodName)) {
+
+							// } catch (<Exception type> e) {
+							println(sb, tabs, 
+									String.format("} catch (%s %s) {",
+											thrownType.getSimpleName(),
+											exceptionField));
+							tabs++;
+
+							// throw new SPPersistenceException(
+							// 		castedObject.getUUID(),
+							// 		createSPPersistenceExceptionMessage(
+							// 				castedObject,
+							// 				propertyName),
+							// 		e);
+							println(sb, tabs, 
+									String.format("throw new %s(%s.%s(), %s(%s, %s), %s);",
+											SPPersistenceException.class.getSimpleName(),
+											objectField,
+											GET_UUID_METHOD_NAME,
+											CREATE_EXCEPTION_MESSAGE_METHOD_NAME,
+											objectField,
+											propertyNameField,
+											exceptionField));
+							tabs--;
+						}
+						println(sb, tabs, "}");
 					}
-					println(sb, tabs, "}");
+					
+					// return;
+					println(sb, tabs, "return;");
 					tabs--;
-				}
 
-				firstIf = false;
-			}
-
-			if (!firstIf) {
-				println(sb, tabs, "} else {");
-				tabs++;
+					firstIf = false;
+				}
+				println(sb, tabs, "}");
+				
+				// break;
+				println(sb, tabs, "break;");
+				tabs--;
 			}
+			println(sb, tabs, "}");
 		}
 		
 		if (SPObject.class.isAssignableFrom(visitedClass.getSuperclass())) {
@@ -1214,17 +1229,33 @@ public class SPAnnotationProcessor implements AnnotationProcessor {
 							propertyNameField));
 		}
 		
-		if (!firstIf) {
-			tabs--;
-			println(sb, tabs, "}");
-		}
-		
 		tabs--;
 		println(sb, tabs, "}");
 		
 		return sb.toString();
 	}
 	
+	/**
+	 * Groups the given accessor or mutator method names by the hash code of
+	 * the property name each one is for. The generated commitProperty and
+	 * findProperty methods switch on the hash code of the property name and
+	 * then only compare the property names in the matching group. The order
+	 * of the method names is kept within and across groups.
+	 * 
+	 * @param methodNames
+	 *            The getter or setter method names to group.
+	 * @return A {@link Multimap} of property name hash codes to the method
+	 *         names of the properties with that hash code.
+	 */
+	private Multimap<Integer, String> groupByPropertyNameHash(Set<String> methodNames) {
+		Multimap<Integer, String> methodsByHash = LinkedHashMultimap.create();
+		for (String methodName : methodNames) {
+			String propertyName = SPAnnotationProcessorUtils.convertMethodToProperty(methodName);
+			methodsByHash.put(propertyName.hashCode(), methodName);
+		}
+		return methodsByHash;
+	}
+	
 	private String generateGetPersistedPropertyListMethod(
 			Class<? extends SPObject> visitedClass,
 			Map<String, Class<?>> setters,
@@ -1339,8 +1370,6 @@ public class SPAnnotationProcessor implements AnnotationProcessor {
 		final String propertyNameField = "propertyName";
 		final String converterField = "converter";
 		
-		boolean firstIf = true;
-		
 		// findProperty method header.
 		// public Object findProperty(
 		// 		SPObject o,
@@ -1382,48 +1411,61 @@ public class SPAnnotationProcessor implements AnnotationProcessor {
 								genericObjectField));
 			}
 
-			// Search for the matching property name and return the value.
-			for (Entry<String, Class<?>> e : getters.entrySet()) {
-				String methodName = e.getKey();
-
-				print(sb, tabs, "");
-
-				if (!firstIf) {
-					niprint(sb, "} else ");
-				}
-
-				// if (propertyName.equals("<method to property name>") {
-				niprintln(sb, 
-						String.format("if (%s.equals(\"%s\")) {",
-								propertyNameField,
-								SPAnnotationProcessorUtils.convertMethodToProperty(methodName)));
+			// Search for the matching property name and return the value. The
+			// property name's hash code is switched on first so the property
+			// is found without comparing it to every property name.
+			// switch (propertyName.hashCode()) {
+			println(sb, tabs, 
+					String.format("switch (%s.hashCode()) {", propertyNameField));
+			
+			Multimap<Integer, String> gettersByHash = groupByPropertyNameHash(getters.keySet());
+			for (Integer hash : gettersByHash.keySet()) {
+				// case <property name hash>:
+				println(sb, tabs, String.format("case %d:", hash));
 				tabs++;
+				
+				boolean firstIf = true;
+				for (String methodName : gettersByHash.get(hash)) {
+					print(sb, tabs, "");
 
-				// return converter.convertToBasicType(castedObject.<getter>());
-				print(sb, tabs, 
-						String.format("return %s.%s(%s.%s()",
-								converterField,
-								CONVERT_TO_BASIC_TYPE_METHOD_NAME,
-								objectField,
-								methodName));
+					if (!firstIf) {
+						niprint(sb, "} else ");
+					}
 
-				for (String additionalProperty : accessorAdditionalInfo.get(methodName)) {
-					niprint(sb, 
-							String.format(", %s.%s()",
+					// if (propertyName.equals("<method to property name>") {
+					niprintln(sb, 
+							String.format("if (%s.equals(\"%s\")) {",
+									propertyNameField,
+									SPAnnotationProcessorUtils.convertMethodToProperty(methodName)));
+					tabs++;
+
+					// return converter.convertToBasicType(castedObject.<getter>());
+					print(sb, tabs, 
+							String.format("return %s.%s(%s.%s()",
+									converterField,
+									CONVERT_TO_BASIC_TYPE_METHOD_NAME,
 									objectField,
-									SPAnnotationProcessorUtils.convertPropertyToAccessor(additionalProperty, visitedClass)));
-				}
+									methodName));
 
-				niprintln(sb, ");");
+					for (String additionalProperty : accessorAdditionalInfo.get(methodName)) {
+						niprint(sb, 
+								String.format(", %s.%s()",
+										objectField,
+										SPAnnotationProcessorUtils.convertPropertyToAccessor(additionalProperty, visitedClass)));
+					}
 
-				tabs--;
-				firstIf = false;
-			}
+					niprintln(sb, ");");
 
-			if (!firstIf) {
-				println(sb, tabs, "} else {");
-				tabs++;
+					tabs--;
+					firstIf = false;
+				}
+				println(sb, tabs, "}");
+				
+				// break;
+				println(sb, tabs, "break;");
+				tabs--;
 			}
+			println(sb, tabs, "}");
 		}
 		
 		if (SPObject.class.isAssignableFrom(visitedClass.getSuperclass())) {
@@ -1453,11 +1495,6 @@ public class SPAnnotationProcessor implements AnnotationProcessor {
 							propertyNameField));
 		}
 		
-		if (!firstIf) {
-			tabs--;
-			println(sb, tabs, "}");
-		}
-		
 		tabs--;
 		println(sb, tabs, "}");
 		
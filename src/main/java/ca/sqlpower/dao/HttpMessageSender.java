@@ -91,4 +91,12 @@ public abstract class HttpMessageSender<T> implements MessageSender<T> {
 	protected SPServerInfo getServerInfo() {
 		return serverInfo;
 	}
+
+	/**
+	 * Returns the UUID of the root {@link SPObject} the HTTP requests refer
+	 * to.
+	 */
+	protected String getRootUUID() {
+		return rootUUID;
+	}
 }
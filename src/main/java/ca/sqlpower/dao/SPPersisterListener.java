@@ -578,6 +578,14 @@ public class SPPersisterListener implements SPListener {
             // to the same property in the same transaction.
             unconditional = property.isUnconditional();
             persistedProperties.remove(uuid, property);
+            // If the property is back to the value it had before the transaction
+            // there is nothing to send. The value of a new object must still be sent.
+            if (!unconditional && SQLPowerUtils.areEqual(oldBasicType, newBasicType)) {
+                logger.debug("Property " + propertyName + " of " + uuid +
+                        " changed back to its original value, not persisting it.");
+                this.transactionEnded(TransactionEvent.createEndTransactionEvent(this));
+                return;
+            }
         }
         logger.debug("persistProperty(" + uuid + ", " + propertyName + ", " + 
                 typeForClass.name() + ", " + oldValue + ", " + newValue + ")");
@@ -722,6 +730,34 @@ public class SPPersisterListener implements SPListener {
 		}
 	}
 	
+	/**
+	 * Undoes changes of transactions this listener has already committed and
+	 * cleared, for when they are rejected after they were sent. As with
+	 * {@link #rollback()}, the changes the undo makes to the workspace are not
+	 * forwarded to the target persister.
+	 * 
+	 * @param root
+	 *            The workspace the changes were made to.
+	 */
+	public void undo(SPObject root, List<PersistedObjectEntry> creations, 
+			List<PersistedPropertiesEntry> properties, 
+			LinkedHashMap<String, RemovedObjectEntry> removals) throws SPPersistenceException {
+		boolean wasRollingBack = rollingBack;
+		rollingBack = true;
+		boolean initialMagic = root.isMagicEnabled();
+		if (initialMagic) {
+			root.setMagicEnabled(false);
+		}
+		try {
+			SPSessionPersister.undoForSession(root, creations, properties, removals, converter);
+		} finally {
+			rollingBack = wasRollingBack;
+			if (initialMagic) {
+				root.setMagicEnabled(true);
+			}
+		}
+	}
+	
 	/**
 	 * Commits the persisted {@link SPObject}s that we pooled during
 	 * the transaction. Also updates the roll back list as we go in case
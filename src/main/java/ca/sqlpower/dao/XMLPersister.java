@@ -8,12 +8,17 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.PrintWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Stack;
 
 import javax.swing.ProgressMonitor;
 
 import org.apache.commons.codec.binary.Base64;
+import org.apache.log4j.Logger;
 
 import ca.sqlpower.dao.upgrade.UpgradePersisterManager;
 import ca.sqlpower.util.SQLPowerUtils;
@@ -27,6 +32,14 @@ import ca.sqlpower.util.SQLPowerUtils;
  */
 public class XMLPersister implements SPPersister {
 
+	private static final Logger logger = Logger.getLogger(XMLPersister.class);
+
+	/**
+	 * The buffered bytes are written to the final output stream in chunks of
+	 * this size, the progress monitor is updated after each chunk.
+	 */
+	private static final int WRITE_CHUNK_SIZE = 64 * 1024;
+
 	public final String PROJECT_TAG;
 	
 	private static UpgradePersisterManager upgradePersisterManager;
@@ -38,10 +51,42 @@ public class XMLPersister implements SPPersister {
 	private final Stack<String> currentObject = new Stack<String>();
 	
 	private final Stack<String> currentType = new Stack<String>();
+
+	/**
+	 * Encodes the characters of each line into {@link #bufferedOut} with the
+	 * platform's default encoding.
+	 */
+	private final Writer out;
 	
-	private final PrintWriter out;
-	
-	private final ByteArrayOutputStream bufferedOut;
+	private final ExposedByteArrayOutputStream bufferedOut;
+
+	/**
+	 * Each element or property is escaped into this buffer and then written to
+	 * {@link #out} as one line. The buffer is reused for every line.
+	 */
+	private char[] line = new char[256];
+
+	/**
+	 * The number of characters of {@link #line} in use.
+	 */
+	private int lineLength = 0;
+
+	/**
+	 * The line separator written at the end of each line.
+	 */
+	private final char[] newLine;
+
+	/**
+	 * A line of spaces used to indent elements. Each element is indented by
+	 * one more than its depth in the tree of persisted objects.
+	 */
+	private char[] indent = new char[64];
+
+	/**
+	 * Caches the tag name of each type of object persisted as class names
+	 * have to have the inner class '$' replaced.
+	 */
+	private final Map<String, String> tagNames = new HashMap<String, String>();
 
 	/**
 	 * The fully qualified class name of the object that is the root of the tree of objects being
@@ -62,19 +107,24 @@ public class XMLPersister implements SPPersister {
 	}
 	
 	public XMLPersister(OutputStream out, String rootObject, String projectTag, ProgressMonitor pm) {
-		bufferedOut = new ByteArrayOutputStream();
-		this.out = new PrintWriter(bufferedOut);
+		bufferedOut = new ExposedByteArrayOutputStream();
+		this.out = new OutputStreamWriter(bufferedOut);
 		this.finalOut = out;
 		this.rootObject = rootObject;
 		this.pm = pm;
 		PROJECT_TAG = projectTag;
+		newLine = System.getProperty("line.separator").toCharArray();
+		Arrays.fill(indent, ' ');
 	}
 	
 	@Override
 	public void begin() throws SPPersistenceException {
 		if (transactionCount == 0) {
-			out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-			out.println("<" + PROJECT_TAG + " file-version=\"" + upgradePersisterManager.getStateVersion() + "\">");
+			append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+			endLine();
+			append("<").append(PROJECT_TAG).append(" file-version=\"")
+				.append(Integer.toString(upgradePersisterManager.getStateVersion())).append("\">");
+			endLine();
 		}
 		transactionCount++;
 	}
@@ -85,19 +135,23 @@ public class XMLPersister implements SPPersister {
 		if (transactionCount == 0) {
 			while (!currentType.isEmpty()) {
 				currentObject.pop();
-				out.println(tab() + "</" + currentType.pop().replace("$", "..") + ">");
+				appendEndTag(currentType.pop());
 			}
-			out.println("</" + PROJECT_TAG + ">");
-			out.flush();
+			append("</").append(PROJECT_TAG).append(">");
+			endLine();
 			try {
-				byte[] byteArray = bufferedOut.toByteArray();
+				out.flush();
+				byte[] bytes = bufferedOut.getBuffer();
+				int length = bufferedOut.size();
 				if (pm != null) {
-					pm.setMaximum(byteArray.length);
+					pm.setMaximum(length);
 				}
-				for (int i = 0; i < byteArray.length; i++) {
-					finalOut.write(byteArray[i]);
+				for (int offset = 0; offset < length; offset += WRITE_CHUNK_SIZE) {
+					int chunk = Math.min(WRITE_CHUNK_SIZE, length - offset);
+					finalOut.write(bytes, offset, chunk);
+					progress += chunk;
 					if (pm != null) {
-						pm.setProgress(++progress);
+						pm.setProgress(progress);
 					}
 				}
 		    	
@@ -115,7 +169,7 @@ public class XMLPersister implements SPPersister {
 		if (parentUUID == null) parentUUID = "";
 		while (!currentObject.isEmpty() && !parentUUID.equals(currentObject.peek())) {
 			currentObject.pop();
-			out.println(tab() + "</" + currentType.pop().replace("$", "..") + ">");
+			appendEndTag(currentType.pop());
 		}
 		if (currentObject.isEmpty()) {
 			if (!type.equals(rootObject)) {
@@ -130,7 +184,10 @@ public class XMLPersister implements SPPersister {
 					+ "] was persisted while the current object was ["
 					+ currentObject.peek() + "]");
 		}
-		out.println(tab() + "<" + type.replace("$", "..") + " UUID=\"" + SQLPowerUtils.escapeXML(uuid) + "\" index=\"" + index + "\">");
+		appendIndent();
+		append("<").append(tagName(type)).append(" UUID=\"").appendEscaped(uuid, false)
+			.append("\" index=\"").append(Integer.toString(index)).append("\">");
+		endLine();
 		currentObject.push(uuid);
 		currentType.push(type);
 	}
@@ -157,22 +214,27 @@ public class XMLPersister implements SPPersister {
 							+ currentObject.peek() + "]");
 		}
 		if (propertyType != DataType.NULL && newValue != null) {
-			out.print(tab() + "<property name=\"" + SQLPowerUtils.escapeNewLines(SQLPowerUtils.escapeXML(propertyName)) + "\" type=\"" + propertyType.toString() + "\"");
+			appendIndent();
+			append("<property name=\"").appendEscaped(propertyName, true)
+				.append("\" type=\"").append(propertyType.toString()).append("\"");
 			if (propertyType == DataType.PNG_IMG) {
 				try {
-					out.print(" value=\"");
+					append(" value=\"");
 					ByteArrayOutputStream data = new ByteArrayOutputStream();
 					SQLPowerUtils.copyStream((InputStream) newValue, data);
-					byte[] bytes = data.toByteArray();
-					byte[] base64Bytes = Base64.encodeBase64(bytes);
-					out.print(new String(base64Bytes));
-					out.println("\"/>");
+					byte[] base64Bytes = Base64.encodeBase64(data.toByteArray());
+					ensureLineCapacity(base64Bytes.length);
+					for (byte b : base64Bytes) {
+						line[lineLength++] = (char) b;
+					}
+					append("\"/>");
 				} catch (IOException e) {
 					throw new SPPersistenceException(uuid, e);
 				}
 			} else {
-				out.println(" value=\"" + SQLPowerUtils.escapeXML(newValue.toString()) + "\"/>");
+				append(" value=\"").appendEscaped(newValue.toString(), false).append("\"/>");
 			}
+			endLine();
 		}
 	}
 
@@ -186,13 +248,133 @@ public class XMLPersister implements SPPersister {
 	public void rollback() {
 		
 	}
-	
-	private String tab() {
-		StringBuilder tab = new StringBuilder();
-		for (int i = 0; i <= currentObject.size(); i++) {
-			tab.append(" ");
+
+	/**
+	 * Returns the tag name used for objects of the given type.
+	 */
+	private String tagName(String type) {
+		String tag = tagNames.get(type);
+		if (tag == null) {
+			tag = type.replace("$", "..");
+			tagNames.put(type, tag);
+		}
+		return tag;
+	}
+
+	private void appendEndTag(String type) throws SPPersistenceException {
+		appendIndent();
+		append("</").append(tagName(type)).append(">");
+		endLine();
+	}
+
+	/**
+	 * Appends one more space than the depth of the current object.
+	 */
+	private void appendIndent() {
+		int spaces = currentObject.size() + 1;
+		if (spaces > indent.length) {
+			indent = new char[Math.max(spaces, indent.length * 2)];
+			Arrays.fill(indent, ' ');
+		}
+		ensureLineCapacity(spaces);
+		System.arraycopy(indent, 0, line, lineLength, spaces);
+		lineLength += spaces;
+	}
+
+	private XMLPersister append(String s) {
+		int length = s.length();
+		ensureLineCapacity(length);
+		s.getChars(0, length, line, lineLength);
+		lineLength += length;
+		return this;
+	}
+
+	/**
+	 * Appends the given string escaped as {@link SQLPowerUtils#escapeXML(String)}
+	 * would, without creating an intermediate string.
+	 * 
+	 * @param escapeNewLines
+	 *            If true new lines are also escaped as
+	 *            {@link SQLPowerUtils#escapeNewLines(String)} would after the
+	 *            XML characters were escaped.
+	 */
+	private XMLPersister appendEscaped(String src, boolean escapeNewLines) {
+		if (src == null) return this;
+		int length = src.length();
+		// Most values have nothing to escape so make room for the plain copy
+		ensureLineCapacity(length);
+		for (int i = 0; i < length; i++) {
+			char ch = src.charAt(i);
+			switch (ch) {
+			case '\'':
+				append("&apos;");
+				break;
+			case '"':
+				append("&quot;");
+				break;
+			case '&':
+				append("&amp;");
+				break;
+			case '<':
+				append("&lt;");
+				break;
+			case '>':
+				append("&gt;");
+				break;
+			case 0x03:
+			case 0x1a:
+				logger.info("Stripping out illegal characters from " + src + 
+						" as it will cause the XML to fail.");
+				break;
+			case '\n':
+				if (escapeNewLines) {
+					append("&amp;crlf;");
+				} else {
+					ensureLineCapacity(1);
+					line[lineLength++] = ch;
+				}
+				break;
+			default:
+				ensureLineCapacity(1);
+				line[lineLength++] = ch;
+				break;
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Writes the current line followed by a line separator and starts a new
+	 * line.
+	 */
+	private void endLine() throws SPPersistenceException {
+		ensureLineCapacity(newLine.length);
+		System.arraycopy(newLine, 0, line, lineLength, newLine.length);
+		lineLength += newLine.length;
+		try {
+			out.write(line, 0, lineLength);
+		} catch (IOException e) {
+			throw new SPPersistenceException(null, e);
+		}
+		lineLength = 0;
+	}
+
+	private void ensureLineCapacity(int extra) {
+		if (lineLength + extra > line.length) {
+			char[] newBuffer = new char[Math.max(line.length * 2, lineLength + extra)];
+			System.arraycopy(line, 0, newBuffer, 0, lineLength);
+			line = newBuffer;
+		}
+	}
+
+	/**
+	 * Gives access to the buffered bytes so they do not have to be copied
+	 * before being written out.
+	 */
+	private static class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+		byte[] getBuffer() {
+			return buf;
 		}
-		return tab.toString();
 	}
 	
 }
@@ -8,7 +8,17 @@ import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 import java.util.Stack;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.commons.codec.binary.Base64;
 import org.apache.log4j.Logger;
@@ -19,6 +29,7 @@ import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
 import ca.sqlpower.dao.SPPersister.DataType;
+import ca.sqlpower.dao.XMLSubtreeSplitter.Segment;
 import ca.sqlpower.dao.upgrade.UpgradePersisterManager;
 import ca.sqlpower.util.SQLPowerUtils;
 
@@ -26,6 +37,31 @@ public class XMLPersisterReader {
 
 	private static final Logger logger = Logger
 			.getLogger(XMLPersisterReader.class);
+
+	/**
+	 * The size of the buffer the file is read through. Project files are
+	 * large so this is bigger than the default buffer size.
+	 */
+	private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * The number of characters that can be read looking for the project tag
+	 * before the reader can no longer be reset to the start of the file.
+	 */
+	private static final int HEADER_READ_LIMIT = 8 * 1024;
+
+	/**
+	 * The approximate number of characters in each part of the file decoded
+	 * by a worker thread when reading in parallel.
+	 */
+	private static final int DEFAULT_SEGMENT_SIZE = 256 * 1024;
+
+	/**
+	 * The number of decoded segments that may be waiting to be applied to the
+	 * target when reading in parallel. This bounds the memory used when the
+	 * workers are faster than the target.
+	 */
+	private static final int MAX_PENDING_SEGMENTS = 32;
 	
 	private final Reader in;
 	private final SPPersister target;
@@ -34,6 +70,8 @@ public class XMLPersisterReader {
 	
 	public final String PROJECT_TAG;
 
+	private int segmentSize = DEFAULT_SEGMENT_SIZE;
+
 	public XMLPersisterReader(Reader in, SPPersister target, UpgradePersisterManager upgradePersisterManager, String projectTag) {
 		this.in = in;
 		this.target = target;
@@ -41,11 +79,31 @@ public class XMLPersisterReader {
 		this.PROJECT_TAG = projectTag;
 	}
 	
+	/**
+	 * Reads the file and persists its content to the target on the calling
+	 * thread.
+	 */
 	public void read() throws SPPersistenceException {
-		BufferedReader reader = new BufferedReader(in);
+		read(null);
+	}
+
+	/**
+	 * Reads the file and persists its content to the target. If an executor
+	 * is given the file is split by subtree and the parts are parsed and
+	 * decoded into batches of {@link PersistedSPObject}s and
+	 * {@link PersistedSPOProperty}s by the executor's threads. The batches are
+	 * then persisted to the target on the calling thread in document order so
+	 * the target receives the same calls as when reading serially.
+	 * 
+	 * @param executor
+	 *            The executor to decode the file with, or null to parse the
+	 *            whole file on the calling thread.
+	 */
+	public void read(ExecutorService executor) throws SPPersistenceException {
+		BufferedReader reader = new BufferedReader(in, READ_BUFFER_SIZE);
 		String line;
 		try {
-			reader.mark(200);
+			reader.mark(HEADER_READ_LIMIT);
 			line = reader.readLine();
 			while (!line.contains("<" + PROJECT_TAG)) {
 				line = reader.readLine();
@@ -76,10 +134,14 @@ public class XMLPersisterReader {
 		
 		try {
 			upgradeTarget.begin();
-			SAXHandler handler = new SAXHandler();
-			SAXParser parser = new SAXParser();
-			parser.setContentHandler(handler);
-			parser.parse(new InputSource(reader));
+			if (executor == null) {
+				SAXHandler handler = new SAXHandler(null);
+				SAXParser parser = new SAXParser();
+				parser.setContentHandler(handler);
+				parser.parse(new InputSource(reader));
+			} else {
+				readSegments(reader, executor);
+			}
 			upgradeTarget.commit();
 		} catch (Exception e) {
 			if (latest != null) {
@@ -91,6 +153,92 @@ public class XMLPersisterReader {
 		}
 	}
 	
+	/**
+	 * Splits the document into segments as it is read, decodes the segments
+	 * on the executor and persists each decoded batch to the upgrade target
+	 * in document order. Only a limited number of segments are read and
+	 * decoded ahead of the one being persisted, so the whole document is
+	 * never in memory at once.
+	 */
+	private void readSegments(Reader reader, ExecutorService executor)
+			throws SPPersistenceException, InterruptedException {
+		XMLSubtreeSplitter splitter = new XMLSubtreeSplitter(reader, PROJECT_TAG, segmentSize);
+		Segment next = splitter.next();
+		LinkedList<Future<List<SPTransactionElement>>> pending =
+			new LinkedList<Future<List<SPTransactionElement>>>();
+		try {
+			while (next != null || !pending.isEmpty()) {
+				while (next != null && pending.size() < MAX_PENDING_SEGMENTS) {
+					final Segment segment = next;
+					pending.add(executor.submit(new Callable<List<SPTransactionElement>>() {
+						public List<SPTransactionElement> call() throws Exception {
+							return decodeSegment(segment);
+						}
+					}));
+					next = splitter.next();
+				}
+				List<SPTransactionElement> batch;
+				try {
+					batch = pending.removeFirst().get();
+				} catch (ExecutionException e) {
+					throw new SPPersistenceException(null, e.getCause());
+				}
+				for (SPTransactionElement element : batch) {
+					if (element instanceof PersistedSPObject) {
+						PersistedSPObject pso = (PersistedSPObject) element;
+						upgradeTarget.persistObject(pso.getParentUUID(), pso.getType(),
+								pso.getUUID(), pso.getIndex());
+					} else {
+						PersistedSPOProperty property = (PersistedSPOProperty) element;
+						upgradeTarget.persistProperty(property.getUUID(),
+								property.getPropertyName(), property.getDataType(),
+								property.getNewValue());
+					}
+				}
+			}
+		} finally {
+			for (Future<List<SPTransactionElement>> future : pending) {
+				future.cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * Parses one segment of the document into the persist calls it contains.
+	 * This is called on the executor's threads. The segment is wrapped in a
+	 * project element so it is a complete document on its own.
+	 */
+	private List<SPTransactionElement> decodeSegment(Segment segment) 
+			throws Exception {
+		String text = segment.getText();
+		StringBuilder fragment = new StringBuilder(text.length() + 
+				2 * PROJECT_TAG.length() + 8);
+		fragment.append('<').append(PROJECT_TAG).append('>');
+		if (segment.isStartTagOnly()) {
+			// Close the start tag so the object is persisted without
+			// its children, which are in the following segments.
+			fragment.append(text, 0, text.lastIndexOf('>')).append("/>");
+		} else {
+			fragment.append(text);
+		}
+		fragment.append("</").append(PROJECT_TAG).append('>');
+
+		List<SPTransactionElement> batch = new ArrayList<SPTransactionElement>();
+		SAXParser parser = new SAXParser();
+		parser.setContentHandler(new BatchingSAXHandler(segment.getParentUUID(), batch));
+		parser.parse(new InputSource(new StringReader(fragment.toString())));
+		return batch;
+	}
+
+	/**
+	 * Sets the approximate number of characters of the file each worker
+	 * decodes at a time when reading in parallel. This is mainly for testing
+	 * how large subtrees are split.
+	 */
+	void setSegmentSize(int segmentSize) {
+		this.segmentSize = segmentSize;
+	}
+
 	private Object castValue(DataType type, String value) {
 		switch (type) {
 		case INTEGER:
@@ -116,24 +264,60 @@ public class XMLPersisterReader {
 	private class SAXHandler extends DefaultHandler {
 		
 		private Stack<String> currentObject = new Stack<String>();
+
+		/**
+		 * @param parentUUID
+		 *            The UUID of the object the elements parsed belong to, or
+		 *            null if parsing from the start of the file.
+		 */
+		public SAXHandler(String parentUUID) {
+			if (parentUUID != null) {
+				currentObject.push(parentUUID);
+			}
+		}
+
+		/**
+		 * Caches the object type for each element name as the inner class
+		 * separator has to be replaced in each.
+		 */
+		private final Map<String, String> typeNames = new HashMap<String, String>();
 		
 		@Override
 		public void startElement(String uri, String localName, String qName,
 				Attributes attributes) throws SAXException {
 			try {
 				if ("property".equals(localName)) {
-					String name = attributes.getValue("name");
-					DataType type = DataType.valueOf(attributes.getValue("type"));
-					String value = attributes.getValue("value");
+					// Look the attributes up by position to avoid a name
+					// search through the attribute list for each one.
+					String name = null;
+					String typeName = null;
+					String value = null;
+					for (int i = 0, n = attributes.getLength(); i < n; i++) {
+						String attributeName = attributes.getLocalName(i);
+						if ("name".equals(attributeName)) {
+							name = attributes.getValue(i);
+						} else if ("type".equals(attributeName)) {
+							typeName = attributes.getValue(i);
+						} else if ("value".equals(attributeName)) {
+							value = attributes.getValue(i);
+						}
+					}
+					DataType type = DataType.valueOf(typeName);
 					value = SQLPowerUtils.unEscapeNewLines(value);
-					upgradeTarget.persistProperty(currentObject.peek(), name, type, castValue(type, value));
+					persistProperty(currentObject.peek(), name, type, castValue(type, value));
 				} else if (PROJECT_TAG.equals(localName)) {
 					// ignore
 				} else {
-					logger.debug("Reading element " + localName);
-					String type = localName.replace("..", "$");
+					if (logger.isDebugEnabled()) {
+						logger.debug("Reading element " + localName);
+					}
+					String type = typeNames.get(localName);
+					if (type == null) {
+						type = localName.replace("..", "$");
+						typeNames.put(localName, type);
+					}
 					String UUID = attributes.getValue("UUID");
-					int index = Integer.valueOf(attributes.getValue("index"));
+					int index = Integer.parseInt(attributes.getValue("index"));
 
 					String parent;
 					if (currentObject.isEmpty()) {
@@ -141,7 +325,7 @@ public class XMLPersisterReader {
 					} else {
 						parent = currentObject.peek();
 					}
-					upgradeTarget.persistObject(parent, type, UUID, index);
+					persistObject(parent, type, UUID, index);
 					currentObject.push(UUID);
 				}
 			} catch (SPPersistenceException e) {
@@ -158,7 +342,41 @@ public class XMLPersisterReader {
 				currentObject.pop();
 			}
 		}
-		
+
+		protected void persistObject(String parentUUID, String type, String uuid, int index) 
+				throws SPPersistenceException {
+			upgradeTarget.persistObject(parentUUID, type, uuid, index);
+		}
+
+		protected void persistProperty(String uuid, String propertyName, DataType type, 
+				Object value) throws SPPersistenceException {
+			upgradeTarget.persistProperty(uuid, propertyName, type, value);
+		}
+	}
+
+	/**
+	 * Collects the persist calls of a segment into a batch instead of making
+	 * them on the target, so the segment can be decoded on a worker thread.
+	 */
+	private class BatchingSAXHandler extends SAXHandler {
+
+		private final List<SPTransactionElement> batch;
+
+		public BatchingSAXHandler(String parentUUID, List<SPTransactionElement> batch) {
+			super(parentUUID);
+			this.batch = batch;
+		}
+
+		@Override
+		protected void persistObject(String parentUUID, String type, String uuid, int index) {
+			batch.add(new PersistedSPObject(parentUUID, type, uuid, index));
+		}
+
+		@Override
+		protected void persistProperty(String uuid, String propertyName, DataType type,
+				Object value) {
+			batch.add(new PersistedSPOProperty(uuid, propertyName, type, null, value, true));
+		}
 	}
 	
 }
@@ -0,0 +1,444 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.dao;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Splits a project file written by the {@link XMLPersister} into segments
+ * that can be parsed independently of each other. Each segment is a run of
+ * whole sibling elements under one parent object, so parsing the segments in
+ * document order makes exactly the same persist calls as parsing the whole
+ * file. Elements larger than the target segment size are split again at
+ * their children, with the element's own start tag as a segment of its own,
+ * so one large subtree does not end up on a single thread.
+ * <p>
+ * The file is split as it is read. Only the characters of the segment being
+ * found are kept, so splitting takes about the segment size in memory
+ * however large the file is.
+ * <p>
+ * This only does the minimum of scanning needed to find element boundaries.
+ * The segments are still parsed by a real XML parser which will report any
+ * errors in their content.
+ */
+class XMLSubtreeSplitter {
+
+	/**
+	 * A part of the document that can be parsed on its own.
+	 */
+	static class Segment {
+
+		/**
+		 * The UUID of the object the elements in this segment belong to, or
+		 * null if the elements are directly in the project element.
+		 */
+		private final String parentUUID;
+
+		private final String text;
+
+		/**
+		 * True if this segment is only the start tag of an object whose
+		 * children are in the following segments.
+		 */
+		private final boolean startTagOnly;
+
+		Segment(String parentUUID, String text, boolean startTagOnly) {
+			this.parentUUID = parentUUID;
+			this.text = text;
+			this.startTagOnly = startTagOnly;
+		}
+
+		String getParentUUID() {
+			return parentUUID;
+		}
+
+		/**
+		 * Returns the elements of this segment as they are in the document.
+		 */
+		String getText() {
+			return text;
+		}
+
+		boolean isStartTagOnly() {
+			return startTagOnly;
+		}
+
+		@Override
+		public String toString() {
+			return "Segment of " + text.length() + " characters under " + parentUUID
+				+ (startTagOnly ? " (start tag)" : "");
+		}
+	}
+
+	/**
+	 * The number of characters read from the document at a time.
+	 */
+	private static final int READ_SIZE = 16 * 1024;
+
+	private final Reader in;
+
+	private final String projectTag;
+
+	/**
+	 * The number of characters segments are grouped up to and above which
+	 * elements are split at their children.
+	 */
+	private final int segmentSize;
+
+	/**
+	 * The characters of the document read but not yet given out in a
+	 * segment, starting at the position bufferStart of the document. All
+	 * positions used by the splitter are positions in the whole document.
+	 */
+	private final StringBuilder buffer = new StringBuilder();
+
+	private int bufferStart;
+
+	private final char[] readBuffer = new char[READ_SIZE];
+
+	private boolean endOfInput;
+
+	/**
+	 * The UUIDs of the objects whose start tags have been given out in their
+	 * own segments and whose end tags have not been reached yet. The
+	 * innermost object is last.
+	 */
+	private final List<String> openObjects = new ArrayList<String>();
+
+	/**
+	 * Segments found but not yet returned by {@link #next()}.
+	 */
+	private final LinkedList<Segment> found = new LinkedList<Segment>();
+
+	/**
+	 * The position of the next tag to look at, or -1 if the project element
+	 * has not been found yet.
+	 */
+	private int pos = -1;
+
+	/**
+	 * The start and end of the run of whole elements not yet given out, or
+	 * -1 if there are none.
+	 */
+	private int groupStart = -1;
+
+	private int groupEnd = -1;
+
+	private boolean finished;
+
+	XMLSubtreeSplitter(Reader in, String projectTag, int segmentSize) {
+		this.in = in;
+		this.projectTag = projectTag;
+		this.segmentSize = segmentSize;
+	}
+
+	/**
+	 * Returns the next segment of the content of the project element in
+	 * document order, or null if there are no more.
+	 */
+	Segment next() throws SPPersistenceException {
+		while (found.isEmpty() && !finished) {
+			if (pos < 0) {
+				findContent();
+			} else {
+				splitNextElement();
+			}
+		}
+		return found.poll();
+	}
+
+	/**
+	 * Moves to the start of the content of the project element.
+	 */
+	private void findContent() throws SPPersistenceException {
+		int projectStart = indexOf("<" + projectTag, 0);
+		if (projectStart < 0) {
+			throw new SPPersistenceException(null, "The file does not contain a " +
+					projectTag + " element.");
+		}
+		pos = endOfTag(projectStart);
+		if (charAt(pos - 2) == '/') {
+			finished = true;
+		}
+		discardBefore(pos);
+	}
+
+	/**
+	 * Looks at the next element or end tag and adds the segments it
+	 * completes. Elements that are not closed within the segment size are
+	 * split at their children, so each character of the document is only
+	 * scanned about once.
+	 */
+	private void splitNextElement() throws SPPersistenceException {
+		pos = nextTag(pos);
+		String parentUUID = openObjects.isEmpty() ? null : openObjects.get(openObjects.size() - 1);
+		if (charAt(pos + 1) == '/') {
+			addGroup(parentUUID);
+			if (openObjects.isEmpty()) {
+				if (!startsWith("</" + projectTag, pos)) {
+					throw new SPPersistenceException(null, "The " + projectTag +
+							" element is not closed.");
+				}
+				finished = true;
+			} else {
+				openObjects.remove(openObjects.size() - 1);
+				pos = endOfTag(pos);
+			}
+		} else {
+			int startTagEnd = endOfTag(pos);
+			int elementEnd;
+			if (charAt(startTagEnd - 2) == '/') {
+				elementEnd = startTagEnd;
+			} else {
+				elementEnd = endOfElement(startTagEnd, pos + segmentSize);
+			}
+			if (elementEnd < 0) {
+				addGroup(parentUUID);
+				found.add(new Segment(parentUUID, substring(pos, startTagEnd), true));
+				openObjects.add(uuidOf(pos, startTagEnd));
+				pos = startTagEnd;
+			} else {
+				if (groupStart < 0) {
+					groupStart = pos;
+				}
+				groupEnd = elementEnd;
+				pos = elementEnd;
+				if (groupEnd - groupStart >= segmentSize) {
+					addGroup(parentUUID);
+				}
+			}
+		}
+		discardBefore(groupStart >= 0 ? groupStart : pos);
+	}
+
+	/**
+	 * Adds the run of whole elements not yet given out as a segment.
+	 */
+	private void addGroup(String parentUUID) {
+		if (groupStart >= 0) {
+			found.add(new Segment(parentUUID, substring(groupStart, groupEnd), false));
+			groupStart = -1;
+		}
+	}
+
+	/**
+	 * Returns the position of the next start or end tag at or after from,
+	 * skipping comments and processing instructions.
+	 */
+	private int nextTag(int from) throws SPPersistenceException {
+		int pos = from;
+		while (true) {
+			pos = indexOf('<', pos);
+			if (pos < 0) {
+				throw new SPPersistenceException(null, "Element before character " +
+						from + " is not closed.");
+			}
+			char next = charAt(pos + 1);
+			if (next == '!' || next == '?') {
+				pos = endOfMarkup(pos);
+			} else {
+				return pos;
+			}
+		}
+	}
+
+	/**
+	 * Returns the position after the end tag matching the start tag that ends
+	 * at contentStart, or -1 if the element continues past the limit.
+	 */
+	private int endOfElement(int contentStart, int limit) throws SPPersistenceException {
+		int depth = 1;
+		int pos = contentStart;
+		while (pos < limit) {
+			pos = nextTag(pos);
+			if (charAt(pos + 1) == '/') {
+				pos = endOfTag(pos);
+				depth--;
+				if (depth == 0) return pos;
+			} else {
+				pos = endOfTag(pos);
+				if (charAt(pos - 2) != '/') {
+					depth++;
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the position after the '&gt;' closing the tag starting at
+	 * start. Attribute values may legally contain '&gt;' so quoted values are
+	 * skipped.
+	 */
+	private int endOfTag(int start) throws SPPersistenceException {
+		for (int i = start + 1; ensureRead(i); i++) {
+			char c = charAt(i);
+			if (c == '"' || c == '\'') {
+				i = indexOf(c, i + 1);
+				if (i < 0) break;
+			} else if (c == '>') {
+				return i + 1;
+			}
+		}
+		throw new SPPersistenceException(null, "Tag at character " + start + " is not closed.");
+	}
+
+	/**
+	 * Returns the position after a comment, CDATA section, document type
+	 * declaration or processing instruction starting at start.
+	 */
+	private int endOfMarkup(int start) throws SPPersistenceException {
+		String terminator;
+		if (startsWith("<!--", start)) {
+			terminator = "-->";
+		} else if (startsWith("<![CDATA[", start)) {
+			terminator = "]]>";
+		} else if (charAt(start + 1) == '?') {
+			terminator = "?>";
+		} else {
+			return endOfTag(start);
+		}
+		int end = indexOf(terminator, start);
+		if (end < 0) {
+			throw new SPPersistenceException(null, "Markup at character " + start + " is not closed.");
+		}
+		return end + terminator.length();
+	}
+
+	/**
+	 * Returns the value of the UUID attribute of the start tag between start
+	 * and end.
+	 */
+	private String uuidOf(int start, int end) throws SPPersistenceException {
+		String tag = substring(start, end);
+		int pos = 0;
+		while (true) {
+			pos = tag.indexOf("UUID", pos);
+			if (pos < 0) {
+				throw new SPPersistenceException(null, "The element at character " +
+						start + " does not have a UUID.");
+			}
+			int valueStart = pos + "UUID".length();
+			while (Character.isWhitespace(tag.charAt(valueStart))) valueStart++;
+			if (pos > 0 && Character.isWhitespace(tag.charAt(pos - 1))
+					&& tag.charAt(valueStart) == '=') {
+				valueStart++;
+				while (Character.isWhitespace(tag.charAt(valueStart))) valueStart++;
+				char quote = tag.charAt(valueStart);
+				int valueEnd = tag.indexOf(quote, valueStart + 1);
+				return unescape(tag.substring(valueStart + 1, valueEnd));
+			}
+			pos = valueStart;
+		}
+	}
+
+	private static String unescape(String value) {
+		if (value.indexOf('&') < 0) return value;
+		return value.replace("&lt;", "<").replace("&gt;", ">").replace("&quot;", "\"")
+			.replace("&apos;", "'").replace("&amp;", "&");
+	}
+
+	/**
+	 * Reads the document until the character at the given position has been
+	 * read. Returns false if the document ends before it.
+	 */
+	private boolean ensureRead(int position) throws SPPersistenceException {
+		while (position >= bufferStart + buffer.length()) {
+			if (endOfInput) return false;
+			try {
+				int read = in.read(readBuffer);
+				if (read < 0) {
+					endOfInput = true;
+				} else {
+					buffer.append(readBuffer, 0, read);
+				}
+			} catch (IOException e) {
+				throw new SPPersistenceException(null, e);
+			}
+		}
+		return true;
+	}
+
+	private char charAt(int position) throws SPPersistenceException {
+		if (!ensureRead(position)) {
+			throw new SPPersistenceException(null, "The file ends unexpectedly at character " +
+					position + ".");
+		}
+		return buffer.charAt(position - bufferStart);
+	}
+
+	private boolean startsWith(String prefix, int position) throws SPPersistenceException {
+		if (!ensureRead(position + prefix.length() - 1)) return false;
+		for (int i = 0; i < prefix.length(); i++) {
+			if (buffer.charAt(position - bufferStart + i) != prefix.charAt(i)) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the position of the first c at or after from, or -1 if the
+	 * document does not have one.
+	 */
+	private int indexOf(char c, int from) throws SPPersistenceException {
+		int i = from;
+		while (ensureRead(i)) {
+			for (int end = bufferStart + buffer.length(); i < end; i++) {
+				if (buffer.charAt(i - bufferStart) == c) return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the position of the first s at or after from, or -1 if the
+	 * document does not have one.
+	 */
+	private int indexOf(String s, int from) throws SPPersistenceException {
+		int searchFrom = from;
+		while (true) {
+			int index = buffer.indexOf(s, searchFrom - bufferStart);
+			if (index >= 0) return index + bufferStart;
+			int loaded = bufferStart + buffer.length();
+			if (!ensureRead(loaded)) return -1;
+			searchFrom = Math.max(from, loaded - s.length() + 1);
+		}
+	}
+
+	private String substring(int start, int end) {
+		return buffer.substring(start - bufferStart, end - bufferStart);
+	}
+
+	/**
+	 * Drops the characters before the given position, which are no longer
+	 * needed. They are only removed once they are most of the buffer so each
+	 * character is only moved a few times.
+	 */
+	private void discardBefore(int position) {
+		int discard = position - bufferStart;
+		if (discard > READ_SIZE && discard > buffer.length() / 2) {
+			buffer.delete(0, discard);
+			bufferStart = position;
+		}
+	}
+}
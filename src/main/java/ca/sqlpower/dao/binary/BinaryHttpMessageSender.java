@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.dao.binary;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.StatusLine;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentProducer;
+import org.apache.http.entity.EntityTemplate;
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.dao.HttpMessageSender;
+import ca.sqlpower.dao.SPPersistenceException;
+import ca.sqlpower.dao.json.JSONHttpMessageSender;
+import ca.sqlpower.dao.json.SPJSONPersister;
+import ca.sqlpower.enterprise.client.SPServerInfo;
+
+/**
+ * An {@link HttpMessageSender} that posts transactions encoded by
+ * {@link SPBinaryPersister} to the server. If the server does not accept the
+ * binary format, signalled by an HTTP 415 response, the rejected messages are
+ * re-encoded as JSON and posted through a {@link JSONHttpMessageSender}. Once
+ * the server has rejected the binary format all later messages go straight
+ * to the JSON fallback.
+ */
+public class BinaryHttpMessageSender extends HttpMessageSender<byte[]> {
+
+	private static final Logger logger = Logger.getLogger(BinaryHttpMessageSender.class);
+
+	/**
+	 * The encoded transactions waiting to be flushed.
+	 */
+	private final List<byte[]> messages = new ArrayList<byte[]>();
+
+	/**
+	 * Set once the server has refused a binary message.
+	 */
+	private volatile boolean usingJSONFallback = false;
+
+	public BinaryHttpMessageSender(HttpClient httpClient, SPServerInfo serverInfo,
+			String rootUUID) {
+		super(httpClient, serverInfo, rootUUID);
+	}
+
+	public void send(byte[] content) throws SPPersistenceException {
+		messages.add(content);
+	}
+
+	public void flush() throws SPPersistenceException {
+		if (messages.isEmpty()) return;
+		try {
+			if (usingJSONFallback || !postBinary()) {
+				postAsJSON();
+			}
+		} finally {
+			messages.clear();
+		}
+	}
+
+	/**
+	 * Posts the buffered messages in the binary format.
+	 *
+	 * @return True if the server accepted the messages, false if it does not
+	 *         understand the binary format.
+	 */
+	private boolean postBinary() throws SPPersistenceException {
+		try {
+			HttpPost postRequest = new HttpPost(getServerURI());
+			EntityTemplate entity = new EntityTemplate(new ContentProducer() {
+				public void writeTo(OutputStream outstream) throws IOException {
+					for (byte[] message : messages) {
+						outstream.write(message);
+					}
+					outstream.flush();
+				}
+			});
+			entity.setContentType(BinaryPersistFormat.CONTENT_TYPE);
+			entity.setChunked(true);
+			postRequest.setEntity(entity);
+			boolean accepted = getHttpClient().execute(postRequest, new ResponseHandler<Boolean>() {
+				public Boolean handleResponse(HttpResponse response)
+						throws ClientProtocolException, IOException {
+					StatusLine statusLine = response.getStatusLine();
+					if (response.getEntity() != null) {
+						response.getEntity().consumeContent();
+					}
+					if (statusLine.getStatusCode() == BinaryPersistFormat.UNSUPPORTED_MEDIA_TYPE_STATUS) {
+						return Boolean.FALSE;
+					} else if (statusLine.getStatusCode() >= 400) {
+						throw new ClientProtocolException(
+								"HTTP Post request returned an error: " +
+								"Code = " + statusLine.getStatusCode() + ", " +
+								"Reason = " + statusLine.getReasonPhrase());
+					}
+					return Boolean.TRUE;
+				}
+			}).booleanValue();
+			if (!accepted) {
+				logger.info("Server does not accept binary persist messages, falling back to JSON.");
+				usingJSONFallback = true;
+			}
+			return accepted;
+		} catch (URISyntaxException e) {
+			throw new SPPersistenceException(null, e);
+		} catch (ClientProtocolException e) {
+			throw new SPPersistenceException(null, e);
+		} catch (IOException e) {
+			throw new SPPersistenceException(null, e);
+		}
+	}
+
+	/**
+	 * Re-encodes the buffered messages as JSON and posts them. Each message
+	 * contains a complete transaction so the JSON persister posts one request
+	 * per message.
+	 */
+	private void postAsJSON() throws SPPersistenceException {
+		JSONHttpMessageSender jsonSender = new JSONHttpMessageSender(
+				getHttpClient(), getServerInfo(), getRootUUID());
+		SPBinaryMessageDecoder decoder = new SPBinaryMessageDecoder(new SPJSONPersister(jsonSender));
+		for (byte[] message : messages) {
+			decoder.decode(message);
+		}
+	}
+
+	public void clear() {
+		messages.clear();
+	}
+
+	/**
+	 * Returns true if the server rejected the binary format and messages are
+	 * being sent as JSON instead.
+	 */
+	public boolean isUsingJSONFallback() {
+		return usingJSONFallback;
+	}
+}
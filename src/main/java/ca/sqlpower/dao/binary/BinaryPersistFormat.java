@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.dao.binary;
+
+import ca.sqlpower.dao.SPPersister;
+import ca.sqlpower.dao.SPPersister.DataType;
+import ca.sqlpower.dao.SPPersister.SPPersistMethod;
+
+/**
+ * Constants describing the compact binary encoding of {@link SPPersister}
+ * calls. This is an alternative to the JSON messages created by
+ * {@link ca.sqlpower.dao.json.SPJSONPersister} for clients and servers that
+ * both understand it.
+ * <p>
+ * A message is laid out as follows:
+ * <ol>
+ * <li>The {@link #MAGIC} bytes followed by the {@link #VERSION} byte.</li>
+ * <li>Any number of persist calls. Each call starts with the ordinal of its
+ * {@link SPPersistMethod} as a single byte followed by the arguments of the
+ * call in the same order as the {@link SPPersister} method.</li>
+ * <li>The {@link #END_OF_MESSAGE} byte.</li>
+ * </ol>
+ * Integers are written as variable length integers, 7 bits per byte with
+ * the high bit set on all but the last byte. Signed values are zig-zag
+ * encoded first so small negative numbers stay small.
+ * <p>
+ * UUIDs, object types, property names and reference values go through a
+ * string table that is reset with every message. A table reference is a
+ * variable length integer where 0 is null, a value from 1 to the size of
+ * the table refers to the string previously added at that position and the
+ * value one past the size of the table is followed by a new literal string
+ * which is then added to the table. Literal strings are written as their
+ * UTF-8 length followed by the UTF-8 bytes.
+ * <p>
+ * Property values are written according to their {@link DataType}, prefixed
+ * by {@link #NULL_VALUE} or {@link #NON_NULL_VALUE}. Images are written as
+ * their length followed by the raw bytes instead of being base 64 encoded.
+ */
+public class BinaryPersistFormat {
+
+	/**
+	 * The MIME type of binary persist messages. Servers that do not accept
+	 * this type are expected to respond with
+	 * {@link #UNSUPPORTED_MEDIA_TYPE_STATUS}, which makes the client fall back
+	 * to JSON.
+	 */
+	public static final String CONTENT_TYPE = "application/x-sqlpower-persist";
+
+	/**
+	 * The HTTP status a server responds with when it does not understand the
+	 * content type of a request.
+	 */
+	public static final int UNSUPPORTED_MEDIA_TYPE_STATUS = 415;
+
+	/**
+	 * The first bytes of every binary persist message.
+	 */
+	static final byte[] MAGIC = new byte[] {'S', 'P', 'B'};
+
+	/**
+	 * The version of the format written by this library.
+	 */
+	static final byte VERSION = 1;
+
+	/**
+	 * Marks the end of a message. This is not a valid {@link SPPersistMethod}
+	 * ordinal.
+	 */
+	static final int END_OF_MESSAGE = 0xFF;
+
+	static final int NULL_VALUE = 0;
+
+	static final int NON_NULL_VALUE = 1;
+
+	private BinaryPersistFormat() {
+		// constants only
+	}
+
+	/**
+	 * Zig-zag encodes a signed int so small magnitudes produce small unsigned
+	 * values.
+	 */
+	static int encodeZigZag(int n) {
+		return (n << 1) ^ (n >> 31);
+	}
+
+	static int decodeZigZag(int n) {
+		return (n >>> 1) ^ -(n & 1);
+	}
+
+	static long encodeZigZag(long n) {
+		return (n << 1) ^ (n >> 63);
+	}
+
+	static long decodeZigZag(long n) {
+		return (n >>> 1) ^ -(n & 1);
+	}
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.dao.binary;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.sqlpower.dao.SPPersister.DataType;
+import ca.sqlpower.dao.SPPersister.SPPersistMethod;
+
+/**
+ * Reads persist calls from a message in the format described by
+ * {@link BinaryPersistFormat}. A reader is created for each message as the
+ * string table belongs to the message.
+ */
+public class BinaryPersistReader {
+
+	private static final SPPersistMethod[] METHODS = SPPersistMethod.values();
+
+	private static final DataType[] DATA_TYPES = DataType.values();
+
+	private final InputStream in;
+
+	/**
+	 * The strings of the message's string table in the order they were
+	 * added. Index 0 of the list is table index 1.
+	 */
+	private final List<String> stringTable = new ArrayList<String>();
+
+	/**
+	 * Reusable buffer for decoding literal strings.
+	 */
+	private byte[] stringBuffer = new byte[256];
+
+	/**
+	 * Creates a reader over the given stream and reads the message header.
+	 *
+	 * @throws IOException
+	 *             If the stream does not start with a binary persist message
+	 *             of a version this reader understands.
+	 */
+	public BinaryPersistReader(InputStream in) throws IOException {
+		if (in instanceof ByteArrayInputStream || in instanceof BufferedInputStream) {
+			this.in = in;
+		} else {
+			this.in = new BufferedInputStream(in);
+		}
+		for (byte b : BinaryPersistFormat.MAGIC) {
+			if (readByte() != (b & 0xFF)) {
+				throw new IOException("The stream is not a binary persist message.");
+			}
+		}
+		int version = readByte();
+		if (version != BinaryPersistFormat.VERSION) {
+			throw new IOException("Unsupported binary persist message version " + version);
+		}
+	}
+
+	/**
+	 * Returns the method of the next persist call or null if the end of the
+	 * message was reached.
+	 */
+	public SPPersistMethod readMethod() throws IOException {
+		int b = readByte();
+		if (b == BinaryPersistFormat.END_OF_MESSAGE) {
+			return null;
+		}
+		if (b >= METHODS.length) {
+			throw new IOException("Unknown persist method " + b);
+		}
+		return METHODS[b];
+	}
+
+	public DataType readDataType() throws IOException {
+		int b = readByte();
+		if (b >= DATA_TYPES.length) {
+			throw new IOException("Unknown data type " + b);
+		}
+		return DATA_TYPES[b];
+	}
+
+	public int readVarInt() throws IOException {
+		int value = 0;
+		int shift = 0;
+		while (true) {
+			int b = readByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+			shift += 7;
+			if (shift > 28) {
+				throw new IOException("Malformed variable length integer");
+			}
+		}
+	}
+
+	public long readVarLong() throws IOException {
+		long value = 0;
+		int shift = 0;
+		while (true) {
+			int b = readByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+			shift += 7;
+			if (shift > 63) {
+				throw new IOException("Malformed variable length long");
+			}
+		}
+	}
+
+	public int readSignedVarInt() throws IOException {
+		return BinaryPersistFormat.decodeZigZag(readVarInt());
+	}
+
+	public long readSignedVarLong() throws IOException {
+		return BinaryPersistFormat.decodeZigZag(readVarLong());
+	}
+
+	/**
+	 * Reads a string written through the message's string table.
+	 */
+	public String readTableString() throws IOException {
+		int index = readVarInt();
+		if (index == 0) {
+			return null;
+		} else if (index <= stringTable.size()) {
+			return stringTable.get(index - 1);
+		} else if (index == stringTable.size() + 1) {
+			String s = readLiteral();
+			stringTable.add(s);
+			return s;
+		} else {
+			throw new IOException("String table index " + index +
+					" is beyond the table size of " + stringTable.size());
+		}
+	}
+
+	public String readLiteral() throws IOException {
+		int length = readVarInt();
+		if (stringBuffer.length < length) {
+			stringBuffer = new byte[Math.max(length, stringBuffer.length << 1)];
+		}
+		readFully(stringBuffer, length);
+		return new String(stringBuffer, 0, length, "UTF-8");
+	}
+
+	/**
+	 * Reads a property value of the given type. Images are returned as an
+	 * {@link InputStream} over the image bytes to match the JSON decoder.
+	 */
+	public Object readValue(DataType type) throws IOException {
+		if (readByte() == BinaryPersistFormat.NULL_VALUE) {
+			return null;
+		}
+		switch (type) {
+		case BOOLEAN:
+			return Boolean.valueOf(readByte() != 0);
+		case SHORT:
+			return Short.valueOf((short) readSignedVarInt());
+		case INTEGER:
+			return Integer.valueOf(readSignedVarInt());
+		case LONG:
+			return Long.valueOf(readSignedVarLong());
+		case FLOAT:
+			return Float.valueOf(Float.intBitsToFloat(readFixedInt()));
+		case DOUBLE:
+			long high = readFixedInt() & 0xFFFFFFFFL;
+			long low = readFixedInt() & 0xFFFFFFFFL;
+			return Double.valueOf(Double.longBitsToDouble((high << 32) | low));
+		case REFERENCE:
+			return readTableString();
+		case PNG_IMG:
+			byte[] bytes = new byte[readVarInt()];
+			readFully(bytes, bytes.length);
+			return new ByteArrayInputStream(bytes);
+		case NULL:
+			return null;
+		case STRING:
+		default:
+			return readLiteral();
+		}
+	}
+
+	private int readFixedInt() throws IOException {
+		return (readByte() << 24) | (readByte() << 16) | (readByte() << 8) | readByte();
+	}
+
+	private void readFully(byte[] bytes, int length) throws IOException {
+		int offset = 0;
+		while (offset < length) {
+			int read = in.read(bytes, offset, length - offset);
+			if (read == -1) {
+				throw new EOFException("Unexpected end of binary persist message");
+			}
+			offset += read;
+		}
+	}
+
+	private int readByte() throws IOException {
+		int b = in.read();
+		if (b == -1) {
+			throw new EOFException("Unexpected end of binary persist message");
+		}
+		return b;
+	}
+}
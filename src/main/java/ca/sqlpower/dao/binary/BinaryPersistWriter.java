@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.dao.binary;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.HashMap;
+import java.util.Map;
+
+import ca.sqlpower.dao.SPPersister.DataType;
+import ca.sqlpower.dao.SPPersister.SPPersistMethod;
+
+/**
+ * Encodes persist calls into a single message in the format described by
+ * {@link BinaryPersistFormat}. The writer is reused for each message by
+ * calling {@link #reset()}, which also clears the string table.
+ */
+public class BinaryPersistWriter {
+
+	private byte[] buf = new byte[4096];
+
+	private int count = 0;
+
+	/**
+	 * Maps each string written through the table to its 1-based index in the
+	 * table.
+	 */
+	private final Map<String, Integer> stringTable = new HashMap<String, Integer>();
+
+	/**
+	 * Creates a writer with the message header already written.
+	 */
+	public BinaryPersistWriter() {
+		reset();
+	}
+
+	/**
+	 * Discards the current message and string table and starts a new message.
+	 */
+	public void reset() {
+		count = 0;
+		stringTable.clear();
+		for (byte b : BinaryPersistFormat.MAGIC) {
+			write(b);
+		}
+		write(BinaryPersistFormat.VERSION);
+	}
+
+	/**
+	 * Returns true if no persist calls have been written since the last
+	 * reset.
+	 */
+	public boolean isEmpty() {
+		return count == BinaryPersistFormat.MAGIC.length + 1;
+	}
+
+	/**
+	 * Returns the number of bytes written so far, including the header.
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Writes the end of message marker and returns a copy of the message.
+	 * The writer must be reset before it is used again.
+	 */
+	public byte[] finish() {
+		write(BinaryPersistFormat.END_OF_MESSAGE);
+		byte[] message = new byte[count];
+		System.arraycopy(buf, 0, message, 0, count);
+		return message;
+	}
+
+	public void writeMethod(SPPersistMethod method) {
+		write(method.ordinal());
+	}
+
+	public void writeDataType(DataType type) {
+		write(type.ordinal());
+	}
+
+	public void writeVarInt(int value) {
+		ensureCapacity(5);
+		while ((value & ~0x7F) != 0) {
+			buf[count++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buf[count++] = (byte) value;
+	}
+
+	public void writeVarLong(long value) {
+		ensureCapacity(10);
+		while ((value & ~0x7FL) != 0) {
+			buf[count++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buf[count++] = (byte) value;
+	}
+
+	public void writeSignedVarInt(int value) {
+		writeVarInt(BinaryPersistFormat.encodeZigZag(value));
+	}
+
+	public void writeSignedVarLong(long value) {
+		writeVarLong(BinaryPersistFormat.encodeZigZag(value));
+	}
+
+	/**
+	 * Writes the given string through the string table of this message.
+	 * Strings that repeat, like UUIDs and property names, are only written
+	 * once per message.
+	 */
+	public void writeTableString(String s) {
+		if (s == null) {
+			writeVarInt(0);
+			return;
+		}
+		Integer index = stringTable.get(s);
+		if (index != null) {
+			writeVarInt(index.intValue());
+		} else {
+			int newIndex = stringTable.size() + 1;
+			stringTable.put(s, Integer.valueOf(newIndex));
+			writeVarInt(newIndex);
+			writeLiteral(s);
+		}
+	}
+
+	/**
+	 * Writes the string as its UTF-8 length followed by its UTF-8 bytes.
+	 */
+	public void writeLiteral(String s) {
+		byte[] bytes;
+		try {
+			bytes = s.getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException("UTF-8 should always be supported!", e);
+		}
+		writeBytes(bytes, bytes.length);
+	}
+
+	private void writeBytes(byte[] bytes, int length) {
+		writeVarInt(length);
+		ensureCapacity(length);
+		System.arraycopy(bytes, 0, buf, count, length);
+		count += length;
+	}
+
+	/**
+	 * Writes a property value of the given type. Images are expected as an
+	 * {@link InputStream} which will be read fully.
+	 */
+	public void writeValue(DataType type, Object value) throws IOException {
+		if (value == null) {
+			write(BinaryPersistFormat.NULL_VALUE);
+			return;
+		}
+		write(BinaryPersistFormat.NON_NULL_VALUE);
+		switch (type) {
+		case BOOLEAN:
+			write(((Boolean) value).booleanValue() ? 1 : 0);
+			break;
+		case SHORT:
+		case INTEGER:
+			writeSignedVarInt(((Number) value).intValue());
+			break;
+		case LONG:
+			writeSignedVarLong(((Number) value).longValue());
+			break;
+		case FLOAT:
+			writeFixedInt(Float.floatToIntBits(((Number) value).floatValue()));
+			break;
+		case DOUBLE:
+			long bits = Double.doubleToLongBits(((Number) value).doubleValue());
+			writeFixedInt((int) (bits >>> 32));
+			writeFixedInt((int) bits);
+			break;
+		case REFERENCE:
+			writeTableString(value.toString());
+			break;
+		case PNG_IMG:
+			InputStream in = (InputStream) value;
+			ExposedByteArrayOutputStream out = new ExposedByteArrayOutputStream();
+			byte[] chunk = new byte[4096];
+			int read;
+			while ((read = in.read(chunk)) != -1) {
+				out.write(chunk, 0, read);
+			}
+			writeBytes(out.getBuffer(), out.size());
+			break;
+		case NULL:
+			break;
+		case STRING:
+		default:
+			writeLiteral(value.toString());
+			break;
+		}
+	}
+
+	private void writeFixedInt(int value) {
+		ensureCapacity(4);
+		buf[count++] = (byte) (value >>> 24);
+		buf[count++] = (byte) (value >>> 16);
+		buf[count++] = (byte) (value >>> 8);
+		buf[count++] = (byte) value;
+	}
+
+	private void write(int b) {
+		ensureCapacity(1);
+		buf[count++] = (byte) b;
+	}
+
+	/**
+	 * Writes the current content of this writer to the given stream.
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		out.write(buf, 0, count);
+	}
+
+	private void ensureCapacity(int extra) {
+		if (count + extra > buf.length) {
+			byte[] newBuf = new byte[Math.max(buf.length << 1, count + extra)];
+			System.arraycopy(buf, 0, newBuf, 0, count);
+			buf = newBuf;
+		}
+	}
+
+	/**
+	 * Gives access to the internal buffer to avoid one copy of image data.
+	 */
+	private static class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+		byte[] getBuffer() {
+			return buf;
+		}
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.dao.binary;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.annotation.Nonnull;
+
+import ca.sqlpower.dao.MessageDecoder;
+import ca.sqlpower.dao.SPPersistenceException;
+import ca.sqlpower.dao.SPPersister;
+import ca.sqlpower.dao.SPPersister.DataType;
+import ca.sqlpower.dao.SPPersister.SPPersistMethod;
+
+/**
+ * An implementation of {@link MessageDecoder} that reads persist calls
+ * encoded by {@link SPBinaryPersister} and makes the same calls on the
+ * {@link SPPersister} given in the constructor. Like the JSON decoder each
+ * call is made as soon as it is read so the message is never fully decoded
+ * into memory.
+ */
+public class SPBinaryMessageDecoder implements MessageDecoder<byte[]> {
+
+	/**
+	 * The {@link SPPersister} that the decoder will make method calls on.
+	 */
+	private final SPPersister persister;
+
+	public SPBinaryMessageDecoder(@Nonnull SPPersister persister) {
+		this.persister = persister;
+	}
+
+	public void decode(@Nonnull byte[] message) throws SPPersistenceException {
+		decode(new ByteArrayInputStream(message));
+	}
+
+	/**
+	 * Decodes one binary message from the given stream, making each persist
+	 * call as it is read. The stream is left positioned after the end of the
+	 * message.
+	 */
+	public void decode(@Nonnull InputStream in) throws SPPersistenceException {
+		String uuid = null;
+		try {
+			BinaryPersistReader reader = new BinaryPersistReader(in);
+			synchronized (persister) {
+				SPPersistMethod method;
+				while ((method = reader.readMethod()) != null) {
+					String parentUUID;
+					String propertyName;
+					DataType propertyType;
+					switch (method) {
+					case begin:
+						uuid = null;
+						persister.begin();
+						break;
+					case commit:
+						uuid = null;
+						persister.commit();
+						break;
+					case persistObject:
+						parentUUID = reader.readTableString();
+						String type = reader.readTableString();
+						uuid = reader.readTableString();
+						int index = reader.readSignedVarInt();
+						persister.persistObject(parentUUID, type, uuid, index);
+						break;
+					case changeProperty:
+						uuid = reader.readTableString();
+						propertyName = reader.readTableString();
+						propertyType = reader.readDataType();
+						Object oldValue = reader.readValue(propertyType);
+						Object newValue = reader.readValue(propertyType);
+						persister.persistProperty(uuid, propertyName, propertyType, oldValue, newValue);
+						break;
+					case persistProperty:
+						uuid = reader.readTableString();
+						propertyName = reader.readTableString();
+						propertyType = reader.readDataType();
+						persister.persistProperty(uuid, propertyName, propertyType,
+								reader.readValue(propertyType));
+						break;
+					case removeObject:
+						parentUUID = reader.readTableString();
+						uuid = reader.readTableString();
+						if (parentUUID == null || parentUUID.equals("")) {
+							throw new SPPersistenceException(null, "Cannot persist object with null UUID");
+						}
+						persister.removeObject(parentUUID, uuid);
+						break;
+					case rollback:
+						uuid = null;
+						persister.rollback();
+						break;
+					default:
+						throw new SPPersistenceException(uuid,
+								"Does not support SP persistence method " + method);
+					}
+				}
+			}
+		} catch (IOException e) {
+			throw new SPPersistenceException(uuid, e);
+		}
+	}
+}
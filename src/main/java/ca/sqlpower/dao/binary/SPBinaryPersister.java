@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.dao.binary;
+
+import java.io.IOException;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.dao.MessageSender;
+import ca.sqlpower.dao.SPPersistenceException;
+import ca.sqlpower.dao.SPPersister;
+
+/**
+ * A {@link SPPersister} implementation that serializes {@link SPPersister}
+ * method calls in the compact binary format described by
+ * {@link BinaryPersistFormat} and transmits them to a destination using a
+ * {@link MessageSender}. This is the binary counterpart of
+ * {@link ca.sqlpower.dao.json.SPJSONPersister}; each outermost transaction is
+ * sent as a single message with its own string table.
+ */
+public class SPBinaryPersister implements SPPersister {
+
+	private static final Logger logger = Logger.getLogger(SPBinaryPersister.class);
+
+	/**
+	 * A count of transactions, mainly to keep track of nested transactions.
+	 */
+	private int transactionCount = 0;
+
+	/**
+	 * Responsible for transmitting each encoded transaction.
+	 */
+	private final MessageSender<byte[]> messageSender;
+
+	/**
+	 * Encodes the calls of the current transaction.
+	 */
+	private final BinaryPersistWriter writer = new BinaryPersistWriter();
+
+	/**
+	 * Create a {@link SPBinaryPersister} that uses the given
+	 * {@link MessageSender} to transmit the encoded transactions.
+	 */
+	public SPBinaryPersister(MessageSender<byte[]> messageSender) {
+		this.messageSender = messageSender;
+	}
+
+	public void begin() throws SPPersistenceException {
+		writer.writeMethod(SPPersistMethod.begin);
+		transactionCount++;
+	}
+
+	public void commit() throws SPPersistenceException {
+		if (transactionCount == 0) {
+			throw new SPPersistenceException(null, "Commit attempted while not in a transaction");
+		}
+		try {
+			writer.writeMethod(SPPersistMethod.commit);
+			if (transactionCount == 1) {
+				messageSender.send(writer.finish());
+				writer.reset();
+				messageSender.flush();
+				transactionCount = 0;
+			} else {
+				transactionCount--;
+			}
+		} catch (Throwable t) {
+			logger.error("Exception encountered while sending binary message. Rollback initiated.", t);
+			rollback();
+			if (t instanceof SPPersistenceException) {
+				throw (SPPersistenceException) t;
+			} else if (t instanceof RuntimeException) {
+				throw (RuntimeException) t;
+			} else {
+				throw new RuntimeException(t);
+			}
+		}
+	}
+
+	public void persistObject(String parentUUID, String type, String uuid, int index)
+			throws SPPersistenceException {
+		if (transactionCount == 0) {
+			throw new SPPersistenceException("Operation attempted while not in a transaction.");
+		}
+		writer.writeMethod(SPPersistMethod.persistObject);
+		writer.writeTableString(parentUUID);
+		writer.writeTableString(type);
+		writer.writeTableString(uuid);
+		writer.writeSignedVarInt(index);
+	}
+
+	public void persistProperty(String uuid, String propertyName, DataType type,
+			Object oldValue, Object newValue) throws SPPersistenceException {
+		if (transactionCount == 0) {
+			throw new SPPersistenceException("Operation attempted while not in a transaction.");
+		}
+		try {
+			writer.writeMethod(SPPersistMethod.changeProperty);
+			writer.writeTableString(uuid);
+			writer.writeTableString(propertyName);
+			writer.writeDataType(type);
+			writer.writeValue(type, oldValue);
+			writer.writeValue(type, newValue);
+		} catch (IOException e) {
+			logger.error(e);
+			rollback();
+			throw new SPPersistenceException(uuid, e);
+		} catch (ClassCastException e) {
+			logger.error(e);
+			rollback();
+			throw new SPPersistenceException(uuid, e);
+		}
+	}
+
+	public void persistProperty(String uuid, String propertyName, DataType type,
+			Object newValue) throws SPPersistenceException {
+		if (transactionCount == 0) {
+			throw new SPPersistenceException("Operation attempted while not in a transaction.");
+		}
+		try {
+			writer.writeMethod(SPPersistMethod.persistProperty);
+			writer.writeTableString(uuid);
+			writer.writeTableString(propertyName);
+			writer.writeDataType(type);
+			writer.writeValue(type, newValue);
+		} catch (IOException e) {
+			logger.error(e);
+			rollback();
+			throw new SPPersistenceException(uuid, e);
+		} catch (ClassCastException e) {
+			logger.error(e);
+			rollback();
+			throw new SPPersistenceException(uuid, e);
+		}
+	}
+
+	public void removeObject(String parentUUID, String uuid)
+			throws SPPersistenceException {
+		if (transactionCount == 0) {
+			throw new SPPersistenceException("Operation attempted while not in a transaction.");
+		}
+		writer.writeMethod(SPPersistMethod.removeObject);
+		writer.writeTableString(parentUUID);
+		writer.writeTableString(uuid);
+	}
+
+	public void rollback() {
+		writer.reset();
+		messageSender.clear();
+		transactionCount = 0;
+	}
+
+	public MessageSender<byte[]> getMessageSender() {
+		return messageSender;
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.dao.binary;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+
+/**
+ * Constants describing the binary snapshot of a workspace that is written
+ * next to a project file by the {@link WorkspaceSnapshotWriter} and read by
+ * the {@link WorkspaceSnapshotReader}. The snapshot holds the same persist
+ * calls as the project file in a form that can be memory mapped and read
+ * from any object onward without parsing the rest of the file.
+ * <p>
+ * A snapshot is laid out as follows:
+ * <ol>
+ * <li>A header of {@link #HEADER_SIZE} bytes: the {@link #MAGIC} bytes, the
+ * {@link #VERSION} byte, the state version of the project as an int, the
+ * length and CRC-32 checksum of the project file the snapshot was written
+ * for as longs and the number of object records as an int.</li>
+ * <li>One record per object in depth first order, so the descendants of
+ * each object directly follow it. A record is the object's UUID, parent
+ * UUID, type and index followed by the number of its properties and for
+ * each property its name, data type and value.</li>
+ * <li>The index: for each record its offset from the start of the file and
+ * the number of the first record after its subtree, both as ints, followed
+ * by the record numbers sorted by the records' UUIDs.</li>
+ * <li>The offset of the index as a long.</li>
+ * </ol>
+ * Fixed size numbers are big endian. Strings are written as a variable
+ * length integer that is 0 for null or one more than the UTF-8 length of the
+ * string, followed by the UTF-8 bytes. Other integers and property values
+ * are written as in {@link BinaryPersistFormat}, except that references are
+ * written as strings since there is no string table.
+ */
+public class WorkspaceSnapshotFormat {
+
+	static final byte[] MAGIC = new byte[] {'S', 'P', 'S'};
+
+	static final byte VERSION = 1;
+
+	static final int HEADER_SIZE = MAGIC.length + 1 + 4 + 8 + 8 + 4;
+
+	/**
+	 * The number of bytes of the trailing index offset.
+	 */
+	static final int TRAILER_SIZE = 8;
+
+	/**
+	 * The size of each entry of the record table in the index.
+	 */
+	static final int RECORD_ENTRY_SIZE = 8;
+
+	private WorkspaceSnapshotFormat() {
+		// constants only
+	}
+
+	/**
+	 * Returns the file the snapshot of the given project file is stored in.
+	 */
+	public static File getSnapshotFile(File projectFile) {
+		return new File(projectFile.getPath() + ".snapshot");
+	}
+
+	/**
+	 * Returns the CRC-32 checksum of the content of the given file.
+	 */
+	static long checksum(File file) throws IOException {
+		CRC32 crc = new CRC32();
+		InputStream in = new FileInputStream(file);
+		try {
+			byte[] buffer = new byte[64 * 1024];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				crc.update(buffer, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+		return crc.getValue();
+	}
+}
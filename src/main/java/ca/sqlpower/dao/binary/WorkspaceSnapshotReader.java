@@ -0,0 +1,340 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.dao.binary;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.dao.SPPersistenceException;
+import ca.sqlpower.dao.SPPersister;
+import ca.sqlpower.dao.SPPersister.DataType;
+
+/**
+ * Reads a workspace from the snapshot written next to a project file by a
+ * {@link WorkspaceSnapshotWriter}. The snapshot is memory mapped and only the
+ * records that are read are decoded, so the workspace can be loaded a few
+ * levels deep first and the subtrees below loaded when they are first
+ * needed. Objects loaded later must not be referenced by properties of the
+ * objects loaded before them.
+ * <p>
+ * Use {@link #open(File, int)} to get a reader. It returns null if the
+ * snapshot is missing or does not match the project file, in which case the
+ * project file has to be read instead.
+ * <p>
+ * The mapping is released when the reader is garbage collected; some
+ * platforms do not allow the snapshot to be replaced until then.
+ */
+public class WorkspaceSnapshotReader {
+
+	private static final Logger logger = Logger.getLogger(WorkspaceSnapshotReader.class);
+
+	private static final DataType[] DATA_TYPES = DataType.values();
+
+	private final ByteBuffer buffer;
+
+	private final int recordCount;
+
+	/**
+	 * The position of the record table of the index.
+	 */
+	private final int recordTableOffset;
+
+	/**
+	 * The position of the record numbers sorted by UUID.
+	 */
+	private final int sortedTableOffset;
+
+	private WorkspaceSnapshotReader(ByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+		try {
+			recordCount = buffer.getInt(WorkspaceSnapshotFormat.HEADER_SIZE - 4);
+			long indexOffset = buffer.getLong(buffer.limit() - WorkspaceSnapshotFormat.TRAILER_SIZE);
+			recordTableOffset = (int) indexOffset;
+			sortedTableOffset = recordTableOffset + recordCount * WorkspaceSnapshotFormat.RECORD_ENTRY_SIZE;
+			if (indexOffset < WorkspaceSnapshotFormat.HEADER_SIZE || recordCount < 0
+					|| sortedTableOffset + recordCount * 4 + WorkspaceSnapshotFormat.TRAILER_SIZE != buffer.limit()) {
+				throw new IOException("The snapshot index is corrupt.");
+			}
+		} catch (IndexOutOfBoundsException e) {
+			throw new IOException("The snapshot is truncated.");
+		}
+	}
+
+	/**
+	 * Opens the snapshot of the given project file.
+	 * 
+	 * @param projectFile
+	 *            The project file the snapshot was written for.
+	 * @param stateVersion
+	 *            The current version of the persisted state. Snapshots of
+	 *            other versions are not used so the project file is upgraded.
+	 * @return A reader over the snapshot, or null if there is no snapshot for
+	 *         the project file or the project file changed since the snapshot
+	 *         was written.
+	 */
+	public static WorkspaceSnapshotReader open(File projectFile, int stateVersion) throws IOException {
+		File snapshotFile = WorkspaceSnapshotFormat.getSnapshotFile(projectFile);
+		if (!snapshotFile.isFile() || !projectFile.isFile()) return null;
+		RandomAccessFile file = new RandomAccessFile(snapshotFile, "r");
+		ByteBuffer buffer;
+		try {
+			FileChannel channel = file.getChannel();
+			if (channel.size() < WorkspaceSnapshotFormat.HEADER_SIZE + WorkspaceSnapshotFormat.TRAILER_SIZE
+					|| channel.size() > Integer.MAX_VALUE) {
+				logger.info("Ignoring snapshot " + snapshotFile + " of unexpected size " + channel.size());
+				return null;
+			}
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			file.close();
+		}
+		for (int i = 0; i < WorkspaceSnapshotFormat.MAGIC.length; i++) {
+			if (buffer.get(i) != WorkspaceSnapshotFormat.MAGIC[i]) {
+				logger.info(snapshotFile + " is not a workspace snapshot.");
+				return null;
+			}
+		}
+		int position = WorkspaceSnapshotFormat.MAGIC.length;
+		if (buffer.get(position) != WorkspaceSnapshotFormat.VERSION) {
+			logger.info("Ignoring snapshot " + snapshotFile + " of version " + buffer.get(position));
+			return null;
+		}
+		position++;
+		if (buffer.getInt(position) != stateVersion) {
+			logger.info("Ignoring snapshot " + snapshotFile + " of state version " + buffer.getInt(position));
+			return null;
+		}
+		position += 4;
+		if (buffer.getLong(position) != projectFile.length()
+				|| buffer.getLong(position + 8) != WorkspaceSnapshotFormat.checksum(projectFile)) {
+			logger.info("Ignoring snapshot " + snapshotFile + " as " + projectFile + " changed since it was written.");
+			return null;
+		}
+		return new WorkspaceSnapshotReader(buffer);
+	}
+
+	public int getObjectCount() {
+		return recordCount;
+	}
+
+	/**
+	 * Persists the whole workspace to the target in one transaction.
+	 */
+	public void read(SPPersister target) throws SPPersistenceException {
+		read(target, -1);
+	}
+
+	/**
+	 * Persists the top levels of the workspace to the target in one
+	 * transaction.
+	 * 
+	 * @param maxDepth
+	 *            The depth of the deepest objects to persist, where the top
+	 *            level objects are at depth 0, or -1 to persist all objects.
+	 *            The objects below can be read later with
+	 *            {@link #readDescendants(String, SPPersister)}.
+	 */
+	public void read(SPPersister target, int maxDepth) throws SPPersistenceException {
+		target.begin();
+		try {
+			List<Integer> subtreeEnds = new ArrayList<Integer>();
+			ByteBuffer records = buffer.duplicate();
+			int i = 0;
+			while (i < recordCount) {
+				while (!subtreeEnds.isEmpty() && subtreeEnds.get(subtreeEnds.size() - 1).intValue() <= i) {
+					subtreeEnds.remove(subtreeEnds.size() - 1);
+				}
+				persistRecord(records, i, target);
+				if (subtreeEnds.size() == maxDepth) {
+					// skip the descendants of objects at the deepest level
+					i = getSubtreeEnd(i);
+				} else {
+					subtreeEnds.add(Integer.valueOf(getSubtreeEnd(i)));
+					i++;
+				}
+			}
+			target.commit();
+		} catch (Throwable t) {
+			throw rollback(target, null, t);
+		}
+	}
+
+	/**
+	 * Persists all of the descendants of the given object to the target in
+	 * one transaction. The object itself must have been persisted before.
+	 */
+	public void readDescendants(String uuid, SPPersister target) throws SPPersistenceException {
+		target.begin();
+		try {
+			int recordNumber = findRecord(uuid);
+			if (recordNumber < 0) {
+				throw new SPPersistenceException(uuid, "The snapshot does not contain the object " + uuid);
+			}
+			ByteBuffer records = buffer.duplicate();
+			for (int i = recordNumber + 1, end = getSubtreeEnd(recordNumber); i < end; i++) {
+				persistRecord(records, i, target);
+			}
+			target.commit();
+		} catch (Throwable t) {
+			throw rollback(target, uuid, t);
+		}
+	}
+
+	private SPPersistenceException rollback(SPPersister target, String uuid, Throwable t) {
+		target.rollback();
+		if (t instanceof SPPersistenceException) return (SPPersistenceException) t;
+		if (t instanceof BufferUnderflowException || t instanceof IndexOutOfBoundsException) {
+			return new SPPersistenceException(uuid, "The snapshot is corrupt.");
+		}
+		return new SPPersistenceException(uuid, t);
+	}
+
+	private int getRecordOffset(int recordNumber) {
+		return buffer.getInt(recordTableOffset + recordNumber * WorkspaceSnapshotFormat.RECORD_ENTRY_SIZE);
+	}
+
+	private int getSubtreeEnd(int recordNumber) {
+		return buffer.getInt(recordTableOffset + recordNumber * WorkspaceSnapshotFormat.RECORD_ENTRY_SIZE + 4);
+	}
+
+	/**
+	 * Returns the number of the record of the object with the given UUID or
+	 * -1 if the snapshot does not contain the object. This decodes only the
+	 * UUIDs of the records a binary search visits.
+	 */
+	private int findRecord(String uuid) throws IOException {
+		ByteBuffer records = buffer.duplicate();
+		int low = 0;
+		int high = recordCount - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int recordNumber = buffer.getInt(sortedTableOffset + middle * 4);
+			records.position(getRecordOffset(recordNumber));
+			int comparison = readString(records).compareTo(uuid);
+			if (comparison < 0) {
+				low = middle + 1;
+			} else if (comparison > 0) {
+				high = middle - 1;
+			} else {
+				return recordNumber;
+			}
+		}
+		return -1;
+	}
+
+	private void persistRecord(ByteBuffer records, int recordNumber, SPPersister target)
+			throws IOException, SPPersistenceException {
+		records.position(getRecordOffset(recordNumber));
+		String uuid = readString(records);
+		String parentUUID = readString(records);
+		String type = readString(records);
+		int index = BinaryPersistFormat.decodeZigZag(readVarInt(records));
+		target.persistObject(parentUUID, type, uuid, index);
+		int propertyCount = readVarInt(records);
+		for (int i = 0; i < propertyCount; i++) {
+			String name = readString(records);
+			int typeOrdinal = records.get() & 0xFF;
+			if (typeOrdinal >= DATA_TYPES.length) {
+				throw new IOException("Unknown data type " + typeOrdinal);
+			}
+			DataType dataType = DATA_TYPES[typeOrdinal];
+			target.persistProperty(uuid, name, dataType, readValue(records, dataType));
+		}
+	}
+
+	private static Object readValue(ByteBuffer in, DataType type) throws IOException {
+		switch (type) {
+		case BOOLEAN:
+			return Boolean.valueOf(in.get() != 0);
+		case SHORT:
+			return Short.valueOf((short) BinaryPersistFormat.decodeZigZag(readVarInt(in)));
+		case INTEGER:
+			return Integer.valueOf(BinaryPersistFormat.decodeZigZag(readVarInt(in)));
+		case LONG:
+			return Long.valueOf(BinaryPersistFormat.decodeZigZag(readVarLong(in)));
+		case FLOAT:
+			return Float.valueOf(Float.intBitsToFloat(in.getInt()));
+		case DOUBLE:
+			return Double.valueOf(Double.longBitsToDouble(in.getLong()));
+		case PNG_IMG:
+			byte[] image = new byte[readVarInt(in)];
+			in.get(image);
+			return new ByteArrayInputStream(image);
+		case STRING:
+		case REFERENCE:
+		default:
+			return readString(in);
+		}
+	}
+
+	private static String readString(ByteBuffer in) throws IOException {
+		int length = readVarInt(in) - 1;
+		if (length < 0) return null;
+		if (in.hasArray()) {
+			String s = new String(in.array(), in.arrayOffset() + in.position(), length, "UTF-8");
+			in.position(in.position() + length);
+			return s;
+		}
+		byte[] bytes = new byte[length];
+		in.get(bytes);
+		return new String(bytes, "UTF-8");
+	}
+
+	private static int readVarInt(ByteBuffer in) throws IOException {
+		int value = 0;
+		int shift = 0;
+		while (true) {
+			int b = in.get();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+			shift += 7;
+			if (shift > 28) {
+				throw new IOException("Malformed variable length integer");
+			}
+		}
+	}
+
+	private static long readVarLong(ByteBuffer in) throws IOException {
+		long value = 0;
+		int shift = 0;
+		while (true) {
+			int b = in.get();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+			shift += 7;
+			if (shift > 63) {
+				throw new IOException("Malformed variable length long");
+			}
+		}
+	}
+}
@@ -0,0 +1,508 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.dao.binary;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.sqlpower.dao.SPPersistenceException;
+import ca.sqlpower.dao.SPPersister;
+import ca.sqlpower.util.SQLPowerUtils;
+
+/**
+ * Records the persist calls of a workspace being saved while forwarding them
+ * to the persister that writes the project file, usually an
+ * {@link ca.sqlpower.dao.XMLPersister}. Once the project file is complete
+ * {@link #write(File, int)} stores the recorded workspace in a snapshot next
+ * to it in the format described by {@link WorkspaceSnapshotFormat}, which
+ * can be opened much faster than the project file by a
+ * {@link WorkspaceSnapshotReader}.
+ * <p>
+ * String values are recorded the way they are read back from the project
+ * file, so opening the snapshot gives the same workspace as opening the
+ * project file. Images are read into memory to be recorded, so the target
+ * receives a new stream over the same bytes.
+ */
+public class WorkspaceSnapshotWriter implements SPPersister {
+
+	/**
+	 * A recorded object and its properties.
+	 */
+	private static class ObjectRecord {
+		private final String parentUUID;
+		private final String type;
+		private final String uuid;
+		private final int index;
+
+		/**
+		 * The values of the object's properties by property name. Each value
+		 * is an array of the {@link DataType} and the value.
+		 */
+		private final Map<String, Object[]> properties = new LinkedHashMap<String, Object[]>();
+
+		ObjectRecord(String parentUUID, String type, String uuid, int index) {
+			this.parentUUID = parentUUID;
+			this.type = type;
+			this.uuid = uuid;
+			this.index = index;
+		}
+	}
+
+	private final SPPersister target;
+
+	/**
+	 * The recorded objects by UUID in the order they were persisted.
+	 */
+	private final Map<String, ObjectRecord> objects = new LinkedHashMap<String, ObjectRecord>();
+
+	private int transactionCount = 0;
+
+	/**
+	 * True once the outermost transaction committed and until the next one
+	 * starts or is rolled back.
+	 */
+	private boolean committed = false;
+
+	public WorkspaceSnapshotWriter(SPPersister target) {
+		this.target = target;
+	}
+
+	public void begin() throws SPPersistenceException {
+		if (transactionCount == 0) {
+			committed = false;
+		}
+		transactionCount++;
+		target.begin();
+	}
+
+	public void commit() throws SPPersistenceException {
+		target.commit();
+		transactionCount--;
+		if (transactionCount == 0) {
+			committed = true;
+		}
+	}
+
+	public void rollback() {
+		objects.clear();
+		transactionCount = 0;
+		committed = false;
+		target.rollback();
+	}
+
+	public void persistObject(String parentUUID, String type, String uuid, int index)
+			throws SPPersistenceException {
+		target.persistObject(parentUUID, type, uuid, index);
+		// The XML persister saves a missing parent as an empty UUID, which is
+		// what reading the project file persists.
+		objects.put(uuid, new ObjectRecord(parentUUID == null ? "" : parentUUID, type, uuid, index));
+	}
+
+	public void persistProperty(String uuid, String propertyName, DataType propertyType,
+			Object oldValue, Object newValue) throws SPPersistenceException {
+		newValue = readImage(uuid, propertyType, newValue);
+		target.persistProperty(uuid, propertyName, propertyType, oldValue, imageStream(newValue));
+		recordProperty(uuid, propertyName, propertyType, newValue);
+	}
+
+	public void persistProperty(String uuid, String propertyName, DataType propertyType,
+			Object newValue) throws SPPersistenceException {
+		newValue = readImage(uuid, propertyType, newValue);
+		target.persistProperty(uuid, propertyName, propertyType, imageStream(newValue));
+		recordProperty(uuid, propertyName, propertyType, newValue);
+	}
+
+	public void removeObject(String parentUUID, String uuid) throws SPPersistenceException {
+		target.removeObject(parentUUID, uuid);
+		objects.remove(uuid);
+	}
+
+	private void recordProperty(String uuid, String propertyName, DataType propertyType, Object value) {
+		ObjectRecord record = objects.get(uuid);
+		if (record == null) return;
+		// The XML persister does not save null values so they are left out
+		// here as well to load the same properties.
+		if (propertyType == DataType.NULL || value == null) {
+			record.properties.remove(propertyName);
+		} else {
+			record.properties.put(propertyName, new Object[] {propertyType, value});
+		}
+	}
+
+	/**
+	 * Reads an image stream into a byte array so it can be both recorded and
+	 * forwarded. Other values are returned unchanged.
+	 */
+	private static Object readImage(String uuid, DataType propertyType, Object value)
+			throws SPPersistenceException {
+		if (propertyType != DataType.PNG_IMG || !(value instanceof InputStream)) return value;
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			SQLPowerUtils.copyStream((InputStream) value, out);
+			return out.toByteArray();
+		} catch (IOException e) {
+			throw new SPPersistenceException(uuid, e);
+		}
+	}
+
+	private static Object imageStream(Object value) {
+		if (value instanceof byte[]) {
+			return new ByteArrayInputStream((byte[]) value);
+		}
+		return value;
+	}
+
+	/**
+	 * Writes the snapshot of the workspace saved in the last committed
+	 * transaction next to the given project file, replacing any existing
+	 * snapshot. This must be called after the project file is completely
+	 * written as the snapshot is only valid for the exact content of the
+	 * file.
+	 * 
+	 * @param projectFile
+	 *            The project file the workspace was saved to.
+	 * @param stateVersion
+	 *            The version of the persisted state, which the reader checks
+	 *            so snapshots of older versions go through the upgrade
+	 *            persisters of the project file.
+	 */
+	public void write(File projectFile, int stateVersion) throws IOException {
+		if (!committed) {
+			throw new IllegalStateException("The workspace must be saved in a committed " +
+					"transaction before its snapshot can be written.");
+		}
+		long length = projectFile.length();
+		long checksum = WorkspaceSnapshotFormat.checksum(projectFile);
+		File snapshotFile = WorkspaceSnapshotFormat.getSnapshotFile(projectFile);
+		File tempFile = new File(snapshotFile.getPath() + ".tmp");
+		SnapshotOutput out = new SnapshotOutput(new FileOutputStream(tempFile));
+		boolean written = false;
+		try {
+			List<ObjectRecord> records = depthFirstOrder();
+			int[] offsets = new int[records.size()];
+			int[] subtreeEnds = new int[records.size()];
+			out.write(WorkspaceSnapshotFormat.MAGIC);
+			out.writeByte(WorkspaceSnapshotFormat.VERSION);
+			out.writeInt(stateVersion);
+			out.writeLong(length);
+			out.writeLong(checksum);
+			out.writeInt(records.size());
+			Map<String, Integer> recordNumbers = new HashMap<String, Integer>();
+			for (int i = 0; i < records.size(); i++) {
+				ObjectRecord record = records.get(i);
+				offsets[i] = (int) out.size();
+				recordNumbers.put(record.uuid, Integer.valueOf(i));
+				writeRecord(out, record);
+				if (out.size() > Integer.MAX_VALUE) {
+					throw new IOException("The workspace is too large for a snapshot.");
+				}
+			}
+			// A record's subtree ends at the next record that is not one of
+			// its descendants, which is the end of its last child's subtree.
+			for (int i = records.size() - 1; i >= 0; i--) {
+				if (subtreeEnds[i] == 0) subtreeEnds[i] = i + 1;
+				Integer parent = recordNumbers.get(records.get(i).parentUUID);
+				if (parent != null && subtreeEnds[parent.intValue()] == 0) {
+					subtreeEnds[parent.intValue()] = subtreeEnds[i];
+				}
+			}
+			long indexOffset = out.size();
+			for (int i = 0; i < records.size(); i++) {
+				out.writeInt(offsets[i]);
+				out.writeInt(subtreeEnds[i]);
+			}
+			for (int i : sortedByUUID(records)) {
+				out.writeInt(i);
+			}
+			out.writeLong(indexOffset);
+			written = true;
+		} finally {
+			out.close();
+			if (!written) {
+				tempFile.delete();
+			}
+		}
+		if (snapshotFile.exists() && !snapshotFile.delete()) {
+			tempFile.delete();
+			throw new IOException("Could not replace the snapshot " + snapshotFile);
+		}
+		if (!tempFile.renameTo(snapshotFile)) {
+			throw new IOException("Could not rename " + tempFile + " to " + snapshotFile);
+		}
+	}
+
+	/**
+	 * Returns the recorded objects in depth first order, keeping the order
+	 * they were persisted in among siblings. Objects whose parent was not
+	 * recorded are treated as top level objects.
+	 */
+	private List<ObjectRecord> depthFirstOrder() {
+		Map<String, List<ObjectRecord>> children = new HashMap<String, List<ObjectRecord>>();
+		List<ObjectRecord> roots = new ArrayList<ObjectRecord>();
+		for (ObjectRecord record : objects.values()) {
+			if (!objects.containsKey(record.parentUUID)) {
+				roots.add(record);
+			} else {
+				List<ObjectRecord> siblings = children.get(record.parentUUID);
+				if (siblings == null) {
+					siblings = new ArrayList<ObjectRecord>();
+					children.put(record.parentUUID, siblings);
+				}
+				siblings.add(record);
+			}
+		}
+		List<ObjectRecord> ordered = new ArrayList<ObjectRecord>(objects.size());
+		List<ObjectRecord> stack = new ArrayList<ObjectRecord>();
+		for (int i = roots.size() - 1; i >= 0; i--) {
+			stack.add(roots.get(i));
+		}
+		while (!stack.isEmpty()) {
+			ObjectRecord record = stack.remove(stack.size() - 1);
+			ordered.add(record);
+			List<ObjectRecord> recordChildren = children.get(record.uuid);
+			if (recordChildren != null) {
+				for (int i = recordChildren.size() - 1; i >= 0; i--) {
+					stack.add(recordChildren.get(i));
+				}
+			}
+		}
+		return ordered;
+	}
+
+	private static List<Integer> sortedByUUID(final List<ObjectRecord> records) {
+		List<Integer> numbers = new ArrayList<Integer>(records.size());
+		for (int i = 0; i < records.size(); i++) {
+			numbers.add(Integer.valueOf(i));
+		}
+		Collections.sort(numbers, new Comparator<Integer>() {
+			public int compare(Integer i1, Integer i2) {
+				return records.get(i1.intValue()).uuid.compareTo(records.get(i2.intValue()).uuid);
+			}
+		});
+		return numbers;
+	}
+
+	private static void writeRecord(SnapshotOutput out, ObjectRecord record) throws IOException {
+		out.writeString(record.uuid);
+		out.writeString(record.parentUUID);
+		out.writeString(record.type);
+		out.writeVarInt(BinaryPersistFormat.encodeZigZag(record.index));
+		out.writeVarInt(record.properties.size());
+		for (Map.Entry<String, Object[]> property : record.properties.entrySet()) {
+			DataType type = (DataType) property.getValue()[0];
+			out.writeString(property.getKey());
+			out.writeByte(type.ordinal());
+			writeValue(out, type, property.getValue()[1]);
+		}
+	}
+
+	private static void writeValue(SnapshotOutput out, DataType type, Object value) throws IOException {
+		switch (type) {
+		case BOOLEAN:
+			out.writeByte(((Boolean) value).booleanValue() ? 1 : 0);
+			break;
+		case SHORT:
+		case INTEGER:
+			out.writeVarInt(BinaryPersistFormat.encodeZigZag(((Number) value).intValue()));
+			break;
+		case LONG:
+			out.writeVarLong(BinaryPersistFormat.encodeZigZag(((Number) value).longValue()));
+			break;
+		case FLOAT:
+			out.writeInt(Float.floatToIntBits(((Number) value).floatValue()));
+			break;
+		case DOUBLE:
+			out.writeLong(Double.doubleToLongBits(((Number) value).doubleValue()));
+			break;
+		case PNG_IMG:
+			byte[] image = (byte[]) value;
+			out.writeVarInt(image.length);
+			out.write(image);
+			break;
+		case STRING:
+		case REFERENCE:
+		default:
+			out.writeString(asReadFromProjectFile(value.toString()));
+			break;
+		}
+	}
+
+	/**
+	 * Returns the string reading the project file gives back for the given
+	 * string value. The {@link ca.sqlpower.dao.XMLPersister} strips
+	 * characters that are not allowed in XML and the XML parser turns line
+	 * breaks and tabs in attribute values into spaces.
+	 */
+	private static String asReadFromProjectFile(String s) {
+		StringBuilder normalized = null;
+		for (int i = 0, n = s.length(); i < n; i++) {
+			char c = s.charAt(i);
+			if (c == 0x03 || c == 0x1a || c == '\n' || c == '\r' || c == '\t') {
+				if (normalized == null) {
+					normalized = new StringBuilder(n);
+					normalized.append(s, 0, i);
+				}
+				if (c == '\r' && i + 1 < n && s.charAt(i + 1) == '\n') {
+					// a CR LF pair is read as a single line break
+					i++;
+				}
+				if (c != 0x03 && c != 0x1a) {
+					normalized.append(' ');
+				}
+			} else if (normalized != null) {
+				normalized.append(c);
+			}
+		}
+		return normalized == null ? s : normalized.toString();
+	}
+
+	/**
+	 * A buffered output stream with the encodings of the snapshot format.
+	 * This is much faster than a {@link java.io.DataOutputStream} for the
+	 * many small writes of a snapshot.
+	 */
+	private static class SnapshotOutput {
+
+		private final OutputStream out;
+
+		private final byte[] buf = new byte[64 * 1024];
+
+		private int count = 0;
+
+		/**
+		 * The number of bytes flushed to the stream.
+		 */
+		private long flushed = 0;
+
+		SnapshotOutput(OutputStream out) {
+			this.out = out;
+		}
+
+		long size() {
+			return flushed + count;
+		}
+
+		void writeByte(int b) throws IOException {
+			if (count == buf.length) flush();
+			buf[count++] = (byte) b;
+		}
+
+		void writeInt(int value) throws IOException {
+			ensureCapacity(4);
+			buf[count++] = (byte) (value >>> 24);
+			buf[count++] = (byte) (value >>> 16);
+			buf[count++] = (byte) (value >>> 8);
+			buf[count++] = (byte) value;
+		}
+
+		void writeLong(long value) throws IOException {
+			writeInt((int) (value >>> 32));
+			writeInt((int) value);
+		}
+
+		void writeVarInt(int value) throws IOException {
+			ensureCapacity(5);
+			while ((value & ~0x7F) != 0) {
+				buf[count++] = (byte) ((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			buf[count++] = (byte) value;
+		}
+
+		void writeVarLong(long value) throws IOException {
+			ensureCapacity(10);
+			while ((value & ~0x7FL) != 0) {
+				buf[count++] = (byte) ((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			buf[count++] = (byte) value;
+		}
+
+		void write(byte[] bytes) throws IOException {
+			if (bytes.length > buf.length - count) {
+				flush();
+				if (bytes.length > buf.length) {
+					out.write(bytes);
+					flushed += bytes.length;
+					return;
+				}
+			}
+			System.arraycopy(bytes, 0, buf, count, bytes.length);
+			count += bytes.length;
+		}
+
+		/**
+		 * Writes a string or null, copying ASCII strings without encoding
+		 * them first.
+		 */
+		void writeString(String s) throws IOException {
+			if (s == null) {
+				writeVarInt(0);
+				return;
+			}
+			int length = s.length();
+			boolean ascii = length < buf.length;
+			for (int i = 0; ascii && i < length; i++) {
+				ascii = s.charAt(i) < 0x80;
+			}
+			if (!ascii) {
+				byte[] bytes = s.getBytes("UTF-8");
+				writeVarInt(bytes.length + 1);
+				write(bytes);
+				return;
+			}
+			writeVarInt(length + 1);
+			ensureCapacity(length);
+			for (int i = 0; i < length; i++) {
+				buf[count++] = (byte) s.charAt(i);
+			}
+		}
+
+		private void ensureCapacity(int extra) throws IOException {
+			if (count + extra > buf.length) flush();
+		}
+
+		private void flush() throws IOException {
+			out.write(buf, 0, count);
+			flushed += count;
+			count = 0;
+		}
+
+		void close() throws IOException {
+			try {
+				flush();
+			} finally {
+				out.close();
+			}
+		}
+	}
+}
@@ -19,11 +19,16 @@
 
 package ca.sqlpower.dao.helper;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import ca.sqlpower.object.SPObject;
 
 /**
  * This utility class helps find a {@link SPPersisterHelper} for a given class
- * object.
+ * object. The generated persister helpers do not hold any state so one
+ * instance of each helper is created and shared by all callers, on any
+ * thread.
  */
 public class PersisterHelperFinder {
 	
@@ -34,14 +39,37 @@ public class PersisterHelperFinder {
 	public static final String GENERATED_PACKAGE_NAME = "generated";
 
 	/**
-	 * Returns a new instance of the persister helper for the given class. At
-	 * current all persisters are located in the
-	 * ca.sqlpower.dao.helper.generated package but this will change.
+	 * The persister helper for each class that has been looked up by its
+	 * class object.
+	 */
+	private static final ConcurrentMap<Class<?>, SPPersisterHelper<? extends SPObject>> helpersByClass = 
+		new ConcurrentHashMap<Class<?>, SPPersisterHelper<? extends SPObject>>();
+
+	/**
+	 * The persister helper for each fully qualified class name that has been
+	 * looked up by name.
+	 */
+	private static final ConcurrentMap<String, SPPersisterHelper<? extends SPObject>> helpersByType = 
+		new ConcurrentHashMap<String, SPPersisterHelper<? extends SPObject>>();
+
+	/**
+	 * The persister helper for each persister helper class name. This is
+	 * where helpers are created so looking up a class by its class object and
+	 * by its name returns the same helper.
+	 */
+	private static final ConcurrentMap<String, SPPersisterHelper<? extends SPObject>> helpersByName = 
+		new ConcurrentHashMap<String, SPPersisterHelper<? extends SPObject>>();
+
+	/**
+	 * Returns the persister helper for the given class. At current all
+	 * persisters are located in the ca.sqlpower.dao.helper.generated package
+	 * but this will change. The helper is created the first time it is asked
+	 * for and the same instance is returned after that.
 	 * 
 	 * @param persistClass
-	 *            The new persister helper will create and modify objects of
-	 *            this type.
-	 * @return A new persister helper that will create and modify objects of the
+	 *            The persister helper will create and modify objects of this
+	 *            type.
+	 * @return The persister helper that will create and modify objects of the
 	 *         given type.
 	 * @throws ClassNotFoundException
 	 *             Thrown if there is no persister helper for the class. This
@@ -53,10 +81,12 @@ public class PersisterHelperFinder {
 	 *             Thrown if the default constructor is not visible for the
 	 *             persister helper.
 	 */
-	@SuppressWarnings("unchecked")
 	public static SPPersisterHelper<? extends SPObject> findPersister(
 			Class<? extends SPObject> persistClass) 
 			throws ClassNotFoundException, InstantiationException, IllegalAccessException {
+		SPPersisterHelper<? extends SPObject> helper = helpersByClass.get(persistClass);
+		if (helper != null) return helper;
+		
 		String className;
 		if (persistClass.getSimpleName().indexOf("$") == -1) {
 			className = persistClass.getSimpleName();
@@ -64,19 +94,21 @@ public class PersisterHelperFinder {
 			className = persistClass.getSimpleName().substring(persistClass.getSimpleName().lastIndexOf("$") + 1);
 		}
 		String persisterClassName = persistClass.getPackage().getName() + "." + GENERATED_PACKAGE_NAME + "." + className + "PersisterHelper";
-		Class<?> persisterClass = PersisterHelperFinder.class.getClassLoader().loadClass(persisterClassName);
-		return (SPPersisterHelper<? extends SPObject>) persisterClass.newInstance();
+		helper = findPersisterByHelperName(persisterClassName);
+		helpersByClass.putIfAbsent(persistClass, helper);
+		return helper;
 	}
 	
 	/**
-	 * Returns a new instance of the persister helper for the given class. At
-	 * current all persisters are located in the
-	 * ca.sqlpower.dao.helper.generated package but this will change.
+	 * Returns the persister helper for the given class. At current all
+	 * persisters are located in the ca.sqlpower.dao.helper.generated package
+	 * but this will change. The helper is created the first time it is asked
+	 * for and the same instance is returned after that.
 	 * 
 	 * @param type
-	 *            The new persister helper will create and modify objects of
-	 *            this type. This must be the fully qualified class name.
-	 * @return A new persister helper that will create and modify objects of the
+	 *            The persister helper will create and modify objects of this
+	 *            type. This must be the fully qualified class name.
+	 * @return The persister helper that will create and modify objects of the
 	 *         given type.
 	 * @throws ClassNotFoundException
 	 *             Thrown if there is no persister helper for the class. This
@@ -88,12 +120,34 @@ public class PersisterHelperFinder {
 	 *             Thrown if the default constructor is not visible for the
 	 *             persister helper.
 	 */
-	@SuppressWarnings("unchecked")
 	public static SPPersisterHelper<? extends SPObject> findPersister(
 			String type) throws ClassNotFoundException, InstantiationException, IllegalAccessException {
-		String persisterClassName = getPersisterHelperClassName(type);
+		SPPersisterHelper<? extends SPObject> helper = helpersByType.get(type);
+		if (helper != null) return helper;
+		
+		helper = findPersisterByHelperName(getPersisterHelperClassName(type));
+		helpersByType.putIfAbsent(type, helper);
+		return helper;
+	}
+
+	/**
+	 * Returns the shared instance of the persister helper with the given fully
+	 * qualified class name, creating it if this is the first time it is
+	 * needed. If two threads create the helper at the same time only one of
+	 * the instances is kept.
+	 */
+	@SuppressWarnings("unchecked")
+	private static SPPersisterHelper<? extends SPObject> findPersisterByHelperName(
+			String persisterClassName) 
+			throws ClassNotFoundException, InstantiationException, IllegalAccessException {
+		SPPersisterHelper<? extends SPObject> helper = helpersByName.get(persisterClassName);
+		if (helper != null) return helper;
+		
 		Class<?> persisterClass = PersisterHelperFinder.class.getClassLoader().loadClass(persisterClassName);
-		return (SPPersisterHelper<? extends SPObject>) persisterClass.newInstance();
+		helper = (SPPersisterHelper<? extends SPObject>) persisterClass.newInstance();
+		SPPersisterHelper<? extends SPObject> existingHelper = helpersByName.putIfAbsent(persisterClassName, helper);
+		if (existingHelper != null) return existingHelper;
+		return helper;
 	}
 	
 	/**
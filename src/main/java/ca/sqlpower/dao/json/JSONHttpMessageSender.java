@@ -30,22 +30,32 @@ import org.apache.http.client.HttpClient;
 import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpUriRequest;
-import org.apache.http.entity.StringEntity;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
 import ca.sqlpower.dao.HttpMessageSender;
 import ca.sqlpower.dao.SPPersistenceException;
 import ca.sqlpower.enterprise.client.SPServerInfo;
+import ca.sqlpower.http.HttpUtils;
+import ca.sqlpower.http.JSONArrayEntity;
 
 /**
  * An {@link HttpMessageSender} implementation that specifically sends it's
  * message content in the JSON format. (see <a
- * href="http://www.json.org">www.json.org</a>).
+ * href="http://www.json.org">www.json.org</a>). The buffered messages are
+ * streamed to the server when flushed so the transaction is never converted
+ * to one large String.
  */
 public class JSONHttpMessageSender extends HttpMessageSender<JSONObject> {
 	
 	private JSONArray messageArray;
+
+	/**
+	 * If true the messages will be compressed with gzip when they are posted
+	 * to the server. This should only be set if the server is known to accept
+	 * gzip encoded requests.
+	 */
+	private boolean compressing = false;
 	
 	public JSONHttpMessageSender(HttpClient httpClient, SPServerInfo serverInfo,
 			String rootUUID) {
@@ -53,6 +63,18 @@ public class JSONHttpMessageSender extends HttpMessageSender<JSONObject> {
 		messageArray = new JSONArray();
 	}
 
+	/**
+	 * Sets whether the messages posted to the server will be gzip compressed.
+	 * The messages are streamed to the server as JSON in either case.
+	 */
+	public void setCompressing(boolean compressing) {
+		this.compressing = compressing;
+	}
+
+	public boolean isCompressing() {
+		return compressing;
+	}
+
 	public void send(JSONObject content) throws SPPersistenceException {
 		messageArray.put(content);
 	}
@@ -61,8 +83,8 @@ public class JSONHttpMessageSender extends HttpMessageSender<JSONObject> {
 		try {
 			URI serverURI = getServerURI();
 			HttpPost postRequest = new HttpPost(serverURI);
-			postRequest.setEntity(new StringEntity(messageArray.toString()));
-			postRequest.setHeader("Content-Type", "application/json");
+			postRequest.setEntity(new JSONArrayEntity(messageArray, compressing));
+			HttpUtils.acceptGzip(postRequest);
 			HttpUriRequest request = postRequest;
 	        getHttpClient().execute(request, new ResponseHandler<Void>() {
 				public Void handleResponse(HttpResponse response)
@@ -93,8 +115,8 @@ public class JSONHttpMessageSender extends HttpMessageSender<JSONObject> {
 	}
 	
 	private void clearMessageArray() {
-		for (int i = messageArray.length() - 1; i >= 0; i--) {
-			messageArray.remove(i);
-		}
+		// Replacing the array is cheaper than removing each element and lets
+		// the entire transaction be collected at once.
+		messageArray = new JSONArray();
 	}
 }
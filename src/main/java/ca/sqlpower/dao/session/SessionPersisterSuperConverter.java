@@ -35,9 +35,14 @@ import java.text.Format;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import javax.xml.namespace.QName;
 
+import org.apache.commons.beanutils.ConversionException;
+
 import ca.sqlpower.object.SPObject;
 import ca.sqlpower.sql.DataSourceCollection;
 import ca.sqlpower.sql.JDBCDataSource;
@@ -50,39 +55,84 @@ import ca.sqlpower.util.SQLPowerUtils;
  * pushed through an HTTP request and persisted on the server. This also
  * contains a way to get the object back based on the simple type that can be
  * passed and stored.
+ * <p>
+ * Each type is converted by a {@link BidirectionalConverter} registered for
+ * it. The converter for a class is the first registered converter whose type
+ * the class is assignable to, and it is only looked up once per class since
+ * this runs for every property that is persisted or loaded. Additional
+ * converters can be registered with
+ * {@link #registerConverter(Class, BidirectionalConverter)}.
  */
 public class SessionPersisterSuperConverter {
-	
-	protected final SPObjectConverter spObjectConverter;
-	
-	private final FormatConverter formatConverter = new FormatConverter();
-	
-	private final Point2DConverter point2DConverter = new Point2DConverter();
-	
-    private final RectangleConverter rectangleConverter = new RectangleConverter();
 
-    private final DimensionConverter dimensionConverter = new DimensionConverter();
-	
-	private final ColorConverter colorConverter = new ColorConverter();
-	
-	private final DateConverter dateConverter = new DateConverter();
-	
-	private final StringArrayConverter stringArrayConverter = new StringArrayConverter();
-	
-	private final ClassConverter classConverter = new ClassConverter();
-	
-	private final FileConverter fileConverter = new FileConverter();
-	
-	private final ListConverter listConverter = new ListConverter();
-	
-	private final LocaleConverter localeConverter = new LocaleConverter();
-	
-	private final QNameConverter qnameConverter = new QNameConverter();
+	/**
+	 * A converter and the type of object it converts.
+	 */
+	private static class RegisteredConverter {
+		
+		private final Class<?> type;
+		
+		private final BidirectionalConverter<Object, Object> converter;
+		
+		@SuppressWarnings("unchecked")
+		RegisteredConverter(Class<?> type, BidirectionalConverter<?, ?> converter) {
+			this.type = type;
+			this.converter = (BidirectionalConverter<Object, Object>) converter;
+		}
+
+		/**
+		 * Returns the converter to use for the given class, which is a
+		 * subclass of this converter's type.
+		 */
+		BidirectionalConverter<Object, Object> getConverterFor(Class<?> c) {
+			return converter;
+		}
+	}
+
+	/**
+	 * Converts objects that are already a simple type by returning them
+	 * as they are.
+	 */
+	private static class IdentityConverter<T> implements BidirectionalConverter<T, T> {
+		
+		private final Class<T> type;
+		
+		IdentityConverter(Class<T> type) {
+			this.type = type;
+		}
+		
+		public T convertToComplexType(T convertFrom) throws ConversionException {
+			return type.cast(convertFrom);
+		}
+		
+		public T convertToSimpleType(T convertFrom, Object... additionalInfo) {
+			return convertFrom;
+		}
+	}
 	
-	private final URIConverter uriConverter = new URIConverter();
+	protected final SPObjectConverter spObjectConverter;
 	
 	protected final DataSourceCollection <JDBCDataSource> dsCollection;
 
+	/**
+	 * The converters in the order they are checked against a class. Converters
+	 * registered with {@link #registerConverter(Class, BidirectionalConverter)}
+	 * come before the built in converters.
+	 */
+	private final List<RegisteredConverter> converters = new CopyOnWriteArrayList<RegisteredConverter>();
+
+	/**
+	 * The number of converters at the start of {@link #converters} that were
+	 * registered with {@link #registerConverter(Class, BidirectionalConverter)}.
+	 */
+	private int registeredCount = 0;
+
+	/**
+	 * The converter found for each class that has been converted so far.
+	 */
+	private final ConcurrentMap<Class<?>, BidirectionalConverter<Object, Object>> convertersByClass =
+		new ConcurrentHashMap<Class<?>, BidirectionalConverter<Object, Object>>();
+
 	/**
 	 * This converter will allow changes between any complex object in the
 	 * session's workspace and a simple type that can be passed between
@@ -98,6 +148,179 @@ public class SessionPersisterSuperConverter {
 			SPObject root) {
 		spObjectConverter = new SPObjectConverter(root);
 		this.dsCollection = new SpecificDataSourceCollection(dsCollection, JDBCDataSource.class);
+		addBuiltInConverters();
+	}
+
+	/**
+	 * Adds the converters for the types this class has always known about.
+	 * Where one type is a subclass of another the subclass must come first.
+	 */
+	private void addBuiltInConverters() {
+		addConverter(SPObject.class, spObjectConverter);
+		addConverter(String.class, new IdentityConverter<String>(String.class));
+		addConverter(Integer.class, new IdentityConverter<Integer>(Integer.class));
+		addConverter(Double.class, new IdentityConverter<Double>(Double.class));
+		addConverter(Boolean.class, new IdentityConverter<Boolean>(Boolean.class));
+		addConverter(Long.class, new IdentityConverter<Long>(Long.class));
+		addConverter(Short.class, new IdentityConverter<Short>(Short.class));
+		addConverter(Float.class, new IdentityConverter<Float>(Float.class));
+		addConverter(Character.class, new BidirectionalConverter<String, Character>() {
+			public Character convertToComplexType(String convertFrom) {
+				return convertFrom.charAt(0);
+			}
+			public String convertToSimpleType(Character convertFrom, Object... additionalInfo) {
+				return new String(new char[]{convertFrom.charValue()});
+			}
+		});
+		addConverter(BigDecimal.class, new BidirectionalConverter<String, BigDecimal>() {
+			public BigDecimal convertToComplexType(String convertFrom) {
+				return new BigDecimal(convertFrom);
+			}
+			public String convertToSimpleType(BigDecimal convertFrom, Object... additionalInfo) {
+				return convertFrom.toPlainString();
+			}
+		});
+		addConverter(BigInteger.class, new BidirectionalConverter<String, BigInteger>() {
+			public BigInteger convertToComplexType(String convertFrom) {
+				return new BigInteger(convertFrom);
+			}
+			public String convertToSimpleType(BigInteger convertFrom, Object... additionalInfo) {
+				return convertFrom.toString();
+			}
+		});
+		addConverter(Timestamp.class, new BidirectionalConverter<String, Timestamp>() {
+			public Timestamp convertToComplexType(String convertFrom) {
+				return Timestamp.valueOf(convertFrom);
+			}
+			public String convertToSimpleType(Timestamp convertFrom, Object... additionalInfo) {
+				return convertFrom.toString();
+			}
+		});
+		addConverter(Time.class, new BidirectionalConverter<String, Time>() {
+			public Time convertToComplexType(String convertFrom) {
+				return Time.valueOf(convertFrom);
+			}
+			public String convertToSimpleType(Time convertFrom, Object... additionalInfo) {
+				return convertFrom.toString();
+			}
+		});
+		addConverter(Date.class, new BidirectionalConverter<String, Date>() {
+			public Date convertToComplexType(String convertFrom) {
+				return Date.valueOf(convertFrom);
+			}
+			public String convertToSimpleType(Date convertFrom, Object... additionalInfo) {
+				return convertFrom.toString();
+			}
+		});
+		converters.add(new RegisteredConverter(Enum.class, null) {
+			@SuppressWarnings("unchecked")
+			@Override
+			BidirectionalConverter<Object, Object> getConverterFor(Class<?> c) {
+				// Enum constants with a body are anonymous subclasses of their enum.
+				if (c.isAnonymousClass() && Enum.class.isAssignableFrom(c.getSuperclass())) {
+					c = c.getSuperclass();
+				}
+				return (BidirectionalConverter<Object, Object>) (BidirectionalConverter<?, ?>) new EnumConverter(c);
+			}
+		});
+		addConverter(JDBCDataSource.class, new BidirectionalConverter<String, JDBCDataSource>() {
+			public JDBCDataSource convertToComplexType(String convertFrom) {
+				if (convertFrom.equals("PlayPen Database")) {
+					return new JDBCDataSource(dsCollection);
+				} else {
+					return dsCollection.getDataSource(convertFrom, JDBCDataSource.class);
+				}
+			}
+			public String convertToSimpleType(JDBCDataSource convertFrom, Object... additionalInfo) {
+				return convertFrom.getName();
+			}
+		});
+		addConverter(Format.class, new FormatConverter());
+		final Point2DConverter point2DConverter = new Point2DConverter();
+		addConverter(Point.class, new BidirectionalConverter<String, Point>() {
+			public Point convertToComplexType(String convertFrom) {
+				Point2D p2d = point2DConverter.convertToComplexType(convertFrom);
+				return new Point((int) p2d.getX(), (int) p2d.getY());
+			}
+			public String convertToSimpleType(Point convertFrom, Object... additionalInfo) {
+				return point2DConverter.convertToSimpleType(convertFrom);
+			}
+		});
+		addConverter(Point2D.class, point2DConverter);
+		addConverter(Rectangle.class, new RectangleConverter());
+		addConverter(Dimension.class, new DimensionConverter());
+		addConverter(Color.class, new ColorConverter());
+		addConverter(Class.class, new ClassConverter());
+		addConverter(java.util.Date.class, new DateConverter());
+		addConverter(File.class, new FileConverter());
+		addConverter(String[].class, new StringArrayConverter());
+		addConverter(Exception.class, new BidirectionalConverter<String, Exception>() {
+			public Exception convertToComplexType(String convertFrom) {
+				return new Exception(convertFrom);
+			}
+			public String convertToSimpleType(Exception convertFrom, Object... additionalInfo) {
+				String exceptionString = SQLPowerUtils.exceptionStackToString(convertFrom);
+				//This exception name will be placed back on when the string is converted back to an object.
+				return exceptionString.replace(Exception.class.getName() + ": ", "");
+			}
+		});
+		addConverter(List.class, new ListConverter());
+		addConverter(Locale.class, new LocaleConverter());
+		addConverter(QName.class, new QNameConverter());
+		addConverter(URI.class, new URIConverter());
+	}
+	
+	private void addConverter(Class<?> type, BidirectionalConverter<?, ?> converter) {
+		converters.add(new RegisteredConverter(type, converter));
+	}
+
+	/**
+	 * Registers a converter for the given type and its subclasses. Registered
+	 * converters are checked in the order they were registered and before the
+	 * built in converters, so they can also replace how a built in type is
+	 * converted. Registering a second converter for the same type replaces
+	 * the first one. Converters should be registered before this converter is
+	 * in use by persisters on other threads.
+	 * 
+	 * @param type
+	 *            The class of the complex objects the converter converts.
+	 * @param converter
+	 *            The converter to use for the type. The simple type it
+	 *            converts to must be one the persisters can pass along.
+	 */
+	public synchronized <C> void registerConverter(Class<C> type, BidirectionalConverter<?, ? super C> converter) {
+		RegisteredConverter registered = new RegisteredConverter(type, converter);
+		boolean replaced = false;
+		for (int i = 0; i < registeredCount; i++) {
+			if (converters.get(i).type.equals(type)) {
+				converters.set(i, registered);
+				replaced = true;
+				break;
+			}
+		}
+		if (!replaced) {
+			converters.add(registeredCount, registered);
+			registeredCount++;
+		}
+		convertersByClass.clear();
+	}
+
+	/**
+	 * Returns the converter for objects of the given class, or null if there
+	 * is no converter for it.
+	 */
+	private BidirectionalConverter<Object, Object> getConverter(Class<?> c) {
+		BidirectionalConverter<Object, Object> converter = convertersByClass.get(c);
+		if (converter == null) {
+			for (RegisteredConverter registered : converters) {
+				if (registered.type.isAssignableFrom(c)) {
+					converter = registered.getConverterFor(c);
+					convertersByClass.put(c, converter);
+					break;
+				}
+			}
+		}
+		return converter;
 	}
 
 	/**
@@ -119,108 +342,13 @@ public class SessionPersisterSuperConverter {
 	 * @returns The basic type representation of the given object.
 	 */
 	public Object convertToBasicType(Object convertFrom, Object ... additionalInfo) {
-		if (convertFrom == null) {
-			return null;
-		} else if (convertFrom instanceof SPObject) {
-			SPObject spo = (SPObject) convertFrom;
-			return spObjectConverter.convertToSimpleType(spo);
-			
-		} else if (convertFrom instanceof String) {
-			return convertFrom;
-			
-		} else if (convertFrom instanceof Integer) {
-			return convertFrom;
-			
-		} else if (convertFrom instanceof Double) {
-			return convertFrom;
-			
-		} else if (convertFrom instanceof Boolean) {
-			return convertFrom;
-			
-		} else if (convertFrom instanceof Long) {
-			return convertFrom;
-			
-		} else if (convertFrom instanceof Short) {
-			return convertFrom;
-			
-		} else if (convertFrom instanceof Float) {
-			return convertFrom;
-			
-		} else if (convertFrom instanceof BigDecimal) {
-		    return ((BigDecimal) convertFrom).toPlainString();
-		    
-		} else if (convertFrom instanceof BigInteger) {
-		    return ((BigInteger) convertFrom).toString();
-		    
-		} else if (convertFrom instanceof Timestamp) {
-		    return ((Timestamp) convertFrom).toString();
-		    
-		} else if (convertFrom instanceof Time) {
-		    return ((Time) convertFrom).toString();
-		    
-		} else if (convertFrom instanceof Date) {
-		    return ((Date) convertFrom).toString();
-		    
-		} else if (convertFrom instanceof Character) {
-		    Character c = (Character) convertFrom;
-		    String s = new String(new char[]{c.charValue()});
-		    return s;
-			
-		} else if (convertFrom.getClass().isEnum() || (convertFrom.getClass().isAnonymousClass() && convertFrom.getClass().getSuperclass().isEnum())) {
-			return new EnumConverter(convertFrom.getClass()).convertToSimpleType((Enum) convertFrom);
-			
-		} else if (convertFrom instanceof JDBCDataSource) {
-			return ((JDBCDataSource) convertFrom).getName();
-		
-		} else if (convertFrom instanceof Format) {
-			return formatConverter.convertToSimpleType((Format) convertFrom);
-			
-		} else if (convertFrom instanceof Point2D) {
-		    Point2D p = (Point2D) convertFrom;
-		    return point2DConverter.convertToSimpleType(p);
-
-        } else if (convertFrom instanceof Rectangle) {
-            Rectangle r = (Rectangle) convertFrom;
-            return rectangleConverter.convertToSimpleType(r);
-
-        } else if (convertFrom instanceof Dimension) {
-            Dimension d = (Dimension) convertFrom;
-            return dimensionConverter.convertToSimpleType(d);
-
-		} else if (convertFrom instanceof Color) {
-		    Color c = (Color) convertFrom;
-		    return colorConverter.convertToSimpleType(c);
-		} else if (convertFrom instanceof Class<?>) {
-		    Class<?> c = (Class<?>) convertFrom;
-		    return classConverter.convertToSimpleType(c);
-		    
-		} else if (convertFrom instanceof java.util.Date) {
-			java.util.Date d = (java.util.Date) convertFrom;
-		    return dateConverter.convertToSimpleType(d);
-		} else if (convertFrom instanceof File) {
-			File file = (File) convertFrom;
-			return fileConverter.convertToSimpleType(file);
-		} else if (convertFrom instanceof String[]) {
-			String[] array = (String[]) convertFrom;
-			return stringArrayConverter.convertToSimpleType(array);
-		} else if (convertFrom instanceof Exception) {
-	        String exceptionString = SQLPowerUtils.exceptionStackToString((Exception) convertFrom);
-	        //This exception name will be placed back on when the string is converted back to an object.
-	        exceptionString = exceptionString.replace(Exception.class.getName() + ": ", "");
-		    return exceptionString;
-		} else if (convertFrom instanceof List<?>) {
-			return listConverter.convertToSimpleType((List<Object>)convertFrom);
-		} else if (convertFrom instanceof Locale) {
-			return localeConverter.convertToSimpleType((Locale) convertFrom);
-		} else if (convertFrom instanceof QName) {
-			return qnameConverter.convertToSimpleType((QName) convertFrom);
-		} else if (convertFrom instanceof URI) {
-			return uriConverter.convertToSimpleType((URI) convertFrom);
-		} else {
+		if (convertFrom == null) return null;
+		BidirectionalConverter<Object, Object> converter = getConverter(convertFrom.getClass());
+		if (converter == null) {
 		    throw new IllegalArgumentException("Cannot convert " + convertFrom + " of type " + 
 		            convertFrom.getClass());
 		}
-		
+		return converter.convertToSimpleType(convertFrom, additionalInfo);
 	}
 
 	/**
@@ -235,105 +363,13 @@ public class SessionPersisterSuperConverter {
 	 * @return The complex type representation of the given object.
 	 */
 	public Object convertToComplexType(Object o, Class<? extends Object> type) {
-		if (o == null) {
-			return null;
-			
-		} else if (SPObject.class.isAssignableFrom(type)) {
-			return spObjectConverter.convertToComplexType((String) o);
-			
-		} else if (String.class.isAssignableFrom(type)) {
-			return (String) o;
-			
-		} else if (Integer.class.isAssignableFrom(type)) {
-			return (Integer) o;
-			
-		} else if (Double.class.isAssignableFrom(type)) {
-			return (Double) o;
-			
-		} else if (Boolean.class.isAssignableFrom(type)) {
-			return (Boolean) o;
-			
-		} else if (Long.class.isAssignableFrom(type)) {
-			return (Long) o;
-			
-		} else if (Short.class.isAssignableFrom(type)) {
-			return (Short) o;
-			
-		} else if (Float.class.isAssignableFrom(type)) {
-			return (Float) o;
-			
-		} else if (Character.class.isAssignableFrom(type)) {
-			return ((String) o).charAt(0);
-			
-		} else if (BigDecimal.class.isAssignableFrom(type)) {
-		    return new BigDecimal((String) o);
-		    
-		} else if (BigInteger.class.isAssignableFrom(type)) {
-		    return new BigInteger((String) o);
-		    
-		} else if (Timestamp.class.isAssignableFrom(type)) {
-		    return Timestamp.valueOf((String) o);
-		    
-		} else if (Time.class.isAssignableFrom(type)) {
-		    return Time.valueOf((String) o);
-		    
-		} else if (Date.class.isAssignableFrom(type)) {
-		    return Date.valueOf((String) o);
-			
-		} else if (Enum.class.isAssignableFrom(type)) {
-			if (type.isAnonymousClass() && Enum.class.isAssignableFrom(type.getSuperclass())) {
-				return new EnumConverter(type.getSuperclass()).convertToComplexType((String) o);
-			} else {
-				return new EnumConverter(type).convertToComplexType((String) o);
-			}
-			
-		} else if (JDBCDataSource.class.isAssignableFrom(type)) {
-			if (((String) o).equals("PlayPen Database")) {
-				return new JDBCDataSource(dsCollection);
-			} else {
-				return dsCollection.getDataSource((String) o, JDBCDataSource.class);
-			}
-		} else if (Format.class.isAssignableFrom(type)) {
-			return formatConverter.convertToComplexType((String) o);
-			
-		} else if (Point.class.isAssignableFrom(type)) {
-		    Point2D p2d = point2DConverter.convertToComplexType((String) o);
-		    return new Point((int) p2d.getX(), (int) p2d.getY());
-
-        } else if (Point2D.class.isAssignableFrom(type)) {
-            return point2DConverter.convertToComplexType((String) o);
-
-        } else if (Rectangle.class.isAssignableFrom(type)) {
-            return rectangleConverter.convertToComplexType((String) o);
-
-        } else if (Color.class.isAssignableFrom(type)) {
-            return colorConverter.convertToComplexType((String) o);
-        } else if (Class.class.isAssignableFrom(type)) {
-            return classConverter.convertToComplexType((String) o);
-            
-        } else if (java.util.Date.class.isAssignableFrom(type)) {
-            return dateConverter.convertToComplexType((String) o);
-        } else if (File.class.isAssignableFrom(type)) {
-        	return fileConverter.convertToComplexType((String) o);
-            
-        } else if (Dimension.class.isAssignableFrom(type)) {
-            return dimensionConverter.convertToComplexType((String) o);
-        } else if (String[].class.isAssignableFrom(type)) {
-        	return stringArrayConverter.convertToComplexType((String) o);
-        } else if (Exception.class.isAssignableFrom(type)) {
-            return new Exception((String) o);
-        } else if (List.class.isAssignableFrom(type)) {
-        	return listConverter.convertToComplexType((String) o);
-        } else if (Locale.class.isAssignableFrom(type)) {
-        	return localeConverter.convertToComplexType((String) o);
-        } else if (QName.class.isAssignableFrom(type)) {
-        	return qnameConverter.convertToComplexType((String) o);
-		} else if (URI.class.isAssignableFrom(type)) {
-			return uriConverter.convertToComplexType((String) o);
-		} else {
+		if (o == null) return null;
+		BidirectionalConverter<Object, Object> converter = getConverter(type);
+		if (converter == null) {
 			throw new IllegalArgumentException("Cannot convert " + o + " of type " + 
 					o.getClass() + " to the type " + type);
 		}
+		return converter.convertToComplexType(o);
 	}
 
 	public void setUUIDCache(Map<String, SPObject> lookupCache) {
@@ -20,16 +20,21 @@
 package ca.sqlpower.enterprise;
 
 import java.net.URI;
+import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.http.client.HttpClient;
@@ -43,15 +48,21 @@ import org.json.JSONObject;
 import org.json.JSONTokener;
 import org.springframework.security.AccessDeniedException;
 
+import ca.sqlpower.dao.PersistedObjectEntry;
+import ca.sqlpower.dao.PersistedPropertiesEntry;
 import ca.sqlpower.dao.PersistedSPOProperty;
 import ca.sqlpower.dao.PersistedSPObject;
 import ca.sqlpower.dao.RemovedObjectEntry;
 import ca.sqlpower.dao.SPPersistenceException;
+import ca.sqlpower.dao.SPSessionPersister;
 import ca.sqlpower.dao.SPPersister.DataType;
+import ca.sqlpower.dao.SPPersister.SPPersistMethod;
 import ca.sqlpower.dao.SPPersisterListener;
 import ca.sqlpower.dao.json.SPJSONMessageDecoder;
 import ca.sqlpower.dao.session.SessionPersisterSuperConverter;
 import ca.sqlpower.enterprise.client.ProjectLocation;
+import ca.sqlpower.http.HttpUtils;
+import ca.sqlpower.http.JSONArrayEntity;
 import ca.sqlpower.object.SPObject;
 import ca.sqlpower.sqlobject.SQLObject;
 import ca.sqlpower.util.RunnableDispatcher;
@@ -133,6 +144,128 @@ public abstract class AbstractNetworkConflictResolver extends Thread {
 	    
 	}
 
+	/**
+	 * A local transaction that has been committed and is waiting to be sent to
+	 * the server with the transactions committed shortly after it. It keeps
+	 * what the transaction changed so it can be rolled back on its own if the
+	 * server rejects the transactions it was sent with.
+	 */
+	protected static class OutboundTransaction {
+
+	    private final JSONArray persistCalls;
+	    private final List<PersistedSPObject> persistedObjects;
+	    private final List<PersistedSPOProperty> persistedProperties;
+	    private final LinkedHashMap<String, RemovedObjectEntry> objectsToRemove;
+
+	    /**
+	     * @param persistCalls
+	     *            The persist calls of the transaction.
+	     * @param listener
+	     *            The listener that made the persist calls. It must not have
+	     *            cleared the transaction yet. If null, only the persist
+	     *            calls are kept.
+	     */
+	    public OutboundTransaction(JSONArray persistCalls, SPPersisterListener listener) {
+	        this.persistCalls = persistCalls;
+	        if (listener != null) {
+	            persistedObjects = listener.getPersistedObjects();
+	            persistedProperties = listener.getPersistedProperties();
+	            objectsToRemove = new LinkedHashMap<String, RemovedObjectEntry>(listener.getObjectsToRemove());
+	        } else {
+	            persistedObjects = Collections.emptyList();
+	            persistedProperties = Collections.emptyList();
+	            objectsToRemove = new LinkedHashMap<String, RemovedObjectEntry>();
+	        }
+	    }
+
+	    public JSONArray getPersistCalls() {
+	        return persistCalls;
+	    }
+
+	    public List<PersistedSPObject> getPersistedObjects() {
+	        return persistedObjects;
+	    }
+
+	    public List<PersistedSPOProperty> getPersistedProperties() {
+	        return persistedProperties;
+	    }
+
+	    public LinkedHashMap<String, RemovedObjectEntry> getObjectsToRemove() {
+	        return objectsToRemove;
+	    }
+	}
+
+	/**
+	 * Finds objects in the workspace by UUID for the duration of one pass over
+	 * the inbound and outbound lists. The workspace is indexed the first time
+	 * an object is looked up, in the same preorder that
+	 * {@link SQLPowerUtils#findByUuid(SPObject, String, Class)} searches it,
+	 * so the object found for a UUID is the same. The workspace must not
+	 * change while the index is in use.
+	 */
+	private class WorkspaceIndex {
+
+	    private Map<String, SPObject> objects;
+
+	    /**
+	     * The position of each child of a parent in the parent's list of
+	     * children, indexed the first time a child of the parent is looked up.
+	     */
+	    private final Map<SPObject, Map<SPObject, Integer>> childPositions = 
+	        new HashMap<SPObject, Map<SPObject, Integer>>();
+
+	    /**
+	     * Returns the object with the given UUID in the workspace, or null if
+	     * there is no such object.
+	     */
+	    public SPObject find(String uuid) {
+	        if (objects == null) {
+	            SPObject workspace = getWorkspace();
+	            if (workspace == null) {
+	                throw new IllegalArgumentException("Cannot search a null object for children with the uuid " + uuid);
+	            }
+	            objects = new HashMap<String, SPObject>();
+	            index(workspace);
+	        }
+	        return objects.get(uuid);
+	    }
+
+	    private void index(SPObject o) {
+	        if (!objects.containsKey(o.getUUID())) {
+	            objects.put(o.getUUID(), o);
+	        }
+	        List<? extends SPObject> children;
+	        if (o instanceof SQLObject) {
+	            children = ((SQLObject) o).getChildrenWithoutPopulating();
+	        } else {
+	            children = o.getChildren();
+	        }
+	        for (SPObject child : children) {
+	            index(child);
+	        }
+	    }
+
+	    /**
+	     * Returns the position of the given object in its parent's children,
+	     * the same as indexOf on the parent's children.
+	     */
+	    public int indexOf(SPObject child) {
+	        SPObject parent = child.getParent();
+	        Map<SPObject, Integer> positions = childPositions.get(parent);
+	        if (positions == null) {
+	            positions = new HashMap<SPObject, Integer>();
+	            List<? extends SPObject> children = parent.getChildren();
+	            for (int i = 0; i < children.size(); i++) {
+	                if (!positions.containsKey(children.get(i))) {
+	                    positions.put(children.get(i), i);
+	                }
+	            }
+	            childPositions.put(parent, positions);
+	        }
+	        Integer position = positions.get(child);
+	        return position == null ? -1 : position;
+	    }
+	}
     
     /**
      * Defines conflict cases as well as messages for each.
@@ -241,8 +374,37 @@ public abstract class AbstractNetworkConflictResolver extends Thread {
     protected int currentRevision = 0;
     protected long serverTimestamp = 0;
     
+    /**
+     * The time in milliseconds to wait before asking the server for updates
+     * again after the first failure. The wait doubles with each failure that
+     * follows, up to the {@link #maxRetryDelay}, and returns to this delay
+     * once an update succeeds.
+     */
     protected long retryDelay = 1000;
 
+    /**
+     * The longest time in milliseconds to wait between failed requests for
+     * updates.
+     */
+    protected long maxRetryDelay = 30000;
+
+    /**
+     * The number of requests for updates that have failed since the last one
+     * that succeeded.
+     */
+    private int consecutiveFailures = 0;
+
+    /**
+     * The time in milliseconds between the server creating the last revision
+     * applied and the revision being applied here, or -1 if no revision with
+     * a creation time has been applied yet.
+     */
+    private volatile long lastUpdateLatency = -1;
+
+    private long totalUpdateLatency = 0;
+
+    private int latencySamples = 0;
+
     /**
      * This double will store and be updated with the average wait time for each
      * persist calls so the progress of the progress bar is on average correct.
@@ -262,6 +424,51 @@ public abstract class AbstractNetworkConflictResolver extends Thread {
     protected volatile boolean cancelled;
 
     protected JSONArray messageBuffer = new JSONArray();
+
+    /**
+     * If true, transactions posted to the server will be gzip compressed.
+     */
+    private boolean compressingRequests = false;
+
+    /**
+     * The time in milliseconds {@link #flush()} waits for more local
+     * transactions before sending the transactions it queued to the server in
+     * one request. If 0, each transaction is sent when it is flushed.
+     */
+    private long commitDelay = 0;
+
+    /**
+     * The longest time in milliseconds a queued transaction waits for more
+     * transactions before it is sent.
+     */
+    private long maxCommitDelay = 2000;
+
+    /**
+     * Local transactions that have been flushed but not yet sent to the
+     * server, in the order they were committed. This is only used on the
+     * foreground thread.
+     */
+    private final List<OutboundTransaction> outboundQueue = new ArrayList<OutboundTransaction>();
+
+    /**
+     * The time in milliseconds the first transaction in the
+     * {@link #outboundQueue} was queued.
+     */
+    private long firstQueuedTime;
+
+    /**
+     * The queued transactions the current call to {@link #flush(boolean)} is
+     * sending. This is empty when transactions are sent one at a time.
+     */
+    private List<OutboundTransaction> sendingTransactions = Collections.emptyList();
+
+    /**
+     * Sends the queued transactions after the commit delay. This is created
+     * the first time a transaction is queued.
+     */
+    private Timer commitTimer;
+
+    private TimerTask commitTask;
     
     protected HashMap<String, PersistedSPObject> inboundObjectsToAdd = new HashMap<String, PersistedSPObject>();
     protected Multimap<String, PersistedSPOProperty> inboundPropertiesToChange = LinkedListMultimap.create();
@@ -300,6 +507,47 @@ public abstract class AbstractNetworkConflictResolver extends Thread {
     public long getServerTimestamp() {
     	return serverTimestamp;
     }
+
+    /**
+     * Returns the time in milliseconds from the server creating the last
+     * revision to the revision being applied to the local workspace, or -1 if
+     * the server has not sent when its revisions were created. This is
+     * measured across the server's and the client's clocks so it is only as
+     * accurate as the clocks are synchronized.
+     */
+    public long getLastUpdateLatency() {
+        return lastUpdateLatency;
+    }
+
+    /**
+     * Returns the mean of the update latencies of all of the revisions applied
+     * so far, or -1 if none have been measured.
+     * 
+     * @see #getLastUpdateLatency()
+     */
+    public synchronized double getAverageUpdateLatency() {
+        if (latencySamples == 0) return -1;
+        return (double) totalUpdateLatency / latencySamples;
+    }
+
+    private synchronized void recordUpdateLatency(long revisionTimestamp) {
+        long latency = Math.max(0, System.currentTimeMillis() - revisionTimestamp);
+        lastUpdateLatency = latency;
+        totalUpdateLatency += latency;
+        latencySamples++;
+    }
+
+    /**
+     * Returns the time in milliseconds to wait before the next request for
+     * updates given the number of requests that have failed in a row.
+     */
+    protected long getRetryDelay(int failures) {
+        long delay = retryDelay;
+        for (int i = 1; i < failures && delay < maxRetryDelay; i++) {
+            delay *= 2;
+        }
+        return Math.min(delay, maxRetryDelay);
+    }
     
     public void addListener(UpdateListener listener) {
         updateListeners.add(listener);
@@ -356,8 +604,228 @@ public abstract class AbstractNetworkConflictResolver extends Thread {
         return updateListeners;
     }
     
+    /**
+     * Sends the transaction in the message buffer to the server. If there is a
+     * {@link #setCommitDelay(long) commit delay} the transaction is queued
+     * instead, and sent with the transactions that follow it within the delay.
+     */
     public void flush() {
-        flush(false);
+        if (commitDelay <= 0 && outboundQueue.isEmpty()) {
+            flush(false);
+        } else {
+            queueTransaction();
+        }
+    }
+
+    /**
+     * Moves the transaction in the message buffer to the outbound queue and
+     * restarts the wait for more transactions.
+     */
+    private void queueTransaction() {
+        outboundQueue.add(new OutboundTransaction(messageBuffer, listener));
+        messageBuffer = new JSONArray();
+        long now = System.currentTimeMillis();
+        if (outboundQueue.size() == 1) {
+            firstQueuedTime = now;
+        }
+        long delay = Math.min(commitDelay, firstQueuedTime + maxCommitDelay - now);
+        if (delay <= 0 || cancelled) {
+            flushOutboundQueue(true);
+        } else {
+            scheduleCommit(delay);
+        }
+    }
+
+    private void scheduleCommit(long delay) {
+        if (commitTask != null) {
+            commitTask.cancel();
+        }
+        if (commitTimer == null) {
+            commitTimer = new Timer("commit-" + projectLocation.getUUID(), true);
+        }
+        commitTask = new TimerTask() {
+            @Override
+            public void run() {
+                runnable.runInForeground(new Runnable() {
+                    public void run() {
+                        sendQueuedTransactions();
+                    }
+                });
+            }
+        };
+        commitTimer.schedule(commitTask, delay);
+    }
+
+    /**
+     * Sends the queued transactions with {@link #flushOutboundQueue()} when
+     * nothing is waiting on the result, as when the commit delay runs out. If
+     * the server rejects them they have been rolled back, so the update
+     * listeners and the user are told the changes were undone.
+     */
+    private void sendQueuedTransactions() {
+        try {
+            flushOutboundQueue();
+        } catch (RuntimeException e) {
+            logger.error("The server rejected the queued transactions, they have been rolled back.", e);
+            List<UpdateListener> listenersToRemove = new ArrayList<UpdateListener>();
+            for (UpdateListener listener : updateListeners) {
+                if (listener.updateException(this, e)) {
+                    listenersToRemove.add(listener);
+                }
+            }
+            updateListeners.removeAll(listenersToRemove);
+            if (upf != null) {
+                upf.createUserPrompter(
+                        "The server did not accept your recent changes and they have been undone. " +
+                        "They may conflict with changes made by another user.", 
+                        UserPromptType.MESSAGE, 
+                        UserPromptOptions.OK, 
+                        UserPromptResponse.OK, 
+                        "OK", "OK").promptUser("");
+            }
+        }
+    }
+
+    /**
+     * Sends the transactions in the outbound queue to the server now, as one
+     * transaction, through {@link #flush(boolean)}. While it is sending them
+     * {@link #getSendingTransactions()} returns the original transactions. If
+     * {@link #flush(boolean)} throws an exception because the server rejected
+     * them, the transactions are rolled back before the exception is passed on.
+     * This must be called on the foreground thread.
+     */
+    public void flushOutboundQueue() {
+        flushOutboundQueue(false);
+    }
+
+    /**
+     * @param committing
+     *            True if the listener is committing the last queued
+     *            transaction. The listener then has nothing left to roll back
+     *            if the transactions are rejected, as they are all rolled back
+     *            here, the last one first.
+     */
+    private void flushOutboundQueue(boolean committing) {
+        if (commitTask != null) {
+            commitTask.cancel();
+            commitTask = null;
+        }
+        if (outboundQueue.isEmpty()) return;
+        if (postingJSON.get()) {
+            // Already sending, try again once the current request is done.
+            if (!cancelled) {
+                scheduleCommit(Math.max(commitDelay, 1));
+            }
+            return;
+        }
+        
+        JSONArray batch = new JSONArray();
+        try {
+            if (outboundQueue.size() > 1) {
+                batch.put(createTransactionCall(SPPersistMethod.begin));
+            }
+            for (OutboundTransaction transaction : outboundQueue) {
+                JSONArray calls = transaction.getPersistCalls();
+                for (int i = 0; i < calls.length(); i++) {
+                    batch.put(calls.get(i));
+                }
+            }
+            if (outboundQueue.size() > 1) {
+                batch.put(createTransactionCall(SPPersistMethod.commit));
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to combine the queued transactions.", e);
+        }
+        
+        sendingTransactions = new ArrayList<OutboundTransaction>(outboundQueue);
+        outboundQueue.clear();
+        messageBuffer = batch;
+        try {
+            flush(false);
+        } catch (RuntimeException e) {
+            try {
+                rollbackSendingTransactions();
+                if (committing && listener != null) {
+                    listener.clear();
+                }
+            } catch (SPPersistenceException ex) {
+                logger.error("Failed to roll back the rejected transactions.", ex);
+            }
+            throw e;
+        } finally {
+            sendingTransactions = Collections.emptyList();
+        }
+    }
+
+    private static JSONObject createTransactionCall(SPPersistMethod method) throws Exception {
+        JSONObject call = new JSONObject();
+        call.put("method", method);
+        call.put("uuid", JSONObject.NULL);
+        return call;
+    }
+
+    /**
+     * Returns the original transactions that the current call to
+     * {@link #flush(boolean)} is sending together, in the order they were
+     * committed. The list is empty if a single transaction is being sent
+     * without being queued.
+     */
+    protected List<OutboundTransaction> getSendingTransactions() {
+        return Collections.unmodifiableList(sendingTransactions);
+    }
+
+    /**
+     * Undoes the changes of the transactions being sent to the server, the
+     * last transaction first, for when the server rejects them. Each
+     * transaction is undone with the changes that were recorded for it, through
+     * the listener if there is one so the undo is not sent to the server.
+     */
+    protected void rollbackSendingTransactions() throws SPPersistenceException {
+        for (int i = sendingTransactions.size() - 1; i >= 0; i--) {
+            OutboundTransaction transaction = sendingTransactions.get(i);
+            List<PersistedObjectEntry> creations = new ArrayList<PersistedObjectEntry>();
+            for (PersistedSPObject o : transaction.getPersistedObjects()) {
+                creations.add(new PersistedObjectEntry(o.getParentUUID(), o.getUUID()));
+            }
+            List<PersistedPropertiesEntry> properties = new ArrayList<PersistedPropertiesEntry>();
+            for (PersistedSPOProperty p : transaction.getPersistedProperties()) {
+                properties.add(new PersistedPropertiesEntry(
+                        p.getUUID(), p.getPropertyName(), p.getDataType(), p.getOldValue()));
+            }
+            LinkedHashMap<String, RemovedObjectEntry> removals = 
+                new LinkedHashMap<String, RemovedObjectEntry>(transaction.getObjectsToRemove());
+            if (listener != null) {
+                listener.undo(getWorkspace(), creations, properties, removals);
+            } else {
+                SPSessionPersister.undoForSession(getWorkspace(), creations, properties, removals, converter);
+            }
+        }
+    }
+
+    /**
+     * Sets the time in milliseconds {@link #flush()} waits for more local
+     * transactions before sending them all to the server in one request. A
+     * burst of small edits then costs one round trip instead of one per edit.
+     * If 0, the default, each transaction is sent as soon as it is flushed.
+     */
+    public void setCommitDelay(long commitDelay) {
+        this.commitDelay = commitDelay;
+    }
+
+    public long getCommitDelay() {
+        return commitDelay;
+    }
+
+    /**
+     * Sets the longest time in milliseconds a transaction waits in the
+     * outbound queue while more transactions keep arriving.
+     */
+    public void setMaxCommitDelay(long maxCommitDelay) {
+        this.maxCommitDelay = maxCommitDelay;
+    }
+
+    public long getMaxCommitDelay() {
+        return maxCommitDelay;
     }
 
     /**
@@ -370,6 +838,28 @@ public abstract class AbstractNetworkConflictResolver extends Thread {
      * @throws SPPersistenceException
      */
     protected void decodeMessage(JSONTokener tokener, int newRevision, long timestamp) {
+        decodeMessage(tokener, null, newRevision, timestamp);
+    }
+
+    /**
+     * Applies the persist calls of a revision that has already been parsed.
+     * 
+     * @param persistCalls
+     *            The persist calls of the revisions since the current
+     *            revision.
+     * @param newRevision
+     *            The new revision number.
+     * @see #decodeMessage(JSONTokener, int, long)
+     */
+    protected void decodeMessage(JSONArray persistCalls, int newRevision, long timestamp) {
+        decodeMessage(null, persistCalls, newRevision, timestamp);
+    }
+
+    /**
+     * Applies the persist calls from either the tokener or the array,
+     * whichever is not null.
+     */
+    private void decodeMessage(JSONTokener tokener, JSONArray persistCalls, int newRevision, long timestamp) {
         try {
             if (currentRevision < newRevision) {
                 List<UpdateListener> updateListenersCopy = new ArrayList<UpdateListener>(updateListeners);
@@ -377,7 +867,11 @@ public abstract class AbstractNetworkConflictResolver extends Thread {
                     listener.preUpdatePerformed(AbstractNetworkConflictResolver.this);
                 }
                 // Now we can apply the update ...
-                jsonDecoder.decode(tokener);
+                if (tokener != null) {
+                    jsonDecoder.decode(tokener);
+                } else {
+                    jsonDecoder.decode(persistCalls);
+                }
                 currentRevision = newRevision;
                 serverTimestamp = timestamp;
                 
@@ -397,6 +891,19 @@ public abstract class AbstractNetworkConflictResolver extends Thread {
     }
     
     protected void fillOutboundPersistedLists() {
+        List<OutboundTransaction> transactions = new ArrayList<OutboundTransaction>(sendingTransactions);
+        transactions.addAll(outboundQueue);
+        for (OutboundTransaction transaction : transactions) {
+            for (PersistedSPObject obj : transaction.getPersistedObjects()) {
+                outboundObjectsToAdd.put(obj.getUUID(), obj);
+            }
+            for (PersistedSPOProperty prop : transaction.getPersistedProperties()) {
+                outboundPropertiesToChange.put(prop.getUUID(), prop);
+            }
+            for (RemovedObjectEntry rem : transaction.getObjectsToRemove().values()) {
+                outboundObjectsToRemove.put(rem.getRemovedChild().getUUID(), rem);
+            }
+        }
         for (PersistedSPObject obj : listener.getPersistedObjects()) {
             outboundObjectsToAdd.put(obj.getUUID(), obj);
         }
@@ -411,12 +918,22 @@ public abstract class AbstractNetworkConflictResolver extends Thread {
     public void interrupt() {
         super.interrupt();
         cancelled = true;
+        if (commitTimer != null) {
+            commitTimer.cancel();
+            // Send whatever is still queued instead of dropping it.
+            runnable.runInForeground(new Runnable() {
+                public void run() {
+                    sendQueuedTransactions();
+                }
+            });
+        }
     }
     
     @Override
     public void run() {
         try {
             while (!this.isInterrupted() && !cancelled) {
+               boolean dispatched = false;
                try { 
                    
                    while (updating) { // this should wait for persisting to server as well.
@@ -426,7 +943,7 @@ public abstract class AbstractNetworkConflictResolver extends Thread {
                    }                   
                    updating = true;                   
                    // Request an update from the server using the current revision number.                   
-                   JSONMessage message = getJsonArray(inboundHttpClient);
+                   final RevisionUpdate message = getRevisionUpdate(inboundHttpClient);
                    
                    // Status 410 (Gone) means the workspace was deleted                   
                    if (message.getStatusCode() == 410) {
@@ -464,16 +981,30 @@ public abstract class AbstractNetworkConflictResolver extends Thread {
                    // The updater may have been interrupted/closed/deleted while waiting for an update.
                    if (this.isInterrupted() || cancelled) break;
                    
-                   JSONObject json = new JSONObject(message.getBody());
-                   final JSONTokener tokener = new JSONTokener(json.getString("data"));
-                   final int jsonRevision = json.getInt("currentRevision");
-                   final long jsonTimestamp = json.getLong("serverTimestamp");
+                   if (!message.isUpdate()) {
+                       throw new RuntimeException("Unexpected response from server: " + message);
+                   }
+                   consecutiveFailures = 0;
                    
+                   dispatched = true;
                    runnable.runInForeground(new Runnable() {
                        public void run() {
                            try {
+                               if (!postingJSON.get() && !outboundQueue.isEmpty()) {
+                                   // The revision may change what the queued local
+                                   // transactions changed, so they are sent first and
+                                   // the server's changes are checked against them.
+                                   // The revision is then only decoded if sending
+                                   // them did not already bring in its changes.
+                                   sendQueuedTransactions();
+                               }
                                if (!postingJSON.get()) {
-                                   decodeMessage(tokener, jsonRevision, jsonTimestamp);
+                                   int oldRevision = currentRevision;
+                                   decodeMessage(message.getPersistCalls(), message.getRevision(), 
+                                           message.getServerTimestamp());
+                                   if (currentRevision != oldRevision && message.getRevisionTimestamp() >= 0) {
+                                       recordUpdateLatency(message.getRevisionTimestamp());
+                                   }
                                }
                            } catch (AccessDeniedException e) {
                                interrupt();
@@ -525,8 +1056,15 @@ public abstract class AbstractNetworkConflictResolver extends Thread {
             		   }
             		   root = root.getCause();
             	   }
-                   logger.error("Failed to contact server. Will retry in " + retryDelay + " ms.", ex);
-                   Thread.sleep(retryDelay);
+                   if (!dispatched) {
+                       synchronized (this) {
+                           updating = false;
+                       }
+                   }
+                   consecutiveFailures++;
+                   long delay = getRetryDelay(consecutiveFailures);
+                   logger.error("Failed to contact server. Will retry in " + delay + " ms.", ex);
+                   Thread.sleep(delay);
                }
             }
         } catch (InterruptedException ex) {
@@ -542,13 +1080,7 @@ public abstract class AbstractNetworkConflictResolver extends Thread {
      */
     protected JSONMessage getJsonArray(HttpClient client) {
         try {
-            URI uri = new URI("http", null, 
-                    projectLocation.getServiceInfo().getServerAddress(), 
-                    projectLocation.getServiceInfo().getPort(),
-                    projectLocation.getServiceInfo().getPath() + contextRelativePath, 
-                    "oldRevisionNo=" + currentRevision + "&serverTimestamp=" + serverTimestamp, null);
-            logger.debug("GETting URI: " + uri.toString());
-            HttpUriRequest request = new HttpGet(uri);
+            HttpUriRequest request = createUpdateRequest();
             return client.execute(request, new JSONResponseHandler());
         } catch (AccessDeniedException ade) {
             throw new AccessDeniedException("Access Denied");
@@ -556,35 +1088,117 @@ public abstract class AbstractNetworkConflictResolver extends Thread {
             throw new RuntimeException("Unable to get json from server", ex);
         }
     }
+
+    /**
+     * Creates and executes an HttpGet request for an update from the server.
+     * Unlike {@link #getJsonArray(HttpClient)} the response is parsed as it is
+     * read from the connection, on the calling thread, and only once.
+     * 
+     * @return The update, or the message of a response that is not an update
+     */
+    protected RevisionUpdate getRevisionUpdate(HttpClient client) {
+        try {
+            HttpUriRequest request = createUpdateRequest();
+            RevisionUpdateResponseHandler.acceptInlineUpdate(request);
+            return client.execute(request, new RevisionUpdateResponseHandler());
+        } catch (AccessDeniedException ade) {
+            throw new AccessDeniedException("Access Denied");
+        } catch (Exception ex) {
+            throw new RuntimeException("Unable to get json from server", ex);
+        }
+    }
+
+    /**
+     * Creates the request for the revisions since the current revision.
+     */
+    private HttpGet createUpdateRequest() throws URISyntaxException {
+        URI uri = new URI("http", null, 
+                projectLocation.getServiceInfo().getServerAddress(), 
+                projectLocation.getServiceInfo().getPort(),
+                projectLocation.getServiceInfo().getPath() + contextRelativePath, 
+                "oldRevisionNo=" + currentRevision + "&serverTimestamp=" + serverTimestamp, null);
+        logger.debug("GETting URI: " + uri.toString());
+        HttpGet request = new HttpGet(uri);
+        HttpUtils.acceptGzip(request);
+        return request;
+    }
     
     /**
      * Creates and executes an HttpPost request containing the json of whatever
      * transaction was completed last.
      * @param jsonArray Typically created by calling toString() on a JSONArray
      * @return A JSONMessage holding the successfulness and message body of the server's response
+     * @see #postJsonArray(JSONArray)
      */
     protected JSONMessage postJsonArray(String jsonArray) {
         try {
-            URI serverURI = new URI("http", null, 
-                    projectLocation.getServiceInfo().getServerAddress(), 
-                    projectLocation.getServiceInfo().getPort(),
-                    projectLocation.getServiceInfo().getPath() + 
-                    "/" + ClientSideSessionUtils.REST_TAG + "/project/" + projectLocation.getUUID(), 
-                    "currentRevision=" + currentRevision + "&serverTimestamp=" + serverTimestamp, null);
-            logger.debug("POSTing URI: " + serverURI.toString());
-            HttpPost postRequest = new HttpPost(serverURI);
+            HttpPost postRequest = createPostRequest();
             postRequest.setEntity(new StringEntity(jsonArray)); 
             postRequest.setHeader("Content-Type", "application/json");
-            HttpUriRequest request = postRequest;
-            return outboundHttpClient.execute(request, new JSONResponseHandler());
+            return outboundHttpClient.execute(postRequest, new JSONResponseHandler());
+        } catch (AccessDeniedException ade) {
+            throw ade;
+        } catch (Exception ex) {
+            throw new RuntimeException("Unable to post json to server", ex);
+        }
+    }
+
+    /**
+     * Creates and executes an HttpPost request containing the json of whatever
+     * transaction was completed last. Unlike {@link #postJsonArray(String)}
+     * the array is streamed to the server as it is sent, optionally
+     * compressed, so the transaction is never held in memory as a String.
+     * 
+     * @param jsonArray
+     *            The persist calls to send, normally the {@link #messageBuffer}.
+     * @return A JSONMessage holding the successfulness and message body of the
+     *         server's response
+     * @see #setCompressingRequests(boolean)
+     */
+    protected JSONMessage postJsonArray(JSONArray jsonArray) {
+        try {
+            HttpPost postRequest = createPostRequest();
+            postRequest.setEntity(new JSONArrayEntity(jsonArray, compressingRequests));
+            return outboundHttpClient.execute(postRequest, new JSONResponseHandler());
         } catch (AccessDeniedException ade) {
             throw ade;
         } catch (Exception ex) {
             throw new RuntimeException("Unable to post json to server", ex);
         }
     }
+
+    /**
+     * Creates the post request that sends a transaction to the server based
+     * on the current revision and timestamp. The entity still needs to be set.
+     */
+    private HttpPost createPostRequest() throws URISyntaxException {
+        URI serverURI = new URI("http", null, 
+                projectLocation.getServiceInfo().getServerAddress(), 
+                projectLocation.getServiceInfo().getPort(),
+                projectLocation.getServiceInfo().getPath() + 
+                "/" + ClientSideSessionUtils.REST_TAG + "/project/" + projectLocation.getUUID(), 
+                "currentRevision=" + currentRevision + "&serverTimestamp=" + serverTimestamp, null);
+        logger.debug("POSTing URI: " + serverURI.toString());
+        HttpPost postRequest = new HttpPost(serverURI);
+        HttpUtils.acceptGzip(postRequest);
+        return postRequest;
+    }
+
+    /**
+     * Sets whether transactions posted through {@link #postJsonArray(JSONArray)}
+     * are gzip compressed. This should only be turned on for servers that
+     * accept gzip encoded requests.
+     */
+    public void setCompressingRequests(boolean compressingRequests) {
+        this.compressingRequests = compressingRequests;
+    }
+
+    public boolean isCompressingRequests() {
+        return compressingRequests;
+    }
     
     protected void fillInboundPersistedLists(String json) {
+        WorkspaceIndex workspaceIndex = new WorkspaceIndex();
         try {
             JSONArray array = new JSONArray(json);
             for (int i = 0; i < array.length(); i++) {
@@ -599,7 +1213,8 @@ public abstract class AbstractNetworkConflictResolver extends Thread {
                     
                     inboundObjectsToAdd.put(uuid, new PersistedSPObject(parentUUID, type, uuid, index));
                     
-                } else if (obj.getString("method").equals("persistProperty")) {
+                } else if (obj.getString("method").equals("persistProperty") 
+                        || obj.getString("method").equals("changeProperty")) {
                     
                     String uuid = obj.getString("uuid");
                     String propertyName = obj.getString("propertyName");
@@ -624,10 +1239,10 @@ public abstract class AbstractNetworkConflictResolver extends Thread {
                     String parentUUID = obj.getString("parentUUID");
                     String uuid = obj.getString("uuid");
                     
-                    SPObject objectToRemove = SQLPowerUtils.findByUuid(getWorkspace(), uuid, SPObject.class);
+                    SPObject objectToRemove = workspaceIndex.find(uuid);
 
                     inboundObjectsToRemove.put(uuid, new RemovedObjectEntry(parentUUID, objectToRemove, 
-                            objectToRemove.getParent().getChildren().indexOf(objectToRemove)));
+                            workspaceIndex.indexOf(objectToRemove)));
                 }
             }
         } catch (Exception ex) {
@@ -645,10 +1260,16 @@ public abstract class AbstractNetworkConflictResolver extends Thread {
      * See ConflictCase for all the cases that are looked for in this method.
      * A Google Docs spreadsheet called Conflict rules has been shared
      * with the psc group. For more information, see that.
+     * <p>
+     * Objects are looked up in an index of the workspace built once per check
+     * and the inbound changes are indexed by object, so the check takes time
+     * in proportion to the size of the lists and the workspace rather than
+     * their product.
      */
     protected List<ConflictMessage> checkForSimultaneousEdit() {                        
         
         List<ConflictMessage> conflicts = new LinkedList<ConflictMessage>();
+        WorkspaceIndex workspaceIndex = new WorkspaceIndex();
         
         Set<String> inboundAddedObjectParents = new HashSet<String>();
         Set<String> inboundRemovedObjectParents = new HashSet<String>();
@@ -661,7 +1282,15 @@ public abstract class AbstractNetworkConflictResolver extends Thread {
 
         // ----- Populate the inbound sets / maps -----        
         
-        for (String uuid : inboundPropertiesToChange.keys()) {
+        // Objects are visited in the order of their last changed property
+        // so the dependency recorded for a reference is the same as when
+        // every change to an object visited all of its changes again.
+        Set<String> inboundChangeOrder = new LinkedHashSet<String>();
+        for (Map.Entry<String, PersistedSPOProperty> entry : inboundPropertiesToChange.entries()) {
+            inboundChangeOrder.remove(entry.getKey());
+            inboundChangeOrder.add(entry.getKey());
+        }
+        for (String uuid : inboundChangeOrder) {
             inboundChangedObjects.add(uuid);
             for (PersistedSPOProperty p : inboundPropertiesToChange.get(uuid)) {
                 if (p.getDataType() == DataType.REFERENCE) {
@@ -697,7 +1326,7 @@ public abstract class AbstractNetworkConflictResolver extends Thread {
             if (inboundChangedObjects.contains(o.getParentUUID())) {
                 conflicts.add(new ConflictMessage(ConflictCase.ADDITION_UNDER_CHANGE, 
                         o.getUUID(), getPersistedObjectName(o), 
-                        o.getParentUUID(), SQLPowerUtils.findByUuid(getWorkspace(), o.getParentUUID(), SPObject.class).getName()));
+                        o.getParentUUID(), workspaceIndex.find(o.getParentUUID()).getName()));
             }
             
             // Make sure we are not adding an object that had an ancestor removed.
@@ -710,7 +1339,7 @@ public abstract class AbstractNetworkConflictResolver extends Thread {
             }
             checkedIfCanAddToTree.add(highestAddition.getUUID());
             if (checkedIfCanAddToTree.add(highestAddition.getParentUUID()) &&
-            		SQLPowerUtils.findByUuid(getWorkspace(),highestAddition.getParentUUID(), SPObject.class) == null) {
+            		workspaceIndex.find(highestAddition.getParentUUID()) == null) {
                 conflicts.add(new ConflictMessage(ConflictCase.ADDITION_UNDER_REMOVAL, 
                         highestAddition.getUUID(), getPersistedObjectName(highestAddition)));
             }
@@ -742,7 +1371,7 @@ public abstract class AbstractNetworkConflictResolver extends Thread {
             final String uuid = object.getRemovedChild().getUUID();
             
             // Check if the object the outbound client is trying to remove does not exist.
-            SPObject removedObject = SQLPowerUtils.findByUuid(getWorkspace(), uuid, SPObject.class);
+            SPObject removedObject = workspaceIndex.find(uuid);
             if (removedObject == null) {
                 // Check if this remove has a corresponding add, meaning it is a move.
                 // The incoming remove will override the outgoing move.
@@ -758,7 +1387,7 @@ public abstract class AbstractNetworkConflictResolver extends Thread {
                 String uuidOfDependent = inboundCreatedDependencies.get(uuid);
                 conflicts.add(new ConflictMessage(ConflictCase.REMOVAL_OF_DEPENDENCY, 
                         uuid, removedObject.getName(),
-                        uuidOfDependent, SQLPowerUtils.findByUuid(getWorkspace(), uuid, SPObject.class).getName()));
+                        uuidOfDependent, workspaceIndex.find(uuid).getName()));
             } else if (duplicateMoves.contains(uuid)) {
                 removedObjects.remove();
             }
@@ -768,8 +1397,14 @@ public abstract class AbstractNetworkConflictResolver extends Thread {
         
         // ----- Iterate through outbound properties -----
         
+        // The new values of the inbound properties of each object, and the
+        // conflicts with the children of each object, are the same each time
+        // the object comes up so they are only found once.
+        Map<String, Map<String, Object>> inboundPropertyValues = new HashMap<String, Map<String, Object>>();
+        Map<String, List<ConflictMessage>> childConflicts = new HashMap<String, List<ConflictMessage>>();
+        
         for (String uuid : outboundPropertiesToChange.keys()) {            
-            SPObject changedObject = SQLPowerUtils.findByUuid(getWorkspace(),uuid, SPObject.class);            
+            SPObject changedObject = workspaceIndex.find(uuid);            
             
             // If this object is being newly added, the rest of the loop body does not matter.
             if (outboundObjectsToAdd.containsKey(uuid)) continue;
@@ -794,12 +1429,15 @@ public abstract class AbstractNetworkConflictResolver extends Thread {
                         
             if (inboundChangedObjects.contains(uuid)) {                
                 ConflictMessage message = new ConflictMessage(ConflictCase.SIMULTANEOUS_OBJECT_CHANGE, 
-                        uuid, SQLPowerUtils.findByUuid(getWorkspace(),uuid, SPObject.class).getName());
+                        uuid, changedObject.getName());
                 
-                HashMap<String, Object> inboundPropertiesMap = 
-                    new HashMap<String, Object>();                
-                for (PersistedSPOProperty p : inboundPropertiesToChange.get(uuid)) {
-                    inboundPropertiesMap.put(p.getPropertyName(), p.getNewValue());
+                Map<String, Object> inboundPropertiesMap = inboundPropertyValues.get(uuid);
+                if (inboundPropertiesMap == null) {
+                    inboundPropertiesMap = new HashMap<String, Object>();                
+                    for (PersistedSPOProperty p : inboundPropertiesToChange.get(uuid)) {
+                        inboundPropertiesMap.put(p.getPropertyName(), p.getNewValue());
+                    }
+                    inboundPropertyValues.put(uuid, inboundPropertiesMap);
                 }
                                 
                 Iterator<PersistedSPOProperty> properties = outboundPropertiesToChange.get(uuid).iterator();                
@@ -822,32 +1460,55 @@ public abstract class AbstractNetworkConflictResolver extends Thread {
             }
             
             // Cannot change the property of a parent whose direct child was either:
-            List<SPObject> children = new ArrayList<SPObject>();
-            if (changedObject instanceof SQLObject) {
-            	children.addAll(((SQLObject) changedObject).getChildrenWithoutPopulating());
-            } else {
-            	children.addAll(changedObject.getChildren());
-            }
-            for (SPObject child : children) {                                        
-                // also changed
-                if (inboundChangedObjects.contains(child.getUUID())) {
-                    conflicts.add(new ConflictMessage(ConflictCase.CHANGE_UNDER_CHANGE,
-                            uuid, changedObject.getName(),
-                            child.getUUID(), child.getName()));                    
+            List<ConflictMessage> conflictsWithChildren = childConflicts.get(uuid);
+            if (conflictsWithChildren == null) {
+                conflictsWithChildren = new ArrayList<ConflictMessage>();
+                List<SPObject> children = new ArrayList<SPObject>();
+                if (changedObject instanceof SQLObject) {
+                    children.addAll(((SQLObject) changedObject).getChildrenWithoutPopulating());
+                } else {
+                    children.addAll(changedObject.getChildren());
                 }
-                
-                // or just added (moved is okay, though).
-                if (inboundObjectsToAdd.containsKey(child.getUUID()) &&
-                        !inboundObjectsToRemove.containsKey(child.getUUID())){
-                    conflicts.add(new ConflictMessage(ConflictCase.CHANGE_AFTER_ADDITION,
-                            uuid, changedObject.getName(),
-                            child.getUUID(), child.getName()));
+                for (SPObject child : children) {                                        
+                    // also changed
+                    if (inboundChangedObjects.contains(child.getUUID())) {
+                        conflictsWithChildren.add(new ConflictMessage(ConflictCase.CHANGE_UNDER_CHANGE,
+                                uuid, changedObject.getName(),
+                                child.getUUID(), child.getName()));                    
+                    }
+                    
+                    // or just added (moved is okay, though).
+                    if (inboundObjectsToAdd.containsKey(child.getUUID()) &&
+                            !inboundObjectsToRemove.containsKey(child.getUUID())){
+                        conflictsWithChildren.add(new ConflictMessage(ConflictCase.CHANGE_AFTER_ADDITION,
+                                uuid, changedObject.getName(),
+                                child.getUUID(), child.getName()));
+                    }
                 }
+                childConflicts.put(uuid, conflictsWithChildren);
             }
+            conflicts.addAll(conflictsWithChildren);
         }
         return conflicts;
     }
     
+    /**
+     * Posts the persist calls in the {@link #messageBuffer} to the server.
+     * <p>
+     * If the server rejects them this must throw an exception and must not
+     * roll anything back itself. When a single transaction is sent the
+     * {@link SPPersisterListener} that is committing it rolls it back when
+     * the exception reaches it. When {@link #getSendingTransactions()} is not
+     * empty the buffer holds several queued transactions that the listener
+     * has already cleared, and {@link #flushOutboundQueue()} rolls all of them
+     * back from what was recorded for each one. Rolling back from the
+     * listener's current state here would undo the wrong transaction, or undo
+     * one twice.
+     * 
+     * @param reflush
+     *            True if the message buffer is being posted again after the
+     *            revisions it was missing were applied.
+     */
     protected abstract void flush(boolean reflush);
     protected abstract List<ConflictMessage> detectConflicts();
     protected abstract SPObject getWorkspace();
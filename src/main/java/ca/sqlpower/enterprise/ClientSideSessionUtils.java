@@ -53,6 +53,7 @@ import ca.sqlpower.dao.SPPersistenceException;
 import ca.sqlpower.dao.json.SPJSONMessageDecoder;
 import ca.sqlpower.enterprise.client.ProjectLocation;
 import ca.sqlpower.enterprise.client.SPServerInfo;
+import ca.sqlpower.http.HttpUtils;
 import ca.sqlpower.util.UserPrompter.UserPromptOptions;
 import ca.sqlpower.util.UserPrompter.UserPromptResponse;
 import ca.sqlpower.util.UserPrompterFactory;
@@ -207,7 +208,8 @@ public class ClientSideSessionUtils {
 	
 	/**
 	 * Requests the server for persist calls from version 0 to the given revision
-	 * of the given project, and persists them to the given decoder.
+	 * of the given project, and persists them to the given decoder. The calls
+	 * are persisted as they are read from the server.
 	 * 
 	 * @param projectLocation
 	 * @param revisionNo Must be greater than zero, and no greater than the current revision number
@@ -222,21 +224,87 @@ public class ClientSideSessionUtils {
 	        SPJSONMessageDecoder decoder,
 	        CookieStore cookieStore)
 	throws IOException, URISyntaxException, SPPersistenceException, IllegalArgumentException {
+	    persistRevisionFromServer(projectLocation, revisionNo, 0, decoder, cookieStore);
+	}
+
+	/**
+	 * Requests the server for persist calls from version 0 to the given
+	 * revision of the given project in pages of at most the given number of
+	 * revisions, and persists each page to the given decoder as it is read
+	 * from the server. Each page after the first only contains the changes
+	 * made after the revision the previous page ended at, so the server must
+	 * support the oldRevisionNo parameter on project requests to fetch in
+	 * pages, and must return that parameter in the oldRevisionNo field of its
+	 * response to show it was used. The responses are requested gzipped.
+	 * <p>
+	 * The pages are not persisted in one transaction, as that would keep the
+	 * whole project in memory until the last page arrived. If a page fails or
+	 * is rejected the pages before it stay persisted, and so do the calls of
+	 * a page whose response did not return the oldRevisionNo, as the field is
+	 * only checked once the page has been read. The decoder's workspace is
+	 * then only part of the revision and the caller must discard it.
+	 * 
+	 * @param projectLocation
+	 * @param revisionNo
+	 *            Must be greater than zero, and no greater than the current
+	 *            revision number
+	 * @param pageSize
+	 *            The number of revisions to fetch in each request. If this is
+	 *            not greater than zero all of the revisions are fetched in one
+	 *            request.
+	 * @param decoder
+	 * @throws IOException
+	 * @throws URISyntaxException
+	 * @throws SPPersistenceException
+	 *             Thrown if the decoder fails or the server did not use the
+	 *             oldRevisionNo of a page after the first
+	 * @throws IllegalArgumentException
+	 *             Thrown if the server rejects the given revisionNo
+	 */
+	public static void persistRevisionFromServer(ProjectLocation projectLocation, 
+	        int revisionNo,
+	        int pageSize,
+	        SPJSONMessageDecoder decoder,
+	        CookieStore cookieStore)
+	throws IOException, URISyntaxException, SPPersistenceException, IllegalArgumentException {
 	    
 	    SPServerInfo serviceInfo = projectLocation.getServiceInfo();
 	    HttpClient httpClient = ClientSideSessionUtils.createHttpClient(serviceInfo, cookieStore);
         
         try {
-            JSONMessage response = ClientSideSessionUtils.executeServerRequest(httpClient, serviceInfo,
-                    "/" + ClientSideSessionUtils.REST_TAG + "/project/" + projectLocation.getUUID() + "/" + revisionNo,
-                    new JSONResponseHandler());            
-            
-            if (response.isSuccessful()) {
-                decoder.decode(response.getBody());                
-            } else {
-                throw new IllegalArgumentException("The server rejected the revision number " +
-                		"(it must be greater than 0, and no greater than the current revision number)");
-            }
+            int fromRevision = 0;
+            do {
+                int toRevision = revisionNo;
+                if (pageSize > 0 && revisionNo - fromRevision > pageSize) {
+                    toRevision = fromRevision + pageSize;
+                }
+                HttpGet request = new HttpGet(getServerURI(serviceInfo, 
+                        "/" + ClientSideSessionUtils.REST_TAG + "/project/" + projectLocation.getUUID() + "/" + toRevision,
+                        fromRevision > 0 ? "oldRevisionNo=" + fromRevision : null));
+                HttpUtils.acceptGzip(request);
+                RevisionUpdateResponseHandler.acceptInlineUpdate(request);
+                DecodingResponseHandler handler = new DecodingResponseHandler(decoder);
+                JSONMessage response;
+                try {
+                    response = httpClient.execute(request, handler);
+                } catch (RuntimeException e) {
+                    if (e.getCause() instanceof SPPersistenceException) {
+                        throw (SPPersistenceException) e.getCause();
+                    }
+                    throw e;
+                }
+                
+                if (!response.isSuccessful()) {
+                    throw new IllegalArgumentException("The server rejected the revision number " +
+                    		"(it must be greater than 0, and no greater than the current revision number)");
+                }
+                if (fromRevision > 0 && handler.getResponseFields().optInt("oldRevisionNo", -1) != fromRevision) {
+                    throw new SPPersistenceException(projectLocation.getUUID(), "The server did not return " +
+                            "the changes after revision " + fromRevision + " and may not support fetching " +
+                            "a project in pages. The project was only partly persisted.");
+                }
+                fromRevision = toRevision;
+            } while (fromRevision < revisionNo);
             
         } finally {
             httpClient.getConnectionManager().shutdown();
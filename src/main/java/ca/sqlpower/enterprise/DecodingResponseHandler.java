@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ca.sqlpower.enterprise;
+
+import java.io.Reader;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.ResponseHandler;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.springframework.security.AccessDeniedException;
+
+import ca.sqlpower.dao.SPPersistenceException;
+import ca.sqlpower.dao.json.SPJSONMessageDecoder;
+import ca.sqlpower.http.HttpUtils;
+
+/**
+ * Applies the persist calls in a successful response to a decoder while the
+ * response is read from the connection. When the server sends the calls as
+ * an array in the data of the response, each call is made as soon as it has
+ * been parsed, so neither the response nor the calls are ever held in memory
+ * at once. Calls sent as a string, by servers that do not inline them, are
+ * decoded after the string has been read. The calls are only streamed if the
+ * response kind is data or comes after the data in the response. Responses
+ * that are not successful are handled like the {@link JSONResponseHandler}
+ * handles them.
+ * <p>
+ * The returned message has no body if the calls were decoded. The other
+ * fields of the response are kept and can be read with
+ * {@link #getResponseFields()}. A persistence exception thrown by the decoder
+ * is rethrown as the cause of a runtime exception as response handlers cannot
+ * throw it directly.
+ */
+public class DecodingResponseHandler implements ResponseHandler<JSONMessage> {
+
+    private final SPJSONMessageDecoder decoder;
+
+    /**
+     * The fields of the last response read, other than the persist calls
+     * that were streamed to the decoder.
+     */
+    private JSONObject responseFields;
+
+    public DecodingResponseHandler(SPJSONMessageDecoder decoder) {
+        this.decoder = decoder;
+    }
+
+    public JSONMessage handleResponse(HttpResponse response) {
+        try {
+            int status = response.getStatusLine().getStatusCode();
+            if (status == 401) {
+                throw new AccessDeniedException("Access Denied");
+            }
+            
+            Reader reader = HttpUtils.getContentReader(response.getEntity());
+            if (status != 200) {
+                return new JSONResponseHandler().handleResponse(reader, status);
+            }
+            
+            JSONTokener tokener = new JSONTokener(reader);
+            JSONObject message = new JSONObject();
+            responseFields = message;
+            boolean decoded = false;
+            if (tokener.nextClean() != '{') {
+                throw tokener.syntaxError("A JSONObject text must begin with '{'");
+            }
+            char c = tokener.nextClean();
+            while (c != '}') {
+                tokener.back();
+                String key = tokener.nextValue().toString();
+                if (tokener.nextClean() != ':') {
+                    throw tokener.syntaxError("Expected a ':' after a key");
+                }
+                boolean streamed = false;
+                if (key.equals("data") && message.optString("responseKind", "data").equals("data")) {
+                    // look at the start of the value without consuming it
+                    streamed = tokener.nextClean() == '[';
+                    tokener.back();
+                }
+                if (streamed) {
+                    decoder.decode(tokener);
+                    decoded = true;
+                } else {
+                    message.put(key, tokener.nextValue());
+                }
+                c = tokener.nextClean();
+                if (c == ',') {
+                    c = tokener.nextClean();
+                } else if (c != '}') {
+                    throw tokener.syntaxError("Expected a ',' or '}'");
+                }
+            }
+            
+            if (decoded) {
+                return new JSONMessage(null, status);
+            }
+            JSONMessage jsonMessage = new JSONResponseHandler().handleResponse(message, status);
+            if (jsonMessage.isSuccessful() && message.optString("responseKind").equals("data")) {
+                decoder.decode(jsonMessage.getBody());
+                return new JSONMessage(null, status);
+            }
+            return jsonMessage;
+        } catch (AccessDeniedException e) {
+            throw e;
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (SPPersistenceException ex) {
+            throw new RuntimeException(ex);
+        } catch (JSONException ex) {
+            throw new RuntimeException("Server error. The response could not be read.", ex);
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Returns the fields of the last response read with a 200 status, other
+     * than the persist calls that were streamed to the decoder, or null if
+     * there has not been one.
+     */
+    public JSONObject getResponseFields() {
+        return responseFields;
+    }
+}
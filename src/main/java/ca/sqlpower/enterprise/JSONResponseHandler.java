@@ -19,9 +19,7 @@
 
 package ca.sqlpower.enterprise;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.StringReader;
 
@@ -37,6 +35,7 @@ import org.springframework.security.AccessDeniedException;
 import ca.sqlpower.dao.FriendlyRuntimeSPPersistenceException;
 import ca.sqlpower.dao.FriendlySPPersistenceException;
 import ca.sqlpower.dao.SPPersistenceException;
+import ca.sqlpower.http.HttpUtils;
 
 public class JSONResponseHandler implements ResponseHandler<JSONMessage> {
     
@@ -55,8 +54,7 @@ public class JSONResponseHandler implements ResponseHandler<JSONMessage> {
                 throw new AccessDeniedException("Access Denied");
             }
             
-            BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(response.getEntity().getContent()));
+            Reader reader = HttpUtils.getContentReader(response.getEntity());
             return handleResponse(reader, status);
         } catch (AccessDeniedException e) {
             throw e;
@@ -100,25 +98,75 @@ public class JSONResponseHandler implements ResponseHandler<JSONMessage> {
             	throw new RuntimeException("Server error " + status + ". See logs or server logs for more details.");
         	}
             
-            // Does the response contain data? If so, return it. Communication
-            // with the resource has been successful.
-            if (message.getString("responseKind").equals("data")) {    
+            return createMessage(message, status);
+        } catch (JSONException ex) {
+        	StringBuffer sb = new StringBuffer();
+        	sb.append("Internal server error. Server responded with the following.\n");
+        	try {
+        		int charAsInt = reader.read();
+        		while (charAsInt != -1) {
+        			sb.append(charAsInt);
+        			charAsInt = reader.read();
+        		}
+        		logger.error(sb.toString());
+        	} catch (IOException e) {
+        		logger.error("Failed to parse the root exception. The following was received " + sb.toString());
+        	}
+        	throw new RuntimeException("Server error. See logs or server logs for more details.");
+        } catch (RuntimeException ex) {
+        	throw ex;
+        } catch (Exception ex) {
+        	throw serverException(ex, status);
+        }
+    }
+
+	/**
+	 * Handles a response whose JSON object has already been read from the
+	 * response, for callers that stream the response themselves.
+	 */
+    public JSONMessage handleResponse(JSONObject message, int status) {
+        if (status == 404) {
+            throw new RuntimeException("Server resource is not available.");
+        }
+        if (status == 403) {
+        	throw new AccessDeniedException("Insufficient priviledges");
+        }
+        try {
+        	return createMessage(message, status);
+        } catch (JSONException ex) {
+        	logger.error("Internal server error. Server responded with the following.\n" + message);
+        	throw new RuntimeException("Server error. See logs or server logs for more details.");
+        } catch (RuntimeException ex) {
+        	throw ex;
+        } catch (Exception ex) {
+        	throw serverException(ex, status);
+        }
+    }
+
+    /**
+     * Returns the data of a successful or unsuccessful response, or throws the
+     * exception the server reported.
+     */
+    private JSONMessage createMessage(JSONObject message, int status) throws Exception {
+        // Does the response contain data? If so, return it. Communication
+        // with the resource has been successful.
+        if (message.getString("responseKind").equals("data")) {    
+            return new JSONMessage(message.getString("data"), status);
+        } else {
+            // Has the request been unsuccessful?
+            if (message.getString("responseKind").equals("unsuccessful")) {
                 return new JSONMessage(message.getString("data"), status);
             } else {
-                // Has the request been unsuccessful?
-                if (message.getString("responseKind").equals("unsuccessful")) {
-                    return new JSONMessage(message.getString("data"), status);
-                } else {
-                    // Does the response contain an exception? If so, reconstruct, and then
-                    // re-throw it. There has been an exception on the server.
-                    if (message.getString("responseKind").equals("exceptionStackTrace")) {
+                // Does the response contain an exception? If so, reconstruct, and then
+                // re-throw it. There has been an exception on the server.
+                if (message.getString("responseKind").equals("exceptionStackTrace")) {
 
-                        JSONArray stackTraceStrings = new JSONArray(message.getString("data"));
-                        StringBuffer stackTraceMessage = new StringBuffer();
-                        
-                        if (stackTraceStrings.length() > 0) {
-                        	String firstLine = stackTraceStrings.getString(0);
-                        	String userMessage = null;
+                    JSONArray stackTraceStrings = new JSONArray(message.getString("data"));
+                    StringBuffer stackTraceMessage = new StringBuffer();
+                    
+                    if (stackTraceStrings.length() > 0) {
+                    	String firstLine = stackTraceStrings.getString(0);
+                    	String userMessage = null;
 							if (firstLine.contains(FriendlyRuntimeSPPersistenceException.class.getName())) {
 								userMessage = firstLine.substring(firstLine.indexOf(FriendlyRuntimeSPPersistenceException.class.getName()) + FriendlyRuntimeSPPersistenceException.class.getName().length() + 2);
 							} else if (firstLine.contains(FriendlySPPersistenceException.class.getName())) {
@@ -133,48 +181,33 @@ public class JSONResponseHandler implements ResponseHandler<JSONMessage> {
 
 								throw new FriendlyRuntimeSPPersistenceException(userMessage);
 							}
-                        }
-                        
-                        for (int i = 0; i < stackTraceStrings.length(); i++) {
-                            stackTraceMessage.append("\n").append(stackTraceStrings.get(i));
-                        }
-                        
-                        throw new SPPersistenceException(null, stackTraceMessage.toString());
-                        
-                    } else {
-                        // This exception represents a(n epic) client-server miscommunication
-                        throw new Exception("Unable to parse response ");
                     }
+                    
+                    for (int i = 0; i < stackTraceStrings.length(); i++) {
+                        stackTraceMessage.append("\n").append(stackTraceStrings.get(i));
+                    }
+                    
+                    throw new SPPersistenceException(null, stackTraceMessage.toString());
+                    
+                } else {
+                    // This exception represents a(n epic) client-server miscommunication
+                    throw new Exception("Unable to parse response ");
                 }
             }
-        } catch (JSONException ex) {
-        	StringBuffer sb = new StringBuffer();
-        	sb.append("Internal server error. Server responded with the following.\n");
-        	try {
-        		int charAsInt = reader.read();
-        		while (charAsInt != -1) {
-        			sb.append(charAsInt);
-        			charAsInt = reader.read();
-        		}
-        		logger.error(sb.toString());
-        	} catch (IOException e) {
-        		logger.error("Failed to parse the root exception. The following was received " + sb.toString());
-        	}
-        	throw new RuntimeException("Server error. See logs or server logs for more details.");
-        } catch (RuntimeException ex) {
-        	throw ex;
-        } catch (Exception ex) {
-        	String message = ex.getMessage();
-        	if (message.contains("\n")) {
-        		String[] messages = message.split("\n");
-        		for (String serverMsg : messages) {
-        			if (serverMsg.trim().length() > 0) {
-        				message = serverMsg.trim();
-        				break;
-        			}
-        		}
-        	}
-            throw new RuntimeException("Server returned status " + status + "\n" + message, ex);
         }
     }
+
+    private RuntimeException serverException(Exception ex, int status) {
+    	String message = ex.getMessage();
+    	if (message.contains("\n")) {
+    		String[] messages = message.split("\n");
+    		for (String serverMsg : messages) {
+    			if (serverMsg.trim().length() > 0) {
+    				message = serverMsg.trim();
+    				break;
+    			}
+    		}
+    	}
+        return new RuntimeException("Server returned status " + status + "\n" + message, ex);
+    }
 }
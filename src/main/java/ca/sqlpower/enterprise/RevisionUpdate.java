@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ca.sqlpower.enterprise;
+
+import org.json.JSONArray;
+
+/**
+ * A response to a request for the revisions a client is missing. Successful
+ * responses carry the persist calls that bring the client up to the server's
+ * revision, already parsed, so applying them does not need to parse anything
+ * on the foreground thread. Other responses only carry the message body like
+ * any other {@link JSONMessage}.
+ */
+public class RevisionUpdate extends JSONMessage {
+
+    /**
+     * The persist calls of the revisions, or null if the response was not an
+     * update.
+     */
+    private final JSONArray persistCalls;
+
+    private final int revision;
+
+    private final long serverTimestamp;
+
+    /**
+     * The time in milliseconds, by the server's clock, at which the server
+     * created the revision, or -1 if the server did not send it.
+     */
+    private final long revisionTimestamp;
+
+    /**
+     * Creates a response that is not an update, for example a message that the
+     * workspace was deleted.
+     */
+    public RevisionUpdate(String message, int statusCode) {
+        super(message, statusCode);
+        this.persistCalls = null;
+        this.revision = -1;
+        this.serverTimestamp = -1;
+        this.revisionTimestamp = -1;
+    }
+
+    public RevisionUpdate(JSONArray persistCalls, int revision, long serverTimestamp,
+            long revisionTimestamp, int statusCode) {
+        super(null, statusCode);
+        this.persistCalls = persistCalls;
+        this.revision = revision;
+        this.serverTimestamp = serverTimestamp;
+        this.revisionTimestamp = revisionTimestamp;
+    }
+
+    /**
+     * Returns true if this response carries persist calls to apply.
+     */
+    public boolean isUpdate() {
+        return persistCalls != null;
+    }
+
+    public JSONArray getPersistCalls() {
+        return persistCalls;
+    }
+
+    public int getRevision() {
+        return revision;
+    }
+
+    public long getServerTimestamp() {
+        return serverTimestamp;
+    }
+
+    public long getRevisionTimestamp() {
+        return revisionTimestamp;
+    }
+
+    @Override
+    public String toString() {
+        if (!isUpdate()) return super.toString();
+        return "Revision " + revision + " (" + getStatusCode() + "): " + 
+            persistCalls.length() + " persist calls";
+    }
+}
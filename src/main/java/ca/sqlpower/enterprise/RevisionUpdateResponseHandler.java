@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ca.sqlpower.enterprise;
+
+import java.io.Reader;
+
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.ResponseHandler;
+import org.apache.log4j.Logger;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.springframework.security.AccessDeniedException;
+
+import ca.sqlpower.http.HttpUtils;
+
+/**
+ * Reads the response to a request for revisions straight from the connection
+ * into a {@link RevisionUpdate}. The response is parsed once, as it arrives,
+ * on the thread that made the request. Requests that send the
+ * {@link #INLINE_UPDATE_HEADER} let the server put the revision and its
+ * persist calls in the response as JSON instead of as a string of JSON inside
+ * a string of JSON. Servers that do not know the header still send the nested
+ * strings, which are parsed here as well.
+ * <p>
+ * The response is read to its end before this handler returns, which lets the
+ * client reuse the connection for the next request.
+ */
+public class RevisionUpdateResponseHandler implements ResponseHandler<RevisionUpdate> {
+    
+    private static final Logger logger = Logger.getLogger(RevisionUpdateResponseHandler.class);
+
+    /**
+     * The header a client sends to let the server inline the update in the
+     * response.
+     */
+    public static final String INLINE_UPDATE_HEADER = "X-SP-Inline-Update";
+
+    /**
+     * Marks the request as accepting updates inlined in the response.
+     */
+    public static void acceptInlineUpdate(HttpRequest request) {
+        request.setHeader(INLINE_UPDATE_HEADER, "true");
+    }
+
+    public RevisionUpdate handleResponse(HttpResponse response) {
+        try {
+            int status = response.getStatusLine().getStatusCode();
+            if (status == 401) {
+                throw new AccessDeniedException("Access Denied");
+            }
+            
+            Reader reader = HttpUtils.getContentReader(response.getEntity());
+            if (status == 404 || status == 403) {
+                // Let the JSON handler throw the same exceptions it always has.
+                new JSONResponseHandler().handleResponse(reader, status);
+            }
+            
+            JSONTokener tokener = new JSONTokener(reader);
+            Object value = tokener.nextValue();
+            if (!(value instanceof JSONObject)) {
+                logger.error("Internal server error. Server responded with the following.\n" + value);
+                throw new RuntimeException("Server error " + status + ". See logs or server logs for more details.");
+            }
+            JSONObject message = (JSONObject) value;
+            if (status == 200 && message.optString("responseKind").equals("data")) {
+                return createUpdate(message.get("data"), status);
+            }
+            JSONMessage jsonMessage = new JSONResponseHandler().handleResponse(message, status);
+            return new RevisionUpdate(jsonMessage.getBody(), jsonMessage.getStatusCode());
+        } catch (AccessDeniedException e) {
+            throw e;
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Creates the update from the data of the response, which is either the
+     * inlined update or the update as a string.
+     */
+    private RevisionUpdate createUpdate(Object data, int status) throws Exception {
+        JSONObject update;
+        if (data instanceof JSONObject) {
+            update = (JSONObject) data;
+        } else {
+            update = new JSONObject(data.toString());
+        }
+        Object calls = update.get("data");
+        JSONArray persistCalls;
+        if (calls instanceof JSONArray) {
+            persistCalls = (JSONArray) calls;
+        } else {
+            persistCalls = new JSONArray(calls.toString());
+        }
+        return new RevisionUpdate(persistCalls, update.getInt("currentRevision"), 
+                update.getLong("serverTimestamp"), update.optLong("revisionTimestamp", -1), status);
+    }
+}
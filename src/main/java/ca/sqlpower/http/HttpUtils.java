@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.http;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpRequest;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * Static helpers for sending and receiving entities with the HTTP client that
+ * are shared by the enterprise client classes.
+ */
+public class HttpUtils {
+
+	/**
+	 * The value of the "Content-Encoding" and "Accept-Encoding" headers for
+	 * gzip compressed content.
+	 */
+	public static final String GZIP_ENCODING = "gzip";
+
+	/**
+	 * The character set JSON entities are written in.
+	 */
+	public static final String JSON_CHARSET = "UTF-8";
+
+	/**
+	 * The size of the buffers used when streaming entities to and from the
+	 * connection.
+	 */
+	static final int BUFFER_SIZE = 8192;
+
+	private HttpUtils() {
+		// utility class
+	}
+
+	/**
+	 * Adds an "Accept-Encoding" header to the request that lets the server
+	 * know it may compress its response with gzip. Responses are decoded
+	 * appropriately by {@link #getContentReader(HttpEntity)}.
+	 */
+	public static void acceptGzip(HttpRequest request) {
+		request.setHeader("Accept-Encoding", GZIP_ENCODING);
+	}
+
+	/**
+	 * Returns true if the given entity was sent with a gzip content encoding.
+	 */
+	public static boolean isGzipped(HttpEntity entity) {
+		Header encoding = entity.getContentEncoding();
+		return encoding != null && encoding.getValue() != null
+			&& encoding.getValue().trim().equalsIgnoreCase(GZIP_ENCODING);
+	}
+
+	/**
+	 * Returns a stream over the content of the entity that is decompressed if
+	 * the entity was gzip encoded. The content is read from the connection as
+	 * the stream is consumed; nothing is buffered beyond the stream buffers.
+	 */
+	public static InputStream getContent(HttpEntity entity) throws IOException {
+		InputStream in = entity.getContent();
+		if (isGzipped(entity)) {
+			in = new GZIPInputStream(in, BUFFER_SIZE);
+		}
+		return in;
+	}
+
+	/**
+	 * Returns a reader over the decoded content of the given entity. The
+	 * character set declared by the entity is used if there is one, otherwise
+	 * the platform default is used to remain compatible with servers that do
+	 * not declare one.
+	 */
+	public static Reader getContentReader(HttpEntity entity) throws IOException {
+		String charset = EntityUtils.getContentCharSet(entity);
+		InputStream in = getContent(entity);
+		if (charset == null) {
+			return new BufferedReader(new InputStreamReader(in), BUFFER_SIZE);
+		} else {
+			return new BufferedReader(new InputStreamReader(in, charset), BUFFER_SIZE);
+		}
+	}
+}
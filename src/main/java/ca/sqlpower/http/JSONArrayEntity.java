@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.http;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.json.JSONArray;
+import org.json.JSONException;
+
+/**
+ * An {@link org.apache.http.HttpEntity} that writes a {@link JSONArray}
+ * directly to the connection's output stream as it is being sent, instead of
+ * converting the whole array to a String first. The content is always encoded
+ * as UTF-8 and can optionally be compressed with gzip, in which case the
+ * "Content-Encoding" header of the request will be set to "gzip".
+ * <p>
+ * Since the length of the content is not known until it has been written the
+ * entity is always sent chunked.
+ */
+public class JSONArrayEntity extends AbstractHttpEntity {
+
+	/**
+	 * The content type all JSON entities are sent with.
+	 */
+	public static final String JSON_CONTENT_TYPE = "application/json; charset=" + HttpUtils.JSON_CHARSET;
+
+	/**
+	 * The array of persist calls, or any other JSON values, that will be
+	 * written as the body of the request.
+	 */
+	private final JSONArray array;
+
+	/**
+	 * True if the content will be compressed with gzip as it is written.
+	 */
+	private final boolean gzip;
+
+	/**
+	 * Creates an entity that will write the given array uncompressed.
+	 */
+	public JSONArrayEntity(JSONArray array) {
+		this(array, false);
+	}
+
+	/**
+	 * @param array
+	 *            The array to write as the content of this entity. The array
+	 *            is not copied so it must not be modified until the request
+	 *            this entity is a part of has been executed.
+	 * @param gzip
+	 *            True if the content should be compressed with gzip. The
+	 *            server must be able to decode gzip encoded requests for this
+	 *            to be set.
+	 */
+	public JSONArrayEntity(JSONArray array, boolean gzip) {
+		this.array = array;
+		this.gzip = gzip;
+		setContentType(JSON_CONTENT_TYPE);
+		if (gzip) {
+			setContentEncoding(HttpUtils.GZIP_ENCODING);
+		}
+		setChunked(true);
+	}
+
+	public boolean isRepeatable() {
+		return true;
+	}
+
+	public long getContentLength() {
+		return -1;
+	}
+
+	public boolean isStreaming() {
+		return false;
+	}
+
+	/**
+	 * Returns the encoded content of this entity. This is only here to
+	 * satisfy the {@link org.apache.http.HttpEntity} interface as it has to
+	 * buffer the entire content in memory. The HTTP client uses
+	 * {@link #writeTo(OutputStream)} which does not.
+	 */
+	public InputStream getContent() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writeTo(out);
+		return new ByteArrayInputStream(out.toByteArray());
+	}
+
+	public void writeTo(OutputStream outstream) throws IOException {
+		if (outstream == null) {
+			throw new IllegalArgumentException("Output stream may not be null");
+		}
+		GZIPOutputStream gzipStream = null;
+		OutputStream out = outstream;
+		if (gzip) {
+			gzipStream = new GZIPOutputStream(outstream, HttpUtils.BUFFER_SIZE);
+			out = gzipStream;
+		}
+		Writer writer = new BufferedWriter(
+				new OutputStreamWriter(out, HttpUtils.JSON_CHARSET), HttpUtils.BUFFER_SIZE);
+		try {
+			array.write(writer);
+		} catch (JSONException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			IOException ioe = new IOException("Unable to write JSON content");
+			ioe.initCause(e);
+			throw ioe;
+		}
+		// The writer is flushed but not closed as the connection owns the stream.
+		writer.flush();
+		if (gzipStream != null) {
+			gzipStream.finish();
+		}
+		outstream.flush();
+	}
+
+}
@@ -1,6 +1,7 @@
 package ca.sqlpower.object;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -10,6 +11,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 import org.apache.log4j.Logger;
 
@@ -91,6 +93,12 @@ public class Differ implements SPPersister {
      */
     private Set<String> needToAddProperties = new HashSet<String>();
     
+    /**
+     * The UUIDs of the objects in {@link DifferPersistCalls#persistedSPOsToAdd}
+     * to check if an object is already being added without searching the list.
+     */
+    private Set<String> uuidsToAdd = new HashSet<String>();
+    
     /**
      * This can be created if needed by getObjectTree(), but is not done so by default.
      * It will map object UUIDs to PersistedObjectTreeNode objects.
@@ -258,6 +266,94 @@ public class Differ implements SPPersister {
         
     }
     
+    /**
+     * Calculates the same diff as
+     * {@link #calcDiff(List, List, List, List)} but only compares the objects
+     * and properties in subtrees that changed. A content hash is calculated
+     * for every subtree of the old and new objects, and subtrees whose root
+     * has the same hash in both revisions are skipped. Hashing visits every
+     * object and property once, so on a single processor this is not faster
+     * than the full diff, but the hashing can be spread over several threads
+     * and the comparison only visits the objects in subtrees that changed.
+     * 
+     * @param executor
+     *            If not null the subtrees under each root object are hashed
+     *            as separate tasks on this executor. If null all of the work
+     *            is done on the calling thread.
+     */
+    public synchronized void calcDiffBySubtreeHash(List<PersistedSPObject> oldPersistedSPOs, 
+            List<PersistedSPObject> newPersistedSPOs,
+            List<PersistedSPOProperty> oldPersistedSPOPs,
+            List<PersistedSPOProperty> newPersistedSPOPs,
+            ExecutorService executor) {
+        
+        if (diffCalculated) throw new IllegalStateException("This differ has already calculated its diff. " +
+                "Calling this method again will cause the previous diff to enter an invalid state.");
+        
+        diffCalculated = true;
+        
+        oldObjectMap = makeObjectHashMap(oldPersistedSPOs);
+        newObjectMap = makeObjectHashMap(newPersistedSPOs);
+        
+        oldPropertyMap = makePropertyHashMap(oldPersistedSPOPs);
+        newPropertyMap = makePropertyHashMap(newPersistedSPOPs);
+        
+        PersistedSubtreeHasher oldHasher = new PersistedSubtreeHasher(oldObjectMap, oldPropertyMap);
+        PersistedSubtreeHasher newHasher = new PersistedSubtreeHasher(newObjectMap, newPropertyMap);
+        Map<String, byte[]> oldHashes = oldHasher.calculateHashes(executor);
+        Map<String, byte[]> newHashes = newHasher.calculateHashes(executor);
+        
+        HashSet<String> objectKeys = new HashSet<String>();
+        addChangedSubtrees(oldHasher, oldHasher.getRoots(), oldHashes, newHashes, objectKeys);
+        addChangedSubtrees(newHasher, newHasher.getRoots(), newHashes, oldHashes, objectKeys);
+        // Objects that could not be hashed cannot be skipped.
+        for (String uuid : oldObjectMap.keySet()) {
+            if (!oldHashes.containsKey(uuid)) objectKeys.add(uuid);
+        }
+        for (String uuid : newObjectMap.keySet()) {
+            if (!newHashes.containsKey(uuid)) objectKeys.add(uuid);
+        }
+        
+        calcObjectDiff(oldObjectMap, newObjectMap, objectKeys);
+        
+        // Properties of moved objects are added even if their subtree did not
+        // change, and properties of objects not in either revision cannot be skipped.
+        HashSet<String> propertyKeys = new HashSet<String>();
+        for (Map<String, PersistedSPOProperty> propertyMap : Arrays.asList(oldPropertyMap, newPropertyMap)) {
+            for (Map.Entry<String, PersistedSPOProperty> entry : propertyMap.entrySet()) {
+                String uuid = entry.getValue().getUUID();
+                if (objectKeys.contains(uuid) || needToAddProperties.contains(uuid)
+                        || (!oldObjectMap.containsKey(uuid) && !newObjectMap.containsKey(uuid))) {
+                    propertyKeys.add(entry.getKey());
+                }
+            }
+        }
+        calcPropertyDiff(oldPersistedSPOPs, newPersistedSPOPs, 
+                oldPropertyMap, newPropertyMap, propertyKeys);
+        
+        if (logger.isDebugEnabled()) {
+            logger.debug("Differ compared " + objectKeys.size() + " of " + oldPersistedSPOs.size() + 
+                    " objects in old revision and " + newPersistedSPOs.size() + " objects in new revision");
+            logger.debug("\t" + persistCalls.persistedSPOsToAdd.size() + " objects must be added, and " + persistCalls.persistedSPOsToRemove.size() + " must be removed");
+        }
+    }
+
+    /**
+     * Adds the UUIDs of the given objects and their descendants to the
+     * changed set, skipping every subtree whose hash is the same in the other
+     * revision.
+     */
+    private void addChangedSubtrees(PersistedSubtreeHasher hasher, List<PersistedSPObject> objects,
+            Map<String, byte[]> hashes, Map<String, byte[]> otherHashes, Set<String> changed) {
+        for (PersistedSPObject o : objects) {
+            String uuid = o.getUUID();
+            byte[] otherHash = otherHashes.get(uuid);
+            if (otherHash != null && Arrays.equals(hashes.get(uuid), otherHash)) continue;
+            changed.add(uuid);
+            addChangedSubtrees(hasher, hasher.getChildren(uuid), hashes, otherHashes, changed);
+        }
+    }
+    
     /**
      * Constructs a hash map of {@link PersistedSPObject} types, using their uuids as keys.
      * This is used by {@link calcDiff()} to construct {@link oldObjectMap} and {@link newObjectMap},
@@ -369,7 +465,7 @@ public class Differ implements SPPersister {
                 //Can be added earlier because the parent was moved. Happens
                 //when a child is added to an object that is moving in the
                 //same transaction.
-                if (!persistCalls.persistedSPOsToAdd.contains(newObject)) {
+                if (uuidsToAdd.add(newObject.getUUID())) {
                     persistCalls.persistedSPOsToAdd.add(newObject);
                 }
                 
@@ -388,7 +484,7 @@ public class Differ implements SPPersister {
                 Set<String> descendants = new HashSet<String>();
                 getObjectsRecursively(newObject, descendants);                
                 for (String descendant : descendants) {
-                    if (!persistCalls.persistedSPOsToAdd.contains(newObjectMap.get(descendant))) {
+                    if (uuidsToAdd.add(descendant)) {
                         persistCalls.persistedSPOsToAdd.add(newObjectMap.get(descendant));
                     }
                 }
@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.object;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import ca.sqlpower.dao.PersistedSPOProperty;
+import ca.sqlpower.dao.PersistedSPObject;
+
+/**
+ * Calculates a content hash for every subtree of a workspace given as lists
+ * of persisted objects and properties. The hash of an object covers its own
+ * persisted object call, all of its properties and the hashes of its
+ * children, so two subtrees with the same hash contain the same objects with
+ * the same properties. The {@link Differ} uses this to skip subtrees that did
+ * not change.
+ * <p>
+ * Values are hashed by their class and string form. Values whose string form
+ * does not describe their content, like images, make the subtree hash differ
+ * between any two workspaces, which only means the subtree will be compared
+ * in full.
+ */
+class PersistedSubtreeHasher {
+
+	private static final Comparator<PersistedSPObject> UUID_ORDER = new Comparator<PersistedSPObject>() {
+		public int compare(PersistedSPObject o1, PersistedSPObject o2) {
+			return o1.getUUID().compareTo(o2.getUUID());
+		}
+	};
+
+	private static final Comparator<PersistedSPOProperty> NAME_ORDER = new Comparator<PersistedSPOProperty>() {
+		public int compare(PersistedSPOProperty p1, PersistedSPOProperty p2) {
+			return p1.getPropertyName().compareTo(p2.getPropertyName());
+		}
+	};
+
+	/**
+	 * The children of each object by the parent's UUID, sorted by UUID so the
+	 * hash does not depend on the order of the persist calls.
+	 */
+	private final Map<String, List<PersistedSPObject>> children = new HashMap<String, List<PersistedSPObject>>();
+
+	/**
+	 * The properties of each object by the object's UUID, sorted by name.
+	 */
+	private final Map<String, List<PersistedSPOProperty>> properties = new HashMap<String, List<PersistedSPOProperty>>();
+
+	/**
+	 * The objects whose parent is not one of the objects.
+	 */
+	private final List<PersistedSPObject> roots = new ArrayList<PersistedSPObject>();
+
+	private final Map<String, byte[]> hashes = new ConcurrentHashMap<String, byte[]>();
+
+	/**
+	 * @param objects
+	 *            The objects of the workspace by UUID.
+	 * @param propertyMap
+	 *            The properties of the workspace, one per object and property
+	 *            name.
+	 */
+	PersistedSubtreeHasher(Map<String, PersistedSPObject> objects, Map<String, PersistedSPOProperty> propertyMap) {
+		for (PersistedSPObject o : objects.values()) {
+			if (o.getParentUUID() == null || !objects.containsKey(o.getParentUUID())) {
+				roots.add(o);
+			} else {
+				List<PersistedSPObject> siblings = children.get(o.getParentUUID());
+				if (siblings == null) {
+					siblings = new ArrayList<PersistedSPObject>();
+					children.put(o.getParentUUID(), siblings);
+				}
+				siblings.add(o);
+			}
+		}
+		for (List<PersistedSPObject> siblings : children.values()) {
+			Collections.sort(siblings, UUID_ORDER);
+		}
+		for (PersistedSPOProperty p : propertyMap.values()) {
+			List<PersistedSPOProperty> objectProperties = properties.get(p.getUUID());
+			if (objectProperties == null) {
+				objectProperties = new ArrayList<PersistedSPOProperty>();
+				properties.put(p.getUUID(), objectProperties);
+			}
+			objectProperties.add(p);
+		}
+		for (List<PersistedSPOProperty> objectProperties : properties.values()) {
+			Collections.sort(objectProperties, NAME_ORDER);
+		}
+	}
+
+	/**
+	 * Calculates the hash of every subtree reachable from the roots. If an
+	 * executor is given the subtrees under each root are hashed as separate
+	 * tasks.
+	 * 
+	 * @return The subtree hashes by the UUID of the subtree's root object.
+	 *         Objects that are not reachable from a root, which is only
+	 *         possible if the parent links form a cycle, have no hash.
+	 */
+	Map<String, byte[]> calculateHashes(ExecutorService executor) {
+		if (executor != null) {
+			List<Future<byte[]>> futures = new ArrayList<Future<byte[]>>();
+			for (PersistedSPObject root : roots) {
+				for (final PersistedSPObject child : getChildren(root.getUUID())) {
+					futures.add(executor.submit(new Callable<byte[]>() {
+						public byte[] call() throws Exception {
+							return hash(child, new SubtreeDigest());
+						}
+					}));
+				}
+			}
+			try {
+				for (Future<byte[]> future : futures) {
+					future.get();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			} catch (ExecutionException e) {
+				throw new RuntimeException(e.getCause());
+			}
+		}
+		SubtreeDigest digest = new SubtreeDigest();
+		for (PersistedSPObject root : roots) {
+			hash(root, digest);
+		}
+		return hashes;
+	}
+
+	List<PersistedSPObject> getRoots() {
+		return roots;
+	}
+
+	List<PersistedSPObject> getChildren(String uuid) {
+		List<PersistedSPObject> objectChildren = children.get(uuid);
+		if (objectChildren == null) return Collections.emptyList();
+		return objectChildren;
+	}
+
+	/**
+	 * Returns the hash of the subtree rooted at the given object, calculating
+	 * it and the hashes of all of its descendants if it has not been
+	 * calculated yet.
+	 */
+	private byte[] hash(PersistedSPObject o, SubtreeDigest digest) {
+		byte[] hash = hashes.get(o.getUUID());
+		if (hash != null) return hash;
+		List<PersistedSPObject> objectChildren = getChildren(o.getUUID());
+		List<byte[]> childHashes = new ArrayList<byte[]>(objectChildren.size());
+		for (PersistedSPObject child : objectChildren) {
+			childHashes.add(hash(child, digest));
+		}
+		
+		digest.add(o.getUUID());
+		digest.add(o.getType());
+		digest.add(o.getParentUUID());
+		digest.add(o.getIndex());
+		digest.add(o.isLoaded() ? 1 : 0);
+		List<PersistedSPOProperty> objectProperties = properties.get(o.getUUID());
+		if (objectProperties != null) {
+			for (PersistedSPOProperty p : objectProperties) {
+				digest.add(p.getPropertyName());
+				digest.add(p.getDataType().ordinal());
+				digest.add(p.isUnconditional() ? 1 : 0);
+				if (!p.isUnconditional()) {
+					digest.add(p.getOldValue());
+				}
+				digest.add(p.getNewValue());
+			}
+		}
+		digest.add(childHashes.size());
+		for (byte[] childHash : childHashes) {
+			digest.add(childHash);
+		}
+		hash = digest.digest();
+		hashes.put(o.getUUID(), hash);
+		return hash;
+	}
+
+	/**
+	 * Collects the content of one object in a reusable buffer before adding it
+	 * to the message digest, which is much faster than adding each value on
+	 * its own. Each thread hashing objects needs its own instance.
+	 */
+	private static class SubtreeDigest {
+
+		private final MessageDigest digest;
+
+		private byte[] buffer = new byte[1024];
+
+		private int length;
+
+		SubtreeDigest() {
+			try {
+				digest = MessageDigest.getInstance("MD5");
+			} catch (NoSuchAlgorithmException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		/**
+		 * Adds the class and string form of the given property value.
+		 */
+		void add(Object value) {
+			add(value == null ? null : value.getClass().getName());
+			add(value == null ? null : value.toString());
+		}
+
+		/**
+		 * Adds the given string prefixed with its length so the boundaries
+		 * between strings are part of the hash. Each character is added as
+		 * two bytes.
+		 */
+		void add(String s) {
+			if (s == null) {
+				add(-1);
+				return;
+			}
+			int n = s.length();
+			add(n);
+			ensureCapacity(n * 2);
+			for (int i = 0; i < n; i++) {
+				char c = s.charAt(i);
+				buffer[length++] = (byte) (c >>> 8);
+				buffer[length++] = (byte) c;
+			}
+		}
+
+		void add(int i) {
+			ensureCapacity(4);
+			buffer[length++] = (byte) (i >>> 24);
+			buffer[length++] = (byte) (i >>> 16);
+			buffer[length++] = (byte) (i >>> 8);
+			buffer[length++] = (byte) i;
+		}
+
+		void add(byte[] bytes) {
+			ensureCapacity(bytes.length);
+			System.arraycopy(bytes, 0, buffer, length, bytes.length);
+			length += bytes.length;
+		}
+
+		/**
+		 * Returns the hash of everything added since the last call and
+		 * clears the buffer.
+		 */
+		byte[] digest() {
+			digest.update(buffer, 0, length);
+			length = 0;
+			return digest.digest();
+		}
+
+		private void ensureCapacity(int extra) {
+			if (length + extra > buffer.length) {
+				byte[] newBuffer = new byte[Math.max(buffer.length * 2, length + extra)];
+				System.arraycopy(buffer, 0, newBuffer, 0, length);
+				buffer = newBuffer;
+			}
+		}
+	}
+}
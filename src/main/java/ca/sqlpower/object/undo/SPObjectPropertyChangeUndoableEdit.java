@@ -126,6 +126,10 @@ public class SPObjectPropertyChangeUndoableEdit extends AbstractUndoableEdit {
 		return toolTip;
 	}
 	
+	PropertyChangeEvent getEvent() {
+		return event;
+	}
+	
 	@Override
 	public String toString() {
 		return event.getSource() + "."+event.getPropertyName()
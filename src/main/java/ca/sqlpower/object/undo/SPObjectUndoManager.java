@@ -22,7 +22,9 @@ package ca.sqlpower.object.undo;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
@@ -38,7 +40,9 @@ import ca.sqlpower.object.AbstractSPListener;
 import ca.sqlpower.object.SPChildEvent;
 import ca.sqlpower.object.SPListener;
 import ca.sqlpower.object.SPObject;
+import ca.sqlpower.object.SPChildEvent.EventType;
 import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLObject;
 import ca.sqlpower.util.SQLPowerUtils;
 import ca.sqlpower.util.TransactionEvent;
 
@@ -60,6 +64,12 @@ public class SPObjectUndoManager extends UndoManager implements NotifyingUndoMan
 
             String toolTip;
 
+            /**
+             * The estimated number of bytes retained by the edits in this
+             * compound edit.
+             */
+            private long estimatedSize = 0;
+
             public CompEdit(String toolTip) {
                 super();
                 this.toolTip = toolTip;
@@ -102,14 +112,17 @@ public class SPObjectUndoManager extends UndoManager implements NotifyingUndoMan
             }
             
             @Override
-            public void undo() throws CannotUndoException {
-                List<SPObject> ancestorList = SQLPowerUtils.getAncestorList(spObjectRoot);
-                SPObject absoluteRoot;
-                if (ancestorList.isEmpty()) {
-                    absoluteRoot = spObjectRoot;
-                } else {
-                    absoluteRoot = ancestorList.get(0);
+            public boolean addEdit(UndoableEdit anEdit) {
+                boolean added = super.addEdit(anEdit);
+                if (added) {
+                    estimatedSize += estimateSize(anEdit);
                 }
+                return added;
+            }
+            
+            @Override
+            public void undo() throws CannotUndoException {
+                SPObject absoluteRoot = getAbsoluteRoot();
                 try {
                     absoluteRoot.begin("Undoing compound edit " + getUndoPresentationName());
                     super.undo();
@@ -122,13 +135,7 @@ public class SPObjectUndoManager extends UndoManager implements NotifyingUndoMan
             
             @Override
             public void redo() throws CannotRedoException {
-                List<SPObject> ancestorList = SQLPowerUtils.getAncestorList(spObjectRoot);
-                SPObject absoluteRoot;
-                if (ancestorList.isEmpty()) {
-                    absoluteRoot = spObjectRoot;
-                } else {
-                    absoluteRoot = ancestorList.get(0);
-                }
+                SPObject absoluteRoot = getAbsoluteRoot();
                 try {
                     absoluteRoot.begin("Redoing compound edit " + getRedoPresentationName());
                     super.redo();
@@ -160,7 +167,7 @@ public class SPObjectUndoManager extends UndoManager implements NotifyingUndoMan
             }
         };
 
-        private CompoundEdit ce;
+        private CompEdit ce;
 
         private int compoundEditStackCount;
 
@@ -415,6 +422,43 @@ public class SPObjectUndoManager extends UndoManager implements NotifyingUndoMan
      */
     private final SPObject spObjectRoot;
 
+    /**
+     * The default limit on the estimated number of bytes retained by the edits
+     * in this undo manager.
+     */
+    public static final long DEFAULT_RETAINED_BYTES_LIMIT = 32 * 1024 * 1024;
+
+    /**
+     * The number of bytes an {@link SPObject} is estimated to retain when it
+     * is only reachable through an edit, such as a removed object.
+     */
+    private static final long OBJECT_SIZE_ESTIMATE = 1024;
+
+    /**
+     * The number of bytes an edit is estimated to retain, not counting the
+     * objects and values it refers to.
+     */
+    private static final long EDIT_SIZE_ESTIMATE = 64;
+
+    /**
+     * Edits are discarded, oldest first, when the estimated number of bytes
+     * retained by the edits in this undo manager goes over this limit. The
+     * edit to be undone next is never discarded. A limit of 0 or less means
+     * there is no limit.
+     */
+    private long retainedBytesLimit = DEFAULT_RETAINED_BYTES_LIMIT;
+
+    /**
+     * The estimated number of bytes retained by all of the edits in
+     * {@link #edits}.
+     */
+    private long retainedBytes = 0;
+
+    /**
+     * The estimated size of each edit in {@link #edits}.
+     */
+    private final Map<UndoableEdit, Long> editSizes = new IdentityHashMap<UndoableEdit, Long>();
+
     public SPObjectUndoManager(SPObject objectRoot) {
         this.spObjectRoot = objectRoot;
         init(spObjectRoot);
@@ -439,7 +483,18 @@ public class SPObjectUndoManager extends UndoManager implements NotifyingUndoMan
         if (!(isUndoing() || isRedoing())) {
             if (logger.isDebugEnabled())
                 logger.debug("Added new undoableEdit to undo manager " + anEdit);
+            long size = estimateSize(anEdit);
+            editSizes.put(anEdit, size);
+            retainedBytes += size;
             boolean success = super.addEdit(anEdit);
+            if (edits.isEmpty() || edits.lastElement() != anEdit) {
+                // The edit was absorbed by the previous edit or not added.
+                Long absorbedSize = editSizes.remove(anEdit);
+                if (absorbedSize != null) {
+                    retainedBytes -= absorbedSize;
+                }
+            }
+            trimForRetainedBytesLimit();
             fireStateChanged();
             return success;
         }
@@ -447,6 +502,110 @@ public class SPObjectUndoManager extends UndoManager implements NotifyingUndoMan
         return true;
     }
 
+    /**
+     * Discards the oldest edits until the estimated size of the edits is
+     * within the retained bytes limit, keeping at least the edit to be undone
+     * next and the edits that can be redone.
+     */
+    private void trimForRetainedBytesLimit() {
+        if (retainedBytesLimit <= 0) return;
+        int nextUndo = edits.indexOf(editToBeUndone());
+        int discard = 0;
+        long remaining = retainedBytes;
+        while (remaining > retainedBytesLimit && discard < nextUndo) {
+            Long size = editSizes.get(edits.get(discard));
+            if (size != null) {
+                remaining -= size;
+            }
+            discard++;
+        }
+        if (discard > 0) {
+            logger.debug("Discarding " + discard + " edits to stay within " + retainedBytesLimit + " bytes");
+            trimEdits(0, discard - 1);
+        }
+    }
+
+    /**
+     * Removes the edits from the given range, inclusive, and forgets their
+     * sizes. The edits are killed by the super class, which releases the
+     * objects they refer to as long as nothing else refers to the edits.
+     */
+    @Override
+    protected void trimEdits(int from, int to) {
+        for (int i = from; i <= to && i < edits.size(); i++) {
+            Long size = editSizes.remove(edits.get(i));
+            if (size != null) {
+                retainedBytes -= size;
+            }
+        }
+        super.trimEdits(from, to);
+    }
+
+    @Override
+    public synchronized void discardAllEdits() {
+        super.discardAllEdits();
+        editSizes.clear();
+        retainedBytes = 0;
+        fireStateChanged();
+    }
+
+    /**
+     * Returns a rough estimate of the number of bytes the given edit keeps
+     * from being garbage collected. Removing a child counts every object in
+     * the child's subtree as the edit is all that refers to the removed
+     * subtree. Added children are still referred to by the tree.
+     */
+    static long estimateSize(UndoableEdit edit) {
+        if (edit instanceof SPObjectUndoableEventAdapter.CompEdit) {
+            return EDIT_SIZE_ESTIMATE + ((SPObjectUndoableEventAdapter.CompEdit) edit).estimatedSize;
+        } else if (edit instanceof SPObjectChildEdit) {
+            SPChildEvent e = ((SPObjectChildEdit) edit).e;
+            if (e.getType() == EventType.REMOVED) {
+                return EDIT_SIZE_ESTIMATE + countObjects(e.getChild()) * OBJECT_SIZE_ESTIMATE;
+            }
+            return EDIT_SIZE_ESTIMATE;
+        } else if (edit instanceof SPObjectPropertyChangeUndoableEdit) {
+            PropertyChangeEvent event = ((SPObjectPropertyChangeUndoableEdit) edit).getEvent();
+            return EDIT_SIZE_ESTIMATE + estimateSize(event.getOldValue()) + estimateSize(event.getNewValue());
+        } else if (edit instanceof PropertyChangeEdit) {
+            PropertyChangeEdit propertyEdit = (PropertyChangeEdit) edit;
+            return EDIT_SIZE_ESTIMATE + estimateSize(propertyEdit.getOldValue()) + 
+                estimateSize(propertyEdit.getNewValue());
+        } else {
+            return EDIT_SIZE_ESTIMATE;
+        }
+    }
+
+    /**
+     * Returns a rough estimate of the size of a property value. Strings are
+     * the only values that commonly grow large, other values are counted as a
+     * small object.
+     */
+    private static long estimateSize(Object value) {
+        if (value instanceof String) {
+            return 40 + 2 * ((String) value).length();
+        } else if (value == null || value instanceof SPObject) {
+            // SPObjects are accounted for by the edits adding and removing them.
+            return 0;
+        } else {
+            return 16;
+        }
+    }
+
+    private static long countObjects(SPObject o) {
+        List<? extends SPObject> children;
+        if (o instanceof SQLObject) {
+            children = ((SQLObject) o).getChildrenWithoutPopulating();
+        } else {
+            children = o.getChildren();
+        }
+        long count = 1;
+        for (SPObject child : children) {
+            count += countObjects(child);
+        }
+        return count;
+    }
+
     /**
      * Calls super.undo() then refreshes the undo/redo actions.
      */
@@ -562,4 +721,45 @@ public class SPObjectUndoManager extends UndoManager implements NotifyingUndoMan
         this.loading = loading;
     }
 
+    /**
+     * Sets the limit on the estimated number of bytes retained by the edits
+     * in this undo manager. When the limit is exceeded the oldest edits are
+     * discarded. The number of edits is limited separately by
+     * {@link #setLimit(int)}.
+     * 
+     * @param retainedBytesLimit
+     *            The new limit in bytes. A limit of 0 or less means the edits
+     *            are only limited by count.
+     */
+    public synchronized void setRetainedBytesLimit(long retainedBytesLimit) {
+        this.retainedBytesLimit = retainedBytesLimit;
+        trimForRetainedBytesLimit();
+        fireStateChanged();
+    }
+
+    public synchronized long getRetainedBytesLimit() {
+        return retainedBytesLimit;
+    }
+
+    /**
+     * Returns the estimated number of bytes retained by the edits currently
+     * in this undo manager.
+     */
+    public synchronized long getRetainedBytes() {
+        return retainedBytes;
+    }
+
+    /**
+     * Returns the root of the tree the object this undo manager listens to is
+     * in. Undoing and redoing is done in a transaction on this object so all
+     * of the listeners of the tree see the changes as one.
+     */
+    private SPObject getAbsoluteRoot() {
+        SPObject absoluteRoot = spObjectRoot;
+        while (absoluteRoot.getParent() != null) {
+            absoluteRoot = absoluteRoot.getParent();
+        }
+        return absoluteRoot;
+    }
+
 }
@@ -196,7 +196,9 @@ public class ItemContainer implements Container {
     }
 
     public void setName(String name) {
+        String oldName = this.name;
         this.name = name;
+        pcs.firePropertyChange("name", oldName, name);
     }
 
     public Container createCopy() {
@@ -27,6 +27,7 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -36,6 +37,7 @@ import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.Map.Entry;
+import java.util.regex.Pattern;
 
 import javax.annotation.concurrent.GuardedBy;
 
@@ -94,6 +96,49 @@ public class QueryImpl implements Query {
 		NONE
 	}
 	
+	/**
+	 * The clauses of the generated query in the order they appear in the
+	 * query. Each clause is cached separately so a change to one part of the
+	 * query only needs that clause to be generated again.
+	 */
+	private enum QueryClause {
+		SELECT,
+		FROM,
+		WHERE,
+		GROUP_BY,
+		ORDER_BY
+	}
+	
+	/**
+	 * The identifier quote string of each database queries have been
+	 * generated for, by the URL of its data source. Looking up the quote
+	 * string needs a connection to the database which is far more expensive
+	 * than generating the query itself.
+	 */
+	@GuardedBy("identifierQuoteStrings")
+	private static final Map<String, String> identifierQuoteStrings = new HashMap<String, String>();
+	
+	/**
+	 * Matches the text of a {@link StringItem} that starts with an aggregate
+	 * function. The text is upper cased before it is matched.
+	 */
+	private static final Pattern AGGREGATED_STRING_ITEM_PATTERN;
+	static {
+		StringBuffer groupingRegex = new StringBuffer();
+		for (SQLGroupFunction function : SQLGroupFunction.values()) {
+			if (function != SQLGroupFunction.GROUP_BY) {
+				if (groupingRegex.length() == 0) {
+					groupingRegex.append("(");
+				} else {
+					groupingRegex.append("|");
+				}
+				groupingRegex.append(function.getGroupingName());
+			}
+		}
+		groupingRegex.append(").*");
+		AGGREGATED_STRING_ITEM_PATTERN = Pattern.compile(groupingRegex.toString().toUpperCase());
+	}
+	
 	/**
 	 * This graph represents the tables in the SQL statement. Each table in
 	 * the statement is a vertex in the graph. Each join is an edge in the 
@@ -198,6 +243,7 @@ public class QueryImpl implements Query {
      */
 	private PropertyChangeListener itemListener = new PropertyChangeListener() {
 		public void propertyChange(PropertyChangeEvent e) {
+		    invalidateClausesForItemProperty(e.getPropertyName());
 		    fireItemPropertyChangeEvent(e);
 		}
 	};
@@ -217,6 +263,7 @@ public class QueryImpl implements Query {
 			} else if (e.getPropertyName().equals("rightColumnOuterJoin")) {
 				updateJoinsOnInnerOuterChange(join, (Boolean) e.getNewValue(), false);
 			}
+			invalidateClauses(QueryClause.FROM);
 			fireJoinPropertyChangeEvent(e);
 		}
 	};
@@ -230,6 +277,19 @@ public class QueryImpl implements Query {
 		}
 	}; 
 	
+	/**
+	 * The alias and name of a container are used in every clause of the
+	 * query so any change to them needs the whole query to be generated again.
+	 * The position of the container does not affect the query.
+	 */
+	private final PropertyChangeListener containerListener = new PropertyChangeListener() {
+		public void propertyChange(PropertyChangeEvent e) {
+			if (!"position".equals(e.getPropertyName())) {
+				invalidateClauses();
+			}
+		}
+	};
+	
 	/**
 	 * This container holds the items that are considered constants in the SQL statement.
 	 * This could include functions or other elements that don't belong in a table.
@@ -249,6 +309,24 @@ public class QueryImpl implements Query {
 	 */
 	private String userModifiedQuery = null;
 	
+	/**
+	 * The text of each clause of the query from the last time it was
+	 * generated. A clause is removed from this map when something it depends
+	 * on changes. The names of the tables and columns in the database are
+	 * taken as fixed for as long as the query uses the database.
+	 */
+	private final Map<QueryClause, String> clauseCache = new EnumMap<QueryClause, String>(QueryClause.class);
+	
+	/**
+	 * The data source the cached clauses were generated for.
+	 */
+	private JDBCDataSource clauseDataSource;
+	
+	/**
+	 * The identifier quote string the cached clauses were generated with.
+	 */
+	private String clauseQuoteString;
+	
 	private SQLDatabaseMapping dbMapping;
 	
 	private String name;
@@ -373,6 +451,7 @@ public class QueryImpl implements Query {
 			constantsContainer = new ItemContainer("Constants");
 		}
 		constantsContainer.addChildListener(tableChildListener);
+		constantsContainer.addPropertyChangeListener(containerListener);
 		
 		if (dataSource != null) {
 			setDataSourceWithoutSideEffects(dataSource);
@@ -469,11 +548,13 @@ public class QueryImpl implements Query {
 		if (connectListeners) {
 		    for (Container table : fromTableList) {
 		        table.addChildListener(getTableChildListener());
+		        table.addPropertyChangeListener(containerListener);
 		        for (Item column : table.getItems()) {
 		            column.addPropertyChangeListener(itemListener);
 		        }
 		    }
 		    constantsContainer.addChildListener(getTableChildListener());
+		    constantsContainer.addPropertyChangeListener(containerListener);
 		    for (Item column : constantsContainer.getItems()) {
 		        column.addPropertyChangeListener(itemListener);
 		    }
@@ -520,6 +601,7 @@ public class QueryImpl implements Query {
 		}
 		boolean oldGrouping = groupingEnabled;
 		groupingEnabled = enabled;
+		invalidateClauses(QueryClause.SELECT, QueryClause.GROUP_BY, QueryClause.ORDER_BY);
 		firePropertyChangeEvent(new PropertyChangeEvent(this, GROUPING_ENABLED, oldGrouping, enabled));
 	}
 	
@@ -537,33 +619,149 @@ public class QueryImpl implements Query {
 			return userModifiedQuery;
 		}
 		
-		String quoteString = "";
-		Connection con = null;
-		if (database != null) {
-		    try {
-		        con = database.getConnection();
-		        quoteString = con.getMetaData().getIdentifierQuoteString();
-		    } catch (SQLObjectException e) {
-		        // Don't throw an exception for cases where we can't connect to the
-		        // database but the user still wants to view or save the query. If
-		        // this throws an exception going, to the SQL text tab will
-		        // cause an exception.
-		    } catch (SQLException e) {
-		        // Don't throw an exception for cases where we can't connect to the
-		        // database but the user still wants to view or save the query. If
-		        // this throws an exception going, to the SQL text tab will
-		        // cause an exception.
-		    } finally {
-		        if (con != null) {
-		            try {
-		                con.close();
-		            } catch (SQLException e) {
-		                logger.error(e);
-		            }
-		        }
+		String quoteString = getIdentifierQuoteString();
+		if (dataSource != clauseDataSource || !quoteString.equals(clauseQuoteString)) {
+		    clauseCache.clear();
+		    clauseDataSource = dataSource;
+		    clauseQuoteString = quoteString;
+		}
+
+		String select = clauseCache.get(QueryClause.SELECT);
+		if (select == null) {
+		    select = generateSelectClause(quoteString, converter);
+		    clauseCache.put(QueryClause.SELECT, select);
+		}
+		if (select.length() == 0) {
+			return "";
+		}
+		StringBuffer query = new StringBuffer(select);
+		for (QueryClause clause : QueryClause.values()) {
+		    if (clause == QueryClause.SELECT) continue;
+		    String text = clauseCache.get(clause);
+		    if (text == null) {
+		        text = generateClause(clause, quoteString, converter);
+		        clauseCache.put(clause, text);
 		    }
+		    query.append(text);
 		}
+		logger.debug(" Query is : " + query.toString());
+		return query.toString();
+	}
 
+    /**
+     * Returns the identifier quote string of the database this query runs on.
+     * The quote string is looked up once per data source URL rather than on
+     * every call as looking it up needs a connection. If the database cannot be
+     * connected to an empty string is returned and the lookup is tried again
+     * the next time.
+     */
+	private String getIdentifierQuoteString() {
+	    if (database == null) return "";
+	    String url = null;
+	    if (database.getDataSource() != null) {
+	        url = database.getDataSource().getUrl();
+	    }
+	    if (url != null) {
+	        synchronized (identifierQuoteStrings) {
+	            String quoteString = identifierQuoteStrings.get(url);
+	            if (quoteString != null) return quoteString;
+	        }
+	    }
+	    
+	    String quoteString = "";
+	    Connection con = null;
+	    try {
+	        con = database.getConnection();
+	        quoteString = con.getMetaData().getIdentifierQuoteString();
+	        if (url != null && quoteString != null) {
+	            synchronized (identifierQuoteStrings) {
+	                identifierQuoteStrings.put(url, quoteString);
+	            }
+	        }
+	    } catch (SQLObjectException e) {
+	        // Don't throw an exception for cases where we can't connect to the
+	        // database but the user still wants to view or save the query. If
+	        // this throws an exception going, to the SQL text tab will
+	        // cause an exception.
+	    } catch (SQLException e) {
+	        // Don't throw an exception for cases where we can't connect to the
+	        // database but the user still wants to view or save the query. If
+	        // this throws an exception going, to the SQL text tab will
+	        // cause an exception.
+	    } finally {
+	        if (con != null) {
+	            try {
+	                con.close();
+	            } catch (SQLException e) {
+	                logger.error(e);
+	            }
+	        }
+	    }
+	    return quoteString;
+	}
+
+    /**
+     * Marks the given clauses as changed so they are generated again the next
+     * time the query is generated. Calling this with no clauses marks the
+     * whole query as changed.
+     */
+	private void invalidateClauses(QueryClause ... clauses) {
+	    if (clauses.length == 0) {
+	        clauseCache.clear();
+	    } else {
+	        for (QueryClause clause : clauses) {
+	            clauseCache.remove(clause);
+	        }
+	    }
+	}
+
+    /**
+     * Marks the clauses that depend on the given property of an item as
+     * changed. Properties that are not known to affect only some of the
+     * clauses, like the name of the item, mark the whole query as changed.
+     */
+	private void invalidateClausesForItemProperty(String propertyName) {
+	    if (Item.ALIAS.equals(propertyName)) {
+	        invalidateClauses(QueryClause.SELECT);
+	    } else if (Item.SELECTED.equals(propertyName)) {
+	        invalidateClauses(QueryClause.SELECT, QueryClause.GROUP_BY, QueryClause.ORDER_BY);
+	    } else if (Item.WHERE.equals(propertyName)) {
+	        invalidateClauses(QueryClause.WHERE);
+	    } else if (Item.GROUP_BY.equals(propertyName)) {
+	        invalidateClauses(QueryClause.SELECT, QueryClause.GROUP_BY, QueryClause.ORDER_BY);
+	    } else if (Item.HAVING.equals(propertyName)) {
+	        invalidateClauses(QueryClause.GROUP_BY);
+	    } else if (Item.ORDER_BY.equals(propertyName) || "orderByOrdering".equals(propertyName)) {
+	        invalidateClauses(QueryClause.ORDER_BY);
+	    } else if (!"columnWidth".equals(propertyName)) {
+	        invalidateClauses();
+	    }
+	}
+
+    /**
+     * Returns the text of one of the clauses after the select list for
+     * {@link #generateQuery()}.
+     */
+	private String generateClause(QueryClause clause, String quoteString, ConstantConverter converter) {
+	    switch (clause) {
+	    case FROM:
+	        return generateFromClause(quoteString, converter);
+	    case WHERE:
+	        return generateWhereClause(quoteString, converter);
+	    case GROUP_BY:
+	        return generateGroupByClause(quoteString, converter);
+	    case ORDER_BY:
+	        return generateOrderByClause(quoteString, converter);
+	    default:
+	        throw new IllegalArgumentException("Unknown clause " + clause);
+	    }
+	}
+
+    /**
+     * Returns the select list of the query or an empty string if no items are
+     * selected, in which case there is no query.
+     */
+	private String generateSelectClause(String quoteString, ConstantConverter converter) {
 		if (getSelectedColumns().size() ==  0) {
 			return "";
 		}
@@ -597,6 +795,15 @@ public class QueryImpl implements Query {
 			    query.append(" AS " + quoteString + col.getGroupBy() + "_" + col.getName() + quoteString);
 			}
 		}
+		return query.toString();
+	}
+
+    /**
+     * Returns the from clause of the query with the joins between its tables,
+     * followed by a space.
+     */
+	private String generateFromClause(String quoteString, ConstantConverter converter) {
+		StringBuffer query = new StringBuffer();
 		if (!fromTableList.isEmpty()) {
 			query.append(" \nFROM");
 		}
@@ -683,6 +890,16 @@ public class QueryImpl implements Query {
 			previousTable = table;
 		}
 		query.append(" ");
+		return query.toString();
+	}
+
+    /**
+     * Returns the where clause of the query, made of the where condition of
+     * each item and the global where clause, or an empty string if there are
+     * no conditions.
+     */
+	private String generateWhereClause(String quoteString, ConstantConverter converter) {
+		StringBuffer query = new StringBuffer();
 		boolean isFirstWhere = true;
 		Map<Item, String> whereMapping = new HashMap<Item, String>();
 		for (Item item : constantsContainer.getItems()) {
@@ -722,6 +939,15 @@ public class QueryImpl implements Query {
 			}
 			query.append(" " + globalWhereClause);
 		}
+		return query.toString();
+	}
+
+    /**
+     * Returns the group by and having clauses of the query or an empty string
+     * if grouping is not enabled.
+     */
+	private String generateGroupByClause(String quoteString, ConstantConverter converter) {
+		StringBuffer query = new StringBuffer();
 		if (groupingEnabled) {
 		    boolean isFirstGroupBy = true;
 		    for (Item col : getSelectedColumns()) {
@@ -771,6 +997,15 @@ public class QueryImpl implements Query {
 		    query.append(" ");
 		}
 		
+		return query.toString();
+	}
+
+    /**
+     * Returns the order by clause of the query or an empty string if the query
+     * is not ordered.
+     */
+	private String generateOrderByClause(String quoteString, ConstantConverter converter) {
+		StringBuffer query = new StringBuffer();
 		if (!getOrderByList().isEmpty()) {
 			boolean isFirstOrder = true;
 			for (Item col : getOrderByList()) {
@@ -799,7 +1034,6 @@ public class QueryImpl implements Query {
 				}
 			}
 		}
-		logger.debug(" Query is : " + query.toString());
 		return query.toString();
 	}
 
@@ -853,21 +1087,9 @@ public class QueryImpl implements Query {
 	 * (like sum, count, avg) true will be returned. False will be returned otherwise.
 	 */
 	private boolean isStringItemAggregated(Item col) {
-		StringBuffer groupingRegex = new StringBuffer();
-		for (SQLGroupFunction function : SQLGroupFunction.values()) {
-			if (function != SQLGroupFunction.GROUP_BY) {
-				if (groupingRegex.length() == 0) {
-					groupingRegex.append("(");
-				} else {
-					groupingRegex.append("|");
-				}
-				groupingRegex.append(function.getGroupingName());
-			}
-		}
-		groupingRegex.append(").*");
 		boolean isStringItemAndAggregated = col instanceof StringItem 
-				&& ((String) col.getItem()).toUpperCase().matches(
-						groupingRegex.toString().toUpperCase());
+				&& AGGREGATED_STRING_ITEM_PATTERN.matcher(
+						((String) col.getItem()).toUpperCase()).matches();
 		return isStringItemAndAggregated;
 	}
 
@@ -1027,6 +1249,8 @@ public class QueryImpl implements Query {
 	            return;
 	        }
 	        table.removeChildListener(getTableChildListener());
+	        table.removePropertyChangeListener(containerListener);
+	        invalidateClauses();
 	        for (Item col : table.getItems()) {
 	            removeItem(col);
 	        }
@@ -1060,6 +1284,8 @@ public class QueryImpl implements Query {
 	    	startCompoundEdit("Add Table " + container.getName());
 	    	fromTableList.add(index, container);
 	    	container.addChildListener(getTableChildListener());
+	    	container.addPropertyChangeListener(containerListener);
+	    	invalidateClauses();
 	    	for (Item col : container.getItems()) {
 	    		addItem(col);
 	    	}
@@ -1075,6 +1301,7 @@ public class QueryImpl implements Query {
 	public void setGlobalWhereClause(String whereClause) {
 		String oldWhere = globalWhereClause;
 		globalWhereClause = whereClause;
+		invalidateClauses(QueryClause.WHERE);
 		firePropertyChangeEvent(new PropertyChangeEvent(this, GLOBAL_WHERE_CLAUSE, oldWhere, whereClause));
 	}
 	
@@ -1101,6 +1328,7 @@ public class QueryImpl implements Query {
 				break;
 			}
 		}
+		invalidateClauses(QueryClause.FROM);
 		fireJoinRemoved(joinLine);
 	}
 
@@ -1151,6 +1379,7 @@ public class QueryImpl implements Query {
 	    	joinMapping.get(rightContainer).add(join);
 	    }
 	    join.setParent(this);
+	    invalidateClauses(QueryClause.FROM);
 	    fireJoinAdded(join);
 	}
 	
@@ -1160,6 +1389,7 @@ public class QueryImpl implements Query {
 	public void removeItem(Item col) {
 		logger.debug("Item name is " + col.getName());
 		col.removePropertyChangeListener(itemListener);
+		invalidateClauses();
 		fireItemRemoved(col);
 	}
 	
@@ -1168,6 +1398,7 @@ public class QueryImpl implements Query {
      */
 	public void addItem(Item col) {
 		col.addPropertyChangeListener(itemListener);
+		invalidateClauses();
 		fireItemAdded(col);
 	}
 
@@ -1291,6 +1522,7 @@ public class QueryImpl implements Query {
 		SQLDatabase old = database;
 	    if (database != null && database == newDatabase) return false;
 	    this.database = newDatabase;
+	    invalidateClauses();
         firePropertyChangeEvent(new PropertyChangeEvent(this, "database", old, newDatabase));
 	    return true;
 	}
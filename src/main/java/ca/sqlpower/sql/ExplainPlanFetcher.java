@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Fetches the plan a database would use to run a statement. Each
+ * {@link JDBCDataSourceType} can name the class of its fetcher with the
+ * {@link JDBCDataSourceType#EXPLAIN_PLAN_FETCHER} property, as the syntax for
+ * asking for a plan differs between platforms. Implementations must have a
+ * public no-argument constructor.
+ */
+public interface ExplainPlanFetcher {
+
+	/**
+	 * Returns the plan for the given statement as text, one line per row of
+	 * the database's plan. The statement is not run.
+	 */
+	String fetchPlan(Connection con, String sql) throws SQLException;
+}
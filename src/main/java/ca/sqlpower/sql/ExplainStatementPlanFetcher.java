@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Fetches a plan by running the statement with a prefix, EXPLAIN by default,
+ * that makes the database return the plan as a result set instead of running
+ * the statement. This is the syntax PostgreSQL and MySQL use. The columns of
+ * each row of the result are separated by tabs.
+ */
+public class ExplainStatementPlanFetcher implements ExplainPlanFetcher {
+
+	private final String prefix;
+
+	public ExplainStatementPlanFetcher() {
+		this("EXPLAIN ");
+	}
+
+	/**
+	 * @param prefix
+	 *            The text, including any trailing space, that is put in front
+	 *            of a statement to get its plan.
+	 */
+	protected ExplainStatementPlanFetcher(String prefix) {
+		this.prefix = prefix;
+	}
+
+	public String fetchPlan(Connection con, String sql) throws SQLException {
+		String statement = sql.trim();
+		while (statement.endsWith(";")) {
+			statement = statement.substring(0, statement.length() - 1).trim();
+		}
+		Statement stmt = null;
+		ResultSet rs = null;
+		try {
+			stmt = con.createStatement();
+			rs = stmt.executeQuery(prefix + statement);
+			int columnCount = rs.getMetaData().getColumnCount();
+			StringBuilder plan = new StringBuilder();
+			while (rs.next()) {
+				for (int i = 1; i <= columnCount; i++) {
+					if (i > 1) {
+						plan.append('\t');
+					}
+					plan.append(rs.getString(i));
+				}
+				plan.append('\n');
+			}
+			return plan.toString();
+		} finally {
+			if (rs != null) rs.close();
+			if (stmt != null) stmt.close();
+		}
+	}
+}
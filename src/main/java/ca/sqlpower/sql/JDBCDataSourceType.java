@@ -311,6 +311,7 @@ public class JDBCDataSourceType {
     public static final String KETTLE_DB_TYPES = "ca.sqlpower.architect.etl.kettle.connectionType";
     public static final String SUPPORTS_UPDATEABLE_RESULT_SETS = "Supports Updatable Result Sets";
     public static final String SUPPORTS_STREAM_QUERIES = "Supports Stream Queries";
+    public static final String EXPLAIN_PLAN_FETCHER = "Explain Plan Fetcher";
     
     /**
      * This type's parent type.  This value will be null if this type has no
@@ -581,6 +582,30 @@ public class JDBCDataSourceType {
         putPropertyImpl("DDLGeneratorClass", DDL_GENERATOR, className);
     }
 
+    public String getExplainPlanFetcherClass() {
+        return getProperty(EXPLAIN_PLAN_FETCHER);
+    }
+    
+    public void setExplainPlanFetcherClass(String className) {
+        putPropertyImpl("explainPlanFetcherClass", EXPLAIN_PLAN_FETCHER, className);
+    }
+
+    /**
+     * Creates the {@link ExplainPlanFetcher} named by this type's
+     * {@link #EXPLAIN_PLAN_FETCHER} property, or returns null if there is none.
+     */
+    public ExplainPlanFetcher createExplainPlanFetcher() {
+        String className = getExplainPlanFetcherClass();
+        if (className == null || className.trim().length() == 0) return null;
+        try {
+            return (ExplainPlanFetcher) Class.forName(className.trim(), true,
+                    JDBCDataSourceType.class.getClassLoader()).newInstance();
+        } catch (Exception e) {
+            throw new RuntimeException("Could not create the explain plan fetcher " + className +
+                    " for the " + getName() + " database type", e);
+        }
+    }
+
     public JDBCDataSourceType getParentType() {
         return parentType;
     }
@@ -43,6 +43,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+import javax.annotation.concurrent.GuardedBy;
 import javax.swing.event.UndoableEditEvent;
 import javax.swing.event.UndoableEditListener;
 import javax.swing.undo.AbstractUndoableEdit;
@@ -269,6 +270,16 @@ public class PlDotIni implements DataSourceCollection<SPDataSource> {
      */
     private final List<Object> fileSections = new ArrayList<Object>();
 
+    /**
+     * The sorted lists of data sources of each type that
+     * {@link #getConnections(Class)} has been asked for. These are kept up
+     * to date as data sources are added, removed and renamed so the sections
+     * do not need to be filtered and sorted on every call.
+     */
+    @GuardedBy("connectionLists")
+    private final Map<Class<?>, SortedDataSourceList<?>> connectionLists =
+        new HashMap<Class<?>, SortedDataSourceList<?>>();
+
     /**
      * The time we last read the PL.INI file.
      */
@@ -838,10 +849,8 @@ public class PlDotIni implements DataSourceCollection<SPDataSource> {
         return list;
     }
 
-    /* Creates a list of data sources by iterating over all the sections and
-     * picking the ones that are SPDataSource items.  Yes, this is not
-     * optimal, but we can defer optimising it until someone proves it's an
-     * actual performance issue.
+    /* Returns a sorted list of all of the data sources. See
+     * getConnections(Class) below.
      */
     public List<SPDataSource> getConnections() {
         return getConnections(SPDataSource.class);
@@ -853,17 +862,16 @@ public class PlDotIni implements DataSourceCollection<SPDataSource> {
      * @param classType
      * @return
      */
+    @SuppressWarnings("unchecked")
     public <C extends SPDataSource> List<C> getConnections(Class<C> classType) {
-        List<C> connections = new ArrayList<C>();
-	    Iterator<Object> it = fileSections.iterator();
-	    while (it.hasNext()) {
-	        Object next = it.next();
-	        if (classType.isInstance(next)) {
-	            connections.add(classType.cast(next));
-	        }
-	    }
-        Collections.sort(connections);
-        return connections;
+        synchronized (connectionLists) {
+            SortedDataSourceList<C> connections = (SortedDataSourceList<C>) connectionLists.get(classType);
+            if (connections == null) {
+                connections = new SortedDataSourceList<C>(classType, fileSections);
+                connectionLists.put(classType, connections);
+            }
+            return new ArrayList<C>(connections);
+        }
     }
 
     /* (non-Javadoc)
@@ -993,6 +1001,11 @@ public class PlDotIni implements DataSourceCollection<SPDataSource> {
                 SPDataSource current = (SPDataSource) o;
                 if (current.getName().equals(dbcs.getName())) {
                     fileSections.remove(where);
+                    synchronized (connectionLists) {
+                        for (SortedDataSourceList<?> connections : connectionLists.values()) {
+                            connections.dataSourceRemoved(current);
+                        }
+                    }
                     fireRemoveEvent(where, dbcs);
                     return;
                 }
@@ -1035,6 +1048,11 @@ public class PlDotIni implements DataSourceCollection<SPDataSource> {
 	 */
 	private void addDataSourceImpl(SPDataSource dbcs) {
 		fileSections.add(dbcs);
+		synchronized (connectionLists) {
+		    for (SortedDataSourceList<?> connections : connectionLists.values()) {
+		        connections.dataSourceAdded(dbcs);
+		    }
+		}
 		fireAddEvent(dbcs);
 	}
 
@@ -0,0 +1,901 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Reads the rows of a query one page at a time so a result of millions of
+ * rows can be browsed without holding all of it in memory. Only the most
+ * recently used pages are kept, and a page that was dropped is read from the
+ * database again when it is next asked for.
+ * <p>
+ * If the query is a plain select ordered by columns it also returns, each
+ * page after the first is read with a keyset predicate on the ordering
+ * columns of the last row of the page before it. The database can then seek
+ * to the page using whatever index serves the ordering instead of reading and
+ * throwing away every row before it. Rows that tie with the last row of the
+ * previous page are skipped by counting them, so the ordering columns do not
+ * have to be unique as long as the database returns ties in the same order
+ * each time. The ordering columns must also be declared not null, as the
+ * keyset predicate never selects a row with a null ordering column. All other
+ * queries are read from a single result set that is kept open and moved to the
+ * start of each page.
+ * <p>
+ * A pager is not thread safe, and it uses its connection until it is
+ * {@link #close() closed}. A {@link StatementListener} can be given to the
+ * pager to find out which statement is running so it can be cancelled from
+ * another thread.
+ */
+public class ResultSetPager {
+
+	private static final Logger logger = Logger.getLogger(ResultSetPager.class);
+
+	/**
+	 * Keywords that make a query unsuitable for keyset paging when they are
+	 * outside of any parentheses, either because a predicate cannot just be
+	 * added to the where clause or because the query already limits its rows.
+	 */
+	private static final Set<String> KEYSET_BLOCKING_KEYWORDS = new HashSet<String>(Arrays.asList(
+			"GROUP", "HAVING", "UNION", "INTERSECT", "EXCEPT", "MINUS", "LIMIT", "OFFSET",
+			"FETCH", "FOR", "TOP", "INTO", "CONNECT", "START"));
+
+	/**
+	 * Matches a column name, optionally qualified. The first group is the
+	 * column name without its qualifiers.
+	 */
+	private static final String COLUMN_REFERENCE =
+		"(?:(?:\"[^\"]+\"|[a-z_][\\w$]*)\\s*\\.\\s*)*(\"[^\"]+\"|[a-z_][\\w$]*)";
+
+	private static final Pattern COLUMN_REFERENCE_PATTERN = Pattern.compile(
+			COLUMN_REFERENCE, Pattern.CASE_INSENSITIVE);
+
+	/**
+	 * Matches one item of an order by clause that names a column followed by
+	 * an optional direction.
+	 */
+	private static final Pattern ORDER_BY_ITEM = Pattern.compile(
+			"(" + COLUMN_REFERENCE + ")(?:\\s+(asc|desc))?", Pattern.CASE_INSENSITIVE);
+
+	/**
+	 * Matches an item of a select list that gives its expression a name,
+	 * with or without the AS keyword.
+	 */
+	private static final Pattern SELECT_ITEM_ALIAS = Pattern.compile(
+			"(.*?)\\s+(?:as\\s+)?(\"[^\"]+\"|[a-z_][\\w$]*)",
+			Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+	/**
+	 * Is told about each statement the pager runs while it is executing or
+	 * reading rows from it.
+	 */
+	public static interface StatementListener {
+
+		/**
+		 * Called before the pager executes the statement or reads rows from
+		 * it.
+		 */
+		void statementStarted(Statement stmt);
+
+		/**
+		 * Called when the pager is done with the statement until the next
+		 * page is read, whether or not reading the page succeeded.
+		 */
+		void statementFinished(Statement stmt);
+	}
+
+	/**
+	 * Is given the whole result of the query by
+	 * {@link ResultSetPager#readAll(ResultReader)}.
+	 */
+	public static interface ResultReader {
+		void read(ResultSet rs) throws SQLException;
+	}
+
+	/**
+	 * A word outside of any quotes or parentheses in a query.
+	 */
+	private static class Word {
+		final String text;
+		final int start;
+		final int end;
+
+		Word(String text, int start, int end) {
+			this.text = text;
+			this.start = start;
+			this.end = end;
+		}
+	}
+
+	/**
+	 * One of the columns the query is ordered by.
+	 */
+	private static class KeyColumn {
+
+		/**
+		 * The column as it is written in the order by clause.
+		 */
+		final String expression;
+
+		/**
+		 * The name of the column without its qualifier or quotes.
+		 */
+		final String name;
+
+		final boolean descending;
+
+		/**
+		 * The index of the column in the rows of the result, starting at 0, or
+		 * -1 until the columns of the result are known.
+		 */
+		int index = -1;
+
+		KeyColumn(String expression, String name, boolean descending) {
+			this.expression = expression;
+			this.name = name;
+			this.descending = descending;
+		}
+	}
+
+	/**
+	 * Where a page starts when pages are read with the keyset predicate.
+	 */
+	private static class PageStart {
+
+		/**
+		 * The ordering columns of the last row before the page, or null for the
+		 * first page.
+		 */
+		final Object[] afterKey;
+
+		/**
+		 * The number of rows the keyset query returns first that tie with
+		 * afterKey but belong to earlier pages.
+		 */
+		final int skip;
+
+		PageStart(Object[] afterKey, int skip) {
+			this.afterKey = afterKey;
+			this.skip = skip;
+		}
+	}
+
+	private final Connection con;
+
+	private final String query;
+
+	private final int pageSize;
+
+	private final int pagesInMemory;
+
+	/**
+	 * The most rows the pager reads, or 0 for no limit.
+	 */
+	private final int maxRows;
+
+	private final StatementListener statementListener;
+
+	/**
+	 * The pages in memory by page number, least recently used first.
+	 */
+	private final Map<Integer, List<Object[]>> pages;
+
+	private CachedResultSetMetaData metaData;
+
+	/**
+	 * The columns the query is ordered by, or null if the pages are read with
+	 * the cursor.
+	 */
+	private List<KeyColumn> keyColumns;
+
+	/**
+	 * The query with the keyset predicate added to its where clause.
+	 */
+	private String keysetQuery;
+
+	/**
+	 * The index in the ordering key of the value for each parameter of the
+	 * {@link #keysetQuery}.
+	 */
+	private int[] keysetParameters;
+
+	private PreparedStatement keysetStatement;
+
+	/**
+	 * The start of every page that has been reached so far, by page number.
+	 * This is only used for keyset paging.
+	 */
+	private final List<PageStart> pageStarts = new ArrayList<PageStart>();
+
+	/**
+	 * The number of rows known to be in the result so far.
+	 */
+	private int rowCount;
+
+	/**
+	 * True once the last page of the result has been read, which makes
+	 * {@link #rowCount} the number of rows in the whole result.
+	 */
+	private boolean complete;
+
+	private Statement cursorStatement;
+
+	/**
+	 * The result set that pages are read from when keyset paging cannot be
+	 * used. It is scrollable if the driver supports it.
+	 */
+	private ResultSet cursor;
+
+	private boolean scrollable;
+
+	/**
+	 * The number of rows of the cursor that are before its current position.
+	 */
+	private int cursorPosition;
+
+	private int keysetReadCount;
+
+	private int cursorReadCount;
+
+	/**
+	 * Creates a pager for the given query and reads its first page.
+	 * 
+	 * @param con
+	 *            The connection to run the query on. It is not closed by the
+	 *            pager.
+	 * @param query
+	 *            A single select statement.
+	 * @param pageSize
+	 *            The number of rows to read at a time.
+	 * @param pagesInMemory
+	 *            The number of pages to keep in memory.
+	 */
+	public ResultSetPager(Connection con, String query, int pageSize, int pagesInMemory) throws SQLException {
+		this(con, query, pageSize, pagesInMemory, 0, null);
+	}
+
+	/**
+	 * Creates a pager for the given query and reads its first page.
+	 * 
+	 * @param con
+	 *            The connection to run the query on. It is not closed by the
+	 *            pager.
+	 * @param query
+	 *            A single select statement.
+	 * @param pageSize
+	 *            The number of rows to read at a time.
+	 * @param pagesInMemory
+	 *            The number of pages to keep in memory.
+	 * @param maxRows
+	 *            The most rows to read from the result, or 0 to read all of
+	 *            them. The result is treated as ending after this many rows.
+	 * @param statementListener
+	 *            Told about each statement while the pager uses it. This may
+	 *            be null.
+	 */
+	public ResultSetPager(Connection con, String query, int pageSize, final int pagesInMemory,
+			int maxRows, StatementListener statementListener) throws SQLException {
+		if (pageSize < 1 || pagesInMemory < 1) {
+			throw new IllegalArgumentException("The page size and the number of pages in memory " +
+					"must be positive, not " + pageSize + " and " + pagesInMemory);
+		}
+		if (maxRows < 0) {
+			throw new IllegalArgumentException("The row limit must not be negative, not " + maxRows);
+		}
+		this.con = con;
+		this.query = stripTerminator(query);
+		this.pageSize = pageSize;
+		this.pagesInMemory = pagesInMemory;
+		this.maxRows = maxRows;
+		this.statementListener = statementListener;
+		pages = new LinkedHashMap<Integer, List<Object[]>>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, List<Object[]>> eldest) {
+				return size() > pagesInMemory;
+			}
+		};
+		createKeysetQuery();
+		if (keyColumns != null) {
+			pageStarts.add(new PageStart(null, 0));
+		}
+		readPage(0);
+	}
+
+	/**
+	 * Returns true if the given statement is a single select statement that
+	 * can be given to a pager.
+	 */
+	public static boolean isPageable(String sql) {
+		List<Word> words = findTopLevelWords(stripTerminator(sql));
+		return words != null && !words.isEmpty() && words.get(0).text.equals("SELECT");
+	}
+
+	/**
+	 * Returns the rows of the given page, reading it from the database if it
+	 * is not in memory. Pages past the end of the result are empty. The
+	 * returned list must not be modified.
+	 */
+	public List<Object[]> getPage(int page) throws SQLException {
+		List<Object[]> rows = pages.get(page);
+		if (rows != null) {
+			return rows;
+		}
+		while (!complete && rowCount < page * pageSize) {
+			readPage(rowCount / pageSize);
+		}
+		if (complete && page * pageSize >= rowCount) {
+			return Collections.emptyList();
+		}
+		return readPage(page);
+	}
+
+	/**
+	 * Returns the row at the given index, starting at 0, reading its page if
+	 * it is not in memory.
+	 * 
+	 * @throws IndexOutOfBoundsException
+	 *             If the row is past the end of the result.
+	 */
+	public Object[] getRow(int row) throws SQLException {
+		return getPage(row / pageSize).get(row % pageSize);
+	}
+
+	/**
+	 * Returns the number of rows read so far. This is the number of rows in
+	 * the result once {@link #isComplete()} returns true.
+	 */
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * Returns true if the last page of the result has been read, or the row
+	 * limit has been reached.
+	 */
+	public boolean isComplete() {
+		return complete;
+	}
+
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	public int getPagesInMemory() {
+		return pagesInMemory;
+	}
+
+	/**
+	 * Returns the most rows the pager reads, or 0 if there is no limit.
+	 */
+	public int getMaxRows() {
+		return maxRows;
+	}
+
+	/**
+	 * Returns true if pages are read with a keyset predicate rather than by
+	 * moving a cursor.
+	 */
+	public boolean isKeysetPaging() {
+		return keyColumns != null;
+	}
+
+	public ResultSetMetaData getMetaData() {
+		return metaData;
+	}
+
+	/**
+	 * Returns the number of pages read with the keyset query. This is package
+	 * private for testing.
+	 */
+	int getKeysetReadCount() {
+		return keysetReadCount;
+	}
+
+	/**
+	 * Returns the number of pages read from the cursor. This is package
+	 * private for testing.
+	 */
+	int getCursorReadCount() {
+		return cursorReadCount;
+	}
+
+	/**
+	 * Runs the query again on a statement of its own and gives its whole
+	 * result, up to the row limit, to the reader. The result set is forward
+	 * only and is closed when the reader returns, so this can stream every
+	 * row somewhere without keeping them in memory. The statement is reported
+	 * to the statement listener while it is used.
+	 * <p>
+	 * This only uses the pager's connection, query and row limit, so it can
+	 * run on another thread from the one reading pages, and after the pager
+	 * is closed.
+	 */
+	public void readAll(ResultReader reader) throws SQLException {
+		Statement stmt = con.createStatement();
+		try {
+			stmt.setFetchSize(pageSize);
+			stmt.setMaxRows(maxRows);
+			fireStatementStarted(stmt);
+			try {
+				ResultSet rs = stmt.executeQuery(query);
+				try {
+					reader.read(rs);
+				} finally {
+					rs.close();
+				}
+			} finally {
+				fireStatementFinished(stmt);
+			}
+		} finally {
+			stmt.close();
+		}
+	}
+
+	/**
+	 * Closes the statements and result set the pager has open and drops the
+	 * pages in memory. The connection is left open.
+	 */
+	public void close() throws SQLException {
+		pages.clear();
+		try {
+			closeCursor();
+		} finally {
+			if (keysetStatement != null) {
+				keysetStatement.close();
+				keysetStatement = null;
+			}
+		}
+	}
+
+	/**
+	 * Reads the given page from the database and keeps it in memory. The page
+	 * must be at most one past the last page read.
+	 */
+	private List<Object[]> readPage(int page) throws SQLException {
+		int rowsToRead = pageSize;
+		if (maxRows > 0) {
+			rowsToRead = Math.min(pageSize, maxRows - page * pageSize);
+		}
+		List<Object[]> rows = null;
+		PageStart start = keyColumns == null ? null : pageStarts.get(page);
+		if (start != null) {
+			try {
+				rows = readKeysetPage(start, rowsToRead);
+			} catch (SQLException e) {
+				if (start.afterKey == null) throw e;
+				logger.warn("Could not read a page with the keyset query " + keysetQuery +
+						", paging with the cursor instead", e);
+				keyColumns = null;
+			}
+		}
+		if (rows == null) {
+			rows = readCursorPage(page, rowsToRead);
+		}
+		pages.put(page, rows);
+		if (rows.size() < pageSize || (maxRows > 0 && page * pageSize + rows.size() >= maxRows)) {
+			complete = true;
+			rowCount = page * pageSize + rows.size();
+		} else {
+			rowCount = Math.max(rowCount, (page + 1) * pageSize);
+		}
+		if (keyColumns != null && !complete && pageStarts.size() == page + 1) {
+			pageStarts.add(nextPageStart(start, rows));
+		}
+		return rows;
+	}
+
+	private List<Object[]> readKeysetPage(PageStart start, int rowsToRead) throws SQLException {
+		Statement stmt;
+		if (start.afterKey == null) {
+			stmt = con.createStatement();
+			stmt.setMaxRows(rowsToRead);
+			stmt.setFetchSize(pageSize);
+		} else {
+			if (keysetStatement == null) {
+				keysetStatement = con.prepareStatement(keysetQuery);
+				keysetStatement.setFetchSize(pageSize);
+			}
+			for (int i = 0; i < keysetParameters.length; i++) {
+				keysetStatement.setObject(i + 1, start.afterKey[keysetParameters[i]]);
+			}
+			keysetStatement.setMaxRows(rowsToRead + start.skip);
+			stmt = keysetStatement;
+		}
+		fireStatementStarted(stmt);
+		try {
+			ResultSet rs;
+			if (stmt == keysetStatement) {
+				rs = keysetStatement.executeQuery();
+			} else {
+				rs = stmt.executeQuery(query);
+			}
+			try {
+				for (int i = 0; i < start.skip && rs.next(); i++) {
+					// these rows are on earlier pages
+				}
+				keysetReadCount++;
+				return readRows(rs, rowsToRead);
+			} finally {
+				rs.close();
+			}
+		} finally {
+			fireStatementFinished(stmt);
+			if (stmt != keysetStatement) {
+				stmt.close();
+			}
+		}
+	}
+
+	/**
+	 * Reads the given page from the cursor, running the query again first if
+	 * the cursor cannot scroll back to the page.
+	 */
+	private List<Object[]> readCursorPage(int page, int rowsToRead) throws SQLException {
+		int first = page * pageSize;
+		if (cursor == null || (!scrollable && cursorPosition > first)) {
+			openCursor();
+		}
+		Statement stmt = cursorStatement;
+		fireStatementStarted(stmt);
+		try {
+			if (cursor == null) {
+				cursor = stmt.executeQuery(query);
+				scrollable = cursor.getType() != ResultSet.TYPE_FORWARD_ONLY;
+			}
+			if (scrollable) {
+				if (first == 0) {
+					cursor.beforeFirst();
+				} else if (!cursor.absolute(first)) {
+					return Collections.emptyList();
+				}
+				cursorPosition = first;
+			} else {
+				while (cursorPosition < first && cursor.next()) {
+					cursorPosition++;
+				}
+				if (cursorPosition < first) {
+					return Collections.emptyList();
+				}
+			}
+			List<Object[]> rows = readRows(cursor, rowsToRead);
+			cursorPosition += rows.size();
+			cursorReadCount++;
+			return rows;
+		} finally {
+			fireStatementFinished(stmt);
+		}
+	}
+
+	/**
+	 * Creates the statement for the cursor, closing the old cursor. The query
+	 * is executed when the next page is read from the cursor.
+	 */
+	private void openCursor() throws SQLException {
+		closeCursor();
+		try {
+			cursorStatement = con.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+		} catch (SQLException e) {
+			logger.debug("Scrollable result sets are not supported, using a forward only cursor", e);
+			cursorStatement = con.createStatement();
+		}
+		cursorStatement.setFetchSize(pageSize);
+		cursorStatement.setMaxRows(maxRows);
+		cursorPosition = 0;
+	}
+
+	private void closeCursor() throws SQLException {
+		try {
+			if (cursor != null) {
+				cursor.close();
+			}
+		} finally {
+			cursor = null;
+			if (cursorStatement != null) {
+				cursorStatement.close();
+				cursorStatement = null;
+			}
+		}
+	}
+
+	private void fireStatementStarted(Statement stmt) {
+		if (statementListener != null) {
+			statementListener.statementStarted(stmt);
+		}
+	}
+
+	private void fireStatementFinished(Statement stmt) {
+		if (statementListener != null) {
+			statementListener.statementFinished(stmt);
+		}
+	}
+
+	/**
+	 * Reads up to the given number of rows from the current position of the
+	 * given result set.
+	 */
+	private List<Object[]> readRows(ResultSet rs, int rowsToRead) throws SQLException {
+		if (metaData == null) {
+			metaData = new CachedResultSetMetaData(rs.getMetaData());
+			if (keyColumns != null && !findKeyColumns()) {
+				logger.debug("The ordering columns are not all non-null columns of the result, " +
+						"paging with the cursor");
+				keyColumns = null;
+			}
+		}
+		int columnCount = metaData.getColumnCount();
+		List<Object[]> rows = new ArrayList<Object[]>(rowsToRead);
+		while (rows.size() < rowsToRead && rs.next()) {
+			Object[] row = new Object[columnCount];
+			for (int i = 0; i < columnCount; i++) {
+				row[i] = rs.getObject(i + 1);
+			}
+			rows.add(row);
+		}
+		return rows;
+	}
+
+	/**
+	 * Returns where the page after the given full page starts, counting the
+	 * rows at its end that tie with its last row.
+	 */
+	private PageStart nextPageStart(PageStart start, List<Object[]> rows) {
+		Object[] lastKey = keyOf(rows.get(rows.size() - 1));
+		int ties = 0;
+		for (int i = rows.size() - 1; i >= 0 && Arrays.equals(keyOf(rows.get(i)), lastKey); i--) {
+			ties++;
+		}
+		if (ties == rows.size() && start.afterKey != null && Arrays.equals(start.afterKey, lastKey)) {
+			ties += start.skip;
+		}
+		return new PageStart(lastKey, ties);
+	}
+
+	private Object[] keyOf(Object[] row) {
+		Object[] key = new Object[keyColumns.size()];
+		for (int i = 0; i < key.length; i++) {
+			key[i] = row[keyColumns.get(i).index];
+		}
+		return key;
+	}
+
+	/**
+	 * Finds the ordering columns in the columns of the result. A column only
+	 * matches if it is not renamed by an alias, as the keyset predicate in the
+	 * where clause refers to the column of the table rather than the alias.
+	 * Returns false if a column is missing or may be null, as the keyset
+	 * predicate never selects rows with a null ordering column and the
+	 * database may sort them after any row.
+	 */
+	private boolean findKeyColumns() throws SQLException {
+		for (KeyColumn key : keyColumns) {
+			for (int i = 1; i <= metaData.getColumnCount() && key.index < 0; i++) {
+				String columnName = metaData.getColumnName(i);
+				if (key.name.equalsIgnoreCase(metaData.getColumnLabel(i))
+						&& (columnName == null || columnName.length() == 0 || key.name.equalsIgnoreCase(columnName))) {
+					key.index = i - 1;
+				}
+			}
+			if (key.index < 0 || metaData.isNullable(key.index + 1) != ResultSetMetaData.columnNoNulls) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Sets up {@link #keyColumns} and the {@link #keysetQuery} if the query is
+	 * a plain select ordered by columns. For ordering columns a, b the
+	 * predicate is <code>a &gt;= ? AND ((a &gt; ?) OR (a = ? AND b &gt;= ?))</code>,
+	 * with &lt; for descending columns, which selects the last row of the
+	 * previous page and everything after it. The leading condition on the
+	 * first column alone lets the database use an index on it.
+	 */
+	private void createKeysetQuery() {
+		List<Word> words = findTopLevelWords(query);
+		if (words == null || words.isEmpty() || !words.get(0).text.equals("SELECT")) return;
+		Word from = null;
+		Word where = null;
+		Word orderBy = null;
+		for (int i = 0; i < words.size(); i++) {
+			Word word = words.get(i);
+			if (KEYSET_BLOCKING_KEYWORDS.contains(word.text)) {
+				return;
+			} else if (word.text.equals("FROM")) {
+				if (from == null) from = word;
+			} else if (word.text.equals("WHERE")) {
+				if (where != null || orderBy != null) return;
+				where = word;
+			} else if (word.text.equals("ORDER") && i + 1 < words.size() && words.get(i + 1).text.equals("BY")) {
+				if (orderBy != null) return;
+				orderBy = words.get(i + 1);
+				i++;
+			}
+		}
+		if (from == null || orderBy == null) return;
+		Set<String> aliases = findAliases(query.substring(words.get(0).end, from.start));
+
+		List<KeyColumn> keys = new ArrayList<KeyColumn>();
+		for (String item : splitTopLevel(query.substring(orderBy.end))) {
+			Matcher m = ORDER_BY_ITEM.matcher(item.trim());
+			if (!m.matches()) return;
+			String name = unquote(m.group(2));
+			if (aliases.contains(name.toUpperCase())) return;
+			keys.add(new KeyColumn(m.group(1), name, "desc".equalsIgnoreCase(m.group(3))));
+		}
+
+		StringBuilder predicate = new StringBuilder();
+		List<Integer> parameters = new ArrayList<Integer>();
+		if (keys.size() > 1) {
+			KeyColumn first = keys.get(0);
+			predicate.append(first.expression).append(first.descending ? " <= ?" : " >= ?").append(" AND (");
+			parameters.add(0);
+		}
+		for (int term = 0; term < keys.size(); term++) {
+			predicate.append(term == 0 ? "(" : " OR (");
+			for (int i = 0; i < term; i++) {
+				predicate.append(keys.get(i).expression).append(" = ? AND ");
+				parameters.add(i);
+			}
+			KeyColumn key = keys.get(term);
+			predicate.append(key.expression).append(key.descending ? " <" : " >");
+			predicate.append(term == keys.size() - 1 ? "= ?)" : " ?)");
+			parameters.add(term);
+		}
+		if (keys.size() > 1) {
+			predicate.append(")");
+		}
+
+		int orderByStart = words.get(words.indexOf(orderBy) - 1).start;
+		StringBuilder sql = new StringBuilder();
+		if (where == null) {
+			sql.append(query.substring(0, orderByStart).trim()).append(" WHERE (");
+		} else {
+			sql.append(query.substring(0, where.end)).append(" (");
+			sql.append(query.substring(where.end, orderByStart).trim()).append(") AND (");
+		}
+		sql.append(predicate).append(") ").append(query.substring(orderByStart));
+
+		keyColumns = keys;
+		keysetQuery = sql.toString();
+		keysetParameters = new int[parameters.size()];
+		for (int i = 0; i < keysetParameters.length; i++) {
+			keysetParameters[i] = parameters.get(i);
+		}
+		logger.debug("Keyset query is " + keysetQuery);
+	}
+
+	/**
+	 * Returns the upper cased names the given select list gives to
+	 * expressions other than a column of the same name. The order by clause
+	 * can refer to these names but the where clause cannot.
+	 */
+	private static Set<String> findAliases(String selectList) {
+		Set<String> aliases = new HashSet<String>();
+		for (String item : splitTopLevel(selectList)) {
+			item = item.trim();
+			Matcher m = SELECT_ITEM_ALIAS.matcher(item);
+			if (COLUMN_REFERENCE_PATTERN.matcher(item).matches() || !m.matches()) continue;
+			String expression = m.group(1).trim();
+			String alias = unquote(m.group(2));
+			if (expression.equalsIgnoreCase("DISTINCT") || expression.equalsIgnoreCase("ALL")) continue;
+			Matcher column = COLUMN_REFERENCE_PATTERN.matcher(expression);
+			if (column.matches() && unquote(column.group(1)).equalsIgnoreCase(alias)) continue;
+			aliases.add(alias.toUpperCase());
+		}
+		return aliases;
+	}
+
+	/**
+	 * Splits the given part of a query at the commas that are outside of
+	 * quotes and parentheses.
+	 */
+	private static List<String> splitTopLevel(String sql) {
+		List<String> items = new ArrayList<String>();
+		int depth = 0;
+		int itemStart = 0;
+		for (int i = 0, n = sql.length(); i < n; i++) {
+			char c = sql.charAt(i);
+			if (c == '\'' || c == '"') {
+				int end = sql.indexOf(c, i + 1);
+				if (end < 0) break;
+				i = end;
+			} else if (c == '(') {
+				depth++;
+			} else if (c == ')') {
+				depth--;
+			} else if (c == ',' && depth == 0) {
+				items.add(sql.substring(itemStart, i));
+				itemStart = i + 1;
+			}
+		}
+		items.add(sql.substring(itemStart));
+		return items;
+	}
+
+	private static String unquote(String identifier) {
+		if (identifier.startsWith("\"")) {
+			return identifier.substring(1, identifier.length() - 1);
+		}
+		return identifier;
+	}
+
+	/**
+	 * Returns the words of the given query that are outside of quotes and
+	 * parentheses, upper cased, or null if the query has comments, more than
+	 * one statement or unbalanced quotes or parentheses.
+	 */
+	private static List<Word> findTopLevelWords(String sql) {
+		List<Word> words = new ArrayList<Word>();
+		int depth = 0;
+		for (int i = 0, n = sql.length(); i < n; i++) {
+			char c = sql.charAt(i);
+			char next = i + 1 < n ? sql.charAt(i + 1) : 0;
+			if (c == '\'' || c == '"') {
+				i = sql.indexOf(c, i + 1);
+				if (i < 0) return null;
+			} else if (c == '(') {
+				depth++;
+			} else if (c == ')') {
+				depth--;
+				if (depth < 0) return null;
+			} else if (c == ';' || (c == '-' && next == '-') || (c == '/' && next == '*')) {
+				return null;
+			} else if (depth == 0 && (Character.isLetter(c) || c == '_')
+					&& (i == 0 || !isIdentifierPart(sql.charAt(i - 1)))) {
+				int end = i + 1;
+				while (end < n && isIdentifierPart(sql.charAt(end))) {
+					end++;
+				}
+				words.add(new Word(sql.substring(i, end).toUpperCase(), i, end));
+				i = end - 1;
+			}
+		}
+		return depth == 0 ? words : null;
+	}
+
+	private static boolean isIdentifierPart(char c) {
+		return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+	}
+
+	private static String stripTerminator(String sql) {
+		String trimmed = sql.trim();
+		while (trimmed.endsWith(";")) {
+			trimmed = trimmed.substring(0, trimmed.length() - 1).trim();
+		}
+		return trimmed;
+	}
+}
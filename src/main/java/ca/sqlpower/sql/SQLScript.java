@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Splits SQL scripts into statements and sorts the statements by what they
+ * can change, which tells whether statements can be run on different
+ * connections at the same time.
+ */
+public class SQLScript {
+
+	/**
+	 * What running a statement can change.
+	 */
+	public enum StatementKind {
+
+		/**
+		 * The statement only reads data, so it can run on any connection at
+		 * the same time as other queries.
+		 */
+		QUERY,
+
+		/**
+		 * The statement changes data or the definition of the database. Once
+		 * committed the change is seen by every connection.
+		 */
+		UPDATE,
+
+		/**
+		 * The statement may change the state of the connection it runs on,
+		 * for example its default schema, its transaction or its temporary
+		 * tables, or it is not known what it changes. Statements after it can
+		 * only be run on the same connection.
+		 */
+		SESSION
+	}
+
+	private static final Set<String> QUERY_KEYWORDS = new HashSet<String>(Arrays.asList(
+			"SELECT", "WITH", "VALUES"));
+
+	/**
+	 * Words that make a statement that starts like a query do more than read.
+	 */
+	private static final Set<String> NOT_QUERY_KEYWORDS = new HashSet<String>(Arrays.asList(
+			"INTO", "INSERT", "UPDATE", "DELETE", "MERGE", "LOCK"));
+
+	private static final Set<String> UPDATE_KEYWORDS = new HashSet<String>(Arrays.asList(
+			"INSERT", "UPDATE", "DELETE", "MERGE", "TRUNCATE", "CREATE", "DROP", "ALTER",
+			"RENAME", "COMMENT", "GRANT", "REVOKE"));
+
+	/**
+	 * Words that make an update statement work on temporary objects or on
+	 * the session, which other connections do not see.
+	 */
+	private static final Set<String> SESSION_KEYWORDS = new HashSet<String>(Arrays.asList(
+			"TEMP", "TEMPORARY", "SESSION", "SYSTEM"));
+
+	/**
+	 * Words that can follow BEGIN when it starts a transaction rather than a
+	 * procedural block.
+	 */
+	private static final Set<String> TRANSACTION_KEYWORDS = new HashSet<String>(Arrays.asList(
+			"TRANSACTION", "TRAN", "WORK", "ISOLATION", "DEFERRED", "IMMEDIATE", "EXCLUSIVE", 
+			"DISTRIBUTED"));
+
+	private SQLScript() {
+		// static utility class
+	}
+
+	/**
+	 * Returns the statements of the given script, which are separated by
+	 * semicolons that are not in quotes, dollar quotes or comments. The
+	 * separators are not included and statements that are empty or only
+	 * comments are left out. Procedural blocks are not recognized, so a
+	 * BEGIN ... END block is split at the semicolons inside it, see
+	 * {@link #hasBlock(List)}.
+	 */
+	public static List<String> splitStatements(String script) {
+		List<String> statements = new ArrayList<String>();
+		int start = 0;
+		boolean hasContent = false;
+		for (int i = 0, n = script.length(); i < n; i++) {
+			char c = script.charAt(i);
+			char next = i + 1 < n ? script.charAt(i + 1) : 0;
+			if (c == '\'' || c == '"') {
+				int end = script.indexOf(c, i + 1);
+				i = end < 0 ? n - 1 : end;
+				hasContent = true;
+			} else if (c == '-' && next == '-') {
+				int end = script.indexOf('\n', i);
+				i = end < 0 ? n - 1 : end;
+			} else if (c == '/' && next == '*') {
+				int end = script.indexOf("*/", i + 2);
+				i = end < 0 ? n - 1 : end + 1;
+			} else if (c == '$' && dollarQuoteTag(script, i) != null) {
+				i = endOfDollarQuote(script, i);
+				hasContent = true;
+			} else if (c == ';') {
+				if (hasContent) {
+					statements.add(script.substring(start, i).trim());
+				}
+				start = i + 1;
+				hasContent = false;
+			} else if (!Character.isWhitespace(c)) {
+				hasContent = true;
+			}
+		}
+		if (hasContent) {
+			statements.add(script.substring(start).trim());
+		}
+		return statements;
+	}
+
+	/**
+	 * Returns true if the given statements, as split from a script by
+	 * {@link #splitStatements(String)}, include pieces of a procedural block,
+	 * such as a PL/SQL BEGIN ... END block or a DECLARE section. Such a block
+	 * has semicolons between the statements in it, so the script must be run
+	 * whole rather than one piece at a time. Blocks in dollar quotes are not
+	 * split and are not counted.
+	 */
+	public static boolean hasBlock(List<String> statements) {
+		for (String statement : statements) {
+			List<String> words = findWords(statement);
+			if (words.isEmpty()) continue;
+			String first = words.get(0);
+			if (first.equals("END") || first.equals("DECLARE")) {
+				return true;
+			}
+			if (first.equals("BEGIN") && words.size() > 1 && !TRANSACTION_KEYWORDS.contains(words.get(1))) {
+				return true;
+			}
+			if (words.subList(1, words.size()).contains("BEGIN")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns what the given statement can change, judged by its words
+	 * outside of quotes and comments. When in doubt this returns
+	 * {@link StatementKind#SESSION}. A query that calls a function with side
+	 * effects is still taken to be a query.
+	 */
+	public static StatementKind classify(String statement) {
+		List<String> words = findWords(statement);
+		if (words.isEmpty()) {
+			return StatementKind.SESSION;
+		}
+		String first = words.get(0);
+		if (QUERY_KEYWORDS.contains(first)) {
+			for (String word : words) {
+				if (NOT_QUERY_KEYWORDS.contains(word)) {
+					return StatementKind.SESSION;
+				}
+			}
+			return StatementKind.QUERY;
+		} else if (UPDATE_KEYWORDS.contains(first)) {
+			for (String word : words) {
+				if (SESSION_KEYWORDS.contains(word)) {
+					return StatementKind.SESSION;
+				}
+			}
+			if (statement.indexOf('#') >= 0) {
+				// SQL Server temporary tables
+				return StatementKind.SESSION;
+			}
+			return StatementKind.UPDATE;
+		}
+		return StatementKind.SESSION;
+	}
+
+	/**
+	 * Returns the upper cased words of the given statement that are outside
+	 * of quotes and comments.
+	 */
+	private static List<String> findWords(String statement) {
+		List<String> words = new ArrayList<String>();
+		for (int i = 0, n = statement.length(); i < n; i++) {
+			char c = statement.charAt(i);
+			char next = i + 1 < n ? statement.charAt(i + 1) : 0;
+			if (c == '\'' || c == '"') {
+				int end = statement.indexOf(c, i + 1);
+				i = end < 0 ? n - 1 : end;
+			} else if (c == '-' && next == '-') {
+				int end = statement.indexOf('\n', i);
+				i = end < 0 ? n - 1 : end;
+			} else if (c == '/' && next == '*') {
+				int end = statement.indexOf("*/", i + 2);
+				i = end < 0 ? n - 1 : end + 1;
+			} else if (c == '$' && dollarQuoteTag(statement, i) != null) {
+				i = endOfDollarQuote(statement, i);
+			} else if (Character.isLetter(c) || c == '_') {
+				int end = i + 1;
+				while (end < n && (Character.isLetterOrDigit(statement.charAt(end))
+						|| statement.charAt(end) == '_' || statement.charAt(end) == '$')) {
+					end++;
+				}
+				words.add(statement.substring(i, end).toUpperCase());
+				i = end - 1;
+			} else if (Character.isDigit(c) || c == '$') {
+				while (i + 1 < n && (Character.isLetterOrDigit(statement.charAt(i + 1))
+						|| statement.charAt(i + 1) == '_' || statement.charAt(i + 1) == '$')) {
+					i++;
+				}
+			}
+		}
+		return words;
+	}
+
+	/**
+	 * Returns the tag of the PostgreSQL dollar quote, such as $$ or
+	 * $body$, that starts at the given dollar sign, or null if the dollar
+	 * sign does not start one. A dollar sign in a word or before a digit, as
+	 * in a parameter like $1, does not start a quote.
+	 */
+	private static String dollarQuoteTag(String sql, int start) {
+		if (start > 0) {
+			char previous = sql.charAt(start - 1);
+			if (Character.isLetterOrDigit(previous) || previous == '_' || previous == '$') return null;
+		}
+		int i = start + 1;
+		if (i < sql.length() && Character.isDigit(sql.charAt(i))) return null;
+		while (i < sql.length() && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '_')) {
+			i++;
+		}
+		if (i >= sql.length() || sql.charAt(i) != '$') return null;
+		return sql.substring(start, i + 1);
+	}
+
+	/**
+	 * Returns the index of the last character of the dollar quote that
+	 * starts at the given index, or of the last character of the SQL if the
+	 * quote is not closed.
+	 */
+	private static int endOfDollarQuote(String sql, int start) {
+		String tag = dollarQuoteTag(sql, start);
+		int end = sql.indexOf(tag, start + tag.length());
+		return end < 0 ? sql.length() - 1 : end + tag.length() - 1;
+	}
+}
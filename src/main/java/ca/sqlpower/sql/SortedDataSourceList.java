@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ca.sqlpower.sql;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+
+/**
+ * A read-only list of the data sources of one type in a
+ * {@link DataSourceCollection}, kept sorted by name. The list is updated as
+ * data sources are added, removed and renamed instead of being filtered and
+ * sorted again each time it is needed, and it tells its
+ * {@link ListDataListener}s which rows changed so table and combo box models
+ * can fire events for just those rows.
+ * <p>
+ * A list made with {@link #create(DataSourceCollection)} listens to the
+ * collection it was made from until {@link #cleanup()} is called. A list can
+ * also be kept up to date by its owner by calling
+ * {@link #dataSourceAdded(SPDataSource)} and
+ * {@link #dataSourceRemoved(SPDataSource)} directly.
+ */
+public class SortedDataSourceList<C extends SPDataSource> extends AbstractList<C>
+		implements DatabaseListChangeListener {
+
+	/**
+	 * Only data sources of this type are in the list.
+	 */
+	private final Class<C> type;
+
+	/**
+	 * The data sources in the order given by
+	 * {@link SPDataSource#compareTo(SPDataSource)}. Data sources with the
+	 * same name are kept in the order they were added.
+	 */
+	private final List<C> dataSources = new ArrayList<C>();
+
+	/**
+	 * The collection this list listens to, or null if the owner of this list
+	 * keeps it up to date.
+	 */
+	private DataSourceCollection<?> collection;
+
+	private final List<ListDataListener> listeners = new ArrayList<ListDataListener>();
+
+	/**
+	 * Moves a data source to its new position when its name changes.
+	 */
+	private final PropertyChangeListener nameListener = new PropertyChangeListener() {
+		public void propertyChange(PropertyChangeEvent evt) {
+			if ("name".equals(evt.getPropertyName())
+					|| SPDataSource.PL_LOGICAL.equals(evt.getPropertyName())) {
+				dataSourceRenamed((SPDataSource) evt.getSource());
+			}
+		}
+	};
+
+	/**
+	 * Creates a sorted list of the data sources in the given collection that
+	 * keeps itself up to date with the collection until {@link #cleanup()}
+	 * is called. If the collection only holds one type of data source, as a
+	 * {@link SpecificDataSourceCollection} does, the list only holds that type.
+	 */
+	public static SortedDataSourceList<? extends SPDataSource> create(DataSourceCollection<?> collection) {
+		if (collection instanceof SpecificDataSourceCollection<?>) {
+			return create(collection, ((SpecificDataSourceCollection<?>) collection).getClassType());
+		}
+		return create(collection, SPDataSource.class);
+	}
+
+	private static <C extends SPDataSource> SortedDataSourceList<C> create(
+			DataSourceCollection<?> collection, Class<C> type) {
+		SortedDataSourceList<C> list = new SortedDataSourceList<C>(type, collection.getConnections());
+		list.collection = collection;
+		collection.addDatabaseListChangeListener(list);
+		return list;
+	}
+
+	/**
+	 * Creates a sorted list of the data sources of the given type in the
+	 * given collection. The list is not updated unless its owner tells it
+	 * about changes.
+	 */
+	public SortedDataSourceList(Class<C> type, Collection<?> initialDataSources) {
+		this.type = type;
+		for (Object o : initialDataSources) {
+			if (type.isInstance(o)) {
+				C ds = type.cast(o);
+				dataSources.add(ds);
+				ds.addPropertyChangeListener(nameListener);
+			}
+		}
+		Collections.sort(dataSources);
+	}
+
+	@Override
+	public C get(int index) {
+		return dataSources.get(index);
+	}
+
+	@Override
+	public int size() {
+		return dataSources.size();
+	}
+
+	/**
+	 * Adds the given data source in its sorted position if it is of the type
+	 * this list holds.
+	 */
+	public void dataSourceAdded(SPDataSource ds) {
+		if (!type.isInstance(ds)) return;
+		int index = insertionIndex(ds);
+		dataSources.add(index, type.cast(ds));
+		ds.addPropertyChangeListener(nameListener);
+		fireListDataEvent(ListDataEvent.INTERVAL_ADDED, index);
+	}
+
+	/**
+	 * Removes the given data source from this list. If the list does not
+	 * contain the given object a data source with the same name is removed
+	 * instead, as {@link PlDotIni#removeDataSource(SPDataSource)} removes data
+	 * sources by name.
+	 */
+	public void dataSourceRemoved(SPDataSource ds) {
+		if (!type.isInstance(ds)) return;
+		int index = indexOfName(ds);
+		if (index < 0) return;
+		C removed = dataSources.remove(index);
+		removed.removePropertyChangeListener(nameListener);
+		fireListDataEvent(ListDataEvent.INTERVAL_REMOVED, index);
+	}
+
+	private void dataSourceRenamed(SPDataSource ds) {
+		int oldIndex = -1;
+		for (int i = 0; i < dataSources.size(); i++) {
+			if (dataSources.get(i) == ds) {
+				oldIndex = i;
+				break;
+			}
+		}
+		if (oldIndex < 0) return;
+		C renamed = dataSources.remove(oldIndex);
+		int newIndex = insertionIndex(renamed);
+		dataSources.add(newIndex, renamed);
+		if (newIndex == oldIndex) {
+			fireListDataEvent(ListDataEvent.CONTENTS_CHANGED, newIndex);
+		} else {
+			fireListDataEvent(ListDataEvent.INTERVAL_REMOVED, oldIndex);
+			fireListDataEvent(ListDataEvent.INTERVAL_ADDED, newIndex);
+		}
+	}
+
+	/**
+	 * Returns the index after the last data source that does not sort after
+	 * the given one.
+	 */
+	private int insertionIndex(SPDataSource ds) {
+		int low = 0;
+		int high = dataSources.size();
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (dataSources.get(mid).compareTo(ds) <= 0) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Returns the index of the given data source, or of the first data source
+	 * with the same name if the given object is not in this list, or -1 if
+	 * there is no data source with its name.
+	 */
+	private int indexOfName(SPDataSource ds) {
+		int high = insertionIndex(ds);
+		int sameName = -1;
+		for (int i = high - 1; i >= 0 && dataSources.get(i).compareTo(ds) == 0; i--) {
+			if (dataSources.get(i) == ds) return i;
+			String name = dataSources.get(i).getName();
+			if (name == null ? ds.getName() == null : name.equals(ds.getName())) {
+				sameName = i;
+			}
+		}
+		return sameName;
+	}
+
+	public void databaseAdded(DatabaseListChangeEvent e) {
+		dataSourceAdded(e.getDataSource());
+	}
+
+	public void databaseRemoved(DatabaseListChangeEvent e) {
+		dataSourceRemoved(e.getDataSource());
+	}
+
+	public void addListDataListener(ListDataListener l) {
+		listeners.add(l);
+	}
+
+	public void removeListDataListener(ListDataListener l) {
+		listeners.remove(l);
+	}
+
+	private void fireListDataEvent(int eventType, int index) {
+		ListDataEvent e = new ListDataEvent(this, eventType, index, index);
+		for (int i = listeners.size() - 1; i >= 0; i--) {
+			ListDataListener l = listeners.get(i);
+			if (eventType == ListDataEvent.INTERVAL_ADDED) {
+				l.intervalAdded(e);
+			} else if (eventType == ListDataEvent.INTERVAL_REMOVED) {
+				l.intervalRemoved(e);
+			} else {
+				l.contentsChanged(e);
+			}
+		}
+	}
+
+	/**
+	 * Stops listening to the collection this list was created from and to
+	 * the data sources in it. The list is not updated after this is called.
+	 */
+	public void cleanup() {
+		if (collection != null) {
+			collection.removeDatabaseListChangeListener(this);
+			collection = null;
+		}
+		for (C ds : dataSources) {
+			ds.removePropertyChangeListener(nameListener);
+		}
+	}
+}
@@ -60,6 +60,13 @@ public class SpecificDataSourceCollection<T extends SPDataSource> implements Dat
         return delegate.getConnections(classType);
     }
 
+    /**
+     * Returns the type of data source this collection holds.
+     */
+    public Class<T> getClassType() {
+        return classType;
+    }
+
     public <C extends T> List<C> getConnections(Class<C> classType) {
         return delegate.getConnections(classType);
     }
@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import ca.sqlpower.sql.jdbcwrapper.GenericResultSetDecorator;
+
+/**
+ * Timings and sizes recorded while running one statement: how long the
+ * database took to start returning rows, how long the rows took to fetch,
+ * how many there were and roughly how large they were, along with the
+ * database's plan for the statement if one was fetched.
+ * <p>
+ * Call {@link #executionStarted()} just before executing the statement,
+ * {@link #executionFinished()} when the execute call returns, and read the
+ * rows through the result set returned by
+ * {@link #measure(Statement, ResultSet)}. Nothing is measured for result sets
+ * that are not read that way, so statements run without statistics do not
+ * pay for them.
+ */
+public class StatementStatistics {
+
+	private final String statement;
+
+	private long startTime;
+
+	private long executeNanos;
+
+	/**
+	 * The time from the start of execution until the first row was read, or
+	 * -1 if no row has been read.
+	 */
+	private long firstRowNanos = -1;
+
+	private long fetchNanos;
+
+	private int rowCount;
+
+	private long bytesFetched;
+
+	private String plan;
+
+	public StatementStatistics(String statement) {
+		this.statement = statement;
+	}
+
+	public void executionStarted() {
+		startTime = System.nanoTime();
+	}
+
+	public void executionFinished() {
+		executeNanos = System.nanoTime() - startTime;
+	}
+
+	/**
+	 * Returns a result set that passes everything through to the given one
+	 * and adds the time spent moving to the next row and reading values, the
+	 * rows read and the size of the values to these statistics.
+	 */
+	public ResultSet measure(Statement stmt, ResultSet rs) {
+		return new GenericResultSetDecorator(stmt, rs) {
+			@Override
+			public boolean next() throws SQLException {
+				long start = System.nanoTime();
+				boolean hasRow = super.next();
+				long end = System.nanoTime();
+				fetchNanos += end - start;
+				if (hasRow) {
+					rowCount++;
+					if (firstRowNanos < 0) {
+						firstRowNanos = end - startTime;
+					}
+				}
+				return hasRow;
+			}
+
+			@Override
+			public Object getObject(int columnIndex) throws SQLException {
+				long start = System.nanoTime();
+				Object value = super.getObject(columnIndex);
+				fetchNanos += System.nanoTime() - start;
+				bytesFetched += estimateSize(value);
+				return value;
+			}
+		};
+	}
+
+	/**
+	 * Returns roughly how many bytes the given value takes up. JDBC does not
+	 * tell how many bytes the driver received, so this is the size of the
+	 * value's data rather than of what went over the network.
+	 */
+	static long estimateSize(Object value) {
+		if (value == null) {
+			return 0;
+		} else if (value instanceof String) {
+			return 2L * ((String) value).length();
+		} else if (value instanceof byte[]) {
+			return ((byte[]) value).length;
+		} else if (value instanceof Boolean || value instanceof Byte) {
+			return 1;
+		} else if (value instanceof Short) {
+			return 2;
+		} else if (value instanceof Integer || value instanceof Float) {
+			return 4;
+		} else if (value instanceof Long || value instanceof Double || value instanceof java.util.Date) {
+			return 8;
+		} else if (value instanceof BigDecimal) {
+			return ((BigDecimal) value).unscaledValue().bitLength() / 8 + 1 + 4;
+		} else {
+			return 2L * value.toString().length();
+		}
+	}
+
+	public String getStatement() {
+		return statement;
+	}
+
+	/**
+	 * Returns the time the statement's execute call took, in nanoseconds.
+	 */
+	public long getExecuteNanos() {
+		return executeNanos;
+	}
+
+	/**
+	 * Returns the time from the start of execution until the first row was
+	 * read, in nanoseconds, or -1 if no rows were read.
+	 */
+	public long getFirstRowNanos() {
+		return firstRowNanos;
+	}
+
+	/**
+	 * Returns the time spent moving through the rows and reading their
+	 * values, in nanoseconds.
+	 */
+	public long getFetchNanos() {
+		return fetchNanos;
+	}
+
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * Returns the estimated size of the values read, in bytes.
+	 */
+	public long getBytesFetched() {
+		return bytesFetched;
+	}
+
+	/**
+	 * Returns the database's plan for the statement, or null if it was not
+	 * fetched.
+	 */
+	public String getPlan() {
+		return plan;
+	}
+
+	public void setPlan(String plan) {
+		this.plan = plan;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("Execute took %.1f ms", executeNanos / 1000000.0));
+		if (firstRowNanos >= 0) {
+			sb.append(String.format(", first row after %.1f ms", firstRowNanos / 1000000.0));
+		}
+		sb.append(String.format(", fetched %d rows of about %d bytes in %.1f ms",
+				rowCount, bytesFetched, fetchNanos / 1000000.0));
+		return sb.toString();
+	}
+}
@@ -28,20 +28,24 @@ import javax.swing.event.ListDataListener;
 import org.apache.log4j.Logger;
 
 import ca.sqlpower.sql.DataSourceCollection;
-import ca.sqlpower.sql.DatabaseListChangeEvent;
-import ca.sqlpower.sql.DatabaseListChangeListener;
 import ca.sqlpower.sql.SPDataSource;
+import ca.sqlpower.sql.SortedDataSourceList;
 
 /**
  * If you only want to see a specific {@link SPDataSource} type here
  * see #DataSourceWrapper#.
  */
-public class ConnectionComboBoxModel implements ComboBoxModel, DatabaseListChangeListener {
+public class ConnectionComboBoxModel implements ComboBoxModel {
 
     private static final Logger logger = Logger.getLogger(ConnectionComboBoxModel.class); 
     SPDataSource selectedItem;
 
-    List<? extends SPDataSource> connections;
+    /**
+     * The connections in the collection, kept sorted and up to date by the
+     * list itself. The first element of this model is null so the index of a
+     * connection in this model is one more than its index in this list.
+     */
+    SortedDataSourceList<? extends SPDataSource> connections;
 
     List<ListDataListener> listenerList;
 
@@ -54,12 +58,13 @@ public class ConnectionComboBoxModel implements ComboBoxModel, DatabaseListChang
     public ConnectionComboBoxModel(DataSourceCollection plini) {
         this.plini = plini;
         listenerList = new ArrayList<ListDataListener>();
-        connections = plini.getConnections();
-        plini.addDatabaseListChangeListener(this);
+        connections = SortedDataSourceList.create(plini);
+        connections.addListDataListener(connectionsListener);
     }
 
     public void cleanup() {
-        plini.removeDatabaseListChangeListener(this);
+        connections.removeListDataListener(connectionsListener);
+        connections.cleanup();
     }
 
     public void setSelectedItem(Object anItem) {
@@ -115,21 +120,36 @@ public class ConnectionComboBoxModel implements ComboBoxModel, DatabaseListChang
         }
     }
 
-    public void databaseAdded(DatabaseListChangeEvent e) {
-        connections = plini.getConnections();
-        for (int i = listenerList.size() - 1; i >= 0; i--) {
-            listenerList.get(i).contentsChanged(
-                    new ListDataEvent(this, ListDataEvent.INTERVAL_ADDED, e.getListIndex(), e.getListIndex()));
+    /**
+     * Passes on the changes to the sorted connections to this model's
+     * listeners for just the rows that changed, shifted by one for the null
+     * element at the start of this model.
+     */
+    private final ListDataListener connectionsListener = new ListDataListener() {
+        public void intervalAdded(ListDataEvent e) {
+            ListDataEvent shifted = shift(e);
+            for (int i = listenerList.size() - 1; i >= 0; i--) {
+                listenerList.get(i).intervalAdded(shifted);
+            }
         }
 
-    }
+        public void intervalRemoved(ListDataEvent e) {
+            ListDataEvent shifted = shift(e);
+            for (int i = listenerList.size() - 1; i >= 0; i--) {
+                listenerList.get(i).intervalRemoved(shifted);
+            }
+        }
 
-    public void databaseRemoved(DatabaseListChangeEvent e) {
-        connections = plini.getConnections();
-        for (int i = listenerList.size() - 1; i >= 0; i--) {
-            listenerList.get(i).contentsChanged(
-                    new ListDataEvent(this, ListDataEvent.INTERVAL_REMOVED, e.getListIndex(), e.getListIndex()));
+        public void contentsChanged(ListDataEvent e) {
+            ListDataEvent shifted = shift(e);
+            for (int i = listenerList.size() - 1; i >= 0; i--) {
+                listenerList.get(i).contentsChanged(shifted);
+            }
         }
-    }
+
+        private ListDataEvent shift(ListDataEvent e) {
+            return new ListDataEvent(ConnectionComboBoxModel.this, e.getType(), e.getIndex0() + 1, e.getIndex1() + 1);
+        }
+    };
 
 }
@@ -48,6 +48,8 @@ import javax.swing.JScrollPane;
 import javax.swing.JTable;
 import javax.swing.ListSelectionModel;
 import javax.swing.SwingConstants;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
 import javax.swing.table.AbstractTableModel;
 import javax.swing.table.DefaultTableCellRenderer;
 import javax.swing.table.TableCellRenderer;
@@ -56,11 +58,10 @@ import javax.swing.table.TableModel;
 import org.apache.log4j.Logger;
 
 import ca.sqlpower.sql.DataSourceCollection;
-import ca.sqlpower.sql.DatabaseListChangeEvent;
-import ca.sqlpower.sql.DatabaseListChangeListener;
 import ca.sqlpower.sql.JDBCDataSource;
 import ca.sqlpower.sql.Olap4jDataSource;
 import ca.sqlpower.sql.SPDataSource;
+import ca.sqlpower.sql.SortedDataSourceList;
 import ca.sqlpower.swingui.Messages;
 import ca.sqlpower.swingui.SPSUtils;
 import ca.sqlpower.swingui.table.CleanupTableModel;
@@ -560,28 +561,40 @@ public class DatabaseConnectionManager {
 
 	}
 
-	private static class ConnectionTableModel extends AbstractTableModel implements CleanupTableModel {
+	/**
+	 * A table of the connections in a data source collection sorted by name.
+	 * This is package private for the benchmark.
+	 */
+	static class ConnectionTableModel extends AbstractTableModel implements CleanupTableModel {
 
-		private final DatabaseListChangeListener databaseListChangeListener = new DatabaseListChangeListener(){
-			public void databaseAdded(DatabaseListChangeEvent e) {
-				fireTableDataChanged();
+		/**
+		 * Fires table events for just the rows of the connections that were
+		 * added, removed or renamed.
+		 */
+		private final ListDataListener connectionsListener = new ListDataListener() {
+			public void intervalAdded(ListDataEvent e) {
+				fireTableRowsInserted(e.getIndex0(), e.getIndex1());
+			}
+			
+			public void intervalRemoved(ListDataEvent e) {
+				fireTableRowsDeleted(e.getIndex0(), e.getIndex1());
 			}
 			
-			public void databaseRemoved(DatabaseListChangeEvent e) {
-				fireTableDataChanged();
+			public void contentsChanged(ListDataEvent e) {
+				fireTableRowsUpdated(e.getIndex0(), e.getIndex1());
 			}
 		};
 		
-		private final DataSourceCollection<SPDataSource> dsCollection;
+		private final SortedDataSourceList<? extends SPDataSource> connections;
 		
 		public ConnectionTableModel(DataSourceCollection<SPDataSource> dsCollection) {
 			super();
-			this.dsCollection = dsCollection;
-			dsCollection.addDatabaseListChangeListener(databaseListChangeListener);
+			connections = SortedDataSourceList.create(dsCollection);
+			connections.addListDataListener(connectionsListener);
 		}
 
 		public int getRowCount() {
-			return dsCollection.getConnections().size();
+			return connections.size();
 		}
 
 		public int getColumnCount() {
@@ -604,11 +617,12 @@ public class DatabaseConnectionManager {
 		}
 
 		public Object getValueAt(int rowIndex, int columnIndex) {
-			return dsCollection.getConnections().get(rowIndex);
+			return connections.get(rowIndex);
 		}
 
 		public void cleanup() {
-			dsCollection.removeDatabaseListChangeListener(databaseListChangeListener);
+			connections.removeListDataListener(connectionsListener);
+			connections.cleanup();
 		}
 
 	}
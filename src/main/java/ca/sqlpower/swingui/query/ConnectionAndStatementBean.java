@@ -20,7 +20,14 @@
 package ca.sqlpower.swingui.query;
 
 import java.sql.Connection;
+import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.sql.JDBCDataSource;
 
 /**
  * This is a container that holds a connection, a statement that is currently executing
@@ -30,6 +37,8 @@ import java.sql.Statement;
  */
 public class ConnectionAndStatementBean {
     
+    private static final Logger logger = Logger.getLogger(ConnectionAndStatementBean.class);
+    
     /**
      * The statement stored in this class
      */
@@ -48,6 +57,26 @@ public class ConnectionAndStatementBean {
      */
     private boolean connectionUncommitted;
     
+    /**
+     * Extra connections to the same database that read-only statements are
+     * run on at the same time as each other. They are opened as they are
+     * first needed and kept open for later scripts until
+     * {@link #closeConcurrentConnections()} is called.
+     */
+    private final List<Connection> concurrentConnections = new ArrayList<Connection>();
+    
+    /**
+     * The statements currently executing on the concurrent connections.
+     */
+    private final List<Statement> concurrentStmts = new ArrayList<Statement>();
+    
+    /**
+     * True if a statement run on the connection may have changed its state,
+     * such as its default schema or temporary tables, in a way the concurrent
+     * connections would not see.
+     */
+    private boolean sessionChanged;
+    
     public ConnectionAndStatementBean(Connection con) {
         this.con = con;
         currentStmt = null;
@@ -78,5 +107,71 @@ public class ConnectionAndStatementBean {
         this.connectionUncommitted = connectionUncommitted;
     }
 
-}
+    public boolean isSessionChanged() {
+        return sessionChanged;
+    }
 
+    public synchronized void setSessionChanged(boolean sessionChanged) {
+        this.sessionChanged = sessionChanged;
+    }
+
+    /**
+     * Returns the given number of concurrent connections, opening new
+     * connections to the given data source if fewer are open. The
+     * connections are in auto-commit mode.
+     */
+    public synchronized List<Connection> getConcurrentConnections(JDBCDataSource ds, int count)
+            throws SQLException {
+        while (concurrentConnections.size() < count) {
+            Connection con = ds.createConnection();
+            con.setAutoCommit(true);
+            concurrentConnections.add(con);
+        }
+        return new ArrayList<Connection>(concurrentConnections.subList(0, count));
+    }
+
+    /**
+     * Closes the concurrent connections. Any SQLExceptions encountered while
+     * closing them are logged at the WARN level and are otherwise ignored.
+     */
+    public synchronized void closeConcurrentConnections() {
+        for (Connection con : concurrentConnections) {
+            try {
+                con.close();
+            } catch (SQLException e) {
+                logger.warn("Failed to close concurrent connection " + con + ". Skipping it.", e);
+            }
+        }
+        concurrentConnections.clear();
+    }
+
+    public synchronized void addConcurrentStmt(Statement stmt) {
+        concurrentStmts.add(stmt);
+    }
+
+    public synchronized void removeConcurrentStmt(Statement stmt) {
+        concurrentStmts.remove(stmt);
+    }
+
+    /**
+     * Returns true if the connection or any of the concurrent connections
+     * has a statement executing on it.
+     */
+    public synchronized boolean isExecuting() {
+        return currentStmt != null || !concurrentStmts.isEmpty();
+    }
+
+    /**
+     * Cancels the statement executing on the connection and the statements
+     * executing on the concurrent connections.
+     */
+    public synchronized void cancelStatements() throws SQLException {
+        if (currentStmt != null) {
+            currentStmt.cancel();
+        }
+        for (Statement stmt : concurrentStmts) {
+            stmt.cancel();
+        }
+    }
+
+}
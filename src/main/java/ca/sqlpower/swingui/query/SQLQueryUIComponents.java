@@ -38,6 +38,7 @@ import java.awt.event.InputEvent;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
 import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.WindowAdapter;
@@ -64,6 +65,13 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.swing.AbstractAction;
@@ -98,6 +106,7 @@ import javax.swing.event.TableModelEvent;
 import javax.swing.event.TableModelListener;
 import javax.swing.event.UndoableEditEvent;
 import javax.swing.event.UndoableEditListener;
+import javax.swing.filechooser.FileFilter;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.DefaultStyledDocument;
 import javax.swing.text.Document;
@@ -113,10 +122,16 @@ import ca.sqlpower.sql.CachedRowSet;
 import ca.sqlpower.sql.DataSourceCollection;
 import ca.sqlpower.sql.DatabaseListChangeEvent;
 import ca.sqlpower.sql.DatabaseListChangeListener;
+import ca.sqlpower.sql.ExplainPlanFetcher;
 import ca.sqlpower.sql.JDBCDataSource;
+import ca.sqlpower.sql.JDBCDataSourceType;
+import ca.sqlpower.sql.ResultSetPager;
 import ca.sqlpower.sql.RowSetChangeEvent;
 import ca.sqlpower.sql.RowSetChangeListener;
 import ca.sqlpower.sql.SPDataSource;
+import ca.sqlpower.sql.SQLScript;
+import ca.sqlpower.sql.StatementStatistics;
+import ca.sqlpower.sql.SQLScript.StatementKind;
 import ca.sqlpower.sqlobject.SQLDatabase;
 import ca.sqlpower.sqlobject.SQLDatabaseMapping;
 import ca.sqlpower.sqlobject.SQLObjectException;
@@ -126,8 +141,13 @@ import ca.sqlpower.swingui.SwingWorkerRegistry;
 import ca.sqlpower.swingui.db.DatabaseConnectionManager;
 import ca.sqlpower.swingui.event.TaskTerminationEvent;
 import ca.sqlpower.swingui.event.TaskTerminationListener;
+import ca.sqlpower.swingui.table.ExportWorker;
 import ca.sqlpower.swingui.table.FancyExportableJTable;
+import ca.sqlpower.swingui.table.PagedResultSetTableModel;
 import ca.sqlpower.swingui.table.ResultSetTableModel;
+import ca.sqlpower.swingui.table.StreamingExportFormatter;
+import ca.sqlpower.swingui.table.TableModelCSVFormatter;
+import ca.sqlpower.swingui.table.TableModelHTMLFormatter;
 import ca.sqlpower.validation.swingui.StatusComponent;
 
 import com.jgoodies.forms.builder.DefaultFormBuilder;
@@ -311,6 +331,46 @@ public class SQLQueryUIComponents {
 			}
 		}
 	};
+
+    /**
+     * Exports every row of a paged result, up to the row limit, to a user
+     * selected file. The table only holds some of the pages, so the query is
+     * run again and its rows are streamed to the file as they are read.
+     */
+    private abstract class PagedResultExportAction extends AbstractAction {
+
+    	private final JTable table;
+    	private final ResultSetPager pager;
+    	private final FileFilter filter;
+
+    	public PagedResultExportAction(String name, JTable table, ResultSetPager pager, FileFilter filter) {
+    		super(name);
+    		this.table = table;
+    		this.pager = pager;
+    		this.filter = filter;
+    	}
+
+    	/**
+    	 * Returns a new formatter for the format of the export.
+    	 */
+    	protected abstract StreamingExportFormatter createFormatter();
+
+    	public void actionPerformed(ActionEvent e) {
+    		File file = ExportWorker.chooseFile(table, filter);
+    		if (file == null) return;
+    		new ExportWorker(swRegistry, table, createFormatter(), file) {
+    			@Override
+    			protected void export(final StreamingExportFormatter formatter, final PrintWriter writer)
+    					throws SQLException {
+    				pager.readAll(new ResultSetPager.ResultReader() {
+    					public void read(ResultSet rs) throws SQLException {
+    						formatter.formatToStream(rs, writer);
+    					}
+    				});
+    			}
+    		}.start();
+    	}
+    }
     
     /**
      * This will execute the sql statement in the sql text area. The
@@ -321,6 +381,7 @@ public class SQLQueryUIComponents {
     private class ExecuteSQLWorker extends SPSwingWorker {
     	
         private List<CachedRowSet> resultSets = new ArrayList<CachedRowSet>();
+        private List<ResultSetPager> pagers = new ArrayList<ResultSetPager>();
         private List<Integer> rowsAffected = new ArrayList<Integer>(); 
 		private final SQLDatabase db;
 		private long startExecutionTime;
@@ -384,6 +445,13 @@ public class SQLQueryUIComponents {
         		long finishExecutionTime = System.currentTimeMillis();
         		DateFormat formatter = DateFormat.getDateTimeInstance(DateFormat.MEDIUM, DateFormat.LONG);
         		logTextArea.append("Executed at " + formatter.format(new Date(startExecutionTime)) + ", took " + (finishExecutionTime - startExecutionTime) + " milliseconds\n");
+        		StatementStatistics statistics = getStatistics(stmtExecutor);
+        		if (statistics != null) {
+        			logTextArea.append(statistics + "\n");
+        			if (statistics.getPlan() != null) {
+        				logTextArea.append("Plan:\n" + statistics.getPlan() + "\n");
+        			}
+        		}
         		Throwable e = getDoStuffException();
         		if (e != null) {
         			String errorMessage = createErrorStringMessage(e);
@@ -400,10 +468,15 @@ public class SQLQueryUIComponents {
         		}
         		
         		if (queuedSQLStatement == null) {
-        			createResultSetTables(resultSets, stmtExecutor);
+        			createResultSetTables(resultSets, pagers, stmtExecutor);
+        		} else {
+        			for (ResultSetPager pager : pagers) {
+        				pager.close();
+        			}
         		}
 
         		resultSets.clear();
+        		pagers.clear();
         		for (Integer i : rowsAffected) {
         			logTextArea.append(Messages.getString("SQLQuery.rowsAffected", i.toString()));
         			logTextArea.append("\n");
@@ -436,6 +509,11 @@ public class SQLQueryUIComponents {
         		logger.debug("Executing statement " + stmtExecutor.getStatement());
         		boolean sqlResult = stmtExecutor.executeStatement();
         		logger.debug("Finished execution");
+        		if (stmtExecutor instanceof DefaultStatementExecutor
+        				&& ((DefaultStatementExecutor) stmtExecutor).getPager() != null) {
+        			pagers.add(((DefaultStatementExecutor) stmtExecutor).getPager());
+        			return;
+        		}
         		boolean hasNext = true;
         		
         		while (hasNext) {
@@ -468,11 +546,34 @@ public class SQLQueryUIComponents {
         }
     }
     
+    /**
+     * The results of one statement of a script run on a concurrent connection.
+     */
+    private static class StatementResults {
+    	private final List<ResultSet> resultSets = new ArrayList<ResultSet>();
+    	private final List<Integer> updateCounts = new ArrayList<Integer>();
+    }
+    
     private class DefaultStatementExecutor implements StatementExecutor {
     	
     	private final SQLDatabase db;
 		private final String sqlString;
 		private final int rowLimit;
+		private final int pageSize;
+		private final boolean captureStatistics;
+		private final int maxConcurrentStatements;
+		
+		/**
+		 * The statistics of the last execution if they were captured,
+		 * otherwise null.
+		 */
+		private StatementStatistics statistics;
+		
+		/**
+		 * The pager reading the results of the statement if it was run in
+		 * paging mode, otherwise null.
+		 */
+		private ResultSetPager pager;
 		private final List<ResultSet> resultSets = new ArrayList<ResultSet>();
 		private final List<Integer> updateCounts = new ArrayList<Integer>();
 		private final List<StatementExecutorListener> executorListeners = new ArrayList<StatementExecutorListener>();
@@ -487,8 +588,27 @@ public class SQLQueryUIComponents {
 		
 		private final PropertyChangeSupport pcs = new PropertyChangeSupport(this);
 		
-		public DefaultStatementExecutor(SQLDatabase db, String sqlString, int rowLimit) {
+		/**
+		 * @param pageSize
+		 *            If positive, and the statement is a single select, the
+		 *            results are read by a {@link ResultSetPager} with pages of
+		 *            this many rows, up to the row limit.
+		 * @param captureStatistics
+		 *            If true the timing and size of the results and the plan
+		 *            of the statement are recorded in a
+		 *            {@link StatementStatistics}.
+		 * @param maxConcurrentStatements
+		 *            If greater than 1, and the connection is in auto-commit
+		 *            mode, a script of several statements is split up and
+		 *            queries in a row are run at the same time on up to this
+		 *            many concurrent connections.
+		 */
+		public DefaultStatementExecutor(SQLDatabase db, String sqlString, int rowLimit, int pageSize,
+		        boolean captureStatistics, int maxConcurrentStatements) {
 			this.rowLimit = rowLimit;
+			this.pageSize = pageSize;
+			this.captureStatistics = captureStatistics;
+			this.maxConcurrentStatements = maxConcurrentStatements;
 			this.sqlString = sqlString;
 			this.db = db;
 			resultPosition = 0;
@@ -506,35 +626,75 @@ public class SQLQueryUIComponents {
 	    	}
 			return dbSelected 
 					&& selectedConnection != null
-					&& selectedConnection.getCurrentStmt() != null;
+					&& selectedConnection.isExecuting();
 		}
 		
 		public boolean executeStatement() throws SQLException {
 			resultPosition = 0;
+			statistics = captureStatistics ? new StatementStatistics(sqlString) : null;
+			if (pageSize > 0 && ResultSetPager.isPageable(sqlString)) {
+				try {
+					fireQueryExecutionStart();
+					if (statistics != null) statistics.executionStarted();
+					final ConnectionAndStatementBean conBean = conMap.get(db);
+					pager = new ResultSetPager(conBean.getConnection(), sqlString,
+							pageSize, PAGES_IN_MEMORY, rowLimit, new ResultSetPager.StatementListener() {
+						public void statementStarted(Statement stmt) {
+							conBean.setCurrentStmt(stmt);
+						}
+						public void statementFinished(Statement stmt) {
+							synchronized (conBean) {
+								if (conBean.getCurrentStmt() == stmt) {
+									conBean.setCurrentStmt(null);
+								}
+							}
+						}
+					});
+					if (statistics != null) {
+						statistics.executionFinished();
+						fetchPlan(conMap.get(db).getConnection());
+					}
+					return true;
+				} finally {
+					fireQueryExecutionStop();
+				}
+			}
+			ConnectionAndStatementBean conBean = conMap.get(db);
+			List<String> statements = SQLScript.splitStatements(sqlString);
+			List<StatementKind> kinds = new ArrayList<StatementKind>();
+			for (String statement : statements) {
+				kinds.add(SQLScript.classify(statement));
+			}
+			if (maxConcurrentStatements > 1 && hasAdjacentQueries(kinds) && !SQLScript.hasBlock(statements)
+					&& !conBean.isSessionChanged() && conBean.getConnection().getAutoCommit()) {
+				try {
+					fireQueryExecutionStart();
+					if (statistics != null) statistics.executionStarted();
+					boolean initialResult = executeScript(conBean, statements, kinds);
+					if (statistics != null) statistics.executionFinished();
+					return initialResult;
+				} finally {
+					fireQueryExecutionStop();
+				}
+			}
+			if (kinds.contains(StatementKind.SESSION)) {
+				conBean.setSessionChanged(true);
+			}
 			Connection con = null;
             Statement stmt = null;
             try {
             	fireQueryExecutionStart();
-            	con = conMap.get(db).getConnection();
+            	con = conBean.getConnection();
                 stmt = con.createStatement();
-                conMap.get(db).setCurrentStmt(stmt);
+                conBean.setCurrentStmt(stmt);
                 
                 stmt.setMaxRows(rowLimit);
+                if (statistics != null) statistics.executionStarted();
                 boolean initialResult = stmt.execute(sqlString);
-                boolean sqlResult = initialResult;
-                boolean hasNext = true;
-                while (hasNext) {
-                	if (sqlResult) {
-                		CachedRowSet crs = new CachedRowSet();
-                		crs.setMakeUppercase(false);
-                		crs.populate(stmt.getResultSet());
-                		resultSets.add(crs);
-                	} else {
-                		resultSets.add(null);
-                	}
-                    updateCounts.add(stmt.getUpdateCount());
-                    sqlResult = stmt.getMoreResults();
-                    hasNext = !((sqlResult == false) && (stmt.getUpdateCount() == -1));
+                if (statistics != null) statistics.executionFinished();
+                readResults(stmt, initialResult, statistics, resultSets, updateCounts);
+                if (statistics != null) {
+                	fetchPlan(con);
                 }
                 return initialResult;
             } finally {
@@ -544,12 +704,201 @@ public class SQLQueryUIComponents {
                     } catch (SQLException ex) {
                         ex.printStackTrace();
                     }
-                    conMap.get(db).setCurrentStmt(null);
+                    conBean.setCurrentStmt(null);
                 }
                 fireQueryExecutionStop();
             }
 		}
 
+		/**
+		 * Returns true if two queries follow each other in a script with the
+		 * given kinds of statements, which is when running the script a
+		 * statement at a time lets queries run at the same time.
+		 */
+		private boolean hasAdjacentQueries(List<StatementKind> kinds) {
+			for (int i = 1; i < kinds.size(); i++) {
+				if (kinds.get(i - 1) == StatementKind.QUERY && kinds.get(i) == StatementKind.QUERY) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Copies all of the results of the statement, which has just been
+		 * executed, into the given lists. Each result set is added with an
+		 * update count of -1 and each update count is added with a null result
+		 * set.
+		 * 
+		 * @param sqlResult
+		 *            The value returned by the statement's execute method.
+		 * @param statistics
+		 *            Measures reading the result sets if it is not null.
+		 */
+		private void readResults(Statement stmt, boolean sqlResult, StatementStatistics statistics,
+				List<ResultSet> resultSets, List<Integer> updateCounts) throws SQLException {
+			boolean hasNext = true;
+			while (hasNext) {
+				if (sqlResult) {
+					CachedRowSet crs = new CachedRowSet();
+					crs.setMakeUppercase(false);
+					if (statistics != null) {
+						crs.populate(statistics.measure(stmt, stmt.getResultSet()));
+					} else {
+						crs.populate(stmt.getResultSet());
+					}
+					resultSets.add(crs);
+				} else {
+					resultSets.add(null);
+				}
+				updateCounts.add(stmt.getUpdateCount());
+				sqlResult = stmt.getMoreResults();
+				hasNext = !((sqlResult == false) && (stmt.getUpdateCount() == -1));
+			}
+		}
+
+		/**
+		 * Runs the statements of a script one at a time on the connection,
+		 * except that two or more queries in a row are run at the same time
+		 * on the concurrent connections. Statements that change data or
+		 * definitions are committed before the next statement starts as the
+		 * connection is in auto-commit mode, so they are seen by the queries
+		 * after them. After a statement that may change the state of the
+		 * session the rest of the script is run on the connection alone. The
+		 * results are kept in the order of the statements in the script.
+		 */
+		private boolean executeScript(ConnectionAndStatementBean conBean, List<String> statements,
+				List<StatementKind> kinds) throws SQLException {
+			int i = 0;
+			while (i < statements.size()) {
+				int end = i;
+				if (!conBean.isSessionChanged()) {
+					while (end < statements.size() && kinds.get(end) == StatementKind.QUERY) {
+						end++;
+					}
+				}
+				if (end - i > 1) {
+					executeConcurrently(conBean, statements.subList(i, end));
+					i = end;
+					continue;
+				}
+				if (kinds.get(i) == StatementKind.SESSION) {
+					conBean.setSessionChanged(true);
+				}
+				Statement stmt = conBean.getConnection().createStatement();
+				try {
+					conBean.setCurrentStmt(stmt);
+					stmt.setMaxRows(rowLimit);
+					readResults(stmt, stmt.execute(statements.get(i)), null, resultSets, updateCounts);
+				} finally {
+					stmt.close();
+					conBean.setCurrentStmt(null);
+				}
+				i++;
+			}
+			return resultSets.get(0) != null;
+		}
+
+		/**
+		 * Runs the given queries at the same time, each on its own concurrent
+		 * connection up to the maximum number of concurrent statements, and
+		 * adds their results in the order the queries are given. If one of
+		 * the queries fails or this thread is interrupted the queries still
+		 * running are cancelled.
+		 */
+		private void executeConcurrently(final ConnectionAndStatementBean conBean, List<String> queries)
+				throws SQLException {
+			int count = Math.min(queries.size(), maxConcurrentStatements);
+			final BlockingQueue<Connection> connections = new LinkedBlockingQueue<Connection>(
+					conBean.getConcurrentConnections(db.getDataSource(), count));
+			ExecutorService executor = Executors.newFixedThreadPool(count);
+			boolean finished = false;
+			try {
+				List<Future<StatementResults>> futures = new ArrayList<Future<StatementResults>>();
+				for (final String query : queries) {
+					futures.add(executor.submit(new Callable<StatementResults>() {
+						public StatementResults call() throws Exception {
+							Connection con = connections.take();
+							Statement stmt = null;
+							try {
+								stmt = con.createStatement();
+								conBean.addConcurrentStmt(stmt);
+								stmt.setMaxRows(rowLimit);
+								StatementResults results = new StatementResults();
+								readResults(stmt, stmt.execute(query), null,
+										results.resultSets, results.updateCounts);
+								return results;
+							} finally {
+								if (stmt != null) {
+									conBean.removeConcurrentStmt(stmt);
+									stmt.close();
+								}
+								connections.offer(con);
+							}
+						}
+					}));
+				}
+				for (Future<StatementResults> future : futures) {
+					StatementResults results = future.get();
+					resultSets.addAll(results.resultSets);
+					updateCounts.addAll(results.updateCounts);
+				}
+				finished = true;
+			} catch (InterruptedException e) {
+				SQLException ex = new SQLException("Execution of the script was interrupted.");
+				ex.initCause(e);
+				throw ex;
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof SQLException) {
+					throw (SQLException) e.getCause();
+				}
+				SQLException ex = new SQLException("Failed to execute the query: " + e.getCause().getMessage());
+				ex.initCause(e.getCause());
+				throw ex;
+			} finally {
+				if (!finished) {
+					try {
+						conBean.cancelStatements();
+					} catch (SQLException e) {
+						logger.warn("Failed to cancel the concurrent queries", e);
+					}
+				}
+				executor.shutdownNow();
+			}
+		}
+
+		public ResultSetPager getPager() {
+			return pager;
+		}
+
+		public StatementStatistics getStatistics() {
+			return statistics;
+		}
+
+		/**
+		 * Stores the plan for the statement in the statistics if it is a
+		 * single query and the data source's type has an
+		 * {@link ExplainPlanFetcher}. Other statements are not explained as a
+		 * failed explain on the user's connection can abort the user's
+		 * transaction. A statement the database cannot
+		 * explain, or a fetcher that cannot be created, is logged and the
+		 * statement gets no plan.
+		 */
+		private void fetchPlan(Connection con) {
+			List<String> statements = SQLScript.splitStatements(sqlString);
+			if (statements.size() != 1 || SQLScript.classify(statements.get(0)) != StatementKind.QUERY) return;
+			try {
+				JDBCDataSourceType type = db.getDataSource().getParentType();
+				ExplainPlanFetcher fetcher = type == null ? null : type.createExplainPlanFetcher();
+				if (fetcher == null) return;
+				statistics.setPlan(fetcher.fetchPlan(con, sqlString));
+			} catch (SQLException e) {
+				logger.info("Could not fetch the plan for " + sqlString, e);
+			} catch (RuntimeException e) {
+				logger.warn("Could not fetch the plan for " + sqlString, e);
+			}
+		}
+
 		public ResultSet getResultSet() {
 			if (resultPosition >= resultSets.size()) {
 				return null;
@@ -704,6 +1053,12 @@ public class SQLQueryUIComponents {
      */
     private final Map<JTable, String> tableToSQLMap;
     
+    /**
+     * This maps the JTables to the statistics recorded while running the
+     * statement that created them, if statistics were captured.
+     */
+    private final Map<JTable, StatementStatistics> tableToStatisticsMap = new HashMap<JTable, StatementStatistics>();
+    
     private SwingWorkerRegistry swRegistry;
     private final DataSourceCollection dsCollection;
     
@@ -812,6 +1167,7 @@ public class SQLQueryUIComponents {
 		final Iterator<Entry<SQLDatabase, ConnectionAndStatementBean>> iterator = conMap.entrySet().iterator();
 		for (;iterator.hasNext();) {
 			final Entry<SQLDatabase, ConnectionAndStatementBean> entry = iterator.next();
+			entry.getValue().closeConcurrentConnections();
             try {	
                 Connection con = entry.getValue().getConnection();
                 if (!con.isClosed()) {
@@ -1070,6 +1426,43 @@ public class SQLQueryUIComponents {
 	 */
 	private boolean showSearchOnResults = true;
 
+	/**
+	 * The number of pages of each paged result that are kept in memory.
+	 */
+	private static final int PAGES_IN_MEMORY = 10;
+
+	/**
+	 * If positive, the results of single select statements are read this many
+	 * rows at a time as the result table is scrolled instead of all at once,
+	 * and the row limit is not used for them. Paged results cannot be searched
+	 * or sorted.
+	 * <p>
+	 * This is 0, which turns paging off, by default.
+	 */
+	private int pageSize = 0;
+
+	/**
+	 * If true the time to the first row, the fetch time, the row count and
+	 * size and the plan of each statement run with the default executor are
+	 * recorded, written to the log and kept with the result tables. This is
+	 * off by default, in which case none of it is measured.
+	 */
+	private boolean captureStatistics = false;
+
+	/**
+	 * If greater than 1, scripts of several statements run with the default
+	 * executor on a connection in auto-commit mode are split into their
+	 * statements, and queries in a row are run at the same time on up to this
+	 * many extra connections to the database. Statements that change data or
+	 * definitions are run alone between them, and once a statement that may
+	 * change the state of the session has run on the connection its scripts
+	 * are always run on it alone. The results are shown in the order of the
+	 * statements in the script.
+	 * <p>
+	 * This is 0, which runs every script on the one connection, by default.
+	 */
+	private int maxConcurrentStatements = 0;
+
 	/**
 	 * This statement executor will be used to run queries when the execute button is pressed.
 	 * This will replace the default executor for text queries and is used in at least Wabit.
@@ -1269,11 +1662,10 @@ public class SQLQueryUIComponents {
             public void actionPerformed(ActionEvent arg0) {
                 ConnectionAndStatementBean conBean = conMap.get(databaseMapping.getDatabase((JDBCDataSource) databaseComboBox.getSelectedItem()));
                 if (conBean != null) {
-                    Statement stmt = conBean.getCurrentStmt();
-                    if (stmt != null) {
+                    if (conBean.isExecuting()) {
                         try {
                             logger.debug("stmt is being cancelled...supposely");
-                            stmt.cancel();
+                            conBean.cancelStatements();
                             if (sqlExecuteWorker != null) {
                             	queuedSQLStatement = null;
                                 sqlExecuteWorker.kill();
@@ -1377,7 +1769,8 @@ public class SQLQueryUIComponents {
     			executeQuery(new DefaultStatementExecutor(
     			        databaseMapping.getDatabase((JDBCDataSource) databaseComboBox.getSelectedItem()),
     			        sql,
-    			        ((Integer) rowLimitSpinner.getValue()).intValue()));
+    			        ((Integer) rowLimitSpinner.getValue()).intValue(),
+    			        pageSize, captureStatistics, maxConcurrentStatements));
     		}
     	} else {
     		executeQuery(stmtExecutor);
@@ -1576,7 +1969,8 @@ public class SQLQueryUIComponents {
      * Creates all of the JTables for the result tab and adds them to the result tab.
      * @throws SQLException 
      */
-    private synchronized void createResultSetTables(List<CachedRowSet> resultSets, StatementExecutor executor) throws SQLException {
+    private synchronized void createResultSetTables(List<CachedRowSet> resultSets,
+            List<ResultSetPager> pagers, StatementExecutor executor) throws SQLException {
     	clearResultTables(true);
    		for (StreamingRowSetListener rowSetListener : rowSetListeners) {
 			rowSetListener.disconnect();
@@ -1586,45 +1980,46 @@ public class SQLQueryUIComponents {
     	searchDocument = new DefaultStyledDocument();
     	for (CachedRowSet rs : resultSets) {
     		final JTable tempTable;
-    		FormLayout tableAreaLayout = new FormLayout("pref, 3dlu, pref:grow", "pref, fill:min(pref;50dlu):grow");
-    		DefaultFormBuilder tableAreaBuilder = new DefaultFormBuilder(tableAreaLayout);
-
-    		if (showSearchOnResults) {
-    			JLabel searchLabel = new JLabel(ICON);
-    			searchLabel.setToolTipText("Search");
-    			JTextField tableFilterTextField = new JTextField(searchDocument, null, 0);
-    			tableAreaBuilder.append(searchLabel, tableFilterTextField);
-    		}
     		ResultSetTableModel model = new ResultSetTableModel(rs);
     		StreamingRowSetListener rowSetListener = new StreamingRowSetListener(rs, model);
     		rs.addRowSetListener(rowSetListener);
     		rowSetListeners.add(rowSetListener);
     		
-    		tempTable = new FancyExportableJTable(model, searchDocument);
+    		FancyExportableJTable exportableTable = new FancyExportableJTable(model, searchDocument);
+    		exportableTable.setSwingWorkerRegistry(swRegistry);
+    		tempTable = exportableTable;
     		final TableModelListener tableListener = new TableModelListener() {
     		    public void tableChanged(TableModelEvent e) {
     		        tempTable.createDefaultColumnsFromModel();
     		    }
     		};
     		model.addTableModelListener(tableListener);
-
-    		// Allow users to select a single table cell.
-    		tempTable.setCellSelectionEnabled(true);
-
-    		tableAreaBuilder.nextLine();
-    		JScrollPane tableScrollPane = new JScrollPane(tempTable);
-    		tableScrollPane.setPreferredSize(new Dimension(
-    		        (int) tableScrollPane.getPreferredSize().getWidth(),
-    		        0));
-    		resultJTableScrollPanes.put(tempTable, tableScrollPane);
-    		tableAreaBuilder.append(tableScrollPane, 3);
-
-    		resultJTables.add((JTable)tempTable);
-    		tableToSQLMap.put(((JTable)tempTable), executor.getStatement());
-    		JPanel tempResultPanel = tableAreaBuilder.getPanel();
-    		resultTabPane.add(Messages.getString("SQLQuery.result"), tempResultPanel);
-    		resultTabPane.setSelectedIndex(1);
-
+    		addResultTable(tempTable, showSearchOnResults, executor);
+    	}
+    	for (ResultSetPager pager : pagers) {
+    		JTable pagedTable = new JTable(new PagedResultSetTableModel(pager, swRegistry));
+    		final JPopupMenu exportMenu = new JPopupMenu();
+    		exportMenu.add(new PagedResultExportAction("Export All to HTML..", pagedTable, pager, SPSUtils.HTML_FILE_FILTER) {
+    			@Override
+    			protected StreamingExportFormatter createFormatter() {
+    				return new TableModelHTMLFormatter();
+    			}
+    		});
+    		exportMenu.add(new PagedResultExportAction("Export All to CSV..", pagedTable, pager, SPSUtils.CSV_FILE_FILTER) {
+    			@Override
+    			protected StreamingExportFormatter createFormatter() {
+    				return new TableModelCSVFormatter();
+    			}
+    		});
+    		pagedTable.addMouseListener(new MouseAdapter() {
+    			@Override
+    			public void mouseClicked(MouseEvent e) {
+    				if (e.getButton() == MouseEvent.BUTTON3) {
+    					exportMenu.show(e.getComponent(), e.getX(), e.getY());
+    				}
+    			}
+    		});
+    		addResultTable(pagedTable, false, executor);
     	}
     	for (JTable table : resultJTables) {
     		for (TableChangeListener l : tableListeners) {
@@ -1633,6 +2028,54 @@ public class SQLQueryUIComponents {
     	}
     }
 
+    /**
+     * Adds a tab for the given result table, with the search field above it if
+     * showSearch is true.
+     */
+    private void addResultTable(JTable tempTable, boolean showSearch, StatementExecutor executor) {
+    	FormLayout tableAreaLayout = new FormLayout("pref, 3dlu, pref:grow", "pref, fill:min(pref;50dlu):grow");
+    	DefaultFormBuilder tableAreaBuilder = new DefaultFormBuilder(tableAreaLayout);
+
+    	if (showSearch) {
+    		JLabel searchLabel = new JLabel(ICON);
+    		searchLabel.setToolTipText("Search");
+    		JTextField tableFilterTextField = new JTextField(searchDocument, null, 0);
+    		tableAreaBuilder.append(searchLabel, tableFilterTextField);
+    	}
+
+    	// Allow users to select a single table cell.
+    	tempTable.setCellSelectionEnabled(true);
+
+    	tableAreaBuilder.nextLine();
+    	JScrollPane tableScrollPane = new JScrollPane(tempTable);
+    	tableScrollPane.setPreferredSize(new Dimension(
+    	        (int) tableScrollPane.getPreferredSize().getWidth(),
+    	        0));
+    	resultJTableScrollPanes.put(tempTable, tableScrollPane);
+    	tableAreaBuilder.append(tableScrollPane, 3);
+
+    	resultJTables.add(tempTable);
+    	tableToSQLMap.put(tempTable, executor.getStatement());
+    	StatementStatistics statistics = getStatistics(executor);
+    	if (statistics != null) {
+    		tableToStatisticsMap.put(tempTable, statistics);
+    	}
+    	JPanel tempResultPanel = tableAreaBuilder.getPanel();
+    	resultTabPane.add(Messages.getString("SQLQuery.result"), tempResultPanel);
+    	resultTabPane.setSelectedIndex(1);
+    }
+
+    /**
+     * Closes the pagers of the paged result tables.
+     */
+    private void closePagedResults() {
+    	for (JTable table : resultJTables) {
+    		if (table.getModel() instanceof PagedResultSetTableModel) {
+    			((PagedResultSetTableModel) table.getModel()).cleanup();
+    		}
+    	}
+    }
+
     /**
      * Removes all of the result tables that have been created by this class.
      * All existing table listeners will be sent a tableRemoved event.
@@ -1648,6 +2091,7 @@ public class SQLQueryUIComponents {
      */
 	private void clearResultTables(boolean removeTabs) {
 		tableToSQLMap.clear();
+		tableToStatisticsMap.clear();
     	for (JTable table : resultJTables) {
     		for (int i = tableListeners.size() - 1; i >= 0; i--) {
     			tableListeners.get(i).tableRemoved(new TableChangeEvent(this, table));
@@ -1655,6 +2099,7 @@ public class SQLQueryUIComponents {
     	}
     	
     	if (removeTabs) {
+    	    closePagedResults();
     	    resultJTables.clear();
     	    resultJTableScrollPanes.clear();
     	    if(resultTabPane.getComponentCount() > 1) {
@@ -1774,12 +2219,33 @@ public class SQLQueryUIComponents {
     public String getQueryForJTable(JTable table) {
     	return tableToSQLMap.get(table);
     }
+
+    /**
+     * Returns the statistics recorded while running the query that made the
+     * JTable's result set, or null if statistics were not captured or the
+     * table has been removed from the results tab.
+     */
+    public StatementStatistics getStatisticsForJTable(JTable table) {
+    	return tableToStatisticsMap.get(table);
+    }
+
+    /**
+     * Returns the statistics of the given executor's last execution, or null
+     * if it did not capture any.
+     */
+    private static StatementStatistics getStatistics(StatementExecutor executor) {
+    	if (executor instanceof DefaultStatementExecutor) {
+    		return ((DefaultStatementExecutor) executor).getStatistics();
+    	}
+    	return null;
+    }
     
     public void disconnectListeners() {
     	dsCollection.removeDatabaseListChangeListener(dbListChangeListener);
    		for (StreamingRowSetListener rowSetListener : rowSetListeners) {
 			rowSetListener.disconnect();
 		}
+   		closePagedResults();
     }
     
     public Document getSearchDocument() {
@@ -1789,6 +2255,43 @@ public class SQLQueryUIComponents {
     public void setShowSearchOnResults(boolean showSearchOnResults) {
 		this.showSearchOnResults = showSearchOnResults;
 	}
+
+    /**
+     * Sets the number of rows read at a time for the results of single select
+     * statements, or turns paging off if it is 0.
+     */
+    public void setPageSize(int pageSize) {
+    	this.pageSize = pageSize;
+    }
+
+    public int getPageSize() {
+    	return pageSize;
+    }
+
+    /**
+     * Sets whether timings, sizes and plans are captured for the statements
+     * run from now on.
+     */
+    public void setCaptureStatistics(boolean captureStatistics) {
+    	this.captureStatistics = captureStatistics;
+    }
+
+    public boolean isCaptureStatistics() {
+    	return captureStatistics;
+    }
+
+    /**
+     * Sets the number of queries of a script that may run at the same time on
+     * extra connections, or turns running them at the same time off if it is
+     * 1 or less.
+     */
+    public void setMaxConcurrentStatements(int maxConcurrentStatements) {
+    	this.maxConcurrentStatements = maxConcurrentStatements;
+    }
+
+    public int getMaxConcurrentStatements() {
+    	return maxConcurrentStatements;
+    }
     
     /**
      * Sets the data source combo box to the given data source.
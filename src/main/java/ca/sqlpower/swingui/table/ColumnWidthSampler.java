@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.swingui.table;
+
+import java.awt.Component;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import javax.swing.JTable;
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+import javax.swing.table.TableCellRenderer;
+import javax.swing.table.TableModel;
+
+/**
+ * Finds the width the cells of a table column need by measuring a sample of
+ * them through their renderers instead of every row. The header, the first
+ * and last rows and the rows that are visible are always measured. The rest
+ * of the rows are split into strata of equal size and one row at a fixed
+ * offset in each stratum is measured, so measuring the same rows again gives
+ * the same width. The strata are visited in an order that spreads the
+ * measured rows over the whole table at any point, so when the time budget
+ * runs out the rows measured so far are still spread evenly.
+ * <p>
+ * The width found for each column is kept in a cache stored on the table.
+ * When rows are only appended to the model, the next measurement starts
+ * from the cached width and samples only the new rows besides the ones
+ * always measured. Any other change to the model empties the cache.
+ */
+class ColumnWidthSampler {
+
+	/**
+	 * The number of rows, beyond the ones always measured, sampled from a
+	 * column. Columns with fewer rows than this are measured exhaustively.
+	 */
+	static final int DEFAULT_SAMPLE_ROWS = 1000;
+
+	/**
+	 * The longest time spent sampling the rows of one column.
+	 */
+	static final long DEFAULT_TIME_BUDGET_NANOS = 25L * 1000 * 1000;
+
+	/**
+	 * The client property of the table the {@link WidthCache} is stored in.
+	 */
+	private static final String CACHE_PROPERTY = ColumnWidthSampler.class.getName() + ".cache";
+
+	/**
+	 * The width found for one column and the number of rows it accounts for.
+	 */
+	private static class ColumnWidth {
+
+		private final int width;
+
+		/**
+		 * The rows before this one have been accounted for in the width.
+		 */
+		private final int measuredRows;
+
+		ColumnWidth(int width, int measuredRows) {
+			this.width = width;
+			this.measuredRows = measuredRows;
+		}
+	}
+
+	/**
+	 * The widths of the columns of one table model, by model column.
+	 */
+	private static class WidthCache implements TableModelListener {
+
+		private final TableModel model;
+
+		private final Map<Integer, ColumnWidth> widths = new HashMap<Integer, ColumnWidth>();
+
+		WidthCache(TableModel model) {
+			this.model = model;
+			model.addTableModelListener(this);
+		}
+
+		public void tableChanged(TableModelEvent e) {
+			if (e.getType() == TableModelEvent.INSERT) {
+				for (Iterator<ColumnWidth> it = widths.values().iterator(); it.hasNext(); ) {
+					if (e.getFirstRow() < it.next().measuredRows) {
+						it.remove();
+					}
+				}
+			} else {
+				widths.clear();
+			}
+		}
+	}
+
+	private final int sampleRows;
+
+	private final long timeBudgetNanos;
+
+	/**
+	 * The number of cells given to a renderer by the last call to
+	 * {@link #measure(JTable, int, int)}.
+	 */
+	private int measuredCells;
+
+	/**
+	 * @param sampleRows
+	 *            The number of rows to sample besides the ones always
+	 *            measured. {@link Integer#MAX_VALUE} measures every row.
+	 * @param timeBudgetNanos
+	 *            The longest time to spend sampling a column. Non-positive
+	 *            values mean no limit.
+	 */
+	ColumnWidthSampler(int sampleRows, long timeBudgetNanos) {
+		this.sampleRows = sampleRows;
+		this.timeBudgetNanos = timeBudgetNanos;
+	}
+
+	ColumnWidthSampler() {
+		this(DEFAULT_SAMPLE_ROWS, DEFAULT_TIME_BUDGET_NANOS);
+	}
+
+	/**
+	 * Returns the width the header and cells of the given view column need,
+	 * without padding, or maxWidth if they need at least that much.
+	 * 
+	 * @param maxWidth
+	 *            The width to stop measuring at. Non-positive values mean no
+	 *            maximum.
+	 */
+	int measure(JTable table, int colIndex, int maxWidth) {
+		measuredCells = 0;
+		TableCellRenderer headerRenderer = table.getTableHeader().getDefaultRenderer();
+		Component comp = headerRenderer.getTableCellRendererComponent(
+				table, table.getColumnModel().getColumn(colIndex).getHeaderValue(),
+				false, false, 0, colIndex);
+		// Headers need additional padding for some reason!
+		int width = comp.getPreferredSize().width + 2;
+
+		int rowCount = table.getRowCount();
+		WidthCache cache = getCache(table);
+		int modelColumn = table.convertColumnIndexToModel(colIndex);
+		ColumnWidth cached = cache.widths.get(modelColumn);
+		int firstRow = 0;
+		if (cached != null && cached.measuredRows <= rowCount) {
+			width = Math.max(width, cached.width);
+			if (table.getRowSorter() == null) {
+				firstRow = cached.measuredRows;
+			}
+		}
+
+		if (rowCount > 0 && (maxWidth <= 0 || width < maxWidth)) {
+			width = measureRows(table, colIndex, width, maxWidth, firstRow, rowCount);
+		}
+		if (maxWidth > 0 && width >= maxWidth) {
+			width = maxWidth;
+		} else {
+			cache.widths.put(modelColumn, new ColumnWidth(width, rowCount));
+		}
+		return width;
+	}
+
+	/**
+	 * Measures the always measured rows and a sample of the rows from
+	 * firstRow up to rowCount and returns the widest of them and width.
+	 */
+	private int measureRows(JTable table, int colIndex, int width, int maxWidth, int firstRow, int rowCount) {
+		Rectangle visible = table.getVisibleRect();
+		int firstVisible = visible.isEmpty() ? -1 : table.rowAtPoint(visible.getLocation());
+		if (firstVisible >= 0) {
+			int lastVisible = table.rowAtPoint(new Point(visible.x, visible.y + visible.height - 1));
+			if (lastVisible < 0) {
+				lastVisible = rowCount - 1;
+			}
+			for (int row = firstVisible; row <= lastVisible; row++) {
+				width = Math.max(width, measureCell(table, row, colIndex));
+				if (maxWidth > 0 && width >= maxWidth) return width;
+			}
+		}
+		width = Math.max(width, measureCell(table, 0, colIndex));
+		width = Math.max(width, measureCell(table, rowCount - 1, colIndex));
+
+		int rows = rowCount - firstRow;
+		int strata = Math.min(rows, sampleRows);
+		long deadline = System.nanoTime() + timeBudgetNanos;
+		int bits = 32 - Integer.numberOfLeadingZeros(Math.max(strata - 1, 1));
+		int sampled = 0;
+		for (int i = 0; i < 1 << bits; i++) {
+			// visiting the strata in bit reversed order keeps the rows measured so far spread out
+			int stratum = Integer.reverse(i) >>> (32 - bits);
+			if (stratum >= strata) continue;
+			long stratumStart = firstRow + (long) stratum * rows / strata;
+			long stratumEnd = firstRow + (long) (stratum + 1) * rows / strata;
+			int row = (int) (stratumStart + offset(stratum) % (stratumEnd - stratumStart));
+			width = Math.max(width, measureCell(table, row, colIndex));
+			if (maxWidth > 0 && width >= maxWidth) return width;
+			sampled++;
+			if (timeBudgetNanos > 0 && sampled % 16 == 0 && System.nanoTime() > deadline) break;
+		}
+		return width;
+	}
+
+	/**
+	 * Returns a non-negative number that is the same each time for the same
+	 * stratum but looks random between strata.
+	 */
+	private static long offset(int stratum) {
+		long x = stratum * 0x9E3779B97F4A7C15L;
+		x ^= x >>> 31;
+		return (x * 0xBF58476D1CE4E5B9L) >>> 33;
+	}
+
+	private int measureCell(JTable table, int row, int colIndex) {
+		final TableCellRenderer cellRenderer = table.getCellRenderer(row, colIndex);
+		if (cellRenderer == null) return 0;
+		measuredCells++;
+		Component comp = cellRenderer.getTableCellRendererComponent(table,
+				table.getValueAt(row, colIndex), false, false, row, colIndex);
+		// we add a one-pixel fudge factor here because the result is often too short by a pixel
+		return comp.getPreferredSize().width + 1;
+	}
+
+	/**
+	 * Returns the width cache of the table's current model, replacing the
+	 * cache of a previous model.
+	 */
+	private static WidthCache getCache(JTable table) {
+		WidthCache cache = (WidthCache) table.getClientProperty(CACHE_PROPERTY);
+		if (cache == null || cache.model != table.getModel()) {
+			if (cache != null) {
+				cache.model.removeTableModelListener(cache);
+			}
+			cache = new WidthCache(table.getModel());
+			table.putClientProperty(CACHE_PROPERTY, cache);
+		}
+		return cache;
+	}
+
+	int getMeasuredCells() {
+		return measuredCells;
+	}
+}
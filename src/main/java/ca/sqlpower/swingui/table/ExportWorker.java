@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.swingui.table;
+
+import java.awt.Component;
+import java.io.File;
+import java.io.PrintWriter;
+
+import javax.swing.JFileChooser;
+import javax.swing.ProgressMonitor;
+import javax.swing.filechooser.FileFilter;
+
+import ca.sqlpower.swingui.ProgressWatcher;
+import ca.sqlpower.swingui.SPSUtils;
+import ca.sqlpower.swingui.SPSwingWorker;
+import ca.sqlpower.swingui.SwingWorkerRegistry;
+
+/**
+ * Writes an export to a file off of the event dispatch thread. While the
+ * export runs a progress monitor shows the number of rows written, and
+ * cancelling the progress monitor cancels the export after the current row.
+ * <p>
+ * Subclasses decide what is exported by passing the formatter and writer to
+ * one of the formatter's formatToStream methods.
+ */
+public abstract class ExportWorker extends SPSwingWorker {
+
+	private final Component parent;
+
+	private final StreamingExportFormatter formatter;
+
+	private final File file;
+
+	/**
+	 * @param parent
+	 *            The component the progress monitor and any error are shown
+	 *            over.
+	 * @param formatter
+	 *            The formatter that writes the export. It is watched for the
+	 *            progress of the export and cancelled along with this worker.
+	 * @param file
+	 *            The file to write the export to.
+	 */
+	public ExportWorker(SwingWorkerRegistry registry, Component parent,
+			StreamingExportFormatter formatter, File file) {
+		super(registry);
+		this.parent = parent;
+		this.formatter = formatter;
+		this.file = file;
+	}
+
+	/**
+	 * Asks the user for the file to export to. Returns null if the user did
+	 * not choose a file.
+	 */
+	public static File chooseFile(Component parent, FileFilter filter) {
+		JFileChooser chooser = new JFileChooser();
+		chooser.addChoosableFileFilter(filter);
+		chooser.setFileFilter(filter);
+		if (chooser.showSaveDialog(parent) != JFileChooser.APPROVE_OPTION) {
+			return null;
+		}
+		return chooser.getSelectedFile();
+	}
+
+	/**
+	 * Shows the progress monitor and starts the export on a new thread. This
+	 * must be called on the event dispatch thread.
+	 */
+	public void start() {
+		ProgressMonitor pm = new ProgressMonitor(parent, "Exporting to " + file.getName(), "", 0, 1);
+		ProgressWatcher.watchProgress(pm, this);
+		new Thread(this).start();
+	}
+
+	@Override
+	public void doStuff() throws Exception {
+		export(formatter, new PrintWriter(file));
+	}
+
+	/**
+	 * Writes the export to the given writer with the given formatter, which
+	 * closes the writer when it is done. This is called on the worker's
+	 * thread.
+	 */
+	protected abstract void export(StreamingExportFormatter formatter, PrintWriter writer) throws Exception;
+
+	@Override
+	public void cleanup() throws Exception {
+		if (getDoStuffException() != null) {
+			SPSUtils.showExceptionDialogNoReport(parent, "Could not export to " + file.getName(),
+					getDoStuffException());
+		}
+	}
+
+	@Override
+	public synchronized void setCancelled(boolean cancelled) {
+		super.setCancelled(cancelled);
+		formatter.setCancelled(cancelled);
+	}
+
+	@Override
+	protected Integer getJobSizeImpl() {
+		return formatter.getJobSize();
+	}
+
+	/**
+	 * Returns the number of rows written if the number of rows to write is
+	 * known. Otherwise this is 0 and the rows written are only in the
+	 * message, as a progress monitor closes once its progress reaches its
+	 * maximum.
+	 */
+	@Override
+	protected int getProgressImpl() {
+		return formatter.getJobSize() == null ? 0 : formatter.getProgress();
+	}
+
+	@Override
+	protected String getMessageImpl() {
+		return formatter.getProgress() + " rows written";
+	}
+}
@@ -26,7 +26,6 @@ import java.awt.event.MouseListener;
 import java.awt.font.FontRenderContext;
 import java.awt.geom.Rectangle2D;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.PrintWriter;
 import java.text.Format;
 import java.util.HashMap;
@@ -36,14 +35,16 @@ import java.util.concurrent.Callable;
 import javax.swing.AbstractAction;
 import javax.swing.Action;
 import javax.swing.JDialog;
-import javax.swing.JFileChooser;
 import javax.swing.JPopupMenu;
+import javax.swing.filechooser.FileFilter;
 import javax.swing.table.TableModel;
 import javax.swing.text.Document;
 
 import ca.sqlpower.swingui.DataEntryPanelBuilder;
 import ca.sqlpower.swingui.FontSelector;
 import ca.sqlpower.swingui.SPSUtils;
+import ca.sqlpower.swingui.StubSwingWorkerRegistry;
+import ca.sqlpower.swingui.SwingWorkerRegistry;
 
 /**
  * This class contains a JTable that displays the given model. The JTable can be sorted
@@ -119,28 +120,7 @@ public class FancyExportableJTable extends EditableJTable {
 	 */
 	private final Action exportHTMLAction = new AbstractAction("Export Selected to HTML..") {
         public void actionPerformed(ActionEvent e) {
-            TableModelHTMLFormatter htmlFormatter= new TableModelHTMLFormatter();
-            for (Map.Entry<Integer, Format> entry : columnFormatters.entrySet()) {
-                htmlFormatter.setFormatter(entry.getKey(), entry.getValue());
-            }
-            
-            JFileChooser chooser = new JFileChooser();
-            chooser.addChoosableFileFilter(SPSUtils.HTML_FILE_FILTER);
-            chooser.setFileFilter(SPSUtils.HTML_FILE_FILTER);
-            int chooserResult =  chooser.showSaveDialog(FancyExportableJTable.this);
-            if (chooserResult == JFileChooser.APPROVE_OPTION) {
-                File file = chooser.getSelectedFile();
-                try {
-                    PrintWriter writer = new PrintWriter(file);
-                    if (getSelectedRows().length != 0){
-                        htmlFormatter.formatToStream(getModel(), writer, getSelectedRows());                        
-                    } else {
-                        htmlFormatter.formatToStream(getModel(), writer);
-                    }
-                } catch (FileNotFoundException ex) {
-                    throw new RuntimeException("Could not open file " + file.getName(), ex);
-                } 
-            }
+            export(new TableModelHTMLFormatter(), SPSUtils.HTML_FILE_FILTER);
         }
     };
     
@@ -154,30 +134,14 @@ public class FancyExportableJTable extends EditableJTable {
      */
     private final Action exportCSVAction = new AbstractAction("Export Selected to CSV..") {
         public void actionPerformed(ActionEvent e) {
-            TableModelCSVFormatter csvFormatter = new TableModelCSVFormatter();
-            for (Map.Entry<Integer, Format> entry : columnFormatters.entrySet()) {
-                csvFormatter.setFormatter(entry.getKey(), entry.getValue());
-            }
-            
-            JFileChooser chooser = new JFileChooser();
-            chooser.addChoosableFileFilter(SPSUtils.CSV_FILE_FILTER);
-            chooser.setFileFilter(SPSUtils.CSV_FILE_FILTER);
-            int chooserResult =  chooser.showSaveDialog(FancyExportableJTable.this);
-            if (chooserResult == JFileChooser.APPROVE_OPTION) {
-                File file = chooser.getSelectedFile();
-                try {
-                    PrintWriter writer = new PrintWriter(file);
-                    if (getSelectedRows().length != 0) {
-                        csvFormatter.formatToStream(getModel(), writer, getSelectedRows());                     
-                    } else {
-                        csvFormatter.formatToStream(getModel(), writer);
-                    }
-                } catch (FileNotFoundException ex) {
-                    throw new RuntimeException("Could not open file " + file.getName(), ex);
-                } 
-            }
+            export(new TableModelCSVFormatter(), SPSUtils.CSV_FILE_FILTER);
         }
     };
+    
+    /**
+     * The registry of the workers that run the exports.
+     */
+    private SwingWorkerRegistry swingWorkerRegistry = new StubSwingWorkerRegistry();
 		
 	/**
 	 * The text converter for the search table model. This is used to get the strings
@@ -272,6 +236,34 @@ public class FancyExportableJTable extends EditableJTable {
 	    return exportCSVAction;
 	}
 
+    /**
+     * Asks for a file and exports the selected rows of the table to it, or
+     * every row if none are selected. The export runs on a worker thread and
+     * its progress is shown in a progress monitor that can cancel it.
+     */
+    private void export(StreamingExportFormatter formatter, FileFilter filter) {
+        for (Map.Entry<Integer, Format> entry : columnFormatters.entrySet()) {
+            formatter.setFormatter(entry.getKey(), entry.getValue());
+        }
+        File file = ExportWorker.chooseFile(this, filter);
+        if (file == null) return;
+        final TableModel model = getModel();
+        final int[] selectedRows = getSelectedRows().length != 0 ? getSelectedRows() : null;
+        new ExportWorker(swingWorkerRegistry, this, formatter, file) {
+            @Override
+            protected void export(StreamingExportFormatter formatter, PrintWriter writer) {
+                formatter.formatToStream(model, writer, selectedRows);
+            }
+        }.start();
+    }
+
+    /**
+     * Sets the registry the workers that export the table register with.
+     */
+    public void setSwingWorkerRegistry(SwingWorkerRegistry swingWorkerRegistry) {
+        this.swingWorkerRegistry = swingWorkerRegistry;
+    }
+
     /**
      * Sets a formatter for the given column of a table model for exporting to
      * CSV or HTML. If the column does not exist because the table is too small
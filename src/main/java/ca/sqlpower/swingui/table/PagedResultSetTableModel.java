@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.swingui.table;
+
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.swing.table.AbstractTableModel;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.sql.ResultSetPager;
+import ca.sqlpower.swingui.SPSwingWorker;
+import ca.sqlpower.swingui.SwingWorkerRegistry;
+
+/**
+ * A table model that shows the rows of a {@link ResultSetPager}. The table
+ * starts with the rows of the first page and grows by a page each time a row
+ * of the last page read is displayed, so scrolling down reads the next page.
+ * Rows of pages that were dropped from memory are read again when they are
+ * scrolled back into view.
+ * <p>
+ * Pages are read from the database on a {@link SPSwingWorker}, one at a time
+ * as the pager is not thread safe, so the event dispatch thread never waits on
+ * the database. Rows whose page is still being read show as empty until the
+ * page arrives. All of the methods of this model must be called on the event
+ * dispatch thread.
+ */
+public class PagedResultSetTableModel extends AbstractTableModel implements CleanupTableModel {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final Logger logger = Logger.getLogger(PagedResultSetTableModel.class);
+
+	/**
+	 * Reads a page from the pager off of the event dispatch thread and gives
+	 * it to the table once it is read.
+	 */
+	private class PageReader extends SPSwingWorker {
+
+		private final int page;
+
+		private List<Object[]> rows;
+
+		private int pagerRowCount;
+
+		private boolean pagerComplete;
+
+		PageReader(int page) {
+			super(registry, PagedResultSetTableModel.this);
+			this.page = page;
+		}
+
+		@Override
+		public void doStuff() throws Exception {
+			rows = pager.getPage(page);
+			pagerRowCount = pager.getRowCount();
+			pagerComplete = pager.isComplete();
+		}
+
+		@Override
+		public void cleanup() throws Exception {
+			reader = null;
+			requestedPages.remove(page);
+			if (closed) {
+				closePager();
+				return;
+			}
+			if (getDoStuffException() != null) {
+				logger.error("Could not read page " + page + " of the result", getDoStuffException());
+				readFailed = true;
+				requestedPages.clear();
+			} else {
+				pageRead(page, rows, pagerRowCount, pagerComplete);
+			}
+			readNextRequestedPage();
+		}
+	}
+
+	private final ResultSetPager pager;
+
+	private final SwingWorkerRegistry registry;
+
+	private final int pageSize;
+
+	/**
+	 * The pages the table has been given by the pager, least recently used
+	 * first. This keeps no more pages than the pager does.
+	 */
+	private final Map<Integer, List<Object[]>> pages;
+
+	/**
+	 * The pages the table is waiting for, in the order they were asked for.
+	 */
+	private final Set<Integer> requestedPages = new LinkedHashSet<Integer>();
+
+	/**
+	 * The worker reading a page, or null if no page is being read.
+	 */
+	private PageReader reader;
+
+	/**
+	 * The number of rows the table shows. This only changes when the rows
+	 * inserted event is fired.
+	 */
+	private int rowCount;
+
+	/**
+	 * True once the pager has read the last page of the result.
+	 */
+	private boolean complete;
+
+	/**
+	 * True once reading a page has failed, which includes the statement being
+	 * cancelled. No more pages are read after this, so a table that is
+	 * repainted does not run the query again.
+	 */
+	private boolean readFailed;
+
+	/**
+	 * True once {@link #cleanup()} has been called.
+	 */
+	private boolean closed;
+
+	/**
+	 * Creates a model for a pager that has just been created, and so has its
+	 * first page in memory. The pager must not be used by anything else after
+	 * this.
+	 * 
+	 * @param registry
+	 *            The registry of the workers that read the pages.
+	 */
+	public PagedResultSetTableModel(ResultSetPager pager, SwingWorkerRegistry registry) {
+		this.pager = pager;
+		this.registry = registry;
+		pageSize = pager.getPageSize();
+		final int pagesInMemory = pager.getPagesInMemory();
+		pages = new LinkedHashMap<Integer, List<Object[]>>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, List<Object[]>> eldest) {
+				return size() > pagesInMemory;
+			}
+		};
+		rowCount = pager.getRowCount();
+		complete = pager.isComplete();
+		try {
+			pages.put(0, pager.getPage(0));
+		} catch (SQLException e) {
+			throw new RuntimeException("Could not read the first page of the result", e);
+		}
+	}
+
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	public int getColumnCount() {
+		try {
+			return pager.getMetaData().getColumnCount();
+		} catch (SQLException e) {
+			throw new RuntimeException("Could not get the column count from the result set meta data.", e);
+		}
+	}
+
+	@Override
+	public String getColumnName(int column) {
+		try {
+			String colName = pager.getMetaData().getColumnLabel(column + 1);
+			if (colName == null || colName.equals("")) {
+				colName = pager.getMetaData().getColumnName(column + 1);
+			}
+			return colName;
+		} catch (SQLException e) {
+			throw new RuntimeException("Could not get the column name.", e);
+		}
+	}
+
+	@Override
+	public Class<?> getColumnClass(int columnIndex) {
+		try {
+			return ResultSetTableModel.getClassForType(pager.getMetaData().getColumnType(columnIndex + 1));
+		} catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Returns the value in the given cell, or null if its page is still being
+	 * read. Showing a row of the last page asks for the page after it.
+	 */
+	public Object getValueAt(int rowIndex, int columnIndex) {
+		if (!complete && rowIndex >= rowCount - pageSize) {
+			requestPage(rowCount / pageSize);
+		}
+		List<Object[]> rows = pages.get(rowIndex / pageSize);
+		if (rows == null) {
+			requestPage(rowIndex / pageSize);
+			return null;
+		}
+		return rows.get(rowIndex % pageSize)[columnIndex];
+	}
+
+	/**
+	 * Asks for the page after the last row in the table so its rows are
+	 * added to the table once it is read.
+	 */
+	public void readNextPage() {
+		if (!complete) {
+			requestPage(rowCount / pageSize);
+		}
+	}
+
+	private void requestPage(int page) {
+		if (closed || readFailed || !requestedPages.add(page)) return;
+		readNextRequestedPage();
+	}
+
+	private void readNextRequestedPage() {
+		if (reader != null || requestedPages.isEmpty()) return;
+		reader = new PageReader(requestedPages.iterator().next());
+		new Thread(reader).start();
+	}
+
+	/**
+	 * Keeps the given page and tells the table about the rows it adds or
+	 * fills in.
+	 */
+	private void pageRead(int page, List<Object[]> rows, int pagerRowCount, boolean pagerComplete) {
+		if (!rows.isEmpty()) {
+			pages.put(page, rows);
+		}
+		complete = pagerComplete;
+		int firstRow = page * pageSize;
+		int oldRowCount = rowCount;
+		rowCount = Math.max(rowCount, pagerRowCount);
+		if (firstRow < oldRowCount && !rows.isEmpty()) {
+			fireTableRowsUpdated(firstRow, Math.min(oldRowCount, firstRow + rows.size()) - 1);
+		}
+		if (rowCount > oldRowCount) {
+			fireTableRowsInserted(oldRowCount, rowCount - 1);
+		}
+	}
+
+	public ResultSetPager getPager() {
+		return pager;
+	}
+
+	/**
+	 * Closes the pager's statements. The model cannot read more rows after
+	 * this. If a page is being read the pager is closed once the read
+	 * finishes.
+	 */
+	public void cleanup() {
+		closed = true;
+		requestedPages.clear();
+		pages.clear();
+		if (reader == null) {
+			closePager();
+		}
+	}
+
+	private void closePager() {
+		try {
+			pager.close();
+		} catch (SQLException e) {
+			logger.error("Could not close the result set pager", e);
+		}
+	}
+}
@@ -22,6 +22,8 @@ package ca.sqlpower.swingui.table;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.annotation.Nullable;
 import javax.swing.SwingUtilities;
@@ -33,14 +35,43 @@ import org.apache.log4j.Logger;
  * This is a basic table model that takes in a result set to be displayed in a
  * table. This model can export a given set of rows to a CSV or HTML file. The
  * result set is not allowed to be modified in this table.
+ * <p>
+ * The values are read from the result set a window of rows at a time around
+ * the row asked for, so a table painting its visible rows only moves the
+ * cursor when it scrolls past the rows read. The row count and the window are
+ * kept until {@link #dataChanged()} is called or a new result set is given.
  */
 public class ResultSetTableModel extends AbstractTableModel {
     
+	/**
+	 * The number of rows read into the window at a time. This is package
+	 * private for testing.
+	 */
+	static final int WINDOW_ROWS = 200;
+	
 	/**
 	 * This result set holds the cell entries in the table. 
 	 */
 	private ResultSet rs = null;
 	
+	/**
+	 * The number of rows in the result set, or -1 if it has not been counted
+	 * since the result set last changed.
+	 */
+	private int rowCount = -1;
+	
+	/**
+	 * The values of the rows read from the result set starting at
+	 * windowStart, or null if no rows have been read since the result set
+	 * last changed.
+	 */
+	private Object[][] window;
+	
+	/**
+	 * The index of the first row in the window.
+	 */
+	private int windowStart;
+	
 	/**
 	 * The result set passed in here must be scrollable. If it is not
 	 * it should be wrapped in a CachedRowSet first.
@@ -56,6 +87,16 @@ public class ResultSetTableModel extends AbstractTableModel {
 	 */
 	public void setRs(ResultSet rs) {
 		this.rs = rs;
+		clearCache();
+	}
+	
+	/**
+	 * Forgets the row count and the rows read so they are read from the
+	 * result set again.
+	 */
+	private void clearCache() {
+		rowCount = -1;
+		window = null;
 	}
 	
 	public int getColumnCount() {
@@ -90,16 +131,17 @@ public class ResultSetTableModel extends AbstractTableModel {
 		if (rs == null) {
 			return 0;
 		}
-		int newRowCount;
-		try {
-			int prevRow = rs.getRow();
-			rs.afterLast();
-			newRowCount = rs.getRow();
-			rs.absolute(prevRow);
-		} catch (SQLException e) {
-			throw new RuntimeException("Could not access the result set given to the table model", e);
+		if (rowCount < 0) {
+			try {
+				int prevRow = rs.getRow();
+				// getRow() is 0 after the last row, so count from the last row
+				rowCount = rs.last() ? rs.getRow() : 0;
+				rs.absolute(prevRow);
+			} catch (SQLException e) {
+				throw new RuntimeException("Could not access the result set given to the table model", e);
+			}
 		}
-		return newRowCount;
+		return rowCount;
 	}
 
 	public Object getValueAt(int rowIndex, int columnIndex) {
@@ -107,14 +149,42 @@ public class ResultSetTableModel extends AbstractTableModel {
 			return null;
 		}
 		try {
-			int prevRow = rs.getRow();
-			rs.absolute(rowIndex + 1);
-			Object objectAtPosition = rs.getObject(columnIndex + 1);
-			rs.absolute(prevRow);
-			return objectAtPosition;
+			if (window == null || rowIndex < windowStart || rowIndex >= windowStart + window.length) {
+				readWindow(rowIndex);
+			}
+			if (rowIndex < windowStart || rowIndex >= windowStart + window.length) {
+				throw new SQLException("Row " + rowIndex + " is not in the result set.");
+			}
+			return window[rowIndex - windowStart][columnIndex];
 		} catch (SQLException e) {
 			throw new RuntimeException(" Could not access the result set given the rowIndex or columnIndex.", e);
+		} catch (ArrayIndexOutOfBoundsException e) {
+			throw new RuntimeException(" Could not access the result set given the rowIndex or columnIndex.", e);
+		}
+	}
+
+	/**
+	 * Reads the window of rows around the given row from the result set. The
+	 * window starts before the row so scrolling up is read from the window
+	 * too. The cursor is moved back to where it was afterwards.
+	 */
+	private void readWindow(int rowIndex) throws SQLException {
+		int start = Math.max(0, rowIndex - WINDOW_ROWS / 2);
+		int columnCount = rs.getMetaData().getColumnCount();
+		List<Object[]> rows = new ArrayList<Object[]>(WINDOW_ROWS);
+		int prevRow = rs.getRow();
+		boolean onRow = rs.absolute(start + 1);
+		while (onRow) {
+			Object[] row = new Object[columnCount];
+			for (int column = 0; column < columnCount; column++) {
+				row[column] = rs.getObject(column + 1);
+			}
+			rows.add(row);
+			onRow = rows.size() < WINDOW_ROWS && rs.next();
 		}
+		rs.absolute(prevRow);
+		window = rows.toArray(new Object[rows.size()][]);
+		windowStart = start;
 	}
 	
 	@Override
@@ -168,6 +238,14 @@ public class ResultSetTableModel extends AbstractTableModel {
 		} catch (SQLException e) {
 			throw new RuntimeException(e);
 		}
+		return getClassForType(columnType);
+	}
+
+	/**
+	 * Returns the class the values of a column of the given SQL type are shown
+	 * as. This is package private so other result set models can share it.
+	 */
+	static Class<?> getClassForType(int columnType) {
 		if (columnType == Types.VARCHAR) {
 			return String.class;
 		} else if (columnType == Types.BIT || columnType == Types.INTEGER || columnType == Types.SMALLINT || columnType == Types.TINYINT) {
@@ -178,13 +256,13 @@ public class ResultSetTableModel extends AbstractTableModel {
 			return Float.class;
 		}
 		return Object.class;
-		
 	}
 
     /**
      * Hook for allowing this model to properly track streaming queries. Call
      * this method whenever the resultset in this model has more, less, or
-     * different data than before.
+     * different data than before. The cached row count and rows are read
+     * again from the result set after this is called.
      */
     public void dataChanged() {
     	if (!SwingUtilities.isEventDispatchThread()) {
@@ -192,6 +270,7 @@ public class ResultSetTableModel extends AbstractTableModel {
     		// this method from threads that are not from the vent dispatch one.
     		throw new RuntimeException("A call to a UI update was sent from a thread other than the event dispatch thread. See ResultSetTableModel.");
     	}
+        clearCache();
         fireTableDataChanged();
     }
 	
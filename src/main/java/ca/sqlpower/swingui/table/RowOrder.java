@@ -0,0 +1,392 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.swingui.table;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import javax.swing.table.TableModel;
+
+/**
+ * The order of the rows of a table model by one or more columns, used by the
+ * {@link TableModelSortDecorator}. The values of the sorting columns are read
+ * from the model once into arrays, as longs or doubles where the column holds
+ * numbers, dates or booleans, so sorting compares array elements instead of
+ * getting, casting and comparing the values of the model again on each
+ * comparison. Nulls come before every other value.
+ * <p>
+ * Sorting only uses the arrays, so once the values are read the rows can be
+ * sorted on any thread. The sort is stable, so rows with equal values stay in
+ * model order.
+ */
+class RowOrder {
+
+	/**
+	 * Rows of at most this many elements are sorted by insertion instead of
+	 * being split further.
+	 */
+	private static final int INSERTION_SORT_ROWS = 16;
+
+	/**
+	 * The values of one sorting column.
+	 */
+	private static abstract class ColumnKeys {
+
+		protected final int column;
+
+		protected boolean[] nulls = new boolean[0];
+
+		ColumnKeys(int column) {
+			this.column = column;
+		}
+
+		/**
+		 * Reads the values of the rows from, inclusive, to to, exclusive.
+		 * Returns false if one of the values cannot be stored in these keys.
+		 */
+		boolean read(TableModel model, int from, int to) {
+			if (nulls.length < to) {
+				int capacity = Math.max(to, nulls.length * 3 / 2);
+				nulls = Arrays.copyOf(nulls, capacity);
+				grow(capacity);
+			}
+			for (int row = from; row < to; row++) {
+				Object value = model.getValueAt(row, column);
+				nulls[row] = value == null;
+				if (value != null && !store(row, value)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		final int compare(int row1, int row2) {
+			if (nulls[row1]) {
+				return nulls[row2] ? 0 : -1;
+			} else if (nulls[row2]) {
+				return 1;
+			}
+			return compareValues(row1, row2);
+		}
+
+		abstract void grow(int capacity);
+
+		abstract boolean store(int row, Object value);
+
+		abstract int compareValues(int row1, int row2);
+	}
+
+	/**
+	 * Keys for integral numbers, booleans or dates, compared the way their
+	 * compareTo methods compare them.
+	 */
+	private static class LongKeys extends ColumnKeys {
+
+		private final Class<?> columnClass;
+
+		private long[] values = new long[0];
+
+		LongKeys(int column, Class<?> columnClass) {
+			super(column);
+			this.columnClass = columnClass;
+		}
+
+		/**
+		 * Returns true if the values of a column of the given class can be
+		 * stored as longs.
+		 */
+		static boolean canStore(Class<?> columnClass) {
+			return isIntegral(columnClass) || columnClass == Boolean.class || isDate(columnClass);
+		}
+
+		private static boolean isIntegral(Class<?> c) {
+			return c == Integer.class || c == Long.class || c == Short.class || c == Byte.class;
+		}
+
+		/**
+		 * Timestamps are left out as they compare their nanoseconds too.
+		 */
+		private static boolean isDate(Class<?> c) {
+			return c == java.util.Date.class || c == java.sql.Date.class || c == java.sql.Time.class;
+		}
+
+		@Override
+		void grow(int capacity) {
+			values = Arrays.copyOf(values, capacity);
+		}
+
+		@Override
+		boolean store(int row, Object value) {
+			Class<?> c = value.getClass();
+			if (isIntegral(columnClass) && isIntegral(c)) {
+				values[row] = ((Number) value).longValue();
+			} else if (columnClass == Boolean.class && c == Boolean.class) {
+				values[row] = ((Boolean) value).booleanValue() ? 1 : 0;
+			} else if (isDate(columnClass) && isDate(c)) {
+				values[row] = ((java.util.Date) value).getTime();
+			} else {
+				return false;
+			}
+			return true;
+		}
+
+		@Override
+		int compareValues(int row1, int row2) {
+			long v1 = values[row1];
+			long v2 = values[row2];
+			return v1 < v2 ? -1 : (v1 == v2 ? 0 : 1);
+		}
+	}
+
+	/**
+	 * Keys for floating point numbers, compared the way
+	 * {@link Double#compareTo(Double)} compares them.
+	 */
+	private static class DoubleKeys extends ColumnKeys {
+
+		private double[] values = new double[0];
+
+		DoubleKeys(int column) {
+			super(column);
+		}
+
+		static boolean canStore(Class<?> columnClass) {
+			return columnClass == Double.class || columnClass == Float.class;
+		}
+
+		@Override
+		void grow(int capacity) {
+			values = Arrays.copyOf(values, capacity);
+		}
+
+		@Override
+		boolean store(int row, Object value) {
+			if (!canStore(value.getClass())) return false;
+			values[row] = ((Number) value).doubleValue();
+			return true;
+		}
+
+		@Override
+		int compareValues(int row1, int row2) {
+			return Double.compare(values[row1], values[row2]);
+		}
+	}
+
+	/**
+	 * Keys for any other values, compared with the column's comparator. For
+	 * the lexical comparator the text of each value is stored instead of the
+	 * value so it is only converted once.
+	 */
+	private static class ObjectKeys extends ColumnKeys {
+
+		private final Comparator<?> comparator;
+
+		private final boolean lexical;
+
+		private Object[] values = new Object[0];
+
+		ObjectKeys(int column, Comparator<?> comparator) {
+			super(column);
+			this.lexical = comparator == TableModelSortDecorator.LEXICAL_COMPARATOR;
+			this.comparator = lexical ? TableModelSortDecorator.COMPARABLE_COMAPRATOR : comparator;
+		}
+
+		@Override
+		void grow(int capacity) {
+			values = Arrays.copyOf(values, capacity);
+		}
+
+		@Override
+		boolean store(int row, Object value) {
+			values[row] = lexical ? value.toString() : value;
+			return true;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		int compareValues(int row1, int row2) {
+			return ((Comparator<Object>) comparator).compare(values[row1], values[row2]);
+		}
+	}
+
+	private final ColumnKeys[] keys;
+
+	private final int[] directions;
+
+	private final Comparator<?>[] comparators;
+
+	/**
+	 * The number of rows whose values have been read.
+	 */
+	private int rowCount;
+
+	/**
+	 * Creates an order for the given sorting columns. None of the values are
+	 * read until {@link #read(TableModel, int)} is called.
+	 * 
+	 * @param columns
+	 *            The model indexes of the sorting columns, most significant
+	 *            first.
+	 * @param directions
+	 *            The direction of each column, either
+	 *            {@link TableModelSortDecorator#ASCENDING} or
+	 *            {@link TableModelSortDecorator#DESCENDING}.
+	 * @param comparators
+	 *            The comparator the decorator uses for each column.
+	 * @param columnClasses
+	 *            The class of each column in the model.
+	 */
+	RowOrder(int[] columns, int[] directions, Comparator<?>[] comparators, Class<?>[] columnClasses) {
+		this.directions = directions;
+		this.comparators = comparators;
+		keys = new ColumnKeys[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			if (comparators[i] != TableModelSortDecorator.COMPARABLE_COMAPRATOR) {
+				keys[i] = new ObjectKeys(columns[i], comparators[i]);
+			} else if (LongKeys.canStore(columnClasses[i])) {
+				keys[i] = new LongKeys(columns[i], columnClasses[i]);
+			} else if (DoubleKeys.canStore(columnClasses[i])) {
+				keys[i] = new DoubleKeys(columns[i]);
+			} else {
+				keys[i] = new ObjectKeys(columns[i], comparators[i]);
+			}
+		}
+	}
+
+	/**
+	 * Reads the values of the sorting columns of the model's rows from the
+	 * number of rows already read up to the given row count. This must be
+	 * called on the thread the model is used on.
+	 */
+	void read(TableModel model, int newRowCount) {
+		for (int i = 0; i < keys.length; i++) {
+			if (!keys[i].read(model, rowCount, newRowCount)) {
+				// a value of an unexpected class, compare all the values as objects
+				keys[i] = new ObjectKeys(keys[i].column, comparators[i]);
+				keys[i].read(model, 0, newRowCount);
+			}
+		}
+		rowCount = newRowCount;
+	}
+
+	int getRowCount() {
+		return rowCount;
+	}
+
+	int compare(int row1, int row2) {
+		for (int i = 0; i < keys.length; i++) {
+			int comparison = keys[i].compare(row1, row2);
+			if (comparison != 0) {
+				return directions[i] == TableModelSortDecorator.DESCENDING ? -comparison : comparison;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Returns the model indexes of the rows read so far in sorted order.
+	 */
+	int[] sort() {
+		int[] rows = new int[rowCount];
+		for (int i = 0; i < rowCount; i++) {
+			rows[i] = i;
+		}
+		sort(rows, new int[rows.length], 0, rows.length);
+		return rows;
+	}
+
+	/**
+	 * Returns the sorted rows with the rows from the given row up to the
+	 * number of rows read merged in. Each new row is placed after the rows
+	 * that compare equal to it, which is where sorting all of the rows again
+	 * would place it.
+	 * 
+	 * @param sortedRows
+	 *            The model indexes of the rows before the given row, in
+	 *            sorted order.
+	 */
+	int[] merge(int[] sortedRows, int firstNewRow) {
+		int[] newRows = new int[rowCount - firstNewRow];
+		for (int i = 0; i < newRows.length; i++) {
+			newRows[i] = firstNewRow + i;
+		}
+		sort(newRows, new int[newRows.length], 0, newRows.length);
+
+		int[] merged = new int[sortedRows.length + newRows.length];
+		int from = 0;
+		int to = 0;
+		for (int newRow : newRows) {
+			// binary search for the first sorted row after the new row
+			int low = from;
+			int high = sortedRows.length;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (compare(sortedRows[mid], newRow) <= 0) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+			System.arraycopy(sortedRows, from, merged, to, low - from);
+			to += low - from;
+			from = low;
+			merged[to++] = newRow;
+		}
+		System.arraycopy(sortedRows, from, merged, to, sortedRows.length - from);
+		return merged;
+	}
+
+	/**
+	 * A stable merge sort of the rows between from, inclusive, and to,
+	 * exclusive.
+	 */
+	private void sort(int[] rows, int[] buffer, int from, int to) {
+		if (to - from <= INSERTION_SORT_ROWS) {
+			for (int i = from + 1; i < to; i++) {
+				int row = rows[i];
+				int j = i;
+				while (j > from && compare(rows[j - 1], row) > 0) {
+					rows[j] = rows[j - 1];
+					j--;
+				}
+				rows[j] = row;
+			}
+			return;
+		}
+		int mid = (from + to) >>> 1;
+		sort(rows, buffer, from, mid);
+		sort(rows, buffer, mid, to);
+		if (compare(rows[mid - 1], rows[mid]) <= 0) return;
+		System.arraycopy(rows, from, buffer, from, mid - from);
+		int left = from;
+		int right = mid;
+		int i = from;
+		while (left < mid && right < to) {
+			if (compare(rows[right], buffer[left]) < 0) {
+				rows[i++] = rows[right++];
+			} else {
+				rows[i++] = buffer[left++];
+			}
+		}
+		while (left < mid) {
+			rows[i++] = buffer[left++];
+		}
+	}
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.swingui.table;
+
+import java.io.PrintWriter;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.text.Format;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.swing.table.TableModel;
+
+import ca.sqlpower.util.Monitorable;
+import ca.sqlpower.util.MonitorableImpl;
+
+/**
+ * An export formatter that writes each row to the writer as soon as it is
+ * read from the table model or result set, so exporting takes the same
+ * memory for any number of rows. The formatter can be monitored for the
+ * number of rows written and cancelled while it exports, in which case it
+ * stops after the current row and closes the writer. A cancel that arrives
+ * before the export starts is kept, so the export writes no rows. The
+ * formatter stays cancelled after the export so the caller can tell it did
+ * not finish; call {@link #setCancelled(boolean)} with false to use it again.
+ * <p>
+ * Subclasses only decide how the column names and the cells are written.
+ */
+public abstract class StreamingExportFormatter implements ExportFormatter, Monitorable {
+
+    /**
+     * Formatters are given an object from the table model and must output a
+     * string representation of that object. This allows classes using the
+     * formatter to define different strings to represent an object as other
+     * than just the toString version of the object.
+     */
+    private final Map<Integer, Format> columnFormatters = new HashMap<Integer, Format>();
+
+    /**
+     * Tracks the rows written by the export that is running or ran last.
+     */
+    private final MonitorableImpl monitor = new MonitorableImpl();
+
+    /**
+     * Sets a formatter for the given column of a table model. If the column does
+     * not exist because the table is too small the formatter will not be used.
+     */
+	public void setFormatter(int column, Format formatter) {
+	    columnFormatters.put(column, formatter);
+	}
+
+	/**
+	 * Converts the given model into the format of this formatter and writes
+	 * it to the writer, which is closed at the end.
+	 */
+	public void formatToStream(TableModel model, PrintWriter writer) {
+		formatToStream(model, writer, null);
+	}
+
+	/**
+	 * Converts the given rows of the model into the format of this formatter
+	 * and writes them to the writer, which is closed at the end. If the rows
+	 * are null every row of the model is written.
+	 */
+	public void formatToStream(TableModel model, PrintWriter writer, int[] selectedRows) {
+		int columnCount = model.getColumnCount();
+		int rowCount = selectedRows == null ? model.getRowCount() : selectedRows.length;
+		String[] columnNames = new String[columnCount];
+		for (int i = 0; i < columnCount; i++) {
+			columnNames[i] = model.getColumnName(i);
+		}
+		start(rowCount);
+		try {
+			writeHeader(writer, columnNames);
+			for (int row = 0; row < rowCount && !monitor.isCancelled(); row++) {
+				int modelRow = selectedRows == null ? row : selectedRows[row];
+				startRow(writer);
+				for (int col = 0; col < columnCount; col++) {
+					writeCell(writer, col, getText(col, model.getValueAt(modelRow, col)));
+				}
+				endRow(writer);
+				monitor.incrementProgress();
+			}
+			finish(writer);
+		} finally {
+			monitor.setFinished(true);
+		}
+	}
+
+	/**
+	 * Converts the rows of the result set, from the row after the current
+	 * one to the last, into the format of this formatter and writes them to
+	 * the writer, which is closed at the end. The result set only needs to
+	 * be able to move forward and is left after its last row.
+	 */
+	public void formatToStream(ResultSet rs, PrintWriter writer) throws SQLException {
+		ResultSetMetaData metaData = rs.getMetaData();
+		int columnCount = metaData.getColumnCount();
+		String[] columnNames = new String[columnCount];
+		for (int i = 0; i < columnCount; i++) {
+			columnNames[i] = metaData.getColumnLabel(i + 1);
+			if (columnNames[i] == null || columnNames[i].equals("")) {
+				columnNames[i] = metaData.getColumnName(i + 1);
+			}
+		}
+		start(null);
+		try {
+			writeHeader(writer, columnNames);
+			while (!monitor.isCancelled() && rs.next()) {
+				startRow(writer);
+				for (int col = 0; col < columnCount; col++) {
+					writeCell(writer, col, getText(col, rs.getObject(col + 1)));
+				}
+				endRow(writer);
+				monitor.incrementProgress();
+			}
+			finish(writer);
+		} finally {
+			monitor.setFinished(true);
+		}
+	}
+
+	private void start(Integer rowCount) {
+		monitor.setFinished(false);
+		monitor.setProgress(0);
+		monitor.setJobSize(rowCount);
+		monitor.setStarted(true);
+	}
+
+	private void finish(PrintWriter writer) {
+		if (!monitor.isCancelled()) {
+			writeFooter(writer);
+		}
+		boolean failed = writer.checkError();
+		writer.close();
+		if (failed) {
+			throw new RuntimeException("Could not write the export.");
+		}
+	}
+
+	/**
+	 * Returns the text of the given value of the given column, which is null
+	 * if the value is null. Strings without a formatter are returned as they
+	 * are.
+	 */
+	private String getText(int column, Object value) {
+		if (value == null) {
+			return null;
+		}
+		Format format = columnFormatters.get(column);
+		if (format != null) {
+			return format.format(value);
+		} else if (value instanceof String) {
+			return (String) value;
+		}
+		return value.toString();
+	}
+
+	/**
+	 * Writes the start of the export and the names of the columns.
+	 */
+	protected abstract void writeHeader(PrintWriter writer, String[] columnNames);
+
+	protected abstract void startRow(PrintWriter writer);
+
+	/**
+	 * Writes the text of one cell of the current row.
+	 * 
+	 * @param text
+	 *            The text of the cell's value, or null if the value is null.
+	 */
+	protected abstract void writeCell(PrintWriter writer, int column, String text);
+
+	protected abstract void endRow(PrintWriter writer);
+
+	/**
+	 * Writes the end of the export. This is not called if the export was
+	 * cancelled.
+	 */
+	protected abstract void writeFooter(PrintWriter writer);
+
+	public Integer getJobSize() {
+		return monitor.getJobSize();
+	}
+
+	public String getMessage() {
+		return monitor.getMessage();
+	}
+
+	public int getProgress() {
+		return monitor.getProgress();
+	}
+
+	public boolean hasStarted() {
+		return monitor.hasStarted();
+	}
+
+	public boolean isCancelled() {
+		return monitor.isCancelled();
+	}
+
+	public boolean isFinished() {
+		return monitor.isFinished();
+	}
+
+	public void setCancelled(boolean cancelled) {
+		monitor.setCancelled(cancelled);
+	}
+}
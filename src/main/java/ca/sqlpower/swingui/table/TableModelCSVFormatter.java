@@ -19,90 +19,69 @@
 
 package ca.sqlpower.swingui.table;
 
-import java.io.IOException;
 import java.io.PrintWriter;
-import java.text.Format;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-
-import javax.swing.table.TableModel;
-
-import au.com.bytecode.opencsv.CSVWriter;
 
 /**
- * This class exports TableModels to a CSV file.
+ * This class exports TableModels and result sets to a CSV file. Every field
+ * is quoted the way the opencsv CSVWriter quotes it, but each row is written
+ * directly to the output instead of being collected first.
  */
-public class TableModelCSVFormatter implements ExportFormatter {
+public class TableModelCSVFormatter extends StreamingExportFormatter {
+
+	private static final char SEPARATOR = ',';
+
+	private static final char QUOTE = '"';
+
+	private static final String LINE_END = "\n";
 
-    /**
-     * Formatters are given an object from the table model and must output a
-     * string representation of that object. This allows classes using the
-     * formatter to define different strings to represent an object as other
-     * than just the toString version of the object.
-     */
-    private final Map<Integer, Format> columnFormatters = new HashMap<Integer, Format>();
-	
 	public TableModelCSVFormatter(){
 		
 	}
 
-    /**
-     * Sets a formatter for the given column of a table model. If the column does
-     * not exist because the table is too small the formatter will not be used.
-     */
-	public void setFormatter(int column, Format formatter) {
-	    columnFormatters.put(column, formatter);
-	}
-	
-	/**
-	 * Converts the given model into a CSV file and writes it to the output
-	 * stream.
-	 */	
-	public void formatToStream(TableModel model, PrintWriter writer) {
-		int[] allRows = new int[model.getRowCount()];
-		for (int i = 0; i < model.getRowCount(); i++) {
-			allRows[i] = i;
+	@Override
+	protected void writeHeader(PrintWriter writer, String[] columnNames) {
+		for (int i = 0; i < columnNames.length; i++) {
+			writeCell(writer, i, columnNames[i]);
 		}
-		formatToStream(model, writer, allRows);
+		endRow(writer);
+	}
 
+	@Override
+	protected void startRow(PrintWriter writer) {
+		// each field is written as it is read
 	}
+
 	/**
-	 * Outputs a table in HTML that represents the TableModel. Only the rows
-	 * given will be written to the file.
+	 * Writes the text quoted with its quotes doubled. The text is written in
+	 * runs between the quotes so no copy of it is made. Null values are
+	 * written as an empty field.
 	 */
-	public void formatToStream(TableModel model, PrintWriter writer, int[] selectedRows) {
-		try {
-			CSVWriter csvWriter = new CSVWriter(writer);
-			List<String[]> tableExport = new ArrayList<String[]>();
-			int columnCount = model.getColumnCount();
-			String[] rowArray = new String[columnCount];
-			for (int i = 0; i < columnCount; i++) {
-				rowArray[i] = model.getColumnName(i);
-			}
-			tableExport.add(rowArray);
-			for (int row = 0; row < selectedRows.length; row++) {
-				rowArray = new String[columnCount];
-				for (int col = 0; col < columnCount; col++) {
-					Object value = model.getValueAt(selectedRows[row], col);
-					if (value != null) {
-					    if (columnFormatters.get(col) != null) {
-					        rowArray[col] = columnFormatters.get(col).format(value);
-					    } else {
-					        rowArray[col] = value.toString();
-					    }
-					} else {
-						rowArray[col] = "";
-					}
-				}
-				tableExport.add(rowArray);
+	@Override
+	protected void writeCell(PrintWriter writer, int column, String text) {
+		if (column > 0) {
+			writer.write(SEPARATOR);
+		}
+		writer.write(QUOTE);
+		if (text != null) {
+			int start = 0;
+			int quote;
+			while ((quote = text.indexOf(QUOTE, start)) >= 0) {
+				writer.write(text, start, quote + 1 - start);
+				writer.write(QUOTE);
+				start = quote + 1;
 			}
-			csvWriter.writeAll(tableExport);
-			csvWriter.close();
+			writer.write(text, start, text.length() - start);
+		}
+		writer.write(QUOTE);
+	}
+
+	@Override
+	protected void endRow(PrintWriter writer) {
+		writer.write(LINE_END);
+	}
 
-		} catch (IOException ex) {
-			throw new RuntimeException("Could not close the CSV Writer", ex);
-		}		
-	}	  
+	@Override
+	protected void writeFooter(PrintWriter writer) {
+		// CSV files have no footer
+	}
 }
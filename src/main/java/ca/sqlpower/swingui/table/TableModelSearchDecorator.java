@@ -58,6 +58,12 @@ public class TableModelSearchDecorator extends AbstractTableModel implements Cle
     private List<Integer> rowMapping = null;  // null means identity mapping
     private Document doc;
     private String searchText = null;
+
+    /**
+     * The index searched for the search text. It is created on the first
+     * search and dropped when the wrapped model or the text converter change.
+     */
+    private TableTextIndex index;
 
     /**
      * This is a coalescing timed document listener. It does not support
@@ -128,6 +134,11 @@ public class TableModelSearchDecorator extends AbstractTableModel implements Cle
      */
     final TableModelListener tableModelListener = new TableModelListener() {
     	public void tableChanged(TableModelEvent e) {
+    	    synchronized (tableModel) {
+    	        if (index != null) {
+    	            index.tableChanged(e);
+    	        }
+    	    }
     	    search(searchText);
 
     	    // XXX adjust co-ordinates to compensate for missing rows (the ones that don't match the search)
@@ -157,43 +168,20 @@ public class TableModelSearchDecorator extends AbstractTableModel implements Cle
         rowMapping = null;
         fireTableDataChanged();
 
-        List<Integer> newRowMap = new ArrayList<Integer>();
-        String[] searchWords = (searchText == null ? null : searchText.split(" "));
-        
+        List<Integer> newRowMap;
         synchronized (tableModel) {
-        	for ( int row = 0; row < tableModel.getRowCount(); row++ ) {
-        		boolean match = false;
-        		if ( searchWords == null ) {
-        			match = true;
-        		} else {
-        			
-        			int i;
-        			for ( i=0; i<searchWords.length; i++ ) {
-        				
-        				match = false;
-        				for ( int column = 0; column < tableModel.getColumnCount(); column++ ) {
-        					Object val = tableModel.getValueAt(row, column);
-        					String value = tableTextConverter.getTextForCell(val);
-        					if ( value.toLowerCase().indexOf(searchWords[i].toLowerCase()) >= 0 ) {
-        						match = true;
-        						if (logger.isDebugEnabled()) {
-        							logger.debug("Match: "+value.toLowerCase()+" contains "+searchWords[i]+ "     "+value.toLowerCase().indexOf(searchWords[i].toLowerCase()));
-        						}
-        						break;
-        					}
-        				}
-        				if ( !match )
-        					break;
-        				
-        			}
-        			if ( i < searchWords.length )
-        				match = false;
-        		}
-        		if ( match ) {
+        	if (searchText == null) {
+        		newRowMap = new ArrayList<Integer>();
+        		for (int row = 0; row < tableModel.getRowCount(); row++) {
         			newRowMap.add(row);
         		}
+        	} else {
+        		if (index == null) {
+        			index = new TableTextIndex(tableModel, tableTextConverter);
+        		}
+        		newRowMap = index.search(searchText);
         	}
-		}
+        }
         
         setSearchText(searchText);
         rowMapping = newRowMap;
@@ -245,6 +233,7 @@ public class TableModelSearchDecorator extends AbstractTableModel implements Cle
             tableModel.removeTableModelListener(tableModelListener);
         }
         tableModel = newModel;
+        index = null;
         newModel.addTableModelListener(tableModelListener);
         fireTableStructureChanged();
     }
@@ -280,6 +269,7 @@ public class TableModelSearchDecorator extends AbstractTableModel implements Cle
 
     public void setTableTextConverter(TableTextConverter tableTextConverter) {
         this.tableTextConverter = tableTextConverter;
+        index = null;
     }
 
 	public void cleanup() {
@@ -26,15 +26,14 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.swing.Icon;
 import javax.swing.JLabel;
 import javax.swing.JTable;
+import javax.swing.SwingUtilities;
 import javax.swing.event.TableModelEvent;
 import javax.swing.event.TableModelListener;
 import javax.swing.table.AbstractTableModel;
@@ -62,7 +61,16 @@ import org.apache.log4j.Logger;
  * passed on to the TableSorter's listeners (typically the JTable).
  * If a change to the model has invalidated the order of TableSorter's
  * rows, a note of this is made and the sorter will resort the
- * rows the next time a value is requested.
+ * rows the next time a value is requested. Rows added to the end of
+ * the model are merged into the sorted rows instead.
+ * <p/>
+ * The values of the sorting columns are read into arrays once per sort
+ * (see {@link RowOrder}). Tables of at least
+ * {@link #getBackgroundSortRows()} rows are sorted on a background thread
+ * once their values are read; until the sort is done the rows are shown
+ * in their previous order, or in model order if the number of rows has
+ * changed, and a tableDataChanged event is fired when the sorted
+ * rows are swapped in.
  * <p/>
  * When the tableHeader property is set, either by using the
  * setTableHeader() method or the two argument constructor, the
@@ -99,8 +107,6 @@ import org.apache.log4j.Logger;
 
 public class TableModelSortDecorator extends AbstractTableModel implements CleanupTableModel, TableModelWrapper {
 	
-	private final AtomicBoolean arraysUpToDate = new AtomicBoolean(false);
-	
 	private static final Logger logger = Logger.getLogger(TableModelSortDecorator.class);
 	
     protected TableModel tableModel;
@@ -122,9 +128,52 @@ public class TableModelSortDecorator extends AbstractTableModel implements Clean
         }
     };
 
-    private Row[] viewToModel;
+    /**
+     * The default number of rows at and above which tables are sorted on a
+     * background thread.
+     */
+    public static final int DEFAULT_BACKGROUND_SORT_ROWS = 50000;
+
+    /**
+     * The model index of each row of the view. This is null if the rows
+     * have not been sorted since the sorting columns or the data changed, and
+     * is not used when no columns are sorted.
+     */
+    private int[] viewToModel;
+
+    /**
+     * The view index of each row of the model, built from viewToModel when
+     * it is first needed. This is null if it has not been built.
+     */
     private int[] modelToView;
 
+    /**
+     * The values of the sorting columns of the rows in viewToModel. This is
+     * null if the rows are not sorted or are being sorted.
+     */
+    private RowOrder rowOrder;
+
+    /**
+     * True while viewToModel is only a stand-in for the order the rows are
+     * being sorted into on a background thread.
+     */
+    private boolean sortPending;
+
+    /**
+     * Counts the times the order of the rows has been invalidated, so a
+     * background sort started before the last time is dropped.
+     */
+    private int sortVersion;
+
+    /**
+     * The last order of the rows before it was invalidated. It is shown while
+     * the rows are sorted on a background thread if the number of rows has
+     * not changed.
+     */
+    private int[] previousViewToModel;
+
+    private int backgroundSortRows = DEFAULT_BACKGROUND_SORT_ROWS;
+
     private JTableHeader tableHeader;
     private MouseListener mouseListener;
     private TableModelListener tableModelListener;
@@ -163,8 +212,14 @@ public class TableModelSortDecorator extends AbstractTableModel implements Clean
     }
 
     private void clearSortingState() {
+        sortVersion++;
+        if (viewToModel != null) {
+            previousViewToModel = viewToModel;
+        }
         viewToModel = null;
         modelToView = null;
+        rowOrder = null;
+        sortPending = false;
     }
 
     public TableModel getWrappedModel() {
@@ -176,7 +231,6 @@ public class TableModelSortDecorator extends AbstractTableModel implements Clean
             this.tableModel.removeTableModelListener(tableModelListener);
         }
 
-        arraysUpToDate.set(false);
         this.tableModel = tableModel;
         
         if (this.tableModel != null) {
@@ -184,6 +238,7 @@ public class TableModelSortDecorator extends AbstractTableModel implements Clean
         }
 
         clearSortingState();
+        previousViewToModel = null;
         fireTableStructureChanged();
     }
 
@@ -294,47 +349,163 @@ public class TableModelSortDecorator extends AbstractTableModel implements Clean
         return LEXICAL_COMPARATOR;
     }
     
+    /**
+     * Sorts the rows, or starts sorting them on a background thread if there
+     * are at least {@link #getBackgroundSortRows()} rows.
+     */
     private void updateArrays() {
-
-		viewToModel = null;
-		modelToView = null;
-		
 		synchronized (tableModel) {
+			int rowCount = tableModel.getRowCount();
+			int[] columns = new int[sortingColumns.size()];
+			int[] directions = new int[columns.length];
+			Comparator<?>[] comparators = new Comparator<?>[columns.length];
+			Class<?>[] columnClasses = new Class<?>[columns.length];
+			for (int i = 0; i < columns.length; i++) {
+				Directive directive = sortingColumns.get(i);
+				columns[i] = directive.column;
+				directions[i] = directive.direction;
+				comparators[i] = getComparator(directive.column);
+				columnClasses[i] = tableModel.getColumnClass(directive.column);
+			}
+			RowOrder order = new RowOrder(columns, directions, comparators, columnClasses);
+			order.read(tableModel, rowCount);
 			
-			int tableModelRowCount = tableModel.getRowCount();
-			viewToModel = new Row[tableModelRowCount];
-			for (int row = 0; row < tableModelRowCount; row++) {
-				viewToModel[row] = new Row(row);
-			}
-			
-			if (isSorting()) {
-				Arrays.sort(viewToModel);
-			}
-			
-			int n = viewToModel.length;
-			modelToView = new int[n];
-			for (int i = 0; i < n; i++) {
-				modelToView[viewToModel[i].modelIndex] = i;
+			if (rowCount < backgroundSortRows) {
+				viewToModel = order.sort();
+				rowOrder = order;
+			} else {
+				if (previousViewToModel != null && previousViewToModel.length == rowCount) {
+					viewToModel = previousViewToModel;
+				} else {
+					viewToModel = new int[rowCount];
+					for (int i = 0; i < rowCount; i++) {
+						viewToModel[i] = i;
+					}
+				}
+				sortPending = true;
+				startBackgroundSort(order);
 			}
-		
-			arraysUpToDate.set(true);
+			previousViewToModel = null;
+			modelToView = null;
 		}
     }
 
-    private Row[] getViewToModel() {
-    	if (!arraysUpToDate.get() || viewToModel == null) {
+    /**
+     * Sorts the rows whose values have been read into the given order on a
+     * new thread and swaps them in on the event dispatch thread unless the
+     * order of the rows has been invalidated since.
+     */
+    private void startBackgroundSort(final RowOrder order) {
+    	final int version = sortVersion;
+    	Thread sorter = new Thread(new Runnable() {
+    		public void run() {
+    			try {
+    				final int[] sortedRows = order.sort();
+    				SwingUtilities.invokeLater(new Runnable() {
+    					public void run() {
+    						if (version == sortVersion) {
+    							finishBackgroundSort(order, sortedRows);
+    						}
+    					}
+    				});
+    			} catch (RuntimeException e) {
+    				logger.error("Sorting the table failed, leaving the rows unsorted", e);
+    			}
+    		}
+    	}, "Table sort");
+    	sorter.setDaemon(true);
+    	sorter.start();
+    }
+
+    private void finishBackgroundSort(RowOrder order, int[] sortedRows) {
+    	synchronized (tableModel) {
+    		viewToModel = sortedRows;
+    		rowOrder = order;
+    		modelToView = null;
+    		sortPending = false;
+    		if (viewToModel.length < tableModel.getRowCount()) {
+    			mergeAppendedRows(viewToModel.length, tableModel.getRowCount() - 1);
+    		}
+    	}
+    	fireTableDataChanged();
+    }
+
+    /**
+     * Adds the given rows, which were appended to the model, to the view.
+     * Sorted rows have the new rows merged in, and while the rows are being
+     * sorted on a background thread the new rows are added to the end of the
+     * stand-in order and are merged in when the sort is done.
+     */
+    private void mergeAppendedRows(int firstRow, int lastRow) {
+    	synchronized (tableModel) {
+    		if (sortPending) {
+    			int[] rows = Arrays.copyOf(viewToModel, lastRow + 1);
+    			for (int row = firstRow; row <= lastRow; row++) {
+    				rows[row] = row;
+    			}
+    			viewToModel = rows;
+    		} else {
+    			rowOrder.read(tableModel, lastRow + 1);
+    			viewToModel = rowOrder.merge(viewToModel, firstRow);
+    		}
+    		modelToView = null;
+    	}
+    }
+
+    /**
+     * Returns the number of rows at and above which tables are sorted on a
+     * background thread.
+     */
+    public int getBackgroundSortRows() {
+    	return backgroundSortRows;
+    }
+
+    /**
+     * Sets the number of rows at and above which tables are sorted on a
+     * background thread. Use {@link Integer#MAX_VALUE} to always sort on the
+     * calling thread.
+     */
+    public void setBackgroundSortRows(int backgroundSortRows) {
+    	this.backgroundSortRows = backgroundSortRows;
+    }
+
+    /**
+     * Returns true if the rows are being sorted on a background thread and
+     * are not shown in sorted order yet.
+     */
+    public boolean isSortPending() {
+    	return sortPending;
+    }
+
+    /**
+     * Returns the model index of each view row, or null if no columns are
+     * sorted and the view rows are in model order.
+     */
+    private int[] getViewToModel() {
+    	if (!isSorting()) {
+    		return null;
+    	}
+    	if (viewToModel == null) {
     		updateArrays();
     	}
     	return viewToModel;
     }
 
     public int modelIndex(int viewIndex) {
-		return getViewToModel()[viewIndex].modelIndex;
+    	int[] rows = getViewToModel();
+		return rows == null ? viewIndex : rows[viewIndex];
     }
 
     private int[] getModelToView() {
-    	if (!arraysUpToDate.get() || modelToView == null) {
-    		updateArrays();
+    	int[] rows = getViewToModel();
+    	if (rows == null) {
+    		return null;
+    	}
+    	if (modelToView == null) {
+    		modelToView = new int[rows.length];
+    		for (int i = 0; i < rows.length; i++) {
+    			modelToView[rows[i]] = i;
+    		}
     	}
     	return modelToView;
     }
@@ -371,46 +542,9 @@ public class TableModelSortDecorator extends AbstractTableModel implements Clean
 
     // Helper classes
 
-    private class Row implements Comparable {
-        private int modelIndex;
-
-        public Row(int index) {
-            this.modelIndex = index;
-        }
-
-        public int compareTo(Object o) {
-            int row1 = modelIndex;
-            int row2 = ((Row) o).modelIndex;
-
-            for (Iterator<Directive> it = sortingColumns.iterator(); it.hasNext();) {
-                Directive directive = (Directive) it.next();
-                int column = directive.column;
-                Object o1 = tableModel.getValueAt(row1, column);
-                Object o2 = tableModel.getValueAt(row2, column);
-                int comparison = 0;
-                // Define null less than everything, except null.
-                if (o1 == null && o2 == null) {
-                    comparison = 0;
-                } else if (o1 == null) {
-                    comparison = -1;
-                } else if (o2 == null) {
-                    comparison = 1;
-                } else {
-                    comparison = getComparator(column).compare(o1, o2);
-                }
-                if (comparison != 0) {
-                    return directive.direction == DESCENDING ? -comparison : comparison;
-                }
-            }
-            return 0;
-        }
-    }
-
     private class TableModelHandler implements TableModelListener {
         public void tableChanged(TableModelEvent e) {
         	
-        	arraysUpToDate.set(false);
-        	
             // If we're not sorting by anything, just pass the event along.
             if (!isSorting()) {
                 clearSortingState();
@@ -433,12 +567,12 @@ public class TableModelSortDecorator extends AbstractTableModel implements Clean
             // a) all the changes are on one row (e.getFirstRow() == e.getLastRow()) and,
             // b) all the changes are in one column (column != TableModelEvent.ALL_COLUMNS) and,
             // c) we are not sorting on that column (getSortingStatus(column) == NOT_SORTED) and,
-            // d) a reverse lookup will not trigger a sort (modelToView != null)
+            // d) a reverse lookup will not trigger a sort (viewToModel != null)
             //
             // Note: INSERT and DELETE events fail this test as they have column == ALL_COLUMNS.
             //
-            // The last check, for (modelToView != null) is to see if modelToView
-            // is already allocated. If we don't do this check; sorting can become
+            // The last check, for (viewToModel != null) is to see if the rows
+            // are already sorted. If we don't do this check; sorting can become
             // a performance bottleneck for applications where cells
             // change rapidly in different parts of the table. If cells
             // change alternately in the sorting column and then outside of
@@ -449,7 +583,7 @@ public class TableModelSortDecorator extends AbstractTableModel implements Clean
             if (e.getFirstRow() == e.getLastRow()
                     && column != TableModelEvent.ALL_COLUMNS
                     && getSortingStatus(column) == NOT_SORTED
-                    && modelToView != null) {
+                    && viewToModel != null) {
                 int viewIndex = getModelToView()[e.getFirstRow()];
                 fireTableChanged(new TableModelEvent(TableModelSortDecorator.this,
                                                      viewIndex, viewIndex,
@@ -457,6 +591,18 @@ public class TableModelSortDecorator extends AbstractTableModel implements Clean
                 return;
             }
 
+            // Rows added to the end of the model are merged into the sorted
+            // rows instead of sorting all of the rows again.
+            if (e.getType() == TableModelEvent.INSERT
+                    && viewToModel != null
+                    && e.getFirstRow() == viewToModel.length
+                    && e.getLastRow() != Integer.MAX_VALUE
+                    && e.getLastRow() == tableModel.getRowCount() - 1) {
+                mergeAppendedRows(e.getFirstRow(), e.getLastRow());
+                fireTableDataChanged();
+                return;
+            }
+
             // Something has happened to the data that may have invalidated the row order.
             clearSortingState();
             fireTableDataChanged();
@@ -0,0 +1,354 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.swingui.table;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.swing.event.TableModelEvent;
+import javax.swing.table.TableModel;
+
+/**
+ * An index of the text of the rows of a table model for the
+ * {@link TableModelSearchDecorator}. The lower cased text of each row is kept
+ * along with the rows each sequence of three characters, or trigram, appears
+ * in. A search then only checks the rows that contain the least common
+ * trigram of the search words, using the kept text instead of converting
+ * every cell of the table to text again.
+ * <p>
+ * The index is built when it is first searched and is kept up to date from
+ * the events of the table model. Updated rows and rows added at the end of the
+ * model are indexed on their own, other changes make the index rebuild on the
+ * next search. The last search and its result are remembered, and when the
+ * words of a search contain the words of the last one, as happens while the
+ * user types, only the rows that matched the last search are checked.
+ */
+class TableTextIndex {
+
+	/**
+	 * Separates the text of the cells of a row so a search word cannot match
+	 * across two cells.
+	 */
+	private static final char CELL_SEPARATOR = '\u0000';
+
+	/**
+	 * Trigrams found in more than this fraction of the rows when the index is
+	 * built are not indexed. Their row lists would take most of the memory of
+	 * the index while narrowing a search down little more than checking every
+	 * row does.
+	 */
+	private static final int COMMON_TRIGRAM_DIVISOR = 4;
+
+	/**
+	 * A sorted list of row numbers.
+	 */
+	private static class RowList {
+
+		private int[] rows = new int[4];
+
+		private int size;
+
+		/**
+		 * Adds the row, which must not be less than any row in the list.
+		 */
+		void append(int row) {
+			if (size > 0 && rows[size - 1] == row) return;
+			if (size == rows.length) {
+				rows = Arrays.copyOf(rows, size * 2);
+			}
+			rows[size++] = row;
+		}
+
+		void insert(int row) {
+			int pos = Arrays.binarySearch(rows, 0, size, row);
+			if (pos >= 0) return;
+			pos = -pos - 1;
+			if (size == rows.length) {
+				rows = Arrays.copyOf(rows, size * 2);
+			}
+			System.arraycopy(rows, pos, rows, pos + 1, size - pos);
+			rows[pos] = row;
+			size++;
+		}
+
+		void remove(int row) {
+			int pos = Arrays.binarySearch(rows, 0, size, row);
+			if (pos < 0) return;
+			System.arraycopy(rows, pos + 1, rows, pos, size - pos - 1);
+			size--;
+		}
+
+		/**
+		 * Removes the rows at or after the given row.
+		 */
+		void truncate(int firstRow) {
+			while (size > 0 && rows[size - 1] >= firstRow) {
+				size--;
+			}
+		}
+	}
+
+	private final TableModel model;
+
+	private final TableTextConverter converter;
+
+	/**
+	 * The lower cased text of each row, or null if the index has to be
+	 * rebuilt before it is searched.
+	 */
+	private List<String> rowTexts;
+
+	/**
+	 * The rows each trigram appears in. See {@link #trigram(String, int)}.
+	 */
+	private final Map<Long, RowList> postings = new HashMap<Long, RowList>();
+
+	/**
+	 * The trigrams that are too common to be indexed. See
+	 * {@link #COMMON_TRIGRAM_DIVISOR}.
+	 */
+	private final Set<Long> commonTrigrams = new HashSet<Long>();
+
+	/**
+	 * Counts the changes to the index, so the result of the last search is
+	 * only used while the rows have not changed.
+	 */
+	private int version;
+
+	private String[] lastWords;
+
+	private List<Integer> lastResult;
+
+	private int lastVersion;
+
+	TableTextIndex(TableModel model, TableTextConverter converter) {
+		this.model = model;
+		this.converter = converter;
+	}
+
+	/**
+	 * Updates the index for the given change to the model.
+	 */
+	void tableChanged(TableModelEvent e) {
+		version++;
+		if (rowTexts == null) return;
+		int firstRow = e.getFirstRow();
+		int lastRow = e.getLastRow();
+		if (firstRow == TableModelEvent.HEADER_ROW || lastRow == Integer.MAX_VALUE) {
+			rowTexts = null;
+		} else if (e.getType() == TableModelEvent.UPDATE && lastRow < rowTexts.size()) {
+			for (int row = firstRow; row <= lastRow; row++) {
+				String text = rowTexts.get(row);
+				for (int i = 0; i + 3 <= text.length(); i++) {
+					RowList rows = postings.get(trigram(text, i));
+					if (rows != null) {
+						rows.remove(row);
+					}
+				}
+				text = readRow(row);
+				rowTexts.set(row, text);
+				for (int i = 0; i + 3 <= text.length(); i++) {
+					RowList rows = rowsFor(trigram(text, i));
+					if (rows != null) {
+						rows.insert(row);
+					}
+				}
+			}
+		} else if (e.getType() == TableModelEvent.INSERT && firstRow == rowTexts.size()) {
+			for (int row = firstRow; row <= lastRow; row++) {
+				addRow(row);
+			}
+		} else if (e.getType() == TableModelEvent.DELETE && lastRow == rowTexts.size() - 1) {
+			for (RowList rows : postings.values()) {
+				rows.truncate(firstRow);
+			}
+			rowTexts.subList(firstRow, rowTexts.size()).clear();
+		} else {
+			rowTexts = null;
+		}
+		if (rowTexts != null && rowTexts.size() != model.getRowCount()) {
+			rowTexts = null;
+		}
+	}
+
+	/**
+	 * Returns the model rows, in order, whose cells contain each of the space
+	 * separated words of the search text, ignoring case. Each word must be
+	 * contained in one cell. This checks the same text as converting each
+	 * cell with the converter and lower casing it would.
+	 */
+	List<Integer> search(String searchText) {
+		String[] words = searchText.split(" ");
+		for (int i = 0; i < words.length; i++) {
+			words[i] = words[i].toLowerCase();
+		}
+		if (rowTexts == null) {
+			rebuild();
+		}
+
+		List<Integer> candidates = null;
+		if (lastWords != null && lastVersion == version && containsAll(words, lastWords)) {
+			candidates = lastResult;
+		}
+		RowList fewestRows = null;
+		for (String word : words) {
+			for (int i = 0; i + 3 <= word.length(); i++) {
+				Long trigram = trigram(word, i);
+				RowList rows = postings.get(trigram);
+				if (rows == null) {
+					if (commonTrigrams.contains(trigram)) continue;
+					return remember(words, new ArrayList<Integer>());
+				}
+				if (fewestRows == null || rows.size < fewestRows.size) {
+					fewestRows = rows;
+				}
+			}
+		}
+
+		List<Integer> result = new ArrayList<Integer>();
+		if (fewestRows != null && (candidates == null || fewestRows.size < candidates.size())) {
+			for (int i = 0; i < fewestRows.size; i++) {
+				int row = fewestRows.rows[i];
+				if (matches(rowTexts.get(row), words)) {
+					result.add(row);
+				}
+			}
+		} else if (candidates != null) {
+			for (Integer row : candidates) {
+				if (matches(rowTexts.get(row), words)) {
+					result.add(row);
+				}
+			}
+		} else {
+			for (int row = 0; row < rowTexts.size(); row++) {
+				if (matches(rowTexts.get(row), words)) {
+					result.add(row);
+				}
+			}
+		}
+		return remember(words, result);
+	}
+
+	private List<Integer> remember(String[] words, List<Integer> result) {
+		lastWords = words;
+		lastResult = result;
+		lastVersion = version;
+		return new ArrayList<Integer>(result);
+	}
+
+	/**
+	 * Returns true if each of the old words is contained in one of the new
+	 * words, in which case every row matching the new words also matches the
+	 * old ones.
+	 */
+	private static boolean containsAll(String[] newWords, String[] oldWords) {
+		for (String oldWord : oldWords) {
+			boolean found = false;
+			for (String newWord : newWords) {
+				if (newWord.contains(oldWord)) {
+					found = true;
+					break;
+				}
+			}
+			if (!found) return false;
+		}
+		return true;
+	}
+
+	private static boolean matches(String text, String[] words) {
+		for (String word : words) {
+			if (text.indexOf(word) < 0) return false;
+		}
+		return true;
+	}
+
+	private void rebuild() {
+		postings.clear();
+		commonTrigrams.clear();
+		int rowCount = model.getRowCount();
+		rowTexts = new ArrayList<String>(rowCount);
+		for (int row = 0; row < rowCount; row++) {
+			addRow(row);
+		}
+		for (Iterator<Map.Entry<Long, RowList>> it = postings.entrySet().iterator(); it.hasNext(); ) {
+			Map.Entry<Long, RowList> entry = it.next();
+			if (entry.getValue().size > rowCount / COMMON_TRIGRAM_DIVISOR) {
+				commonTrigrams.add(entry.getKey());
+				it.remove();
+			}
+		}
+		version++;
+	}
+
+	/**
+	 * Indexes the given row, which must be after every indexed row.
+	 */
+	private void addRow(int row) {
+		String text = readRow(row);
+		rowTexts.add(text);
+		for (int i = 0; i + 3 <= text.length(); i++) {
+			RowList rows = rowsFor(trigram(text, i));
+			if (rows != null) {
+				rows.append(row);
+			}
+		}
+	}
+
+	private String readRow(int row) {
+		StringBuilder text = new StringBuilder();
+		for (int column = 0; column < model.getColumnCount(); column++) {
+			if (column > 0) {
+				text.append(CELL_SEPARATOR);
+			}
+			text.append(converter.getTextForCell(model.getValueAt(row, column)).toLowerCase());
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Returns the rows the trigram appears in, or null if it is too common
+	 * to be indexed.
+	 */
+	private RowList rowsFor(Long trigram) {
+		RowList rows = postings.get(trigram);
+		if (rows == null) {
+			if (commonTrigrams.contains(trigram)) return null;
+			rows = new RowList();
+			postings.put(trigram, rows);
+		}
+		return rows;
+	}
+
+	/**
+	 * Returns the three characters of the text starting at the given
+	 * position packed into a long.
+	 */
+	private static Long trigram(String text, int start) {
+		return Long.valueOf(((long) text.charAt(start) << 32)
+				| ((long) text.charAt(start + 1) << 16)
+				| text.charAt(start + 2));
+	}
+}
@@ -18,11 +18,8 @@
  */
 package ca.sqlpower.swingui.table;
 
-import java.awt.Component;
-
 import javax.swing.JScrollPane;
 import javax.swing.JTable;
-import javax.swing.table.TableCellRenderer;
 import javax.swing.table.TableColumn;
 import javax.swing.table.TableModel;
 
@@ -58,14 +55,17 @@ public class TableUtils {
      * to have.  Nonpositive values mean "no maximum."
      */
     public static void fitColumnWidth(JTable table, int colIndex, int maxWidth, int padding) {
-        fitColumnWidths(table, -1, maxWidth, padding);
+        fitColumnWidth(table, colIndex, -1, maxWidth, padding);
     }
 
     /**
      * Sets the given column of the given table to be exactly as wide as it
      * needs to be to fit its current contents, but not exceeding a specified
-     * maximum. The contents of each body cell in this column, as well as the
-     * header component is taken into account.
+     * maximum. The header component, the first, last and visible cells in this
+     * column and a sample of the other cells are taken into account, so large
+     * tables are fitted in about the same time as small ones. The width found
+     * is cached on the table, so fitting the column again only measures the
+     * rows added since.
      * 
      * @param table
      *            The table whose column to resize
@@ -79,36 +79,8 @@ public class TableUtils {
      *            have. Nonpositive values mean "no maximum."
      */
     public static void fitColumnWidth(JTable table, int colIndex, int minWidth, int maxWidth, int padding) {
-        TableColumn column = null;
-        Component comp = null;
-        int cellWidth = 0;
-        TableCellRenderer headerRenderer =
-            table.getTableHeader().getDefaultRenderer();
-        column = table.getColumnModel().getColumn(colIndex);
-
-        comp = headerRenderer.getTableCellRendererComponent(
-                table, column.getHeaderValue(),
-                false, false, 0, colIndex);
-
-        // Headers need additional padding for some reason!
-        cellWidth = comp.getPreferredSize().width + 2;
-
-        int limit = table.getRowCount() > 100 ? 100 : table.getRowCount();
-        
-        for (int j = 0; j < limit; j++) {                
-            final TableCellRenderer cellRenderer = table.getCellRenderer(j,colIndex);
-            if (cellRenderer == null) continue;
-            comp = cellRenderer.getTableCellRendererComponent(table,
-                    table.getValueAt(j, colIndex),false,false,j, colIndex);  
-
-            // we add a one-pixel fudge factor here because the result is often too short by a pixel
-            cellWidth = Math.max(cellWidth, comp.getPreferredSize().width + 1);
-
-            if (maxWidth > 0 && cellWidth >= maxWidth) {
-                cellWidth = maxWidth;
-                break;
-            }
-        }
+        TableColumn column = table.getColumnModel().getColumn(colIndex);
+        int cellWidth = new ColumnWidthSampler().measure(table, colIndex, maxWidth);
         if (minWidth >= 0 && cellWidth < minWidth) {
             cellWidth = minWidth;
         }
@@ -158,6 +158,8 @@ public class SQLPowerUtils {
 	 */
 	public static String unEscapeNewLines(String src) {
 	    if (src == null) return "";
+	    // Most strings have no new lines, avoid copying them.
+	    if (src.indexOf("&crlf;") == -1) return src;
 		StringBuffer sb = new StringBuffer(src.length()+10);  // arbitrary amount of extra space
 		char ch;
 	    
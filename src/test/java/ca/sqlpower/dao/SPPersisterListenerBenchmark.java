@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.dao;
+
+import java.beans.PropertyChangeEvent;
+
+import ca.sqlpower.dao.session.SessionPersisterSuperConverter;
+import ca.sqlpower.object.AbstractSPListener;
+import ca.sqlpower.object.CountingSPPersister;
+import ca.sqlpower.object.SPChildEvent;
+import ca.sqlpower.sql.PlDotIni;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLTable;
+import ca.sqlpower.testutil.SPObjectRoot;
+import ca.sqlpower.util.RunnableDispatcher;
+import ca.sqlpower.util.SQLPowerUtils;
+import ca.sqlpower.util.SessionNotFoundException;
+import ca.sqlpower.util.StubWorkspaceContainer;
+import ca.sqlpower.util.WorkspaceContainer;
+
+/**
+ * Counts the persist calls an {@link SPPersisterListener} sends for some
+ * typical user interface gestures, each done in a single transaction, against
+ * the number of events the gesture fires. This is not part of the test suite;
+ * run the main method.
+ */
+public class SPPersisterListenerBenchmark {
+
+	/**
+	 * A user interface gesture performed on a table in one transaction.
+	 */
+	private static abstract class Gesture {
+		
+		private final String name;
+		
+		Gesture(String name) {
+			this.name = name;
+		}
+		
+		abstract void perform(SQLTable table) throws Exception;
+	}
+	
+	/**
+	 * Counts the events fired by the objects it listens to, following
+	 * children as they are added and removed.
+	 */
+	private static class EventCounter extends AbstractSPListener {
+		
+		private int events;
+		
+		@Override
+		public void propertyChanged(PropertyChangeEvent evt) {
+			events++;
+		}
+		
+		@Override
+		public void childAdded(SPChildEvent e) {
+			events++;
+			SQLPowerUtils.listenToHierarchy(e.getChild(), this);
+		}
+		
+		@Override
+		public void childRemoved(SPChildEvent e) {
+			events++;
+			SQLPowerUtils.unlistenToHierarchy(e.getChild(), this);
+		}
+	}
+
+	private static final int COLUMNS = 10;
+
+	private static final Gesture[] GESTURES = new Gesture[] {
+		new Gesture("type a new table name") {
+			void perform(SQLTable table) {
+				String name = "customer_addresses_2";
+				for (int i = 1; i <= name.length(); i++) {
+					table.setName(name.substring(0, i));
+				}
+			}
+		},
+		new Gesture("live edit remarks 200 times") {
+			void perform(SQLTable table) {
+				for (int i = 0; i < 200; i++) {
+					table.setRemarks("remarks " + i);
+				}
+			}
+		},
+		new Gesture("rename a column and change it back") {
+			void perform(SQLTable table) throws Exception {
+				SQLColumn column = table.getColumn(0);
+				String name = column.getName();
+				column.setName("renamed");
+				column.setName(name);
+			}
+		},
+		new Gesture("add a column and delete it") {
+			void perform(SQLTable table) throws Exception {
+				SQLColumn column = new SQLColumn();
+				table.addColumn(column);
+				column.setName("new_column");
+				table.removeColumn(column);
+			}
+		},
+		new Gesture("add a column and name it") {
+			void perform(SQLTable table) throws Exception {
+				SQLColumn column = new SQLColumn();
+				table.addColumn(column);
+				String name = "new_column";
+				for (int i = 1; i <= name.length(); i++) {
+					column.setName(name.substring(0, i));
+				}
+			}
+		},
+		new Gesture("move a column down the table") {
+			void perform(SQLTable table) throws Exception {
+				for (int i = 0; i < COLUMNS - 1; i++) {
+					table.changeColumnIndex(i, i + 1, false);
+				}
+			}
+		}
+	};
+
+	public static void main(String[] args) throws Exception {
+		for (Gesture gesture : GESTURES) {
+			SQLTable table = createTable();
+			CountingSPPersister target = new CountingSPPersister();
+			SPPersisterListener listener = new SPPersisterListener(target, 
+					new SessionPersisterSuperConverter(new PlDotIni(), table.getParent()));
+			EventCounter counter = new EventCounter();
+			SQLPowerUtils.listenToHierarchy(table, listener);
+			SQLPowerUtils.listenToHierarchy(table, counter);
+
+			long start = System.nanoTime();
+			table.begin(gesture.name);
+			gesture.perform(table);
+			table.commit();
+			long time = System.nanoTime() - start;
+
+			System.out.println(String.format("%-36s %4d events, %4d persist calls " +
+					"(%d objects, %d properties, %d removes) in %,d us", gesture.name, counter.events,
+					target.getPersistObjectCount() + target.getPersistPropertyCount() + target.getRemoveObjectCount(),
+					target.getPersistObjectCount(), target.getPersistPropertyCount(),
+					target.getRemoveObjectCount(), time / 1000));
+		}
+	}
+
+	private static SQLTable createTable() throws Exception {
+		final StubWorkspaceContainer workspaceContainer = new StubWorkspaceContainer();
+		final SPObjectRoot root = new SPObjectRoot() {
+			@Override
+			public RunnableDispatcher getRunnableDispatcher() throws SessionNotFoundException {
+				return workspaceContainer;
+			}
+
+			@Override
+			public WorkspaceContainer getWorkspaceContainer() throws SessionNotFoundException {
+				return workspaceContainer;
+			}
+		};
+		SQLDatabase db = new SQLDatabase();
+		root.addChild(db, 0);
+		SQLTable table = new SQLTable(db, true);
+		table.setName("table");
+		db.addTable(table);
+		for (int i = 0; i < COLUMNS; i++) {
+			SQLColumn column = new SQLColumn();
+			column.setName("column_" + i);
+			table.addColumn(column);
+		}
+		return table;
+	}
+}
@@ -95,4 +95,60 @@ public class SPPersisterListenerTest extends TestCase {
         table.commit();
     }
     
+    /**
+     * Changing one property many times in a transaction must send a single
+     * persist call with the value from before the transaction as its old value,
+     * so the server can still detect conflicts.
+     */
+    public void testRepeatedPropertyChangesCoalesce() throws Exception {
+        NewValueMaker valueMaker = new GenericNewValueMaker(root);
+        SQLTable table = (SQLTable) valueMaker.makeNewValue(SQLTable.class, null, "");
+        String originalRemarks = table.getRemarks();
+        
+        CountingSPPersister targetPersister = new CountingSPPersister();
+        SessionPersisterSuperConverter converter = new SessionPersisterSuperConverter(null, table);
+        SPPersisterListener listener = new SPPersisterListener(targetPersister, converter);
+        table.addSPListener(listener);
+        
+        table.begin("Test transaction");
+        for (int i = 0; i < 100; i++) {
+            table.setRemarks("remarks " + i);
+        }
+        assertEquals(1, listener.getPersistedProperties().size());
+        table.commit();
+        
+        assertEquals(1, targetPersister.getPersistPropertyCount());
+        PersistedSPOProperty property = targetPersister.getPersistPropertyList().get(0);
+        assertEquals("remarks", property.getPropertyName());
+        assertEquals(originalRemarks, property.getOldValue());
+        assertEquals("remarks 99", property.getNewValue());
+    }
+
+    /**
+     * A property changed and then changed back in the same transaction has
+     * not changed at all and should not be sent.
+     */
+    public void testPropertyChangedBackIsNotPersisted() throws Exception {
+        NewValueMaker valueMaker = new GenericNewValueMaker(root);
+        SQLTable table = (SQLTable) valueMaker.makeNewValue(SQLTable.class, null, "");
+        String originalRemarks = table.getRemarks();
+        
+        CountingSPPersister targetPersister = new CountingSPPersister();
+        SessionPersisterSuperConverter converter = new SessionPersisterSuperConverter(null, table);
+        SPPersisterListener listener = new SPPersisterListener(targetPersister, converter);
+        table.addSPListener(listener);
+        
+        table.begin("Test transaction");
+        table.setRemarks("new remarks");
+        table.setRemarks(originalRemarks);
+        assertEquals(0, listener.getPersistedProperties().size());
+        table.setRemarks("final remarks");
+        table.commit();
+        
+        assertEquals(1, targetPersister.getPersistPropertyCount());
+        PersistedSPOProperty property = targetPersister.getPersistPropertyList().get(0);
+        assertEquals(originalRemarks, property.getOldValue());
+        assertEquals("final remarks", property.getNewValue());
+    }
+    
 }
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.dao;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import ca.sqlpower.dao.SPPersister.DataType;
+import ca.sqlpower.dao.upgrade.UpgradePersisterManager;
+import ca.sqlpower.object.CountingSPPersister;
+
+/**
+ * Times saving a generated project with the {@link XMLPersister} against the
+ * original {@link ReferenceXMLPersister}, checks the two files are byte for
+ * byte identical, and times reading the file back with the
+ * {@link XMLPersisterReader}, both serially and in parallel on one thread per
+ * processor. This is not part of the test suite; run the main method with the
+ * number of objects to generate as an optional argument.
+ */
+public class XMLPersisterBenchmark {
+
+	public static final String ROOT_TYPE = "ca.sqlpower.testutil.SPObjectRoot";
+
+	public static final String PROJECT_TAG = "benchmark";
+
+	private static final String[] NAMES = new String[] {
+		"customer", "order \"line\"", "O'Brien & sons", "<none>", "multi\nline\nremarks",
+		"caf\u00e9 \u2603", "tab\tseparated", "\u0003stripped", "plain_column_name"
+	};
+
+	public static void main(String[] args) throws Exception {
+		int objects = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		UpgradePersisterManager manager = createUpgradePersisterManager();
+		XMLPersister.setUpgradePersisterManager(manager);
+		ReferenceXMLPersister.setUpgradePersisterManager(manager);
+		int threads = Runtime.getRuntime().availableProcessors();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+		try {
+			for (int round = 0; round < 5; round++) {
+				ByteArrayOutputStream referenceOut = new ByteArrayOutputStream();
+				long start = System.nanoTime();
+				generateProject(new ReferenceXMLPersister(referenceOut, ROOT_TYPE, PROJECT_TAG), objects, 42);
+				long referenceTime = System.nanoTime() - start;
+
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				start = System.nanoTime();
+				generateProject(new XMLPersister(out, ROOT_TYPE, PROJECT_TAG), objects, 42);
+				long time = System.nanoTime() - start;
+
+				boolean identical = Arrays.equals(referenceOut.toByteArray(), out.toByteArray());
+
+				CountingSPPersister counter = new CountingSPPersister();
+				start = System.nanoTime();
+				new XMLPersisterReader(new InputStreamReader(new ByteArrayInputStream(out.toByteArray())),
+						counter, manager, PROJECT_TAG).read();
+				long readTime = System.nanoTime() - start;
+
+				CountingSPPersister parallelCounter = new CountingSPPersister();
+				start = System.nanoTime();
+				new XMLPersisterReader(new InputStreamReader(new ByteArrayInputStream(out.toByteArray())),
+						parallelCounter, manager, PROJECT_TAG).read(executor);
+				long parallelReadTime = System.nanoTime() - start;
+
+				System.out.println(String.format(
+						"%,d objects, %,d bytes: reference write %,d ms, write %,d ms, identical %b, " +
+						"read %,d ms, parallel read on %d threads %,d ms",
+						objects, out.size(), referenceTime / 1000000, time / 1000000, identical,
+						readTime / 1000000, threads, parallelReadTime / 1000000));
+				if (!identical) {
+					throw new AssertionError("The XMLPersister output differs from the reference output");
+				}
+				if (parallelCounter.getPersistPropertyCount() != counter.getPersistPropertyCount()) {
+					throw new AssertionError("The parallel read persisted a different number of properties");
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	public static UpgradePersisterManager createUpgradePersisterManager() {
+		return new UpgradePersisterManager() {
+			@Override
+			public int getStateVersion() {
+				return 3;
+			}
+
+			@Override
+			public SPUpgradePersister getUpgradePersister(int version) {
+				return null;
+			}
+		};
+	}
+
+	/**
+	 * Persists a project of the given number of objects, in the order the XML
+	 * persisters require, with properties of every data type and values that
+	 * need escaping. The same seed always produces the same project.
+	 */
+	public static void generateProject(SPPersister persister, int objects, long seed) throws Exception {
+		Random random = new Random(seed);
+		persister.begin();
+		persister.persistObject(null, ROOT_TYPE, "root", 0);
+		persister.persistProperty("root", "name", DataType.STRING, "Generated project");
+		int created = 1;
+		int tableIndex = 0;
+		while (created < objects) {
+			String table = "table-" + tableIndex;
+			persister.persistObject("root", "ca.sqlpower.sqlobject.SQLTable", table, tableIndex);
+			persister.persistProperty(table, "name", DataType.STRING, NAMES[random.nextInt(NAMES.length)] + tableIndex);
+			persister.persistProperty(table, "remarks", DataType.STRING, NAMES[random.nextInt(NAMES.length)]);
+			persister.persistProperty(table, "x", DataType.DOUBLE, Double.valueOf(random.nextDouble() * 1000));
+			persister.persistProperty(table, "nullProperty", DataType.NULL, null);
+			if (tableIndex % 100 == 0) {
+				byte[] image = new byte[512];
+				random.nextBytes(image);
+				persister.persistProperty(table, "icon", DataType.PNG_IMG, new ByteArrayInputStream(image));
+			}
+			created++;
+			String folder = table + "-folder";
+			persister.persistObject(table, "ca.sqlpower.sqlobject.SQLTable$Folder", folder, 0);
+			created++;
+			int columns = 1 + random.nextInt(20);
+			for (int i = 0; i < columns && created < objects; i++, created++) {
+				String column = table + "-column-" + i;
+				persister.persistObject(folder, "ca.sqlpower.sqlobject.SQLColumn", column, i);
+				persister.persistProperty(column, "name", DataType.STRING, NAMES[random.nextInt(NAMES.length)]);
+				persister.persistProperty(column, "type", DataType.INTEGER, Integer.valueOf(random.nextInt(100) - 50));
+				persister.persistProperty(column, "nullable", DataType.BOOLEAN, Boolean.valueOf(random.nextBoolean()));
+				persister.persistProperty(column, "length", DataType.LONG, Long.valueOf(random.nextLong()));
+				persister.persistProperty(column, "sourceColumn", DataType.REFERENCE, table + "-column-0");
+			}
+			tableIndex++;
+		}
+		persister.commit();
+	}
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.dao;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import ca.sqlpower.dao.upgrade.UpgradePersisterManager;
+import ca.sqlpower.object.CountingSPPersister;
+
+/**
+ * Ensures the optimized {@link XMLPersister} writes exactly the same file as
+ * the original implementation and that the file reads back completely.
+ */
+public class XMLPersisterOutputTest extends TestCase {
+
+	private UpgradePersisterManager manager;
+
+	@Override
+	protected void setUp() throws Exception {
+		manager = XMLPersisterBenchmark.createUpgradePersisterManager();
+		XMLPersister.setUpgradePersisterManager(manager);
+		ReferenceXMLPersister.setUpgradePersisterManager(manager);
+	}
+
+	public void testOutputMatchesReference() throws Exception {
+		ByteArrayOutputStream referenceOut = new ByteArrayOutputStream();
+		XMLPersisterBenchmark.generateProject(new ReferenceXMLPersister(referenceOut,
+				XMLPersisterBenchmark.ROOT_TYPE, XMLPersisterBenchmark.PROJECT_TAG), 5000, 1);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		XMLPersisterBenchmark.generateProject(new XMLPersister(out,
+				XMLPersisterBenchmark.ROOT_TYPE, XMLPersisterBenchmark.PROJECT_TAG), 5000, 1);
+
+		assertTrue(out.size() > 0);
+		if (!Arrays.equals(referenceOut.toByteArray(), out.toByteArray())) {
+			assertEquals(referenceOut.toString(), out.toString());
+			fail("The output differs from the reference output in its encoding");
+		}
+	}
+
+	public void testOutputReadsBack() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		XMLPersisterBenchmark.generateProject(new XMLPersister(out,
+				XMLPersisterBenchmark.ROOT_TYPE, XMLPersisterBenchmark.PROJECT_TAG), 5000, 1);
+		CountingSPPersister expected = new CountingSPPersister();
+		XMLPersisterBenchmark.generateProject(expected, 5000, 1);
+
+		CountingSPPersister counter = new CountingSPPersister();
+		new XMLPersisterReader(new InputStreamReader(new ByteArrayInputStream(out.toByteArray())),
+				counter, manager, XMLPersisterBenchmark.PROJECT_TAG).read();
+
+		assertEquals(5000, counter.getPersistObjectCount());
+		// Null properties are not written to the file.
+		int nullProperties = 0;
+		for (PersistedSPOProperty p : expected.getPersistPropertyList()) {
+			if (p.getNewValue() == null) nullProperties++;
+		}
+		assertEquals(expected.getPersistPropertyCount() - nullProperties, counter.getPersistPropertyCount());
+	}
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.dao;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+import ca.sqlpower.dao.SPPersister.DataType;
+import ca.sqlpower.dao.upgrade.UpgradePersisterManager;
+import ca.sqlpower.object.CountingSPPersister;
+
+public class XMLPersisterReaderTest extends TestCase {
+
+	/**
+	 * Records the order of the persist calls as well as the calls themselves.
+	 */
+	private static class OrderRecordingPersister extends CountingSPPersister {
+
+		private final List<String> calls = new ArrayList<String>();
+
+		@Override
+		public void persistObject(String parentUUID, String type, String uuid, int index)
+				throws SPPersistenceException {
+			super.persistObject(parentUUID, type, uuid, index);
+			calls.add("object " + uuid);
+		}
+
+		@Override
+		public void persistProperty(String uuid, String propertyName, DataType propertyType,
+				Object newValue) throws SPPersistenceException {
+			super.persistProperty(uuid, propertyName, propertyType, newValue);
+			calls.add("property " + uuid + "." + propertyName);
+		}
+	}
+
+	private UpgradePersisterManager manager;
+
+	private byte[] file;
+
+	private ExecutorService executor;
+
+	@Override
+	protected void setUp() throws Exception {
+		manager = XMLPersisterBenchmark.createUpgradePersisterManager();
+		XMLPersister.setUpgradePersisterManager(manager);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		XMLPersisterBenchmark.generateProject(new XMLPersister(out,
+				XMLPersisterBenchmark.ROOT_TYPE, XMLPersisterBenchmark.PROJECT_TAG), 3000, 7);
+		file = out.toByteArray();
+		executor = Executors.newFixedThreadPool(4);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		executor.shutdownNow();
+	}
+
+	private XMLPersisterReader createReader(SPPersister target) {
+		return new XMLPersisterReader(new InputStreamReader(new ByteArrayInputStream(file)),
+				target, manager, XMLPersisterBenchmark.PROJECT_TAG);
+	}
+
+	/**
+	 * Reading in parallel must make the same calls in the same order as
+	 * reading serially, including when subtrees are split at their children.
+	 */
+	public void testParallelReadMatchesSerialRead() throws Exception {
+		OrderRecordingPersister expected = new OrderRecordingPersister();
+		createReader(expected).read();
+
+		for (int segmentSize : new int[] {256 * 1024, 4 * 1024, 200, 1}) {
+			OrderRecordingPersister actual = new OrderRecordingPersister();
+			XMLPersisterReader reader = createReader(actual);
+			reader.setSegmentSize(segmentSize);
+			reader.read(executor);
+
+			assertEquals(1, actual.getBeginCount());
+			assertEquals(1, actual.getCommitCount());
+			assertEquals(expected.calls, actual.calls);
+			assertEquals(expected.getPersistObjectList(), actual.getPersistObjectList());
+			assertEquals(expected.getPersistPropertyList(), actual.getPersistPropertyList());
+		}
+	}
+
+	/**
+	 * Reading in parallel splits the file as it is read, so the first calls
+	 * are persisted after only a few segments of the file have been read.
+	 */
+	public void testParallelReadStreamsTheFile() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		XMLPersisterBenchmark.generateProject(new XMLPersister(out,
+				XMLPersisterBenchmark.ROOT_TYPE, XMLPersisterBenchmark.PROJECT_TAG), 50000, 11);
+		final int fileLength = out.size();
+		final int[] charsRead = new int[1];
+		final int[] readAtFirstObject = new int[] {-1};
+		Reader in = new FilterReader(new InputStreamReader(new ByteArrayInputStream(out.toByteArray()))) {
+			@Override
+			public int read(char[] cbuf, int off, int len) throws IOException {
+				int read = super.read(cbuf, off, len);
+				if (read > 0) charsRead[0] += read;
+				return read;
+			}
+		};
+		CountingSPPersister target = new CountingSPPersister() {
+			@Override
+			public void persistObject(String parentUUID, String type, String uuid, int index)
+					throws SPPersistenceException {
+				super.persistObject(parentUUID, type, uuid, index);
+				if (readAtFirstObject[0] < 0) {
+					readAtFirstObject[0] = charsRead[0];
+				}
+			}
+		};
+		XMLPersisterReader reader = new XMLPersisterReader(in, target, manager,
+				XMLPersisterBenchmark.PROJECT_TAG);
+		reader.setSegmentSize(4 * 1024);
+		reader.read(executor);
+
+		assertEquals(50000, target.getPersistObjectCount());
+		assertTrue("Read " + readAtFirstObject[0] + " of " + fileLength + " characters before persisting",
+				readAtFirstObject[0] < fileLength / 10);
+	}
+
+	public void testMalformedFileRollsBack() throws Exception {
+		String document = new String(file);
+		int table = document.indexOf("<ca.sqlpower.sqlobject.SQLTable ", document.length() / 2);
+		document = document.substring(0, table) +
+			"<broken UUID=\"x\" index=\"0\"><property /></broken" +
+			document.substring(table);
+		CountingSPPersister target = new CountingSPPersister();
+		XMLPersisterReader reader = new XMLPersisterReader(new StringReader(document),
+				target, manager, XMLPersisterBenchmark.PROJECT_TAG);
+		reader.setSegmentSize(4 * 1024);
+		try {
+			reader.read(executor);
+			fail("A malformed file should not load");
+		} catch (SPPersistenceException e) {
+			// expected
+		}
+		assertEquals(0, target.getCommitCount());
+		assertEquals(1, target.getRollbackCount());
+	}
+}
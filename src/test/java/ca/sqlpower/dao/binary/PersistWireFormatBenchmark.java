@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.dao.binary;
+
+import java.util.LinkedList;
+import java.util.UUID;
+
+import ca.sqlpower.dao.JsonMessageSender;
+import ca.sqlpower.dao.QueueMessageSender;
+import ca.sqlpower.dao.SPPersister;
+import ca.sqlpower.dao.SPPersister.DataType;
+import ca.sqlpower.dao.json.SPJSONMessageDecoder;
+import ca.sqlpower.dao.json.SPJSONPersister;
+import ca.sqlpower.object.CountingSPPersister;
+
+/**
+ * Compares the size and the encode and decode throughput of the JSON and the
+ * binary persist formats on a transaction shaped like a typical workspace:
+ * objects with a handful of properties of mixed types. This is not run as
+ * part of the test suite; run the main method and read the output.
+ */
+public class PersistWireFormatBenchmark {
+
+	private static final int OBJECTS = 20000;
+
+	private static final int ROUNDS = 5;
+
+	public static void main(String[] args) throws Exception {
+		String[] uuids = new String[OBJECTS];
+		for (int i = 0; i < OBJECTS; i++) {
+			uuids[i] = UUID.randomUUID().toString();
+		}
+		int calls = countCalls(uuids);
+
+		for (int round = 0; round < ROUNDS; round++) {
+			JsonMessageSender jsonSender = new JsonMessageSender();
+			long start = System.nanoTime();
+			writeTransaction(new SPJSONPersister(jsonSender), uuids);
+			String json = jsonSender.getJsonArray().toString();
+			long encoded = System.nanoTime();
+			new SPJSONMessageDecoder(new CountingSPPersister()).decode(json);
+			long decoded = System.nanoTime();
+			report("JSON  ", calls, json.getBytes("UTF-8").length, encoded - start, decoded - encoded);
+
+			LinkedList<byte[]> queue = new LinkedList<byte[]>();
+			start = System.nanoTime();
+			writeTransaction(new SPBinaryPersister(new QueueMessageSender<byte[]>(queue)), uuids);
+			byte[] binary = queue.getFirst();
+			encoded = System.nanoTime();
+			new SPBinaryMessageDecoder(new CountingSPPersister()).decode(binary);
+			decoded = System.nanoTime();
+			report("Binary", calls, binary.length, encoded - start, decoded - encoded);
+		}
+	}
+
+	private static int countCalls(String[] uuids) throws Exception {
+		CountingSPPersister counter = new CountingSPPersister();
+		writeTransaction(counter, uuids);
+		return counter.getBeginCount() + counter.getCommitCount()
+			+ counter.getPersistObjectCount() + counter.getPersistPropertyCount();
+	}
+
+	private static void writeTransaction(SPPersister persister, String[] uuids) throws Exception {
+		persister.begin();
+		for (int i = 0; i < uuids.length; i++) {
+			String parent = i == 0 ? null : uuids[(i - 1) / 10];
+			persister.persistObject(parent, "ca.sqlpower.sqlobject.SQLColumn", uuids[i], i % 10);
+			persister.persistProperty(uuids[i], "name", DataType.STRING, "column_" + i);
+			persister.persistProperty(uuids[i], "physicalName", DataType.STRING, "COLUMN_" + i);
+			persister.persistProperty(uuids[i], "type", DataType.INTEGER, Integer.valueOf(12));
+			persister.persistProperty(uuids[i], "precision", DataType.INTEGER, Integer.valueOf(i % 255));
+			persister.persistProperty(uuids[i], "nullable", DataType.BOOLEAN, Boolean.valueOf(i % 2 == 0));
+			persister.persistProperty(uuids[i], "scale", DataType.DOUBLE, Double.valueOf(i / 7.0));
+			persister.persistProperty(uuids[i], "sourceColumn", DataType.REFERENCE, parent);
+		}
+		persister.commit();
+	}
+
+	private static void report(String format, int calls, int bytes, long encodeNanos, long decodeNanos) {
+		System.out.println(String.format(
+				"%s %,d calls: %,d bytes (%.1f bytes/call), encode %,d calls/s, decode %,d calls/s",
+				format, calls, bytes, (double) bytes / calls,
+				(long) (calls / (encodeNanos / 1e9)), (long) (calls / (decodeNanos / 1e9))));
+	}
+}
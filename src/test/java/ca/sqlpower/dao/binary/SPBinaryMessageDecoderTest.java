@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.dao.binary;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.LinkedList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import ca.sqlpower.dao.PersistedSPOProperty;
+import ca.sqlpower.dao.PersistedSPObject;
+import ca.sqlpower.dao.QueueMessageSender;
+import ca.sqlpower.dao.SPPersistenceException;
+import ca.sqlpower.dao.SPPersister.DataType;
+import ca.sqlpower.object.CountingSPPersister;
+
+public class SPBinaryMessageDecoderTest extends TestCase {
+
+	private LinkedList<byte[]> queue;
+	private SPBinaryPersister persister;
+	private CountingSPPersister target;
+	private SPBinaryMessageDecoder decoder;
+
+	@Override
+	protected void setUp() throws Exception {
+		queue = new LinkedList<byte[]>();
+		persister = new SPBinaryPersister(new QueueMessageSender<byte[]>(queue));
+		target = new CountingSPPersister();
+		decoder = new SPBinaryMessageDecoder(target);
+	}
+
+	/**
+	 * Every data type must decode to an equal value of the same class the
+	 * JSON decoder produces.
+	 */
+	public void testRoundTripAllDataTypes() throws Exception {
+		Object[][] values = new Object[][] {
+				{DataType.STRING, "caf\u00e9 \u2603"},
+				{DataType.INTEGER, Integer.valueOf(-42)},
+				{DataType.INTEGER, Integer.valueOf(Integer.MAX_VALUE)},
+				{DataType.DOUBLE, Double.valueOf(-3.25)},
+				{DataType.BOOLEAN, Boolean.TRUE},
+				{DataType.SHORT, Short.valueOf((short) -7)},
+				{DataType.LONG, Long.valueOf(Long.MIN_VALUE)},
+				{DataType.FLOAT, Float.valueOf(1.5f)},
+				{DataType.REFERENCE, "referenced-uuid"},
+				{DataType.STRING, null},
+				{DataType.NULL, null},
+		};
+		persister.begin();
+		for (int i = 0; i < values.length; i++) {
+			persister.persistProperty("uuid", "prop" + i, (DataType) values[i][0], values[i][1]);
+		}
+		persister.commit();
+
+		assertEquals(1, queue.size());
+		decoder.decode(queue.removeFirst());
+
+		assertEquals(1, target.getBeginCount());
+		assertEquals(1, target.getCommitCount());
+		List<PersistedSPOProperty> props = target.getPersistPropertyList();
+		assertEquals(values.length, props.size());
+		for (int i = 0; i < values.length; i++) {
+			PersistedSPOProperty p = props.get(i);
+			assertEquals("prop" + i, p.getPropertyName());
+			assertEquals(values[i][0], p.getDataType());
+			assertEquals(values[i][1], p.getNewValue());
+			assertTrue(p.isUnconditional());
+		}
+	}
+
+	public void testRoundTripObjectsAndChanges() throws Exception {
+		persister.begin();
+		persister.persistObject("parent", "ca.sqlpower.sqlobject.SQLTable", "child", 3);
+		persister.persistObject(null, "ca.sqlpower.sqlobject.SQLTable", "root", 0);
+		persister.persistProperty("child", "name", DataType.STRING, "old", "new");
+		persister.removeObject("parent", "child");
+		persister.commit();
+
+		decoder.decode(queue.removeFirst());
+
+		List<PersistedSPObject> objects = target.getPersistObjectList();
+		assertEquals(2, objects.size());
+		assertEquals(new PersistedSPObject("parent", "ca.sqlpower.sqlobject.SQLTable", "child", 3), objects.get(0));
+		assertNull(objects.get(1).getParentUUID());
+		PersistedSPOProperty change = target.getPersistPropertyList().get(0);
+		assertEquals("old", change.getOldValue());
+		assertEquals("new", change.getNewValue());
+		assertFalse(change.isUnconditional());
+		assertEquals(1, target.getRemoveObjectCount());
+		assertEquals("child", target.getRemovedObjectList().get(0).getUUID());
+	}
+
+	/**
+	 * Images are sent as raw bytes and come back as a stream.
+	 */
+	public void testRoundTripImage() throws Exception {
+		byte[] image = new byte[10000];
+		for (int i = 0; i < image.length; i++) {
+			image[i] = (byte) i;
+		}
+		persister.begin();
+		persister.persistProperty("uuid", "image", DataType.PNG_IMG, new ByteArrayInputStream(image));
+		persister.commit();
+
+		byte[] message = queue.removeFirst();
+		assertTrue(message.length < image.length + 100);
+		decoder.decode(message);
+
+		Object value = target.getPersistPropertyList().get(0).getNewValue();
+		assertTrue(value instanceof InputStream);
+		assertTrue(PersistedSPOProperty.imageObjectsAreEqual(new ByteArrayInputStream(image), value));
+	}
+
+	/**
+	 * Nested transactions are sent as one message when the outermost
+	 * transaction commits and repeated strings only appear once.
+	 */
+	public void testNestedTransactionsShareStringTable() throws Exception {
+		persister.begin();
+		persister.begin();
+		for (int i = 0; i < 100; i++) {
+			persister.persistProperty("a-rather-long-uuid-0000-0000-000000000000", "x",
+					DataType.INTEGER, Integer.valueOf(i), Integer.valueOf(i + 1));
+		}
+		persister.commit();
+		assertTrue(queue.isEmpty());
+		persister.commit();
+
+		byte[] message = queue.removeFirst();
+		// Each call is method, uuid index, name index, type and two small
+		// values, roughly 10 bytes, plus the first copy of each string.
+		assertTrue("Message was " + message.length + " bytes", message.length < 100 * 10 + 100);
+		decoder.decode(message);
+		assertEquals(2, target.getBeginCount());
+		assertEquals(2, target.getCommitCount());
+		assertEquals(100, target.getPersistPropertyCount());
+	}
+
+	public void testRollbackDiscardsMessage() throws Exception {
+		persister.begin();
+		persister.persistObject("parent", "type", "uuid", 0);
+		persister.rollback();
+		assertTrue(queue.isEmpty());
+
+		persister.begin();
+		persister.commit();
+		decoder.decode(queue.removeFirst());
+		assertEquals(0, target.getPersistObjectCount());
+	}
+
+	public void testTruncatedMessageFails() throws Exception {
+		persister.begin();
+		persister.persistProperty("uuid", "name", DataType.STRING, "value");
+		persister.commit();
+		byte[] message = queue.removeFirst();
+		byte[] truncated = new byte[message.length - 3];
+		System.arraycopy(message, 0, truncated, 0, truncated.length);
+		try {
+			decoder.decode(truncated);
+			fail("A truncated message should not decode");
+		} catch (SPPersistenceException e) {
+			// expected
+		}
+	}
+}
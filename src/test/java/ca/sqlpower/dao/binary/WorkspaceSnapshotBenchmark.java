@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.dao.binary;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+
+import ca.sqlpower.dao.SPPersister;
+import ca.sqlpower.dao.XMLPersister;
+import ca.sqlpower.dao.XMLPersisterBenchmark;
+import ca.sqlpower.dao.XMLPersisterReader;
+import ca.sqlpower.dao.upgrade.UpgradePersisterManager;
+
+/**
+ * Times reopening a generated project from its project file and from its
+ * {@link WorkspaceSnapshotWriter snapshot}, both completely and only the top
+ * two levels, into a target that only counts the calls. This is not part of the test suite; run the main method with
+ * the number of objects to generate as an optional argument.
+ */
+public class WorkspaceSnapshotBenchmark {
+
+	/**
+	 * Only counts the persist calls so the time measured is the time to read
+	 * the workspace, not to build it.
+	 */
+	private static class CallCounter implements SPPersister {
+		private int objects;
+		private int properties;
+
+		public void begin() {
+			// not counted
+		}
+
+		public void commit() {
+			// not counted
+		}
+
+		public void rollback() {
+			// not counted
+		}
+
+		public void persistObject(String parentUUID, String type, String uuid, int index) {
+			objects++;
+		}
+
+		public void persistProperty(String uuid, String propertyName, DataType propertyType,
+				Object oldValue, Object newValue) {
+			properties++;
+		}
+
+		public void persistProperty(String uuid, String propertyName, DataType propertyType,
+				Object newValue) {
+			properties++;
+		}
+
+		public void removeObject(String parentUUID, String uuid) {
+			// not counted
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int objects = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		UpgradePersisterManager manager = XMLPersisterBenchmark.createUpgradePersisterManager();
+		XMLPersister.setUpgradePersisterManager(manager);
+		File projectFile = File.createTempFile("snapshot-benchmark", ".xml");
+		File snapshotFile = WorkspaceSnapshotFormat.getSnapshotFile(projectFile);
+		try {
+			long start = System.nanoTime();
+			OutputStream out = new FileOutputStream(projectFile);
+			WorkspaceSnapshotWriter writer = new WorkspaceSnapshotWriter(new XMLPersister(out,
+					XMLPersisterBenchmark.ROOT_TYPE, XMLPersisterBenchmark.PROJECT_TAG));
+			try {
+				XMLPersisterBenchmark.generateProject(writer, objects, 42);
+			} finally {
+				out.close();
+			}
+			long saveTime = System.nanoTime() - start;
+			start = System.nanoTime();
+			writer.write(projectFile, manager.getStateVersion());
+			long snapshotWriteTime = System.nanoTime() - start;
+			System.out.println(String.format("%,d objects: project file %,d bytes saved in %,d ms, " +
+					"snapshot %,d bytes written in %,d ms", objects, projectFile.length(), saveTime / 1000000,
+					snapshotFile.length(), snapshotWriteTime / 1000000));
+
+			for (int round = 0; round < 5; round++) {
+				CallCounter fromFile = new CallCounter();
+				start = System.nanoTime();
+				InputStreamReader in = new InputStreamReader(new FileInputStream(projectFile));
+				try {
+					new XMLPersisterReader(in, fromFile, manager, XMLPersisterBenchmark.PROJECT_TAG).read();
+				} finally {
+					in.close();
+				}
+				long fileTime = System.nanoTime() - start;
+
+				start = System.nanoTime();
+				WorkspaceSnapshotReader reader = WorkspaceSnapshotReader.open(projectFile, manager.getStateVersion());
+				long openTime = System.nanoTime() - start;
+				CallCounter fromSnapshot = new CallCounter();
+				start = System.nanoTime();
+				reader.read(fromSnapshot);
+				long snapshotTime = System.nanoTime() - start;
+				CallCounter topLevels = new CallCounter();
+				start = System.nanoTime();
+				reader.read(topLevels, 1);
+				long topLevelTime = System.nanoTime() - start;
+
+				System.out.println(String.format("project file %,d ms; snapshot open and check %,d ms, " +
+						"read all %,d ms, read %,d top level objects %,d ms",
+						fileTime / 1000000, openTime / 1000000, snapshotTime / 1000000,
+						topLevels.objects, topLevelTime / 1000000));
+				if (fromFile.objects != fromSnapshot.objects || fromFile.properties != fromSnapshot.properties) {
+					throw new AssertionError("The snapshot persisted a different workspace than the project file");
+				}
+			}
+		} finally {
+			projectFile.delete();
+			snapshotFile.delete();
+		}
+	}
+}
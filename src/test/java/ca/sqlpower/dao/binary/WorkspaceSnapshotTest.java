@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.dao.binary;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+import ca.sqlpower.dao.PersistedSPObject;
+import ca.sqlpower.dao.SPPersister;
+import ca.sqlpower.dao.SPPersister.DataType;
+import ca.sqlpower.dao.XMLPersister;
+import ca.sqlpower.dao.XMLPersisterBenchmark;
+import ca.sqlpower.dao.XMLPersisterReader;
+import ca.sqlpower.dao.upgrade.UpgradePersisterManager;
+import ca.sqlpower.object.CountingSPPersister;
+
+public class WorkspaceSnapshotTest extends TestCase {
+
+	private UpgradePersisterManager manager;
+
+	private File projectFile;
+
+	@Override
+	protected void setUp() throws Exception {
+		manager = XMLPersisterBenchmark.createUpgradePersisterManager();
+		XMLPersister.setUpgradePersisterManager(manager);
+		projectFile = File.createTempFile("snapshot-test", ".xml");
+		OutputStream out = new FileOutputStream(projectFile);
+		WorkspaceSnapshotWriter writer = new WorkspaceSnapshotWriter(new XMLPersister(out,
+				XMLPersisterBenchmark.ROOT_TYPE, XMLPersisterBenchmark.PROJECT_TAG));
+		try {
+			generateProject(writer);
+		} finally {
+			out.close();
+		}
+		writer.write(projectFile, manager.getStateVersion());
+	}
+
+	/**
+	 * Persists a project with values of every data type the project file
+	 * supports, including strings the project file changes when saving.
+	 * Unlike the benchmark's project all strings are ASCII as the project
+	 * file is written in the platform's encoding.
+	 */
+	private static void generateProject(SPPersister persister) throws Exception {
+		String[] names = new String[] {"customer", "order \"line\"", "O'Brien & sons", "<none>",
+				"multi\nline\r\nremarks", "tab\tseparated", "\u0003stripped", "plain_column_name"};
+		persister.begin();
+		persister.persistObject(null, XMLPersisterBenchmark.ROOT_TYPE, "root", 0);
+		persister.persistProperty("root", "name", DataType.STRING, "Generated project");
+		for (int t = 0; t < 200; t++) {
+			String table = "table-" + t;
+			persister.persistObject("root", "ca.sqlpower.sqlobject.SQLTable", table, t);
+			persister.persistProperty(table, "name", DataType.STRING, names[t % names.length] + t);
+			persister.persistProperty(table, "x", DataType.DOUBLE, Double.valueOf(t / 3.0));
+			persister.persistProperty(table, "nullProperty", DataType.NULL, null);
+			if (t % 50 == 0) {
+				persister.persistProperty(table, "icon", DataType.PNG_IMG,
+						new ByteArrayInputStream(new byte[] {1, 2, 3, (byte) t}));
+			}
+			String folder = table + "-folder";
+			persister.persistObject(table, "ca.sqlpower.sqlobject.SQLTable$Folder", folder, 0);
+			for (int c = 0; c < t % 12; c++) {
+				String column = table + "-column-" + c;
+				persister.persistObject(folder, "ca.sqlpower.sqlobject.SQLColumn", column, c);
+				persister.persistProperty(column, "name", DataType.STRING, names[(t + c) % names.length]);
+				persister.persistProperty(column, "type", DataType.INTEGER, Integer.valueOf(c - 5));
+				persister.persistProperty(column, "nullable", DataType.BOOLEAN, Boolean.valueOf(c % 2 == 0));
+				persister.persistProperty(column, "length", DataType.LONG, Long.valueOf(-1L << c * 5));
+				persister.persistProperty(column, "sourceColumn", DataType.REFERENCE, table + "-column-0");
+			}
+		}
+		persister.commit();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		projectFile.delete();
+		WorkspaceSnapshotFormat.getSnapshotFile(projectFile).delete();
+	}
+
+	/**
+	 * Reading the snapshot must persist the same objects and properties as
+	 * reading the project file.
+	 */
+	public void testSnapshotMatchesProjectFile() throws Exception {
+		CountingSPPersister expected = new CountingSPPersister();
+		InputStreamReader in = new InputStreamReader(new FileInputStream(projectFile));
+		try {
+			new XMLPersisterReader(in, expected, manager, XMLPersisterBenchmark.PROJECT_TAG).read();
+		} finally {
+			in.close();
+		}
+
+		WorkspaceSnapshotReader reader = WorkspaceSnapshotReader.open(projectFile, manager.getStateVersion());
+		assertNotNull(reader);
+		assertEquals(expected.getPersistObjectCount(), reader.getObjectCount());
+		CountingSPPersister actual = new CountingSPPersister();
+		reader.read(actual);
+
+		assertEquals(1, actual.getBeginCount());
+		assertEquals(1, actual.getCommitCount());
+		assertEquals(expected.getPersistObjectList(), actual.getPersistObjectList());
+		assertEquals(expected.getPersistPropertyList(), actual.getPersistPropertyList());
+	}
+
+	/**
+	 * Reading the top of the workspace and then the descendants of each
+	 * object at the deepest level read must persist every object once, with
+	 * each parent before its children.
+	 */
+	public void testReadTopLevelsThenDescendants() throws Exception {
+		WorkspaceSnapshotReader reader = WorkspaceSnapshotReader.open(projectFile, manager.getStateVersion());
+		CountingSPPersister all = new CountingSPPersister();
+		reader.read(all);
+
+		CountingSPPersister top = new CountingSPPersister();
+		reader.read(top, 1);
+		List<PersistedSPObject> tables = new ArrayList<PersistedSPObject>();
+		for (PersistedSPObject o : top.getPersistObjectList()) {
+			if (o.getType().endsWith("SQLTable")) tables.add(o);
+		}
+		assertEquals(tables.size() + 1, top.getPersistObjectCount());
+
+		CountingSPPersister lazy = new CountingSPPersister();
+		for (PersistedSPObject table : tables) {
+			reader.readDescendants(table.getUUID(), lazy);
+		}
+		assertEquals(all.getPersistObjectCount(), top.getPersistObjectCount() + lazy.getPersistObjectCount());
+		assertEquals(all.getPersistPropertyCount(), top.getPersistPropertyCount() + lazy.getPersistPropertyCount());
+		Set<String> persisted = new HashSet<String>();
+		for (PersistedSPObject o : top.getPersistObjectList()) {
+			persisted.add(o.getUUID());
+		}
+		for (PersistedSPObject o : lazy.getPersistObjectList()) {
+			assertTrue(persisted.contains(o.getParentUUID()));
+			assertTrue(persisted.add(o.getUUID()));
+		}
+	}
+
+	public void testChangedProjectFileIsNotUsed() throws Exception {
+		assertNull(WorkspaceSnapshotReader.open(projectFile, manager.getStateVersion() + 1));
+
+		OutputStream out = new FileOutputStream(projectFile, true);
+		out.write(' ');
+		out.close();
+		assertNull(WorkspaceSnapshotReader.open(projectFile, manager.getStateVersion()));
+
+		WorkspaceSnapshotFormat.getSnapshotFile(projectFile).delete();
+		assertNull(WorkspaceSnapshotReader.open(projectFile, manager.getStateVersion()));
+	}
+}
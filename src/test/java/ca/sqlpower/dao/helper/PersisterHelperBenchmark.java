@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.dao.helper;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import ca.sqlpower.dao.PersistedSPObject;
+import ca.sqlpower.dao.PersisterUtils;
+import ca.sqlpower.dao.SPSessionPersister;
+import ca.sqlpower.dao.SPPersister.DataType;
+import ca.sqlpower.dao.session.SessionPersisterSuperConverter;
+import ca.sqlpower.object.SPObject;
+import ca.sqlpower.sql.PlDotIni;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLTable;
+import ca.sqlpower.util.WorkspaceContainer;
+
+/**
+ * Measures the per-property cost of looking up persister helpers, of the
+ * generated findProperty and commitProperty dispatch, and of persisting and
+ * committing property changes through an {@link SPSessionPersister}. The
+ * lookup is compared against creating a new helper on each call, which is
+ * what {@link PersisterHelperFinder} used to do. To compare the generated
+ * dispatch before and after a change to the annotation processor, run this
+ * against helpers generated by each version. This is not part of the test
+ * suite; it needs the generated persister helpers on the class path.
+ */
+public class PersisterHelperBenchmark {
+
+	private static final int COLUMNS = 2000;
+
+	private static final int ROUNDS = 5;
+
+	public static void main(String[] args) throws Exception {
+		final SQLDatabase db = new SQLDatabase();
+		SQLTable table = new SQLTable(db, true);
+		db.addTable(table);
+		for (int i = 0; i < COLUMNS; i++) {
+			SQLColumn column = new SQLColumn();
+			column.setName("column_" + i);
+			table.addColumn(column);
+		}
+		SessionPersisterSuperConverter converter = new SessionPersisterSuperConverter(new PlDotIni(), db);
+
+		SQLColumn column = table.getColumn(0);
+		List<String> properties = findRoundTripProperties(column, converter);
+		System.out.println("Round tripping " + properties.size() + " SQLColumn properties: " + properties);
+
+		for (int round = 0; round < ROUNDS; round++) {
+			int lookups = 1000000;
+			long start = System.nanoTime();
+			for (int i = 0; i < lookups; i++) {
+				PersisterHelperFinder.findPersister(SQLColumn.class);
+			}
+			long cached = System.nanoTime() - start;
+			start = System.nanoTime();
+			for (int i = 0; i < lookups / 10; i++) {
+				createHelper(SQLColumn.class);
+			}
+			long uncached = (System.nanoTime() - start) * 10;
+
+			int calls = 0;
+			SPPersisterHelper<? extends SPObject> helper = PersisterHelperFinder.findPersister(SQLColumn.class);
+			start = System.nanoTime();
+			for (int i = 0; i < 200; i++) {
+				for (String property : properties) {
+					Object value = helper.findProperty(column, property, converter);
+					helper.commitProperty(column, property, value, dataTypeOf(value), converter);
+					calls += 2;
+				}
+			}
+			long dispatch = System.nanoTime() - start;
+
+			SPSessionPersister persister = createSessionPersister(db, converter);
+			start = System.nanoTime();
+			persister.begin();
+			for (SQLColumn c : table.getColumns()) {
+				persister.persistProperty(c.getUUID(), "remarks", DataType.STRING,
+						c.getRemarks(), "remarks for round " + round);
+			}
+			persister.commit();
+			long session = System.nanoTime() - start;
+
+			System.out.println(String.format(
+					"lookup: cached %,d ns, new helper %,d ns; dispatch %,d ns per find or commit; " +
+					"session persist and commit %,d ns per property",
+					cached / lookups, uncached / lookups, dispatch / calls, session / COLUMNS));
+		}
+	}
+
+	/**
+	 * Returns the properties of the given object whose value can be read
+	 * with findProperty and written back with commitProperty.
+	 */
+	private static List<String> findRoundTripProperties(SPObject o,
+			SessionPersisterSuperConverter converter) throws Exception {
+		SPPersisterHelper<? extends SPObject> helper = PersisterHelperFinder.findPersister(o.getClass());
+		List<String> properties = new ArrayList<String>();
+		for (String property : new LinkedHashSet<String>(helper.getPersistedProperties())) {
+			try {
+				Object value = helper.findProperty(o, property, converter);
+				helper.commitProperty(o, property, value, dataTypeOf(value), converter);
+				properties.add(property);
+			} catch (Exception e) {
+				// Not every persisted property can be read back or set twice.
+			}
+		}
+		return properties;
+	}
+
+	private static DataType dataTypeOf(Object value) {
+		return value == null ? DataType.NULL : PersisterUtils.getDataType(value.getClass());
+	}
+
+	/**
+	 * Creates a new helper the way {@link PersisterHelperFinder} did before
+	 * it cached the helpers.
+	 */
+	private static Object createHelper(Class<? extends SPObject> persistClass) throws Exception {
+		String persisterClassName = persistClass.getPackage().getName() + "." +
+			PersisterHelperFinder.GENERATED_PACKAGE_NAME + "." + persistClass.getSimpleName() + "PersisterHelper";
+		return PersisterHelperFinder.class.getClassLoader().loadClass(persisterClassName).newInstance();
+	}
+
+	private static SPSessionPersister createSessionPersister(final SQLDatabase db,
+			SessionPersisterSuperConverter converter) {
+		SPSessionPersister persister = new SPSessionPersister("benchmark", db, converter) {
+			@Override
+			protected void refreshRootNode(PersistedSPObject pso) {
+				// do nothing
+			}
+		};
+		persister.setWorkspaceContainer(new WorkspaceContainer() {
+			public SPObject getWorkspace() {
+				return db;
+			}
+		});
+		return persister;
+	}
+}
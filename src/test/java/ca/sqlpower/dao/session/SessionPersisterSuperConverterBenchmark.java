@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.dao.session;
+
+import java.awt.Color;
+import java.awt.Point;
+import java.math.BigDecimal;
+import java.util.Date;
+
+import ca.sqlpower.sql.PlDotIni;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLIndex.AscendDescend;
+import ca.sqlpower.sqlobject.SQLTable;
+
+/**
+ * Times converting the most common property types to their basic type and
+ * back with a {@link SessionPersisterSuperConverter}. Types near the end of
+ * the converter's list are included as well as the primitive wrappers at its
+ * start. This is not part of the test suite; run the main method.
+ */
+public class SessionPersisterSuperConverterBenchmark {
+
+	private static final int CONVERSIONS = 1000000;
+
+	public static void main(String[] args) throws Exception {
+		SQLDatabase db = new SQLDatabase();
+		SQLTable table = new SQLTable(db, true);
+		db.addTable(table);
+		SQLColumn column = new SQLColumn();
+		table.addColumn(column);
+		SessionPersisterSuperConverter converter = new SessionPersisterSuperConverter(new PlDotIni(), db);
+
+		Object[] values = new Object[] {
+				"name", Integer.valueOf(12), Boolean.TRUE, Double.valueOf(1.5), Long.valueOf(7),
+				column, AscendDescend.ASCENDING, new BigDecimal("12.50"), new Date(0),
+				new Point(10, 20), Color.BLUE
+		};
+		Object[] basicValues = new Object[values.length];
+		for (int i = 0; i < values.length; i++) {
+			basicValues[i] = converter.convertToBasicType(values[i]);
+		}
+
+		for (int round = 0; round < 5; round++) {
+			StringBuilder result = new StringBuilder("round " + round + ":");
+			for (int i = 0; i < values.length; i++) {
+				Object value = values[i];
+				Class<?> type = value.getClass();
+				long start = System.nanoTime();
+				for (int j = 0; j < CONVERSIONS; j++) {
+					converter.convertToBasicType(value);
+				}
+				long toBasic = System.nanoTime() - start;
+				start = System.nanoTime();
+				for (int j = 0; j < CONVERSIONS; j++) {
+					converter.convertToComplexType(basicValues[i], type);
+				}
+				long toComplex = System.nanoTime() - start;
+				result.append(String.format(" %s %,d/%,d ns", type.getSimpleName(),
+						toBasic / CONVERSIONS, toComplex / CONVERSIONS));
+			}
+			System.out.println(result);
+		}
+	}
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.dao.session;
+
+import java.awt.Color;
+import java.awt.Point;
+import java.awt.geom.Point2D;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+
+import junit.framework.TestCase;
+import ca.sqlpower.sql.PlDotIni;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLTable;
+
+public class SessionPersisterSuperConverterTest extends TestCase {
+
+	/**
+	 * An enum with a constant that has a body, which makes that constant an
+	 * anonymous subclass of the enum.
+	 */
+	private static enum Shape {
+		SQUARE,
+		CIRCLE {
+			@Override
+			public String toString() {
+				return "round";
+			}
+		}
+	}
+
+	private SQLDatabase db;
+
+	private SQLTable table;
+
+	private SessionPersisterSuperConverter converter;
+
+	@Override
+	protected void setUp() throws Exception {
+		db = new SQLDatabase();
+		table = new SQLTable(db, true);
+		db.addTable(table);
+		converter = new SessionPersisterSuperConverter(new PlDotIni(), db);
+	}
+
+	public void testBasicTypesAreUnchanged() throws Exception {
+		assertNull(converter.convertToBasicType(null));
+		Object[] values = new Object[] {"value", 1, 2.5d, true, 3L, (short) 4, 5.5f};
+		for (Object value : values) {
+			assertSame(value, converter.convertToBasicType(value));
+			assertSame(value, converter.convertToComplexType(value, value.getClass()));
+		}
+	}
+
+	public void testSubclassesUseTheirSuperclassConverter() throws Exception {
+		assertEquals(table.getUUID(), converter.convertToBasicType(table));
+		assertSame(table, converter.convertToComplexType(table.getUUID(), SQLTable.class));
+
+		Point point = new Point(3, 4);
+		assertEquals("3.0,4.0", converter.convertToBasicType(point));
+		assertEquals(point, converter.convertToComplexType("3.0,4.0", Point.class));
+		assertEquals(new Point2D.Double(3, 4), converter.convertToComplexType("3.0,4.0", Point2D.class));
+
+		Timestamp time = Timestamp.valueOf("2010-05-06 07:08:09.1");
+		assertEquals(time.toString(), converter.convertToBasicType(time));
+		assertEquals(time, converter.convertToComplexType(time.toString(), Timestamp.class));
+
+		assertEquals("0.0000001", converter.convertToBasicType(new BigDecimal("1E-7")));
+		assertEquals(Color.RED, converter.convertToComplexType(converter.convertToBasicType(Color.RED), Color.class));
+	}
+
+	public void testEnumsWithConstantBodies() throws Exception {
+		assertEquals("SQUARE", converter.convertToBasicType(Shape.SQUARE));
+		assertEquals("CIRCLE", converter.convertToBasicType(Shape.CIRCLE));
+		assertSame(Shape.CIRCLE, converter.convertToComplexType("CIRCLE", Shape.class));
+		assertSame(Shape.CIRCLE, converter.convertToComplexType("CIRCLE", Shape.CIRCLE.getClass()));
+		assertSame(Shape.SQUARE, converter.convertToComplexType("SQUARE", Shape.CIRCLE.getClass()));
+	}
+
+	public void testUnknownTypeThrows() throws Exception {
+		try {
+			converter.convertToBasicType(new Object());
+			fail("Objects without a converter cannot be converted");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			converter.convertToComplexType("value", Object.class);
+			fail("Objects without a converter cannot be converted");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Registered converters take precedence over the built in ones, including
+	 * for classes that have already been converted.
+	 */
+	public void testRegisteredConverterReplacesBuiltIn() throws Exception {
+		assertEquals("3.0,4.0", converter.convertToBasicType(new Point(3, 4)));
+		converter.registerConverter(Point.class, new BidirectionalConverter<String, Point>() {
+			public Point convertToComplexType(String convertFrom) {
+				String[] pieces = convertFrom.split(" ");
+				return new Point(Integer.parseInt(pieces[0]), Integer.parseInt(pieces[1]));
+			}
+			public String convertToSimpleType(Point convertFrom, Object... additionalInfo) {
+				return convertFrom.x + " " + convertFrom.y;
+			}
+		});
+		assertEquals("3 4", converter.convertToBasicType(new Point(3, 4)));
+		assertEquals(new Point(3, 4), converter.convertToComplexType("3 4", Point.class));
+		assertEquals("3.0,4.0", converter.convertToBasicType(new Point2D.Double(3, 4)));
+	}
+}
@@ -0,0 +1,639 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ca.sqlpower.enterprise;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.apache.http.client.HttpClient;
+import org.apache.http.impl.client.BasicCookieStore;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import ca.sqlpower.dao.MessageSender;
+import ca.sqlpower.dao.PersistedSPOProperty;
+import ca.sqlpower.dao.PersistedSPObject;
+import ca.sqlpower.dao.RemovedObjectEntry;
+import ca.sqlpower.dao.SPPersistenceException;
+import ca.sqlpower.dao.SPPersister.DataType;
+import ca.sqlpower.dao.json.SPJSONMessageDecoder;
+import ca.sqlpower.dao.json.SPJSONPersister;
+import ca.sqlpower.enterprise.client.ProjectLocation;
+import ca.sqlpower.object.CountingSPPersister;
+import ca.sqlpower.object.SPObject;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLTable;
+import ca.sqlpower.util.RunnableDispatcher;
+
+public class AbstractNetworkConflictResolverTest extends TestCase {
+
+	/**
+	 * Runs foreground tasks one at a time on a single thread, like the event
+	 * dispatch thread of a user interface.
+	 */
+	private static class ForegroundDispatcher implements RunnableDispatcher {
+
+		private volatile Thread foregroundThread;
+
+		private final ExecutorService foreground = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				foregroundThread = new Thread(r, "foreground");
+				return foregroundThread;
+			}
+		});
+
+		public void runInForeground(Runnable runner) {
+			if (isForegroundThread()) {
+				runner.run();
+			} else {
+				foreground.execute(runner);
+			}
+		}
+
+		public void runInBackground(Runnable runner) {
+			runner.run();
+		}
+
+		public boolean isForegroundThread() {
+			return Thread.currentThread() == foregroundThread;
+		}
+
+		public void shutdown() {
+			foreground.shutdownNow();
+		}
+	}
+
+	/**
+	 * Posts transactions the way client sessions do, and keeps the
+	 * transactions of any post the server rejected.
+	 */
+	private static class StubNetworkConflictResolver extends AbstractNetworkConflictResolver {
+
+		private final List<OutboundTransaction> rejectedTransactions = 
+			Collections.synchronizedList(new ArrayList<OutboundTransaction>());
+
+		private SPObject workspace;
+
+		public StubNetworkConflictResolver(ProjectLocation projectLocation,
+				SPJSONMessageDecoder jsonDecoder, HttpClient httpClient, RunnableDispatcher dispatcher) {
+			super(projectLocation, jsonDecoder, httpClient, httpClient, dispatcher);
+		}
+
+		@Override
+		protected void flush(boolean reflush) {
+			postingJSON.set(true);
+			try {
+				JSONMessage response = postJsonArray(messageBuffer);
+				if (response.isSuccessful()) {
+					currentRevision = new JSONObject(response.getBody()).getInt("currentRevision");
+				} else {
+					rejectedTransactions.addAll(getSendingTransactions());
+				}
+			} catch (JSONException e) {
+				throw new RuntimeException(e);
+			} finally {
+				postingJSON.set(false);
+				clear();
+			}
+		}
+
+		@Override
+		protected List<ConflictMessage> detectConflicts() {
+			return Collections.emptyList();
+		}
+
+		@Override
+		protected SPObject getWorkspace() {
+			return workspace;
+		}
+	}
+
+	private static final String[] PROPERTIES = new String[] {"name", "remarks", "type", "nullable"};
+
+	private MockEnterpriseServer server;
+
+	private CountingSPPersister target;
+
+	private StubNetworkConflictResolver resolver;
+
+	private ForegroundDispatcher dispatcher;
+
+	/**
+	 * Makes persist calls through the resolver the way the persister listener
+	 * of a client session does.
+	 */
+	private SPJSONPersister clientPersister;
+
+	@Override
+	protected void setUp() throws Exception {
+		server = new MockEnterpriseServer();
+		ProjectLocation location = server.createProjectLocation("project");
+		target = new CountingSPPersister();
+		dispatcher = new ForegroundDispatcher();
+		resolver = new StubNetworkConflictResolver(location, new SPJSONMessageDecoder(target),
+				ClientSideSessionUtils.createHttpClient(location.getServiceInfo(), new BasicCookieStore()), 
+				dispatcher);
+		clientPersister = new SPJSONPersister(new MessageSender<JSONObject>() {
+			public void send(JSONObject content) throws SPPersistenceException {
+				resolver.send(content);
+			}
+
+			public void flush() {
+				resolver.flush();
+			}
+
+			public void clear() {
+				resolver.clear();
+			}
+		});
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		resolver.interrupt();
+		server.stop();
+		resolver.join(5000);
+		dispatcher.shutdown();
+	}
+
+	/**
+	 * Returns the persist calls of a transaction that sets the name of the
+	 * given number of objects.
+	 */
+	private static JSONArray createRevision(int properties) throws SPPersistenceException {
+		final JSONArray calls = new JSONArray();
+		SPJSONPersister persister = new SPJSONPersister(new MessageSender<JSONObject>() {
+			public void send(JSONObject content) {
+				calls.put(content);
+			}
+
+			public void flush() {
+				// calls are collected as they are sent
+			}
+
+			public void clear() {
+				// calls are collected as they are sent
+			}
+		});
+		persister.begin();
+		for (int i = 0; i < properties; i++) {
+			persister.persistProperty("object-" + i, "name", DataType.STRING, "caf\u00e9 " + i);
+		}
+		persister.commit();
+		return calls;
+	}
+
+	/**
+	 * Renames an object in its own transaction on the foreground thread.
+	 */
+	private void edit(final int i) {
+		dispatcher.runInForeground(new Runnable() {
+			public void run() {
+				try {
+					clientPersister.begin();
+					clientPersister.persistProperty("object-" + i, "name", DataType.STRING, 
+							"name " + i, "new name " + i);
+					clientPersister.commit();
+				} catch (SPPersistenceException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Returns the number of property changes the server has received.
+	 */
+	private int countPostedProperties() throws JSONException {
+		int count = 0;
+		for (MockEnterpriseServer.Request post : server.getPosts()) {
+			JSONArray calls = new JSONArray(post.getBody());
+			for (int i = 0; i < calls.length(); i++) {
+				if (calls.getJSONObject(i).getString("method").equals("changeProperty")) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Waits for the server to receive the given number of property changes
+	 * and for the client to handle the server's response.
+	 */
+	private void waitForPostedProperties(int count) throws Exception {
+		long end = System.currentTimeMillis() + 30000;
+		while (countPostedProperties() < count && System.currentTimeMillis() < end) {
+			Thread.sleep(10);
+		}
+		assertEquals(count, countPostedProperties());
+		final CountDownLatch latch = new CountDownLatch(1);
+		dispatcher.runInForeground(new Runnable() {
+			public void run() {
+				latch.countDown();
+			}
+		});
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * Returns the number of transactions committed to the target. This is
+	 * read on the foreground thread, after the foreground tasks already
+	 * queued, so the counts of the target are the ones that thread wrote.
+	 */
+	private int readCommitCount() throws InterruptedException {
+		final int[] count = new int[1];
+		final CountDownLatch latch = new CountDownLatch(1);
+		dispatcher.runInForeground(new Runnable() {
+			public void run() {
+				count[0] = target.getCommitCount();
+				latch.countDown();
+			}
+		});
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		return count[0];
+	}
+
+	/**
+	 * Waits for the target to commit the given number of transactions.
+	 */
+	private void waitForCommits(int commits) throws InterruptedException {
+		long end = System.currentTimeMillis() + 10000;
+		while (readCommitCount() < commits && System.currentTimeMillis() < end) {
+			Thread.sleep(10);
+		}
+		assertEquals(commits, readCommitCount());
+	}
+
+	/**
+	 * Inline and string encoded revisions must both be applied, over a single
+	 * connection to the server.
+	 */
+	public void testRevisionsAreAppliedOverOneConnection() throws Exception {
+		server.queueRevision(1, createRevision(10), true);
+		server.queueRevision(2, createRevision(5), false);
+		server.queueRevision(3, createRevision(20), true);
+		resolver.start();
+		waitForCommits(3);
+
+		assertEquals(3, resolver.getRevision());
+		assertEquals(3, target.getBeginCount());
+		assertEquals(3, target.getCommitCount());
+		assertEquals(35, target.getPersistPropertyCount());
+		assertEquals("caf\u00e9 19", target.getPersistPropertyList().get(34).getNewValue());
+		assertEquals(1L, resolver.getServerTimestamp());
+		assertTrue(resolver.getLastUpdateLatency() >= 0);
+		assertTrue(resolver.getAverageUpdateLatency() >= 0);
+
+		List<MockEnterpriseServer.Request> requests = server.getRequests();
+		assertTrue(requests.size() >= 3);
+		assertEquals("oldRevisionNo=2&serverTimestamp=1", requests.get(2).getQuery());
+		for (MockEnterpriseServer.Request request : requests) {
+			assertTrue(request.isInlineUpdateAccepted());
+			assertEquals(requests.get(0).getRemotePort(), request.getRemotePort());
+		}
+	}
+
+	/**
+	 * Failed requests must be retried after waiting longer each time, up to
+	 * the maximum delay.
+	 */
+	public void testFailuresBackOff() throws Exception {
+		resolver.retryDelay = 100;
+		resolver.maxRetryDelay = 250;
+		assertEquals(100, resolver.getRetryDelay(1));
+		assertEquals(200, resolver.getRetryDelay(2));
+		assertEquals(250, resolver.getRetryDelay(3));
+		assertEquals(250, resolver.getRetryDelay(40));
+
+		String error = "{\"responseKind\":\"unsuccessful\",\"data\":\"Try again later\"}";
+		server.queueResponse(500, error);
+		server.queueResponse(500, error);
+		server.queueResponse(500, error);
+		server.queueRevision(1, createRevision(1), true);
+		resolver.start();
+		waitForCommits(1);
+
+		List<MockEnterpriseServer.Request> requests = server.getRequests();
+		assertTrue(requests.get(1).getTime() - requests.get(0).getTime() >= 90);
+		assertTrue(requests.get(2).getTime() - requests.get(1).getTime() >= 190);
+		assertTrue(requests.get(3).getTime() - requests.get(2).getTime() >= 240);
+		assertEquals(1, target.getPersistPropertyCount());
+	}
+
+	/**
+	 * A burst of quick edits must be sent in far fewer round trips than one
+	 * per edit, with every change arriving in the order it was made.
+	 */
+	public void testQuickEditsAreBatched() throws Exception {
+		int edits = 1000;
+		for (int i = 0; i < edits; i++) {
+			edit(i);
+		}
+		waitForPostedProperties(edits);
+		assertEquals(edits, server.getPosts().size());
+
+		int unbatchedPosts = server.getPosts().size();
+		resolver.setCommitDelay(100);
+		for (int i = 0; i < edits; i++) {
+			edit(i);
+		}
+		waitForPostedProperties(2 * edits);
+		int batchedPosts = server.getPosts().size() - unbatchedPosts;
+		assertTrue("The edits took " + batchedPosts + " round trips", batchedPosts <= edits / 100);
+
+		List<MockEnterpriseServer.Request> posts = server.getPosts();
+		int expected = 0;
+		for (MockEnterpriseServer.Request post : posts.subList(unbatchedPosts, posts.size())) {
+			JSONArray calls = new JSONArray(post.getBody());
+			for (int i = 0; i < calls.length(); i++) {
+				JSONObject call = calls.getJSONObject(i);
+				if (call.getString("method").equals("changeProperty")) {
+					assertEquals("object-" + expected, call.getString("uuid"));
+					expected++;
+				}
+			}
+		}
+		assertEquals(posts.size(), resolver.getRevision());
+	}
+
+	/**
+	 * When the server rejects a batch the resolver must still know each of the
+	 * original transactions in it.
+	 */
+	public void testRejectedBatchKeepsTransactions() throws Exception {
+		server.queuePostResponse(409, "{\"responseKind\":\"unsuccessful\",\"data\":\"conflict\"}");
+		resolver.setCommitDelay(200);
+		for (int i = 0; i < 3; i++) {
+			edit(i);
+		}
+		waitForPostedProperties(3);
+
+		assertEquals(1, server.getPosts().size());
+		JSONArray posted = new JSONArray(server.getPosts().get(0).getBody());
+		assertEquals(3 * 3 + 2, posted.length());
+		assertEquals(3, resolver.rejectedTransactions.size());
+		for (int i = 0; i < 3; i++) {
+			JSONArray calls = resolver.rejectedTransactions.get(i).getPersistCalls();
+			assertEquals(3, calls.length());
+			assertEquals("object-" + i, calls.getJSONObject(1).getString("uuid"));
+		}
+		assertEquals(0, resolver.getRevision());
+	}
+
+	/**
+	 * Returns every object in a workspace of the given number of tables with
+	 * up to 20 columns each, the database first.
+	 */
+	private static List<SPObject> createWorkspace(int tables, Random random) throws Exception {
+		List<SPObject> objects = new ArrayList<SPObject>();
+		SQLDatabase db = new SQLDatabase();
+		objects.add(db);
+		for (int i = 0; i < tables; i++) {
+			SQLTable table = new SQLTable(db, true);
+			table.setName("table " + i);
+			db.addTable(table);
+			objects.add(table);
+			int columns = random.nextInt(20);
+			for (int j = 0; j < columns; j++) {
+				SQLColumn column = new SQLColumn();
+				column.setName("column " + j);
+				table.addColumn(column);
+				objects.add(column);
+			}
+		}
+		return objects;
+	}
+
+	private static PersistedSPOProperty createProperty(String uuid, Random random, List<SPObject> objects) {
+		if (random.nextInt(5) == 0) {
+			String reference = objects.get(random.nextInt(objects.size())).getUUID();
+			return new PersistedSPOProperty(uuid, "reference", DataType.REFERENCE, null, reference, false);
+		}
+		return new PersistedSPOProperty(uuid, PROPERTIES[random.nextInt(PROPERTIES.length)], 
+				DataType.STRING, "old", "value " + random.nextInt(3), false);
+	}
+
+	/**
+	 * Fills the inbound and outbound lists of the resolver with changes to
+	 * random objects of the workspace. The same seed always fills the lists
+	 * the same way. Some of the changes are to the missing objects, which are
+	 * not in the workspace, and some of the outbound changes are the same as
+	 * inbound changes, so every kind of conflict comes up.
+	 */
+	private static void fillRandomLists(AbstractNetworkConflictResolver resolver, 
+			List<SPObject> objects, List<SPObject> missing, int changes, long seed) {
+		Random random = new Random(seed);
+		for (int i = 0; i < changes; i++) {
+			String uuid = objects.get(random.nextInt(objects.size())).getUUID();
+			resolver.inboundPropertiesToChange.put(uuid, createProperty(uuid, random, objects));
+		}
+		for (int i = 0; i < changes / 10; i++) {
+			String parent = objects.get(random.nextInt(objects.size())).getUUID();
+			String uuid = random.nextBoolean() ? "inbound-" + i : "shared-" + i;
+			resolver.inboundObjectsToAdd.put(uuid, new PersistedSPObject(parent, SQLColumn.class.getName(), uuid, 0));
+		}
+		for (int i = 0; i < changes / 10; i++) {
+			SPObject o = objects.get(1 + random.nextInt(objects.size() - 1));
+			resolver.inboundObjectsToRemove.put(o.getUUID(), new RemovedObjectEntry(o.getParent().getUUID(), o, 
+					o.getParent().getChildren().indexOf(o)));
+		}
+		
+		List<String> added = new ArrayList<String>();
+		for (int i = 0; i < changes / 5; i++) {
+			String parent;
+			int choice = random.nextInt(6);
+			if (choice == 0 && !added.isEmpty()) {
+				parent = added.get(random.nextInt(added.size()));
+			} else if (choice == 1) {
+				parent = missing.get(random.nextInt(missing.size())).getUUID();
+			} else {
+				parent = objects.get(random.nextInt(objects.size())).getUUID();
+			}
+			String uuid;
+			if (random.nextInt(10) == 0 && resolver.inboundObjectsToAdd.containsKey("shared-" + i)) {
+				uuid = "shared-" + i;
+				if (random.nextBoolean()) {
+					parent = resolver.inboundObjectsToAdd.get(uuid).getParentUUID();
+				}
+			} else {
+				uuid = "outbound-" + i;
+			}
+			resolver.outboundObjectsToAdd.put(uuid, new PersistedSPObject(parent, SQLColumn.class.getName(), uuid, 0));
+			resolver.outboundPropertiesToChange.put(uuid, 
+					new PersistedSPOProperty(uuid, "name", DataType.STRING, null, "added " + i, true));
+			added.add(uuid);
+		}
+		for (int i = 0; i < changes / 10; i++) {
+			SPObject o;
+			if (random.nextInt(5) == 0) {
+				o = missing.get(random.nextInt(missing.size()));
+			} else {
+				o = objects.get(1 + random.nextInt(objects.size() - 1));
+			}
+			String parent = o.getParent() == null ? "missing-parent" : o.getParent().getUUID();
+			resolver.outboundObjectsToRemove.put(o.getUUID(), new RemovedObjectEntry(parent, o, 0));
+			if (random.nextInt(4) == 0) {
+				resolver.outboundObjectsToAdd.put(o.getUUID(), 
+						new PersistedSPObject(objects.get(0).getUUID(), SQLTable.class.getName(), o.getUUID(), 0));
+				resolver.outboundPropertiesToChange.put(o.getUUID(), 
+						new PersistedSPOProperty(o.getUUID(), "name", DataType.STRING, null, "moved " + i, true));
+			}
+		}
+		for (int i = 0; i < changes; i++) {
+			String uuid;
+			if (random.nextInt(20) == 0) {
+				uuid = missing.get(random.nextInt(missing.size())).getUUID();
+			} else {
+				uuid = objects.get(random.nextInt(objects.size())).getUUID();
+			}
+			PersistedSPOProperty property;
+			List<PersistedSPOProperty> inbound = new ArrayList<PersistedSPOProperty>(
+					resolver.inboundPropertiesToChange.get(uuid));
+			if (!inbound.isEmpty() && random.nextBoolean()) {
+				PersistedSPOProperty same = inbound.get(random.nextInt(inbound.size()));
+				property = new PersistedSPOProperty(uuid, same.getPropertyName(), same.getDataType(), 
+						same.getOldValue(), same.getNewValue(), false);
+			} else {
+				property = createProperty(uuid, random, objects);
+			}
+			resolver.outboundPropertiesToChange.put(uuid, property);
+		}
+	}
+
+	/**
+	 * Describes the conflicts and what is left of the outbound lists after a
+	 * check.
+	 */
+	private static List<String> describeCheck(AbstractNetworkConflictResolver resolver, 
+			List<AbstractNetworkConflictResolver.ConflictMessage> conflicts) {
+		List<String> description = new ArrayList<String>();
+		for (AbstractNetworkConflictResolver.ConflictMessage conflict : conflicts) {
+			StringBuilder sb = new StringBuilder();
+			sb.append(conflict.getConflictCase()).append(": ").append(conflict.getMessage());
+			for (int i = 0; i < conflict.getConflictCase().numArgs(); i++) {
+				sb.append(" ").append(conflict.getObjectId(i));
+			}
+			description.add(sb.toString());
+		}
+		description.add("added " + resolver.outboundObjectsToAdd.keySet());
+		description.add("removed " + resolver.outboundObjectsToRemove.keySet());
+		for (Map.Entry<String, PersistedSPOProperty> entry : resolver.outboundPropertiesToChange.entries()) {
+			description.add("changed " + entry.getValue());
+		}
+		return description;
+	}
+
+	/**
+	 * The indexed conflict check must find the same conflicts, and leave the
+	 * same outbound changes, as searching the workspace for every object.
+	 */
+	public void testConflictCheckMatchesReference() throws Exception {
+		for (long seed = 0; seed < 20; seed++) {
+			Random random = new Random(seed);
+			List<SPObject> objects = createWorkspace(50 + random.nextInt(100), random);
+			int changes = 100 + random.nextInt(2000);
+			List<SPObject> missing = new ArrayList<SPObject>();
+			for (int i = 0; i < changes / 20; i++) {
+				missing.add(new SQLColumn());
+			}
+			
+			ReferenceNetworkConflictResolver reference = new ReferenceNetworkConflictResolver(
+					server.createProjectLocation("reference"), new SPJSONMessageDecoder(target), 
+					null, dispatcher, objects.get(0));
+			fillRandomLists(reference, objects, missing, changes, seed);
+			List<String> expected = describeCheck(reference, reference.checkForSimultaneousEdit());
+			
+			resolver.workspace = objects.get(0);
+			resolver.clear(true);
+			fillRandomLists(resolver, objects, missing, changes, seed);
+			List<String> actual = describeCheck(resolver, resolver.checkForSimultaneousEdit());
+			
+			for (int i = 0; i < Math.min(expected.size(), actual.size()); i++) {
+				assertEquals("Seed " + seed + ", line " + i, expected.get(i), actual.get(i));
+			}
+			assertEquals("Seed " + seed, expected.size(), actual.size());
+		}
+	}
+
+	/**
+	 * Filling the inbound lists from an update must find the same removed
+	 * objects and positions as searching the workspace for each of them.
+	 */
+	public void testFillInboundListsMatchesReference() throws Exception {
+		Random random = new Random(3);
+		List<SPObject> objects = createWorkspace(200, random);
+		JSONArray calls = new JSONArray();
+		for (int i = 0; i < 3000; i++) {
+			SPObject o = objects.get(1 + random.nextInt(objects.size() - 1));
+			JSONObject call = new JSONObject();
+			call.put("uuid", o.getUUID());
+			switch (random.nextInt(3)) {
+			case 0:
+				call.put("method", "persistObject");
+				call.put("parentUUID", o.getParent().getUUID());
+				call.put("type", o.getClass().getName());
+				call.put("index", random.nextInt(10));
+				break;
+			case 1:
+				call.put("method", "persistProperty");
+				call.put("propertyName", PROPERTIES[random.nextInt(PROPERTIES.length)]);
+				call.put("type", DataType.STRING.name());
+				call.put("oldValue", "old");
+				call.put("newValue", "new " + i);
+				break;
+			default:
+				call.put("method", "removeObject");
+				call.put("parentUUID", o.getParent().getUUID());
+			}
+			calls.put(call);
+		}
+		
+		ReferenceNetworkConflictResolver reference = new ReferenceNetworkConflictResolver(
+				server.createProjectLocation("reference"), new SPJSONMessageDecoder(target), 
+				null, dispatcher, objects.get(0));
+		reference.fillInboundPersistedLists(calls.toString());
+		resolver.workspace = objects.get(0);
+		resolver.fillInboundPersistedLists(calls.toString());
+		
+		assertEquals(reference.inboundObjectsToAdd, resolver.inboundObjectsToAdd);
+		assertEquals(reference.inboundPropertiesToChange, resolver.inboundPropertiesToChange);
+		assertEquals(reference.inboundObjectsToRemove.keySet(), resolver.inboundObjectsToRemove.keySet());
+		for (Map.Entry<String, RemovedObjectEntry> entry : reference.inboundObjectsToRemove.entrySet()) {
+			RemovedObjectEntry actual = resolver.inboundObjectsToRemove.get(entry.getKey());
+			assertEquals(entry.getValue().getParentUUID(), actual.getParentUUID());
+			assertSame(entry.getValue().getRemovedChild(), actual.getRemovedChild());
+			assertEquals(entry.getValue().getIndex(), actual.getIndex());
+		}
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ca.sqlpower.enterprise;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.http.impl.client.BasicCookieStore;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import ca.sqlpower.dao.MessageSender;
+import ca.sqlpower.dao.SPPersistenceException;
+import ca.sqlpower.dao.SPPersister.DataType;
+import ca.sqlpower.dao.json.SPJSONMessageDecoder;
+import ca.sqlpower.dao.json.SPJSONPersister;
+import ca.sqlpower.enterprise.client.ProjectLocation;
+import ca.sqlpower.object.CountingSPPersister;
+
+public class ClientSideSessionUtilsTest extends TestCase {
+
+	private static final int REVISIONS = 25;
+
+	private MockEnterpriseServer server;
+
+	private ProjectLocation location;
+
+	@Override
+	protected void setUp() throws Exception {
+		server = new MockEnterpriseServer();
+		location = server.createProjectLocation("project");
+		for (int i = 0; i < REVISIONS; i++) {
+			server.addHistoryRevision(createRevision(i, 10));
+		}
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		server.stop();
+	}
+
+	/**
+	 * Returns the persist calls of a transaction that adds the given number
+	 * of objects to the root object and names them.
+	 */
+	static JSONArray createRevision(int revision, int objects) throws SPPersistenceException {
+		final JSONArray calls = new JSONArray();
+		SPJSONPersister persister = new SPJSONPersister(new MessageSender<JSONObject>() {
+			public void send(JSONObject content) {
+				calls.put(content);
+			}
+
+			public void flush() {
+				// calls are collected as they are sent
+			}
+
+			public void clear() {
+				// calls are collected as they are sent
+			}
+		});
+		persister.begin();
+		for (int i = 0; i < objects; i++) {
+			String uuid = "object-" + revision + "-" + i;
+			persister.persistObject("root", "ca.sqlpower.sqlobject.SQLTable", uuid, revision * objects + i);
+			persister.persistProperty(uuid, "name", DataType.STRING, "caf\u00e9 " + revision + " " + i);
+		}
+		persister.commit();
+		return calls;
+	}
+
+	/**
+	 * Fetching a revision in pages must persist the same calls in the same
+	 * order as fetching it in one request, and every request must accept
+	 * gzipped responses.
+	 */
+	public void testPagedFetchMatchesFullFetch() throws Exception {
+		CountingSPPersister expected = new CountingSPPersister();
+		ClientSideSessionUtils.persistRevisionFromServer(location, REVISIONS, 
+				new SPJSONMessageDecoder(expected), new BasicCookieStore());
+		assertEquals(REVISIONS, expected.getCommitCount());
+		assertEquals(REVISIONS * 10, expected.getPersistObjectCount());
+		assertEquals(1, server.getRequests().size());
+		assertNull(server.getRequests().get(0).getQuery());
+
+		CountingSPPersister actual = new CountingSPPersister();
+		ClientSideSessionUtils.persistRevisionFromServer(location, REVISIONS, 10,
+				new SPJSONMessageDecoder(actual), new BasicCookieStore());
+		assertEquals(expected.getPersistObjectList(), actual.getPersistObjectList());
+		assertEquals(expected.getPersistPropertyList(), actual.getPersistPropertyList());
+		assertEquals(expected.getCommitCount(), actual.getCommitCount());
+
+		List<MockEnterpriseServer.Request> requests = server.getRequests();
+		assertEquals(4, requests.size());
+		assertTrue(requests.get(1).getPath().endsWith("/project/project/10"));
+		assertNull(requests.get(1).getQuery());
+		assertTrue(requests.get(2).getPath().endsWith("/project/project/20"));
+		assertEquals("oldRevisionNo=10", requests.get(2).getQuery());
+		assertTrue(requests.get(3).getPath().endsWith("/project/project/25"));
+		assertEquals("oldRevisionNo=20", requests.get(3).getQuery());
+		for (MockEnterpriseServer.Request request : requests) {
+			assertTrue(request.isGzipAccepted());
+		}
+	}
+
+	/**
+	 * The pages before the page the server rejects are still persisted, and
+	 * the caller must discard them.
+	 */
+	public void testRejectedRevision() throws Exception {
+		CountingSPPersister target = new CountingSPPersister();
+		try {
+			ClientSideSessionUtils.persistRevisionFromServer(location, REVISIONS + 1, 10,
+					new SPJSONMessageDecoder(target), new BasicCookieStore());
+			fail("The server should reject a revision past its current revision");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		assertEquals(20, target.getCommitCount());
+	}
+
+	/**
+	 * A server that ignores the oldRevisionNo sends every revision again with
+	 * the second page, which must not be mistaken for the next page.
+	 */
+	public void testIgnoredOldRevisionIsDetected() throws Exception {
+		server.setOldRevisionIgnored(true);
+		CountingSPPersister target = new CountingSPPersister();
+		try {
+			ClientSideSessionUtils.persistRevisionFromServer(location, REVISIONS, 10,
+					new SPJSONMessageDecoder(target), new BasicCookieStore());
+			fail("The server did not return the changes after the first page");
+		} catch (SPPersistenceException e) {
+			// expected
+		}
+		assertEquals(2, server.getRequests().size());
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.enterprise;
+
+import junit.framework.TestCase;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.json.JSONObject;
+
+import ca.sqlpower.dao.json.SPJSONMessageDecoder;
+import ca.sqlpower.object.CountingSPPersister;
+
+public class DecodingResponseHandlerTest extends TestCase {
+
+	private CountingSPPersister target;
+
+	private DecodingResponseHandler handler;
+
+	@Override
+	protected void setUp() throws Exception {
+		target = new CountingSPPersister();
+		handler = new DecodingResponseHandler(new SPJSONMessageDecoder(target));
+	}
+
+	private static HttpResponse createResponse(String body) throws Exception {
+		HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+		response.setEntity(new StringEntity(body, "UTF-8"));
+		return response;
+	}
+
+	public void testDataArrayIsDecoded() throws Exception {
+		JSONObject response = new JSONObject();
+		response.put("responseKind", "data");
+		response.put("data", ClientSideSessionUtilsTest.createRevision(0, 3));
+		JSONMessage message = handler.handleResponse(createResponse(response.toString()));
+		assertTrue(message.isSuccessful());
+		assertNull(message.getBody());
+		assertEquals(3, target.getPersistObjectCount());
+		assertEquals(1, target.getCommitCount());
+	}
+
+	/**
+	 * Data that is not an array, after a response kind that is not data, is
+	 * returned the way the {@link JSONResponseHandler} returns it.
+	 */
+	public void testUnsuccessfulMessageAfterResponseKind() throws Exception {
+		String body = "{\"responseKind\":\"unsuccessful\",\"data\":\"no\"}";
+		JSONMessage message = handler.handleResponse(createResponse(body));
+		assertEquals("no", message.getBody());
+		assertEquals(new JSONResponseHandler().handleResponse(createResponse(body)).getBody(), message.getBody());
+		assertEquals(0, target.getPersistObjectCount());
+	}
+
+	public void testServerExceptionAfterResponseKind() throws Exception {
+		String body = "{\"responseKind\":\"exceptionStackTrace\"," +
+				"\"data\":\"[\\\"java.lang.IllegalStateException: broken on the server\\\"]\"}";
+		try {
+			handler.handleResponse(createResponse(body));
+			fail("The server's exception was not rethrown");
+		} catch (RuntimeException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("broken on the server"));
+		}
+	}
+
+	/**
+	 * Data sent as a string before the response kind is decoded once the
+	 * response kind is known.
+	 */
+	public void testDataStringBeforeResponseKind() throws Exception {
+		JSONObject response = new JSONObject();
+		response.put("data", ClientSideSessionUtilsTest.createRevision(0, 2).toString());
+		String body = "{\"data\":" + JSONObject.quote(response.getString("data")) + ",\"responseKind\":\"data\"}";
+		JSONMessage message = handler.handleResponse(createResponse(body));
+		assertNull(message.getBody());
+		assertEquals(2, target.getPersistObjectCount());
+	}
+}
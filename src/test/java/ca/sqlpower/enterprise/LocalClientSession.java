@@ -0,0 +1,339 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ca.sqlpower.enterprise;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.http.client.HttpClient;
+import org.apache.http.impl.client.BasicCookieStore;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import ca.sqlpower.dao.MessageSender;
+import ca.sqlpower.dao.PersistedSPObject;
+import ca.sqlpower.dao.SPPersistenceException;
+import ca.sqlpower.dao.SPPersisterListener;
+import ca.sqlpower.dao.SPSessionPersister;
+import ca.sqlpower.dao.json.SPJSONMessageDecoder;
+import ca.sqlpower.dao.json.SPJSONPersister;
+import ca.sqlpower.dao.session.SessionPersisterSuperConverter;
+import ca.sqlpower.enterprise.client.ProjectLocation;
+import ca.sqlpower.object.SPObject;
+import ca.sqlpower.sql.PlDotIni;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.util.RunnableDispatcher;
+import ca.sqlpower.util.SQLPowerUtils;
+import ca.sqlpower.util.WorkspaceContainer;
+
+/**
+ * A client of a {@link LocalEnterpriseServer} wired together the way client
+ * sessions are: changes to the workspace are sent through an
+ * {@link SPPersisterListener} and an {@link SPJSONPersister} to a network
+ * conflict resolver, which posts them to the server and applies the updates
+ * it receives to the workspace through an {@link SPSessionPersister}. The
+ * workspace must only be changed on the foreground thread, see
+ * {@link #runInForeground(Callable)}.
+ */
+public class LocalClientSession {
+
+	/**
+	 * Posts transactions to the server. If the client was not at the current
+	 * revision the missing revisions are checked for conflicts and applied,
+	 * then the transaction is posted again.
+	 */
+	private class LocalNetworkConflictResolver extends AbstractNetworkConflictResolver {
+
+		public LocalNetworkConflictResolver(ProjectLocation projectLocation,
+				SPJSONMessageDecoder jsonDecoder, HttpClient inboundHttpClient, 
+				HttpClient outboundHttpClient, RunnableDispatcher dispatcher) {
+			super(projectLocation, jsonDecoder, inboundHttpClient, outboundHttpClient, dispatcher);
+		}
+
+		@Override
+		protected void flush(boolean reflush) {
+			postingJSON.set(true);
+			try {
+				JSONMessage response = postJsonArray(messageBuffer);
+				while (response.getStatusCode() == LocalEnterpriseServer.CONFLICT_STATUS) {
+					JSONObject missing = new JSONObject(response.getBody());
+					JSONArray transaction = messageBuffer;
+					long start = System.nanoTime();
+					fillOutboundPersistedLists();
+					fillInboundPersistedLists(missing.getString("data"));
+					List<ConflictMessage> conflicts = checkForSimultaneousEdit();
+					synchronized (LocalClientSession.this) {
+						conflictChecks++;
+						conflictCheckTime += System.nanoTime() - start;
+					}
+					clear(true);
+					messageBuffer = transaction;
+					if (!conflicts.isEmpty()) {
+						throw new IllegalStateException("The transaction conflicts with the server: " + 
+								conflicts);
+					}
+					decodeMessage(new JSONArray(missing.getString("data")), 
+							missing.getInt("currentRevision"), missing.getLong("serverTimestamp"));
+					response = postJsonArray(messageBuffer);
+				}
+				if (!response.isSuccessful()) {
+					throw new IllegalStateException("The server rejected the transaction: " + 
+							response.getBody());
+				}
+				currentRevision = new JSONObject(response.getBody()).getInt("currentRevision");
+				synchronized (LocalClientSession.this) {
+					commits++;
+				}
+			} catch (JSONException e) {
+				throw new RuntimeException(e);
+			} finally {
+				postingJSON.set(false);
+				clear();
+			}
+		}
+
+		@Override
+		protected List<ConflictMessage> detectConflicts() {
+			return checkForSimultaneousEdit();
+		}
+
+		@Override
+		protected SPObject getWorkspace() {
+			return workspace;
+		}
+	}
+
+	/**
+	 * The root of a workspace, which is its own workspace container and runs
+	 * its events on the dispatcher it was given.
+	 */
+	public static class LocalWorkspace extends SQLDatabase implements WorkspaceContainer {
+
+		/**
+		 * The session persister looks for this on the class of the parent
+		 * itself.
+		 */
+		public static final List<Class<? extends SPObject>> allowedChildTypes = 
+			SQLDatabase.allowedChildTypes;
+
+		private final RunnableDispatcher dispatcher;
+
+		LocalWorkspace(String uuid, RunnableDispatcher dispatcher) {
+			this.dispatcher = dispatcher;
+			setUUID(uuid);
+		}
+
+		@Override
+		public RunnableDispatcher getRunnableDispatcher() {
+			return dispatcher;
+		}
+
+		@Override
+		public WorkspaceContainer getWorkspaceContainer() {
+			return this;
+		}
+
+		public SPObject getWorkspace() {
+			return this;
+		}
+	}
+
+	private final ExecutorService foreground;
+
+	private volatile Thread foregroundThread;
+
+	private final RunnableDispatcher dispatcher = new RunnableDispatcher() {
+		public void runInForeground(Runnable runner) {
+			if (isForegroundThread()) {
+				runner.run();
+			} else {
+				foreground.execute(runner);
+			}
+		}
+
+		public void runInBackground(Runnable runner) {
+			runner.run();
+		}
+
+		public boolean isForegroundThread() {
+			return Thread.currentThread() == foregroundThread;
+		}
+	};
+
+	private final LocalWorkspace workspace;
+
+	/**
+	 * Receives updates while the outbound client posts, like the two clients
+	 * of a client session.
+	 */
+	private final HttpClient inboundHttpClient;
+
+	private final HttpClient outboundHttpClient;
+
+	private final LocalNetworkConflictResolver resolver;
+
+	private int commits;
+
+	private int conflictChecks;
+
+	private long conflictCheckTime;
+
+	/**
+	 * Creates a session with an empty workspace for the project at the given
+	 * location. Call {@link #start()} to start receiving updates.
+	 */
+	public LocalClientSession(ProjectLocation location, String name) {
+		final String threadName = name;
+		foreground = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				foregroundThread = new Thread(r, threadName);
+				foregroundThread.setDaemon(true);
+				return foregroundThread;
+			}
+		});
+		workspace = new LocalWorkspace(location.getUUID(), dispatcher);
+		SessionPersisterSuperConverter converter = 
+			new SessionPersisterSuperConverter(new PlDotIni(), workspace);
+		SPSessionPersister sessionPersister = createSessionPersister(name, workspace, converter);
+		BasicCookieStore cookieStore = new BasicCookieStore();
+		inboundHttpClient = ClientSideSessionUtils.createHttpClient(location.getServiceInfo(), cookieStore);
+		outboundHttpClient = ClientSideSessionUtils.createHttpClient(location.getServiceInfo(), cookieStore);
+		resolver = new LocalNetworkConflictResolver(location, new SPJSONMessageDecoder(sessionPersister), 
+				inboundHttpClient, outboundHttpClient, dispatcher);
+		SPJSONPersister jsonPersister = new SPJSONPersister(new MessageSender<JSONObject>() {
+			public void send(JSONObject content) throws SPPersistenceException {
+				resolver.send(content);
+			}
+
+			public void flush() {
+				resolver.flush();
+			}
+
+			public void clear() {
+				resolver.clear();
+			}
+		});
+		SPPersisterListener listener = new SPPersisterListener(jsonPersister, sessionPersister, converter);
+		resolver.setListener(listener);
+		resolver.setConverter(converter);
+		SQLPowerUtils.listenToHierarchy(workspace, listener);
+	}
+
+	static SPSessionPersister createSessionPersister(String name, LocalWorkspace workspace,
+			SessionPersisterSuperConverter converter) {
+		SPSessionPersister persister = new SPSessionPersister(name, workspace, converter) {
+			@Override
+			protected void refreshRootNode(PersistedSPObject pso) {
+				// the root is never replaced
+			}
+		};
+		persister.setWorkspaceContainer(workspace);
+		return persister;
+	}
+
+	/**
+	 * Starts receiving updates from the server.
+	 */
+	public void start() {
+		resolver.start();
+	}
+
+	/**
+	 * Runs the given task on the foreground thread and returns its result.
+	 */
+	public <T> T runInForeground(Callable<T> task) throws Exception {
+		return foreground.submit(task).get();
+	}
+
+	/**
+	 * Waits until this session has applied the given revision. Returns false
+	 * if it did not within the timeout.
+	 */
+	public boolean waitForRevision(int revision, long timeout) throws Exception {
+		long end = System.currentTimeMillis() + timeout;
+		while (getRevision() < revision) {
+			if (System.currentTimeMillis() > end) return false;
+			Thread.sleep(5);
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the revision of the server this session's workspace is at.
+	 */
+	public int getRevision() throws Exception {
+		return runInForeground(new Callable<Integer>() {
+			public Integer call() {
+				return resolver.getRevision();
+			}
+		});
+	}
+
+	/**
+	 * Returns the workspace of this session. It must only be used on the
+	 * foreground thread.
+	 */
+	public SQLDatabase getWorkspace() {
+		return workspace;
+	}
+
+	public AbstractNetworkConflictResolver getResolver() {
+		return resolver;
+	}
+
+	/**
+	 * Returns the number of transactions the server accepted from this session.
+	 */
+	public synchronized int getCommits() {
+		return commits;
+	}
+
+	/**
+	 * Returns the number of times a transaction was checked for conflicts
+	 * because the session was not at the current revision when it posted.
+	 */
+	public synchronized int getConflictChecks() {
+		return conflictChecks;
+	}
+
+	/**
+	 * Returns the total time in nanoseconds spent checking for conflicts.
+	 */
+	public synchronized long getConflictCheckTime() {
+		return conflictCheckTime;
+	}
+
+	/**
+	 * Stops receiving updates and closes the connections to the server.
+	 */
+	public void stop() throws InterruptedException {
+		resolver.interrupt();
+		// Closes the connection a request for an update may be waiting on.
+		inboundHttpClient.getConnectionManager().shutdown();
+		resolver.join(5000);
+		foreground.shutdownNow();
+		outboundHttpClient.getConnectionManager().shutdown();
+	}
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ca.sqlpower.enterprise;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import ca.sqlpower.dao.SPSessionPersister;
+import ca.sqlpower.dao.json.SPJSONMessageDecoder;
+import ca.sqlpower.dao.session.SessionPersisterSuperConverter;
+import ca.sqlpower.enterprise.client.ProjectLocation;
+import ca.sqlpower.http.HttpUtils;
+import ca.sqlpower.sql.PlDotIni;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.util.StubWorkspaceContainer;
+
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * A server on the loop back interface that keeps one workspace the way an
+ * enterprise server does, for measuring and testing clients without one.
+ * Unlike the {@link MockEnterpriseServer}, which answers with whatever
+ * responses a test queues, this server implements the protocol itself:
+ * <ul>
+ * <li>Transactions posted to the project are applied to the server's copy of
+ * the workspace through an {@link SPSessionPersister} and become the next
+ * revision, unless the client was not at the current revision. Then the post
+ * is rejected with the revisions the client is missing so it can check for
+ * conflicts and post again.</li>
+ * <li>Requests for the revisions after a client's revision are held until
+ * there is a newer revision, like the real server's long poll.</li>
+ * <li>Requests for the state of the project at a revision are answered with
+ * the persist calls of the history up to that revision.</li>
+ * <li>Transactions posted to the workspace by a
+ * {@link ca.sqlpower.dao.json.JSONHttpMessageSender} are applied without
+ * checking the revision.</li>
+ * </ul>
+ * Responses are gzipped if the client accepts it, and updates are sent inline
+ * if the client accepts it.
+ */
+public class LocalEnterpriseServer extends LoopbackEnterpriseServer {
+
+	public static final String SERVER_PATH = "/local";
+
+	/**
+	 * The status of a post rejected because the client is not at the
+	 * current revision.
+	 */
+	public static final int CONFLICT_STATUS = 409;
+
+	private static final Pattern PROJECT_PATH = Pattern.compile(
+			".*/" + ClientSideSessionUtils.REST_TAG + "/project/[^/]+(?:/(\\d+))?");
+
+	private static final Pattern WORKSPACE_PATH = Pattern.compile(".*/workspaces/[^/]+");
+
+	/**
+	 * Runs the requests, so requests waiting for a revision do not hold up
+	 * the others.
+	 */
+	private final ExecutorService executor;
+
+	private final LocalClientSession.LocalWorkspace workspace;
+
+	private final SPSessionPersister persister;
+
+	private final SPJSONMessageDecoder decoder;
+
+	private final long serverTimestamp = System.currentTimeMillis();
+
+	/**
+	 * The persist calls of each revision starting at revision 1. Guarded by
+	 * its own lock, which is notified when a revision is added.
+	 */
+	private final List<JSONArray> history = new ArrayList<JSONArray>();
+
+	/**
+	 * The time each revision in the history was created.
+	 */
+	private final List<Long> revisionTimes = new ArrayList<Long>();
+
+	/**
+	 * Creates and starts a server for a workspace whose root has the given
+	 * UUID. Clients must use a root with the same UUID.
+	 */
+	public LocalEnterpriseServer(String rootUUID) throws IOException {
+		this(rootUUID, Executors.newCachedThreadPool());
+	}
+
+	private LocalEnterpriseServer(String rootUUID, ExecutorService executor) throws IOException {
+		super(SERVER_PATH, executor);
+		this.executor = executor;
+		workspace = new LocalClientSession.LocalWorkspace(rootUUID, new StubWorkspaceContainer());
+		persister = LocalClientSession.createSessionPersister("server", workspace, 
+				new SessionPersisterSuperConverter(new PlDotIni(), workspace));
+		decoder = new SPJSONMessageDecoder(persister);
+		start();
+	}
+
+	@Override
+	protected void handleRequest(HttpExchange exchange) throws Exception {
+		String method = exchange.getRequestMethod();
+		String path = exchange.getRequestURI().getPath();
+		String query = exchange.getRequestURI().getQuery();
+		Matcher projectPath = PROJECT_PATH.matcher(path);
+		if (projectPath.matches() && method.equals("GET")) {
+			if (projectPath.group(1) != null) {
+				sendRevisions(exchange, getParameter(query, "oldRevisionNo", 0),
+						Integer.parseInt(projectPath.group(1)));
+			} else {
+				sendUpdate(exchange, getParameter(query, "oldRevisionNo", 0));
+			}
+		} else if (projectPath.matches() && method.equals("POST") && projectPath.group(1) == null) {
+			receiveTransaction(exchange, getParameter(query, "currentRevision", 0));
+		} else if (WORKSPACE_PATH.matcher(path).matches() && method.equals("POST")) {
+			receiveTransaction(exchange, -1);
+		} else {
+			sendResponse(exchange, 404, "unsuccessful", "No resource at " + path);
+		}
+	}
+
+	private static int getParameter(String query, String name, int defaultValue) {
+		if (query == null) return defaultValue;
+		for (String parameter : query.split("&")) {
+			if (parameter.startsWith(name + "=")) {
+				return Integer.parseInt(parameter.substring(name.length() + 1));
+			}
+		}
+		return defaultValue;
+	}
+
+	/**
+	 * Returns the persist calls of the revisions after fromRevision up to and
+	 * including toRevision. The caller must hold the history lock.
+	 */
+	private JSONArray getPersistCalls(int fromRevision, int toRevision) throws JSONException {
+		JSONArray calls = new JSONArray();
+		for (int i = fromRevision; i < toRevision; i++) {
+			JSONArray revisionCalls = history.get(i);
+			for (int j = 0; j < revisionCalls.length(); j++) {
+				calls.put(revisionCalls.get(j));
+			}
+		}
+		return calls;
+	}
+
+	/**
+	 * Sends the state of the project at a revision, or the changes since the
+	 * old revision if the client has one.
+	 */
+	private void sendRevisions(HttpExchange exchange, int fromRevision, int toRevision) 
+	throws Exception {
+		JSONArray calls;
+		synchronized (history) {
+			if (fromRevision < 0 || fromRevision >= toRevision || toRevision > history.size()) {
+				sendResponse(exchange, 412, "unsuccessful", "Invalid revision " + toRevision);
+				return;
+			}
+			calls = getPersistCalls(fromRevision, toRevision);
+		}
+		JSONObject message = new JSONObject();
+		message.put("responseKind", "data");
+		if (fromRevision > 0) {
+			message.put("oldRevisionNo", fromRevision);
+		}
+		message.put("data", isInlineUpdateAccepted(exchange) ? calls : calls.toString());
+		sendResponse(exchange, 200, message.toString());
+	}
+
+	/**
+	 * Waits for a revision newer than the client's and sends the changes
+	 * since the client's revision.
+	 */
+	private void sendUpdate(HttpExchange exchange, int oldRevision) throws Exception {
+		JSONObject update = new JSONObject();
+		synchronized (history) {
+			while (history.size() <= oldRevision && !isStopped()) {
+				history.wait(100);
+			}
+			if (isStopped()) {
+				sendResponse(exchange, 503, "unsuccessful", "Server stopped");
+				return;
+			}
+			JSONArray calls = getPersistCalls(oldRevision, history.size());
+			update.put("currentRevision", history.size());
+			update.put("serverTimestamp", serverTimestamp);
+			if (isInlineUpdateAccepted(exchange)) {
+				update.put("revisionTimestamp", revisionTimes.get(history.size() - 1));
+				update.put("data", calls);
+			} else {
+				update.put("data", calls.toString());
+			}
+		}
+		sendResponse(exchange, 200, "data", 
+				isInlineUpdateAccepted(exchange) ? update : update.toString());
+	}
+
+	/**
+	 * Applies a posted transaction to the workspace and adds it to the
+	 * history. If the client's revision is given and is not the current
+	 * revision the transaction is rejected with the revisions since the
+	 * client's revision.
+	 * 
+	 * @param clientRevision
+	 *            The revision the client was at, or -1 to apply the
+	 *            transaction regardless.
+	 */
+	private void receiveTransaction(HttpExchange exchange, int clientRevision) throws Exception {
+		InputStream in = exchange.getRequestBody();
+		String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+		if (encoding != null && encoding.contains(HttpUtils.GZIP_ENCODING)) {
+			in = new GZIPInputStream(in);
+		}
+		JSONArray calls = new JSONArray(new JSONTokener(new InputStreamReader(in, "UTF-8")));
+		in.close();
+
+		JSONObject response = new JSONObject();
+		synchronized (history) {
+			if (clientRevision >= 0 && clientRevision != history.size()) {
+				response.put("currentRevision", history.size());
+				response.put("serverTimestamp", serverTimestamp);
+				response.put("data", getPersistCalls(Math.min(clientRevision, history.size()), 
+						history.size()).toString());
+				sendResponse(exchange, CONFLICT_STATUS, "unsuccessful", response.toString());
+				return;
+			}
+			synchronized (persister) {
+				decoder.decode(calls);
+			}
+			history.add(calls);
+			revisionTimes.add(System.currentTimeMillis());
+			history.notifyAll();
+			response.put("currentRevision", history.size());
+			response.put("serverTimestamp", serverTimestamp);
+		}
+		sendResponse(exchange, 200, "data", response.toString());
+	}
+
+	/**
+	 * Returns the server's copy of the workspace. It must not be modified
+	 * while the server is running.
+	 */
+	public SQLDatabase getWorkspace() {
+		return workspace;
+	}
+
+	/**
+	 * Returns the number of the newest revision.
+	 */
+	public int getRevision() {
+		synchronized (history) {
+			return history.size();
+		}
+	}
+
+	/**
+	 * Returns a location on this server for the project the server keeps.
+	 */
+	public ProjectLocation createProjectLocation() {
+		return createProjectLocation(workspace.getUUID(), "local", "Local project");
+	}
+
+	/**
+	 * Stops the server. Requests that are waiting for a revision are answered
+	 * as unavailable.
+	 */
+	@Override
+	public void stop() {
+		super.stop();
+		executor.shutdownNow();
+	}
+}
@@ -0,0 +1,340 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ca.sqlpower.enterprise;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import junit.framework.TestCase;
+import ca.sqlpower.dao.json.SPJSONMessageDecoder;
+import ca.sqlpower.enterprise.AbstractNetworkConflictResolver.UpdateListener;
+import ca.sqlpower.object.CountingSPPersister;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLTable;
+
+import org.apache.http.impl.client.BasicCookieStore;
+
+public class LocalEnterpriseServerTest extends TestCase {
+
+	private static final long TIMEOUT = 10000;
+
+	private LocalEnterpriseServer server;
+
+	private List<LocalClientSession> sessions = new ArrayList<LocalClientSession>();
+
+	@Override
+	protected void setUp() throws Exception {
+		server = new LocalEnterpriseServer("workspace");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		for (LocalClientSession session : sessions) {
+			session.stop();
+		}
+		server.stop();
+	}
+
+	private LocalClientSession createSession() {
+		LocalClientSession session = new LocalClientSession(server.createProjectLocation(), 
+				"session-" + sessions.size());
+		sessions.add(session);
+		return session;
+	}
+
+	/**
+	 * Adds the given number of tables, each with a few columns, to the
+	 * session's workspace in one transaction.
+	 */
+	static void addTables(final LocalClientSession session, final int tables, final int columns) throws Exception {
+		session.runInForeground(new Callable<Void>() {
+			public Void call() throws Exception {
+				SQLDatabase db = session.getWorkspace();
+				db.begin("Adding tables");
+				for (int i = 0; i < tables; i++) {
+					SQLTable table = new SQLTable(db, true);
+					table.setName("table_" + i);
+					db.addTable(table);
+					for (int j = 0; j < columns; j++) {
+						SQLColumn column = new SQLColumn();
+						column.setName("column_" + j);
+						table.addColumn(column);
+					}
+				}
+				db.commit();
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Renames a table of the session's workspace in its own transaction.
+	 */
+	static void renameTable(final LocalClientSession session, final int index, final String name) 
+	throws Exception {
+		session.runInForeground(new Callable<Void>() {
+			public Void call() throws Exception {
+				SQLTable table = session.getWorkspace().getTables().get(index);
+				table.begin("Renaming");
+				table.setName(name);
+				table.commit();
+				return null;
+			}
+		});
+	}
+
+	static List<String> getTableNames(final SQLDatabase db) throws Exception {
+		List<String> names = new ArrayList<String>();
+		for (SQLTable table : db.getTables()) {
+			names.add(table.getName() + " " + table.getColumns().size());
+		}
+		return names;
+	}
+
+	private List<String> getTableNames(final LocalClientSession session) throws Exception {
+		return session.runInForeground(new Callable<List<String>>() {
+			public List<String> call() throws Exception {
+				return getTableNames(session.getWorkspace());
+			}
+		});
+	}
+
+	/**
+	 * Changes posted by one session must be applied to the server's workspace
+	 * and sent to the other sessions.
+	 */
+	public void testChangesReachServerAndOtherSessions() throws Exception {
+		LocalClientSession first = createSession();
+		LocalClientSession second = createSession();
+		first.start();
+		second.start();
+		addTables(first, 5, 3);
+		assertEquals(1, server.getRevision());
+		assertTrue(second.waitForRevision(1, TIMEOUT));
+
+		renameTable(second, 2, "renamed");
+		assertTrue(first.waitForRevision(2, TIMEOUT));
+
+		List<String> expected = getTableNames(server.getWorkspace());
+		assertEquals(5, expected.size());
+		assertEquals("renamed 3", expected.get(2));
+		assertEquals(expected, getTableNames(first));
+		assertEquals(expected, getTableNames(second));
+		assertEquals(0, first.getConflictChecks() + second.getConflictChecks());
+	}
+
+	/**
+	 * A session that posts without having the newest revision must receive
+	 * the revisions it is missing, check them for conflicts and post again.
+	 */
+	public void testStalePostIsCheckedAndRetried() throws Exception {
+		LocalClientSession first = createSession();
+		LocalClientSession second = createSession();
+		first.start();
+		second.start();
+		addTables(first, 5, 3);
+		assertTrue(second.waitForRevision(1, TIMEOUT));
+		second.getResolver().interrupt();
+		second.getResolver().join(TIMEOUT);
+
+		renameTable(first, 0, "first");
+		renameTable(second, 4, "second");
+
+		assertEquals(3, server.getRevision());
+		assertEquals(1, second.getConflictChecks());
+		assertEquals(3, second.getRevision());
+		List<String> expected = getTableNames(server.getWorkspace());
+		assertEquals("first 3", expected.get(0));
+		assertEquals("second 3", expected.get(4));
+		assertEquals(expected, getTableNames(second));
+	}
+
+	/**
+	 * Keeps the exceptions the resolver reports to its update listeners.
+	 */
+	private static class ExceptionListener implements UpdateListener {
+
+		private final List<Throwable> exceptions = 
+			Collections.synchronizedList(new ArrayList<Throwable>());
+
+		public boolean updatePerformed(AbstractNetworkConflictResolver resolver) {
+			return false;
+		}
+
+		public boolean updateException(AbstractNetworkConflictResolver resolver, Throwable t) {
+			exceptions.add(t);
+			return false;
+		}
+
+		public void workspaceDeleted() {
+			// not tested
+		}
+
+		public void preUpdatePerformed(AbstractNetworkConflictResolver resolver) {
+			// not tested
+		}
+	}
+
+	/**
+	 * Makes the session queue its transactions until a revision arrives from
+	 * the server.
+	 */
+	private static void queueTransactions(final LocalClientSession session) throws Exception {
+		session.runInForeground(new Callable<Void>() {
+			public Void call() {
+				session.getResolver().setMaxCommitDelay(TIMEOUT * 10);
+				session.getResolver().setCommitDelay(TIMEOUT * 10);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * A revision that arrives while a session has transactions queued must
+	 * not be applied over them, the queued transactions must be sent first and
+	 * checked against it.
+	 */
+	public void testQueuedTransactionsAreSentBeforeRevisionIsApplied() throws Exception {
+		LocalClientSession first = createSession();
+		LocalClientSession second = createSession();
+		first.start();
+		second.start();
+		addTables(first, 5, 3);
+		assertTrue(second.waitForRevision(1, TIMEOUT));
+		queueTransactions(second);
+
+		renameTable(second, 4, "second");
+		assertEquals(1, server.getRevision());
+		renameTable(first, 0, "first");
+
+		assertTrue(second.waitForRevision(3, TIMEOUT));
+		assertEquals(3, server.getRevision());
+		assertEquals(1, second.getConflictChecks());
+		List<String> expected = getTableNames(server.getWorkspace());
+		assertEquals("first 3", expected.get(0));
+		assertEquals("second 3", expected.get(4));
+		assertEquals(expected, getTableNames(second));
+	}
+
+	/**
+	 * Queued transactions that conflict with a revision must be rolled back
+	 * when the server rejects them, without the rollback being sent to the
+	 * server, and the revision must then be applied.
+	 */
+	public void testConflictingQueuedTransactionsAreRolledBack() throws Exception {
+		LocalClientSession first = createSession();
+		LocalClientSession second = createSession();
+		first.start();
+		second.start();
+		addTables(first, 5, 3);
+		assertTrue(second.waitForRevision(1, TIMEOUT));
+		queueTransactions(second);
+		final ExceptionListener listener = new ExceptionListener();
+		second.getResolver().addListener(listener);
+
+		renameTable(second, 0, "second");
+		renameTable(second, 0, "second again");
+		renameTable(first, 0, "first");
+
+		assertTrue(second.waitForRevision(2, TIMEOUT));
+		assertEquals(1, listener.exceptions.size());
+		assertEquals(1, second.getConflictChecks());
+		assertEquals(0, second.getCommits());
+		List<String> expected = getTableNames(server.getWorkspace());
+		assertEquals("first 3", expected.get(0));
+		assertEquals(expected, getTableNames(second));
+		assertEquals(2, server.getRevision());
+	}
+
+	/**
+	 * When the listener commits a transaction after the queued transactions
+	 * have waited too long, the queue is sent while the listener still holds
+	 * that transaction. If the server rejects them each transaction must be
+	 * rolled back once, the last one first, and the listener must not roll
+	 * its transaction back again.
+	 */
+	public void testRejectedQueueSentOnCommitIsRolledBackOnce() throws Exception {
+		LocalClientSession first = createSession();
+		final LocalClientSession second = createSession();
+		first.start();
+		addTables(second, 5, 3);
+		assertTrue(first.waitForRevision(1, TIMEOUT));
+		renameTable(first, 0, "first");
+		// The second session does not receive updates, so it posts at revision 1.
+		second.runInForeground(new Callable<Void>() {
+			public Void call() {
+				second.getResolver().setCommitDelay(TIMEOUT * 10);
+				second.getResolver().setMaxCommitDelay(100);
+				return null;
+			}
+		});
+
+		second.runInForeground(new Callable<Void>() {
+			public Void call() throws Exception {
+				SQLTable table = second.getWorkspace().getTables().get(0);
+				table.begin("Renaming");
+				table.setName("second");
+				table.commit();
+				Thread.sleep(200);
+				table.begin("Renaming");
+				table.setName("second again");
+				table.removeColumn(0);
+				try {
+					table.commit();
+				} catch (RuntimeException e) {
+					// the server rejects the transactions
+				}
+				return null;
+			}
+		});
+
+		assertEquals(1, second.getConflictChecks());
+		assertEquals(1, second.getCommits());
+		assertEquals("table_0 3", getTableNames(second).get(0));
+		assertEquals(2, server.getRevision());
+	}
+
+	/**
+	 * The state of the project at a revision must be served from the
+	 * history, in pages if asked.
+	 */
+	public void testRevisionsAreServedFromHistory() throws Exception {
+		LocalClientSession session = createSession();
+		addTables(session, 5, 3);
+		renameTable(session, 1, "renamed");
+
+		CountingSPPersister expected = new CountingSPPersister();
+		ClientSideSessionUtils.persistRevisionFromServer(server.createProjectLocation(), 2,
+				new SPJSONMessageDecoder(expected), new BasicCookieStore());
+		assertEquals(2, expected.getCommitCount());
+		assertEquals("renamed", expected.getPersistPropertyList().get(
+				expected.getPersistPropertyCount() - 1).getNewValue());
+
+		CountingSPPersister actual = new CountingSPPersister();
+		ClientSideSessionUtils.persistRevisionFromServer(server.createProjectLocation(), 2, 1,
+				new SPJSONMessageDecoder(actual), new BasicCookieStore());
+		assertEquals(expected.getPersistObjectList(), actual.getPersistObjectList());
+		assertEquals(expected.getPersistPropertyList(), actual.getPersistPropertyList());
+	}
+}
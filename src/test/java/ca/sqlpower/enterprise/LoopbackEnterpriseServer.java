@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.enterprise;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executor;
+import java.util.zip.GZIPOutputStream;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import ca.sqlpower.enterprise.client.ProjectLocation;
+import ca.sqlpower.enterprise.client.SPServerInfo;
+import ca.sqlpower.http.HttpUtils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * The HTTP plumbing shared by the servers that stand in for an enterprise
+ * server in tests. The server listens on the loop back interface on a free
+ * port and passes every request under its path to
+ * {@link #handleRequest(HttpExchange)}. A request that fails is answered
+ * with a server error. Subclasses call {@link #start()} once they are set up
+ * to answer requests.
+ */
+public abstract class LoopbackEnterpriseServer {
+
+	private final String serverPath;
+
+	private final HttpServer server;
+
+	private volatile boolean stopped;
+
+	/**
+	 * @param serverPath
+	 *            The path on the server that the requests are sent under.
+	 * @param executor
+	 *            Runs the requests, or null to run them one at a time on the
+	 *            server's own thread.
+	 */
+	protected LoopbackEnterpriseServer(String serverPath, Executor executor) throws IOException {
+		this.serverPath = serverPath;
+		// Without this the server's small writes wait on delayed acknowledgements
+		// and every round trip takes about 40 ms.
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext(serverPath, new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					handleRequest(exchange);
+				} catch (Exception e) {
+					sendResponse(exchange, 500, "unsuccessful", e.toString());
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		server.setExecutor(executor);
+	}
+
+	protected void start() {
+		server.start();
+	}
+
+	/**
+	 * Answers a request with one of the sendResponse methods.
+	 */
+	protected abstract void handleRequest(HttpExchange exchange) throws Exception;
+
+	protected static boolean isInlineUpdateAccepted(HttpExchange exchange) {
+		return exchange.getRequestHeaders().getFirst(
+				RevisionUpdateResponseHandler.INLINE_UPDATE_HEADER) != null;
+	}
+
+	protected static boolean isGzipAccepted(HttpExchange exchange) {
+		String encoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+		return encoding != null && encoding.contains(HttpUtils.GZIP_ENCODING);
+	}
+
+	/**
+	 * Sends a message of the given kind in the form the
+	 * {@link JSONResponseHandler} reads.
+	 */
+	protected static void sendResponse(HttpExchange exchange, int status, String responseKind, 
+			Object data) throws IOException {
+		JSONObject message = new JSONObject();
+		try {
+			message.put("responseKind", responseKind);
+			message.put("data", data);
+		} catch (JSONException e) {
+			throw new RuntimeException(e);
+		}
+		sendResponse(exchange, status, message.toString());
+	}
+
+	/**
+	 * Sends the given body as JSON, gzipped if the client accepts it.
+	 */
+	protected static void sendResponse(HttpExchange exchange, int status, String body) 
+			throws IOException {
+		byte[] bytes = body.getBytes("UTF-8");
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+		OutputStream out;
+		if (isGzipAccepted(exchange)) {
+			exchange.getResponseHeaders().set("Content-Encoding", HttpUtils.GZIP_ENCODING);
+			exchange.sendResponseHeaders(status, 0);
+			out = new GZIPOutputStream(exchange.getResponseBody());
+		} else {
+			exchange.sendResponseHeaders(status, bytes.length);
+			out = exchange.getResponseBody();
+		}
+		out.write(bytes);
+		out.close();
+	}
+
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Returns a location on this server for a project with the given UUID.
+	 */
+	protected ProjectLocation createProjectLocation(String uuid, String serverName, String projectName) {
+		SPServerInfo info = new SPServerInfo(serverName, "127.0.0.1", getPort(), serverPath + "/", 
+				"user", "password");
+		return new ProjectLocation(uuid, projectName, info);
+	}
+
+	protected boolean isStopped() {
+		return stopped;
+	}
+
+	/**
+	 * Stops the server. Subclasses answer requests that are waiting for a
+	 * response as unavailable once {@link #isStopped()} is true.
+	 */
+	public void stop() {
+		stopped = true;
+		server.stop(1);
+	}
+}
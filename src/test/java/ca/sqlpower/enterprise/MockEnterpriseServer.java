@@ -0,0 +1,359 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ca.sqlpower.enterprise;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import ca.sqlpower.enterprise.client.ProjectLocation;
+
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * A server on the loop back interface that stands in for an enterprise server
+ * in tests. Requests for revisions are answered, in order, with the responses
+ * queued on this server, and wait for one to be queued if there are none,
+ * the same way the real server holds a request until there is a new
+ * revision. Posted transactions are accepted as a new revision unless a
+ * different response to them was queued. Requests for the state of a project
+ * at a revision are answered from the history added to this server, gzipped
+ * if the client accepts it. Every request is recorded so tests can check what
+ * the client sent and over which connection.
+ */
+public class MockEnterpriseServer extends LoopbackEnterpriseServer {
+
+	/**
+	 * A request the server received.
+	 */
+	public static class Request {
+
+		private final String method;
+
+		private final String path;
+
+		private final String query;
+
+		private final int remotePort;
+
+		private final boolean inlineUpdateAccepted;
+
+		private final boolean gzipAccepted;
+
+		private final long time;
+
+		private final String body;
+
+		Request(HttpExchange exchange) throws IOException {
+			method = exchange.getRequestMethod();
+			path = exchange.getRequestURI().getPath();
+			query = exchange.getRequestURI().getQuery();
+			remotePort = exchange.getRemoteAddress().getPort();
+			inlineUpdateAccepted = LoopbackEnterpriseServer.isInlineUpdateAccepted(exchange);
+			gzipAccepted = LoopbackEnterpriseServer.isGzipAccepted(exchange);
+			time = System.currentTimeMillis();
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			InputStream in = exchange.getRequestBody();
+			byte[] buffer = new byte[8192];
+			int count;
+			while ((count = in.read(buffer)) != -1) {
+				out.write(buffer, 0, count);
+			}
+			in.close();
+			body = new String(out.toByteArray(), "UTF-8");
+		}
+
+		public String getMethod() {
+			return method;
+		}
+
+		public String getPath() {
+			return path;
+		}
+
+		public String getQuery() {
+			return query;
+		}
+
+		/**
+		 * Returns the port the client sent the request from. Requests sent
+		 * over the same connection have the same port.
+		 */
+		public int getRemotePort() {
+			return remotePort;
+		}
+
+		public boolean isInlineUpdateAccepted() {
+			return inlineUpdateAccepted;
+		}
+
+		public boolean isGzipAccepted() {
+			return gzipAccepted;
+		}
+
+		/**
+		 * Returns the time in milliseconds the request was received.
+		 */
+		public long getTime() {
+			return time;
+		}
+
+		public String getBody() {
+			return body;
+		}
+	}
+
+	private static class Response {
+
+		private final int status;
+
+		private final String body;
+
+		Response(int status, String body) {
+			this.status = status;
+			this.body = body;
+		}
+	}
+
+	public static final String SERVER_PATH = "/mock";
+
+	/**
+	 * Matches the path of a request for the state of a project at a revision.
+	 */
+	private static final Pattern PROJECT_REVISION_PATH = Pattern.compile(
+			".*/" + ClientSideSessionUtils.REST_TAG + "/project/[^/]+/(\\d+)");
+
+	private final BlockingQueue<Response> updates = new LinkedBlockingQueue<Response>();
+
+	private final BlockingQueue<Response> postResponses = new LinkedBlockingQueue<Response>();
+
+	/**
+	 * The revision the last accepted post created.
+	 */
+	private int revision = 0;
+
+	/**
+	 * The persist calls of each revision of the project history, starting at
+	 * revision 1.
+	 */
+	private final List<JSONArray> history = new ArrayList<JSONArray>();
+
+	private final List<Request> requests = new ArrayList<Request>();
+
+	/**
+	 * True if requests for the state of a project ignore their oldRevisionNo,
+	 * like a server that does not support fetching a project in pages.
+	 */
+	private volatile boolean oldRevisionIgnored;
+
+	public MockEnterpriseServer() throws IOException {
+		super(SERVER_PATH, null);
+		start();
+	}
+
+	@Override
+	protected void handleRequest(HttpExchange exchange) throws IOException {
+		Request request = new Request(exchange);
+		synchronized (requests) {
+			requests.add(request);
+		}
+		Response response = null;
+		Matcher revisionPath = PROJECT_REVISION_PATH.matcher(request.getPath());
+		if (request.getMethod().equals("GET") && revisionPath.matches()) {
+			response = createHistoryResponse(request, Integer.parseInt(revisionPath.group(1)));
+		} else if (request.getMethod().equals("POST")) {
+			response = postResponses.poll();
+			if (response == null) {
+				response = acceptPost();
+			}
+		}
+		try {
+			while (response == null && !isStopped()) {
+				response = updates.poll(100, TimeUnit.MILLISECONDS);
+			}
+		} catch (InterruptedException e) {
+			// respond as unavailable below
+		}
+		if (response == null) {
+			response = new Response(503, 
+					"{\"responseKind\":\"unsuccessful\",\"data\":\"Server stopped\"}");
+		}
+		sendResponse(exchange, response.status, response.body);
+	}
+
+	private synchronized Response acceptPost() {
+		revision++;
+		try {
+			JSONObject data = new JSONObject();
+			data.put("currentRevision", revision);
+			data.put("serverTimestamp", 1L);
+			JSONObject message = new JSONObject();
+			message.put("responseKind", "data");
+			message.put("data", data.toString());
+			return new Response(200, message.toString());
+		} catch (JSONException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Returns the persist calls of the revisions after the oldRevisionNo of
+	 * the request, or 0 if it has none, up to the given revision. The
+	 * oldRevisionNo is returned with the calls.
+	 */
+	private Response createHistoryResponse(Request request, int toRevision) {
+		int fromRevision = 0;
+		if (!oldRevisionIgnored && request.getQuery() != null 
+				&& request.getQuery().startsWith("oldRevisionNo=")) {
+			fromRevision = Integer.parseInt(request.getQuery().substring("oldRevisionNo=".length()));
+		}
+		try {
+			JSONObject message = new JSONObject();
+			synchronized (history) {
+				if (fromRevision < 0 || toRevision < 1 || toRevision > history.size() 
+						|| fromRevision >= toRevision) {
+					message.put("responseKind", "unsuccessful");
+					message.put("data", "Invalid revision " + toRevision);
+					return new Response(412, message.toString());
+				}
+				JSONArray calls = new JSONArray();
+				for (int i = fromRevision; i < toRevision; i++) {
+					JSONArray revisionCalls = history.get(i);
+					for (int j = 0; j < revisionCalls.length(); j++) {
+						calls.put(revisionCalls.get(j));
+					}
+				}
+				message.put("responseKind", "data");
+				if (fromRevision > 0) {
+					message.put("oldRevisionNo", fromRevision);
+				}
+				message.put("data", request.isInlineUpdateAccepted() ? calls : calls.toString());
+			}
+			return new Response(200, message.toString());
+		} catch (JSONException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Adds a revision with the given persist calls to the history of the
+	 * project this server answers requests for the state of a project with.
+	 * 
+	 * @return The number of the new revision
+	 */
+	public int addHistoryRevision(JSONArray persistCalls) {
+		synchronized (history) {
+			history.add(persistCalls);
+			return history.size();
+		}
+	}
+
+	/**
+	 * Makes requests for the state of a project ignore their oldRevisionNo
+	 * and return every revision up to the one asked for.
+	 */
+	public void setOldRevisionIgnored(boolean oldRevisionIgnored) {
+		this.oldRevisionIgnored = oldRevisionIgnored;
+	}
+
+	/**
+	 * Returns a location on this server for a project with the given UUID.
+	 */
+	public ProjectLocation createProjectLocation(String uuid) {
+		return createProjectLocation(uuid, "mock", "Mock project");
+	}
+
+	/**
+	 * Queues a response to a request for revisions that brings the client up
+	 * to the given revision with the given persist calls. The revision is
+	 * marked as created now.
+	 * 
+	 * @param inline
+	 *            If true the update is sent inline as JSON, otherwise it is
+	 *            sent as strings of JSON like servers that do not support
+	 *            inline updates.
+	 */
+	public void queueRevision(int revision, JSONArray persistCalls, boolean inline) throws Exception {
+		JSONObject update = new JSONObject();
+		update.put("currentRevision", revision);
+		update.put("serverTimestamp", 1L);
+		JSONObject message = new JSONObject();
+		message.put("responseKind", "data");
+		if (inline) {
+			update.put("revisionTimestamp", System.currentTimeMillis());
+			update.put("data", persistCalls);
+			message.put("data", update);
+		} else {
+			update.put("data", persistCalls.toString());
+			message.put("data", update.toString());
+		}
+		updates.add(new Response(200, message.toString()));
+	}
+
+	/**
+	 * Queues a response with the given status and body to a request for
+	 * revisions.
+	 */
+	public void queueResponse(int status, String body) {
+		updates.add(new Response(status, body));
+	}
+
+	/**
+	 * Queues a response with the given status and body to the next transaction
+	 * posted to this server, instead of accepting it.
+	 */
+	public void queuePostResponse(int status, String body) {
+		postResponses.add(new Response(status, body));
+	}
+
+	/**
+	 * Returns the requests received so far in the order they were received.
+	 */
+	public List<Request> getRequests() {
+		synchronized (requests) {
+			return new ArrayList<Request>(requests);
+		}
+	}
+
+	/**
+	 * Returns the transactions posted so far in the order they were received.
+	 */
+	public List<Request> getPosts() {
+		List<Request> posts = new ArrayList<Request>();
+		for (Request request : getRequests()) {
+			if (request.getMethod().equals("POST")) {
+				posts.add(request);
+			}
+		}
+		return posts;
+	}
+}
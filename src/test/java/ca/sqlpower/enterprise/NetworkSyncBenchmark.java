@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ca.sqlpower.enterprise;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.http.client.HttpClient;
+import org.apache.http.impl.client.BasicCookieStore;
+
+import ca.sqlpower.dao.SPPersister.DataType;
+import ca.sqlpower.dao.json.JSONHttpMessageSender;
+import ca.sqlpower.dao.json.SPJSONPersister;
+import ca.sqlpower.enterprise.client.ProjectLocation;
+import ca.sqlpower.sqlobject.SQLTable;
+
+/**
+ * Measures the network sync path against a {@link LocalEnterpriseServer} on
+ * the loop back interface: the initial commit of a workspace, sending it to
+ * the other clients, the throughput and update latency of small commits made
+ * by all clients at once, the conflict checks made when a client posts
+ * without the newest revision, and posting through a
+ * {@link JSONHttpMessageSender}. This is not part of the test suite; run the
+ * main method with the number of tables, the number of clients and the number
+ * of commits each client makes as optional arguments. Each table has ten
+ * columns.
+ */
+public class NetworkSyncBenchmark {
+
+	private static final int COLUMNS = 10;
+
+	public static void main(String[] args) throws Exception {
+		int tables = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		int clients = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		final int commits = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+
+		LocalEnterpriseServer server = new LocalEnterpriseServer("benchmark");
+		List<LocalClientSession> sessions = new ArrayList<LocalClientSession>();
+		try {
+			ProjectLocation location = server.createProjectLocation();
+			for (int i = 0; i < clients; i++) {
+				LocalClientSession session = new LocalClientSession(location, "client-" + i);
+				sessions.add(session);
+				session.start();
+			}
+
+			long start = System.nanoTime();
+			LocalEnterpriseServerTest.addTables(sessions.get(0), tables, COLUMNS);
+			long commitTime = System.nanoTime() - start;
+			for (LocalClientSession session : sessions) {
+				waitForRevision(session, server.getRevision());
+			}
+			long updateTime = System.nanoTime() - start;
+			System.out.println(String.format("%,d tables of %d columns: initial commit %,d ms, " +
+					"all %d clients updated after %,d ms", tables, COLUMNS, commitTime / 1000000,
+					clients, updateTime / 1000000));
+
+			for (int round = 0; round < 3; round++) {
+				measureCommits(server, sessions, tables, commits, round);
+			}
+			measureSender(server, location, tables, commits);
+		} finally {
+			for (LocalClientSession session : sessions) {
+				session.stop();
+			}
+			server.stop();
+		}
+	}
+
+	private static void waitForRevision(LocalClientSession session, int revision) throws Exception {
+		if (!session.waitForRevision(revision, 60000)) {
+			throw new AssertionError("A client did not reach revision " + revision);
+		}
+	}
+
+	/**
+	 * Has every client rename its share of the tables, one commit per rename,
+	 * all at the same time, and reports the throughput, the update latency
+	 * and the conflict checks the clients made.
+	 */
+	private static void measureCommits(LocalEnterpriseServer server, final List<LocalClientSession> sessions, 
+			final int tables, final int commits, final int round) throws Exception {
+		final int clients = sessions.size();
+		int firstRevision = server.getRevision();
+		int[] firstCommits = new int[clients];
+		int[] firstChecks = new int[clients];
+		long[] firstCheckTimes = new long[clients];
+		for (int i = 0; i < clients; i++) {
+			firstCommits[i] = sessions.get(i).getCommits();
+			firstChecks[i] = sessions.get(i).getConflictChecks();
+			firstCheckTimes[i] = sessions.get(i).getConflictCheckTime();
+		}
+
+		final CountDownLatch done = new CountDownLatch(clients);
+		final List<Throwable> failures = new ArrayList<Throwable>();
+		long start = System.nanoTime();
+		for (int i = 0; i < clients; i++) {
+			final int client = i;
+			new Thread("edits-" + i) {
+				@Override
+				public void run() {
+					try {
+						// Each client renames its own tables so the commits never conflict.
+						for (int j = 0; j < commits; j++) {
+							int table = (client + j * clients) % (tables - tables % clients);
+							LocalEnterpriseServerTest.renameTable(sessions.get(client), table, 
+									"table_" + table + "_" + round + "_" + j);
+						}
+					} catch (Throwable t) {
+						synchronized (failures) {
+							failures.add(t);
+						}
+					} finally {
+						done.countDown();
+					}
+				}
+			}.start();
+		}
+		done.await();
+		long commitTime = System.nanoTime() - start;
+		if (!failures.isEmpty()) {
+			throw new AssertionError(failures);
+		}
+		int lastRevision = server.getRevision();
+		for (LocalClientSession session : sessions) {
+			waitForRevision(session, lastRevision);
+		}
+		long syncTime = System.nanoTime() - start;
+
+		int totalCommits = 0;
+		int checks = 0;
+		long checkTime = 0;
+		double latency = 0;
+		for (int i = 0; i < clients; i++) {
+			LocalClientSession session = sessions.get(i);
+			totalCommits += session.getCommits() - firstCommits[i];
+			checks += session.getConflictChecks() - firstChecks[i];
+			checkTime += session.getConflictCheckTime() - firstCheckTimes[i];
+			latency += session.getResolver().getAverageUpdateLatency() / clients;
+		}
+		if (totalCommits != lastRevision - firstRevision) {
+			throw new AssertionError(totalCommits + " commits made " + (lastRevision - firstRevision) + 
+					" revisions");
+		}
+		checkConsistent(server, sessions);
+		System.out.println(String.format("%d clients: %,d commits in %,d ms (%,.0f commits/s), " +
+				"all clients synchronized after %,d ms, average update latency %,.1f ms, " +
+				"%,d conflict checks averaging %,d us", clients, totalCommits, commitTime / 1000000,
+				totalCommits * 1e9 / commitTime, syncTime / 1000000, latency, checks,
+				checks == 0 ? 0 : checkTime / checks / 1000));
+	}
+
+	/**
+	 * Throws an error if any client's tables differ from the server's.
+	 */
+	private static void checkConsistent(LocalEnterpriseServer server, List<LocalClientSession> sessions) 
+	throws Exception {
+		final List<String> expected = LocalEnterpriseServerTest.getTableNames(server.getWorkspace());
+		for (final LocalClientSession session : sessions) {
+			List<String> actual = session.runInForeground(new Callable<List<String>>() {
+				public List<String> call() throws Exception {
+					return LocalEnterpriseServerTest.getTableNames(session.getWorkspace());
+				}
+			});
+			if (!expected.equals(actual)) {
+				throw new AssertionError("A client's workspace differs from the server's");
+			}
+		}
+	}
+
+	/**
+	 * Posts property changes to the workspace through a
+	 * {@link JSONHttpMessageSender}, one transaction at a time.
+	 */
+	private static void measureSender(LocalEnterpriseServer server, ProjectLocation location, 
+			int tables, int commits) throws Exception {
+		List<String> uuids = new ArrayList<String>();
+		for (SQLTable table : server.getWorkspace().getTables()) {
+			uuids.add(table.getUUID());
+		}
+		HttpClient httpClient = ClientSideSessionUtils.createHttpClient(location.getServiceInfo(), 
+				new BasicCookieStore());
+		try {
+			SPJSONPersister persister = new SPJSONPersister(new JSONHttpMessageSender(httpClient, 
+					location.getServiceInfo(), location.getUUID()));
+			long start = System.nanoTime();
+			for (int i = 0; i < commits; i++) {
+				persister.begin();
+				persister.persistProperty(uuids.get(i % tables), "remarks", DataType.STRING, "remarks " + i);
+				persister.commit();
+			}
+			long time = System.nanoTime() - start;
+			System.out.println(String.format("JSONHttpMessageSender: %,d commits in %,d ms (%,.0f commits/s)",
+					commits, time / 1000000, commits * 1e9 / time));
+		} finally {
+			httpClient.getConnectionManager().shutdown();
+		}
+	}
+}
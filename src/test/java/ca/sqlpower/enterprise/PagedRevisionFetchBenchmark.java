@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ca.sqlpower.enterprise;
+
+import org.apache.http.client.HttpClient;
+import org.apache.http.impl.client.BasicCookieStore;
+
+import ca.sqlpower.dao.SPPersistenceException;
+import ca.sqlpower.dao.json.SPJSONMessageDecoder;
+import ca.sqlpower.enterprise.client.ProjectLocation;
+import ca.sqlpower.object.CountingSPPersister;
+
+/**
+ * Times opening a workspace from a {@link MockEnterpriseServer} the way
+ * {@link ClientSideSessionUtils} used to, by reading the whole response into
+ * a string and then decoding it, against streaming the calls out of the
+ * response in one request and in pages of revisions. The time until the
+ * first transaction is committed shows how soon a client can start showing
+ * the workspace. This is not part of the test suite; run the main method with
+ * the number of revisions and the number of objects in each revision as
+ * optional arguments.
+ */
+public class PagedRevisionFetchBenchmark {
+
+	/**
+	 * Records when the first transaction was committed.
+	 */
+	private static class TimingPersister extends CountingSPPersister {
+
+		private long firstCommit = -1;
+
+		@Override
+		public void commit() throws SPPersistenceException {
+			super.commit();
+			if (firstCommit < 0) {
+				firstCommit = System.nanoTime();
+			}
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int revisions = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		int objects = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+		MockEnterpriseServer server = new MockEnterpriseServer();
+		try {
+			for (int i = 0; i < revisions; i++) {
+				server.addHistoryRevision(ClientSideSessionUtilsTest.createRevision(i, objects));
+			}
+			ProjectLocation location = server.createProjectLocation("benchmark");
+
+			for (int round = 0; round < 5; round++) {
+				TimingPersister target = new TimingPersister();
+				long start = System.nanoTime();
+				HttpClient httpClient = ClientSideSessionUtils.createHttpClient(
+						location.getServiceInfo(), new BasicCookieStore());
+				try {
+					JSONMessage response = ClientSideSessionUtils.executeServerRequest(httpClient, 
+							location.getServiceInfo(), "/" + ClientSideSessionUtils.REST_TAG + 
+							"/project/" + location.getUUID() + "/" + revisions, new JSONResponseHandler());
+					new SPJSONMessageDecoder(target).decode(response.getBody());
+				} finally {
+					httpClient.getConnectionManager().shutdown();
+				}
+				print("string", start, target);
+
+				for (int pageSize : new int[] {0, revisions / 10}) {
+					target = new TimingPersister();
+					start = System.nanoTime();
+					ClientSideSessionUtils.persistRevisionFromServer(location, revisions, pageSize,
+							new SPJSONMessageDecoder(target), new BasicCookieStore());
+					print(pageSize > 0 ? "pages of " + pageSize : "streamed", start, target);
+				}
+			}
+		} finally {
+			server.stop();
+		}
+	}
+
+	private static void print(String name, long start, TimingPersister target) {
+		long end = System.nanoTime();
+		System.out.println(String.format("%s: %,d properties, first commit %,d ms, total %,d ms",
+				name, target.getPersistPropertyCount(), (target.firstCommit - start) / 1000000,
+				(end - start) / 1000000));
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.util.zip.GZIPInputStream;
+
+import junit.framework.TestCase;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+public class JSONArrayEntityTest extends TestCase {
+
+	private JSONArray array;
+
+	@Override
+	protected void setUp() throws Exception {
+		array = new JSONArray();
+		for (int i = 0; i < 100; i++) {
+			JSONObject json = new JSONObject();
+			json.put("method", "persistProperty");
+			json.put("uuid", "uuid" + i);
+			json.put("propertyName", "name");
+			json.put("type", "STRING");
+			json.put("newValue", "caf\u00e9 \u2603 " + i);
+			array.put(json);
+		}
+	}
+
+	/**
+	 * The streamed content must be the same as the String the array would
+	 * have been converted to.
+	 */
+	public void testUncompressedContentMatchesToString() throws Exception {
+		JSONArrayEntity entity = new JSONArrayEntity(array);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		entity.writeTo(out);
+
+		assertEquals(array.toString(), new String(out.toByteArray(), "UTF-8"));
+		assertNull(entity.getContentEncoding());
+		assertEquals(JSONArrayEntity.JSON_CONTENT_TYPE, entity.getContentType().getValue());
+		assertTrue(entity.isChunked());
+	}
+
+	public void testCompressedContent() throws Exception {
+		JSONArrayEntity entity = new JSONArrayEntity(array, true);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		entity.writeTo(out);
+
+		assertTrue(HttpUtils.isGzipped(entity));
+		JSONArray decoded = new JSONArray(new JSONTokener(new InputStreamReader(
+				new GZIPInputStream(new ByteArrayInputStream(out.toByteArray())), "UTF-8")));
+		assertEquals(array.toString(), decoded.toString());
+		assertTrue(out.size() < array.toString().getBytes("UTF-8").length);
+	}
+
+	/**
+	 * The entity is repeatable so the client can resend it on authentication
+	 * challenges.
+	 */
+	public void testWriteIsRepeatable() throws Exception {
+		JSONArrayEntity entity = new JSONArrayEntity(array, true);
+		ByteArrayOutputStream first = new ByteArrayOutputStream();
+		entity.writeTo(first);
+		ByteArrayOutputStream second = new ByteArrayOutputStream();
+		entity.writeTo(second);
+
+		JSONArray firstDecoded = new JSONArray(new JSONTokener(new InputStreamReader(
+				new GZIPInputStream(new ByteArrayInputStream(first.toByteArray())), "UTF-8")));
+		JSONArray secondDecoded = new JSONArray(new JSONTokener(new InputStreamReader(
+				new GZIPInputStream(new ByteArrayInputStream(second.toByteArray())), "UTF-8")));
+		assertEquals(firstDecoded.toString(), secondDecoded.toString());
+	}
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.object;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import ca.sqlpower.dao.PersistedSPOProperty;
+import ca.sqlpower.dao.PersistedSPObject;
+import ca.sqlpower.dao.SPPersister.DataType;
+
+/**
+ * Times the {@link Differ} comparing two revisions of a large schema that
+ * differ in a few tables, both in full and by subtree hash, and checks the
+ * two diffs are the same. This is not part of the test suite; run the main
+ * method with the number of tables to generate as an optional argument.
+ */
+public class DifferBenchmark {
+
+	/**
+	 * The persisted objects and properties of one revision of a workspace.
+	 */
+	static class Revision {
+		final List<PersistedSPObject> objects = new ArrayList<PersistedSPObject>();
+		final List<PersistedSPOProperty> properties = new ArrayList<PersistedSPOProperty>();
+
+		void addObject(String parentUUID, String type, String uuid, int index) {
+			objects.add(new PersistedSPObject(parentUUID, type, uuid, index));
+		}
+
+		void addProperty(String uuid, String name, DataType type, Object value) {
+			properties.add(new PersistedSPOProperty(uuid, name, type, value, value, true));
+		}
+
+		/**
+		 * Removes the object with the given UUID, its properties and the
+		 * objects and properties under it, assuming its descendants' UUIDs
+		 * start with its UUID.
+		 */
+		void removeSubtree(String uuid) {
+			for (int i = objects.size() - 1; i >= 0; i--) {
+				if (objects.get(i).getUUID().startsWith(uuid)) objects.remove(i);
+			}
+			for (int i = properties.size() - 1; i >= 0; i--) {
+				if (properties.get(i).getUUID().startsWith(uuid)) properties.remove(i);
+			}
+		}
+
+		void setProperty(String uuid, String name, Object value) {
+			for (int i = 0; i < properties.size(); i++) {
+				PersistedSPOProperty p = properties.get(i);
+				if (p.getUUID().equals(uuid) && p.getPropertyName().equals(name)) {
+					properties.set(i, new PersistedSPOProperty(uuid, name, p.getDataType(), value, value, true));
+					return;
+				}
+			}
+			throw new IllegalArgumentException("No property " + name + " on " + uuid);
+		}
+
+		void moveObject(String uuid, String newParentUUID, int index) {
+			for (int i = 0; i < objects.size(); i++) {
+				PersistedSPObject o = objects.get(i);
+				if (o.getUUID().equals(uuid)) {
+					objects.set(i, new PersistedSPObject(newParentUUID, o.getType(), uuid, index));
+					return;
+				}
+			}
+			throw new IllegalArgumentException("No object " + uuid);
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int tables = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+		int threads = Runtime.getRuntime().availableProcessors();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			Revision oldRevision = generateSchema(tables, 42);
+			Revision newRevision = generateSchema(tables, 42);
+			changeSchema(newRevision, tables);
+			Revision empty = new Revision();
+			System.out.println(String.format("%,d objects and %,d properties per revision",
+					oldRevision.objects.size(), oldRevision.properties.size()));
+
+			for (int round = 0; round < 5; round++) {
+				long start = System.nanoTime();
+				Differ full = diff(oldRevision, newRevision, false, null);
+				long fullTime = System.nanoTime() - start;
+				start = System.nanoTime();
+				Differ hashed = diff(oldRevision, newRevision, true, null);
+				long hashTime = System.nanoTime() - start;
+				start = System.nanoTime();
+				Differ parallel = diff(oldRevision, newRevision, true, executor);
+				long parallelTime = System.nanoTime() - start;
+				start = System.nanoTime();
+				Differ addAll = diff(empty, newRevision, false, null);
+				long addAllTime = System.nanoTime() - start;
+				start = System.nanoTime();
+				Differ addAllHashed = diff(empty, newRevision, true, null);
+				long addAllHashTime = System.nanoTime() - start;
+
+				System.out.println(String.format(
+						"few changes: full %,d ms, by hash %,d ms, by hash on %d threads %,d ms; " +
+						"against empty: full %,d ms, by hash %,d ms",
+						fullTime / 1000000, hashTime / 1000000, threads, parallelTime / 1000000,
+						addAllTime / 1000000, addAllHashTime / 1000000));
+				assertSameDiff(full, hashed);
+				assertSameDiff(full, parallel);
+				assertSameDiff(addAll, addAllHashed);
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	static Differ diff(Revision oldRevision, Revision newRevision, boolean byHash, ExecutorService executor) {
+		Differ differ = new Differ();
+		if (byHash) {
+			differ.calcDiffBySubtreeHash(oldRevision.objects, newRevision.objects,
+					oldRevision.properties, newRevision.properties, executor);
+		} else {
+			differ.calcDiff(oldRevision.objects, newRevision.objects,
+					oldRevision.properties, newRevision.properties);
+		}
+		return differ;
+	}
+
+	static void assertSameDiff(Differ expected, Differ actual) {
+		if (!new HashSet<PersistedSPObject>(expected.getPersistedSPOsToAdd()).equals(
+				new HashSet<PersistedSPObject>(actual.getPersistedSPOsToAdd()))) {
+			throw new AssertionError("Different objects to add");
+		}
+		if (!new HashSet<PersistedSPObject>(expected.getPersistedSPOsToRemove()).equals(
+				new HashSet<PersistedSPObject>(actual.getPersistedSPOsToRemove()))) {
+			throw new AssertionError("Different objects to remove");
+		}
+		if (!new HashSet<PersistedSPOProperty>(expected.getPropertyDiffPersists()).equals(
+				new HashSet<PersistedSPOProperty>(actual.getPropertyDiffPersists()))) {
+			throw new AssertionError("Different property changes");
+		}
+	}
+
+	/**
+	 * Generates a database with the given number of tables with a few
+	 * columns each. The same seed always generates the same schema.
+	 */
+	static Revision generateSchema(int tables, long seed) {
+		Random random = new Random(seed);
+		Revision revision = new Revision();
+		revision.addObject(null, "ca.sqlpower.sqlobject.SQLDatabase", "db", 0);
+		revision.addProperty("db", "name", DataType.STRING, "database");
+		for (int t = 0; t < tables; t++) {
+			String table = "table-" + t;
+			revision.addObject("db", "ca.sqlpower.sqlobject.SQLTable", table, t);
+			revision.addProperty(table, "name", DataType.STRING, "table_" + t);
+			revision.addProperty(table, "remarks", DataType.STRING, "remarks for table " + t);
+			int columns = 5 + random.nextInt(10);
+			for (int c = 0; c < columns; c++) {
+				String column = table + "-column-" + c;
+				revision.addObject(table, "ca.sqlpower.sqlobject.SQLColumn", column, c);
+				revision.addProperty(column, "name", DataType.STRING, "column_" + c);
+				revision.addProperty(column, "type", DataType.INTEGER, Integer.valueOf(random.nextInt(20)));
+				revision.addProperty(column, "nullable", DataType.BOOLEAN, Boolean.valueOf(random.nextBoolean()));
+				revision.addProperty(column, "precision", DataType.INTEGER, Integer.valueOf(random.nextInt(100)));
+			}
+		}
+		return revision;
+	}
+
+	/**
+	 * Renames some tables and columns, removes a table and a column, adds a
+	 * table and a column and moves a column to another table.
+	 */
+	static void changeSchema(Revision revision, int tables) {
+		revision.setProperty("table-" + (tables / 3), "name", "renamed_table");
+		revision.setProperty("table-" + (tables / 2) + "-column-1", "name", "renamed_column");
+		revision.setProperty("table-" + (tables / 4) + "-column-0", "nullable", null);
+		revision.removeSubtree("table-" + (tables - 1));
+		revision.removeSubtree("table-" + (tables / 5) + "-column-2");
+		String added = "table-new";
+		revision.addObject("db", "ca.sqlpower.sqlobject.SQLTable", added, tables - 1);
+		revision.addProperty(added, "name", DataType.STRING, "new_table");
+		revision.addObject(added, "ca.sqlpower.sqlobject.SQLColumn", added + "-column-0", 0);
+		revision.addProperty(added + "-column-0", "name", DataType.STRING, "new_column");
+		revision.addObject("table-0", "ca.sqlpower.sqlobject.SQLColumn", "table-0-column-new", 14);
+		revision.addProperty("table-0-column-new", "name", DataType.STRING, "another_new_column");
+		revision.moveObject("table-" + (tables / 6) + "-column-3", "table-" + (tables / 7), 20);
+	}
+}
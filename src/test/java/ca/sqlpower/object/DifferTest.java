@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.object;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+import ca.sqlpower.object.DifferBenchmark.Revision;
+
+public class DifferTest extends TestCase {
+
+	private Revision oldRevision;
+	
+	private Revision newRevision;
+	
+	@Override
+	protected void setUp() throws Exception {
+		oldRevision = DifferBenchmark.generateSchema(50, 3);
+		newRevision = DifferBenchmark.generateSchema(50, 3);
+		DifferBenchmark.changeSchema(newRevision, 50);
+	}
+
+	/**
+	 * Skipping unchanged subtrees must find the same changes as comparing
+	 * every object and property, including the descendants of moved objects.
+	 */
+	public void testDiffBySubtreeHashMatchesFullDiff() throws Exception {
+		Differ full = DifferBenchmark.diff(oldRevision, newRevision, false, null);
+		assertTrue(full.hasDifferences());
+		Differ hashed = DifferBenchmark.diff(oldRevision, newRevision, true, null);
+		DifferBenchmark.assertSameDiff(full, hashed);
+		assertEquals(full.getPersistedSPOsToAdd().size(), hashed.getPersistedSPOsToAdd().size());
+		
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			DifferBenchmark.assertSameDiff(full, DifferBenchmark.diff(oldRevision, newRevision, true, executor));
+		} finally {
+			executor.shutdown();
+		}
+		
+		DifferBenchmark.assertSameDiff(
+				DifferBenchmark.diff(new Revision(), newRevision, false, null),
+				DifferBenchmark.diff(new Revision(), newRevision, true, null));
+		DifferBenchmark.assertSameDiff(
+				DifferBenchmark.diff(newRevision, oldRevision, false, null),
+				DifferBenchmark.diff(newRevision, oldRevision, true, null));
+	}
+	
+	public void testIdenticalRevisionsHaveNoDifferences() throws Exception {
+		Differ hashed = DifferBenchmark.diff(oldRevision, DifferBenchmark.generateSchema(50, 3), true, null);
+		assertFalse(hashed.hasDifferences());
+	}
+}
@@ -19,6 +19,7 @@
 package ca.sqlpower.object.undo;
 
 import java.beans.PropertyChangeEvent;
+import java.lang.ref.WeakReference;
 import java.sql.Types;
 import java.util.ArrayList;
 import java.util.List;
@@ -212,4 +213,59 @@ public class TestUndoManager extends TestCase {
         assertEquals(1, fkTable.getPkSize());
     }
     
+    /**
+     * Edits discarded for the edit count limit must not keep the objects they
+     * refer to from being garbage collected.
+     */
+    public void testDiscardedEditsReleaseObjects() throws Exception {
+        undoManager.setLimit(3);
+        SQLColumn column = new SQLColumn();
+        column.setName("removed later");
+        pkTable.addColumn(column);
+        pkTable.removeColumn(column);
+        WeakReference<SQLColumn> columnRef = new WeakReference<SQLColumn>(column);
+        column = null;
+        
+        for (int i = 0; i < 5; i++) {
+            pkTable.setRemarks("remarks " + i);
+        }
+        assertEquals(3, undoManager.getUndoableEditCount());
+        
+        for (int i = 0; i < 10 && columnRef.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull("The removed column is still referenced", columnRef.get());
+    }
+
+    /**
+     * The oldest edits are discarded when the estimated size of the history
+     * goes over the retained bytes limit, but the last edit is always kept.
+     */
+    public void testRetainedBytesLimit() throws Exception {
+        StringBuilder longRemarks = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            longRemarks.append('x');
+        }
+        pkTable.setRemarks("original");
+        undoManager.setRetainedBytesLimit(10000);
+        for (int i = 0; i < 20; i++) {
+            pkTable.setRemarks(longRemarks.toString() + i);
+        }
+        assertTrue(undoManager.getRetainedBytes() <= 10000);
+        assertTrue(undoManager.getUndoableEditCount() > 1);
+        assertTrue(undoManager.getUndoableEditCount() < 20);
+        
+        undoManager.setRetainedBytesLimit(1);
+        assertEquals(1, undoManager.getUndoableEditCount());
+        undoManager.undo();
+        assertEquals(longRemarks.toString() + 18, pkTable.getRemarks());
+        assertFalse(undoManager.canUndo());
+        
+        undoManager.redo();
+        assertEquals(longRemarks.toString() + 19, pkTable.getRemarks());
+        undoManager.discardAllEdits();
+        assertEquals(0, undoManager.getRetainedBytes());
+    }
+    
 }
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ca.sqlpower.query;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.sqlpower.query.QueryImpl.OrderByArgument;
+import ca.sqlpower.sql.JDBCDataSource;
+import ca.sqlpower.sql.PlDotIni;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLDatabaseMapping;
+import ca.sqlpower.sqlobject.SQLObjectException;
+import ca.sqlpower.sqlobject.SQLTable;
+
+/**
+ * Times generating the SQL of a query on 50 joined tables 10,000 times: with
+ * nothing changed between calls, with a change to the where clause, with a
+ * change to the order by clause and with a change to a table alias, which
+ * needs every clause to be generated again. The database counts the
+ * connections opened to look up the identifier quote string. This is not
+ * part of the test suite; run the main method with the number of tables and
+ * the number of calls as optional arguments.
+ */
+public class QueryGenerationBenchmark {
+
+	private static final int COLUMNS = 10;
+
+	/**
+	 * A database whose connections only answer the identifier quote string
+	 * and count how many times they were opened.
+	 */
+	private static class CountingDatabase extends SQLDatabase {
+
+		private int connections;
+
+		CountingDatabase(JDBCDataSource ds) {
+			super(ds);
+		}
+
+		@Override
+		public Connection getConnection() throws SQLObjectException {
+			connections++;
+			final DatabaseMetaData metaData = (DatabaseMetaData) Proxy.newProxyInstance(
+					getClass().getClassLoader(), new Class<?>[] { DatabaseMetaData.class },
+					new InvocationHandler() {
+						public Object invoke(Object proxy, Method method, Object[] args) {
+							if (method.getName().equals("getIdentifierQuoteString")) return "\"";
+							throw new UnsupportedOperationException(method.getName());
+						}
+					});
+			return (Connection) Proxy.newProxyInstance(
+					getClass().getClassLoader(), new Class<?>[] { Connection.class },
+					new InvocationHandler() {
+						public Object invoke(Object proxy, Method method, Object[] args) {
+							if (method.getName().equals("getMetaData")) return metaData;
+							if (method.getName().equals("close")) return null;
+							throw new UnsupportedOperationException(method.getName());
+						}
+					});
+		}
+
+		int getConnections() {
+			return connections;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int tableCount = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+		int calls = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+
+		JDBCDataSource ds = new JDBCDataSource(new PlDotIni());
+		ds.setName("benchmark");
+		ds.setUrl("jdbc:benchmark:" + System.nanoTime());
+		final CountingDatabase db = new CountingDatabase(ds);
+		QueryImpl query = new QueryImpl(new SQLDatabaseMapping() {
+			public SQLDatabase getDatabase(JDBCDataSource dataSource) {
+				return db;
+			}
+		}, true);
+		query.setDataSourceWithoutSideEffects(ds);
+
+		List<Container> containers = new ArrayList<Container>();
+		for (int i = 0; i < tableCount; i++) {
+			SQLTable table = new SQLTable(db, "table_" + i, "", "TABLE", true);
+			for (int j = 0; j < COLUMNS; j++) {
+				SQLColumn column = new SQLColumn();
+				column.setName("column_" + j);
+				table.addColumn(column);
+			}
+			db.addTable(table);
+			Container container = new TableContainer(db, table);
+			query.addTable(container);
+			containers.add(container);
+			List<Item> items = container.getItems();
+			for (int j = 0; j < 3; j++) {
+				query.selectItem(items.get(j));
+			}
+			if (i > 0) {
+				query.addJoin(new SQLJoin(containers.get(i - 1).getItems().get(0), items.get(1)));
+			}
+			if (i % 5 == 0) {
+				items.get(2).setWhere("> " + i);
+				query.orderColumn(items.get(1), OrderByArgument.ASC);
+			}
+		}
+		Item whereItem = containers.get(tableCount / 2).getItems().get(0);
+		Item orderItem = containers.get(tableCount / 2).getItems().get(2);
+		Container aliasedContainer = containers.get(tableCount / 2);
+		String expected = query.generateQuery();
+
+		for (int round = 0; round < 5; round++) {
+			int connections = db.getConnections();
+			long start = System.nanoTime();
+			for (int i = 0; i < calls; i++) {
+				query.generateQuery();
+			}
+			long unchanged = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (int i = 0; i < calls; i++) {
+				whereItem.setWhere("> " + (i % 2));
+				query.generateQuery();
+			}
+			long where = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (int i = 0; i < calls; i++) {
+				query.orderColumn(orderItem, i % 2 == 0 ? OrderByArgument.DESC : OrderByArgument.NONE);
+				query.generateQuery();
+			}
+			long orderBy = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (int i = 0; i < calls; i++) {
+				aliasedContainer.setAlias("alias_" + (i % 2));
+				query.generateQuery();
+			}
+			long alias = System.nanoTime() - start;
+
+			whereItem.setWhere("");
+			aliasedContainer.setAlias("");
+			if (!expected.equals(query.generateQuery())) {
+				throw new AssertionError("The query generated differs from the query before the changes");
+			}
+			System.out.println(String.format(
+					"%d tables, %,d calls: unchanged %,d ns, where changed %,d ns, order by changed %,d ns, " +
+					"every clause changed %,d ns per call; %d connections opened",
+					tableCount, calls, unchanged / calls, where / calls, orderBy / calls, alias / calls,
+					db.getConnections() - connections));
+		}
+	}
+}
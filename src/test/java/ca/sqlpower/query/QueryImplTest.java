@@ -780,4 +780,76 @@ public class QueryImplTest extends TestCase {
         assertEquals(3, item1.getSelected().intValue());
     }
     
+    /**
+     * The clauses of a generated query are cached between calls. This checks
+     * that after each kind of change the query generated matches the query
+     * generated by a copy that has nothing cached.
+     */
+    public void testGeneratedQueryFollowsChanges() throws Exception {
+        QueryImpl query = new QueryImpl(new StubDatabaseMapping());
+        List<ItemContainer> tables = new ArrayList<ItemContainer>();
+        List<StringItem> items = new ArrayList<StringItem>();
+        for (int i = 0; i < 3; i++) {
+            ItemContainer table = new ItemContainer("Table " + i);
+            for (int j = 0; j < 2; j++) {
+                StringItem item = new StringItem("Column " + i + j);
+                table.addItem(item);
+                items.add(item);
+            }
+            query.addTable(table);
+            tables.add(table);
+        }
+        SQLJoin join1 = new SQLJoin(items.get(0), items.get(2));
+        SQLJoin join2 = new SQLJoin(items.get(3), items.get(4));
+        query.addJoin(join1);
+        query.addJoin(join2);
+        query.selectItem(items.get(0));
+        query.selectItem(items.get(3));
+        query.selectItem(items.get(5));
+        assertGeneratedQueryMatchesCopy(query);
+
+        tables.get(1).setAlias("t1");
+        assertGeneratedQueryMatchesCopy(query);
+        tables.get(2).setName("Renamed table");
+        assertGeneratedQueryMatchesCopy(query);
+        items.get(3).setAlias("second");
+        assertGeneratedQueryMatchesCopy(query);
+        items.get(5).setName("Renamed column");
+        assertGeneratedQueryMatchesCopy(query);
+        items.get(1).setWhere("> 5");
+        assertGeneratedQueryMatchesCopy(query);
+        query.setGlobalWhereClause("1 = 1");
+        assertGeneratedQueryMatchesCopy(query);
+        join2.setComparator("<>");
+        assertGeneratedQueryMatchesCopy(query);
+        join1.setLeftColumnOuterJoin(true);
+        assertGeneratedQueryMatchesCopy(query);
+        query.orderColumn(items.get(3), OrderByArgument.DESC);
+        assertGeneratedQueryMatchesCopy(query);
+        query.setGroupingEnabled(true);
+        assertGeneratedQueryMatchesCopy(query);
+        items.get(0).setGroupBy(SQLGroupFunction.MAX);
+        assertGeneratedQueryMatchesCopy(query);
+        items.get(0).setHaving("> 10");
+        assertGeneratedQueryMatchesCopy(query);
+        query.moveItem(items.get(5), 0);
+        assertGeneratedQueryMatchesCopy(query);
+        query.unselectItem(items.get(0));
+        assertGeneratedQueryMatchesCopy(query);
+        query.removeJoin(join2);
+        assertGeneratedQueryMatchesCopy(query);
+        StringItem added = new StringItem("Added column");
+        tables.get(0).addItem(added);
+        query.selectItem(added);
+        assertGeneratedQueryMatchesCopy(query);
+        query.removeTable(tables.get(2));
+        assertGeneratedQueryMatchesCopy(query);
+    }
+
+    private void assertGeneratedQueryMatchesCopy(QueryImpl query) {
+        String generated = query.generateQuery();
+        assertEquals(new QueryImpl(query, false).generateQuery(), generated);
+        assertEquals(generated, query.generateQuery());
+    }
+    
 }
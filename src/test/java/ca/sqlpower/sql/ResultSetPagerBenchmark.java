@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+
+/**
+ * Times browsing a large HSQLDB table a page at a time with a
+ * {@link ResultSetPager}, using the keyset query for an ordered select and
+ * the cursor for an unordered one, and times going back to a page that was
+ * dropped from memory. This is compared against reading the whole result into
+ * a {@link CachedRowSet} the way the query tool does without paging. This is
+ * not part of the test suite; run the main method with the number of rows as
+ * an optional argument. It needs the HSQLDB driver on the class path.
+ * <p>
+ * HSQLDB 1.8 sorts all of the rows that pass the where clause before
+ * returning the first one, even when an index gives the order, so each keyset
+ * page costs a sort of the rest of the table and only the first pages are
+ * timed. Databases that read an ordered range from the index, which is what
+ * keyset paging is for, take about the same time for every page.
+ */
+public class ResultSetPagerBenchmark {
+
+	private static final int PAGE_SIZE = 500;
+
+	private static final int PAGES_IN_MEMORY = 10;
+
+	public static void main(String[] args) throws Exception {
+		int rows = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+		Class.forName("org.hsqldb.jdbcDriver");
+		Connection con = DriverManager.getConnection("jdbc:hsqldb:mem:pagerbenchmark", "sa", "");
+		try {
+			createTable(con, rows);
+			browse(con, "SELECT * FROM big ORDER BY id", 20);
+			browse(con, "SELECT * FROM big", Integer.MAX_VALUE);
+
+			System.gc();
+			long usedBefore = usedMemory();
+			long start = System.nanoTime();
+			Statement stmt = con.createStatement();
+			CachedRowSet crs = new CachedRowSet();
+			crs.populate(stmt.executeQuery("SELECT * FROM big ORDER BY id"));
+			long time = System.nanoTime() - start;
+			System.gc();
+			System.out.println(String.format("cached row set: %,d rows in %,d ms, %,d KB held",
+					crs.size(), time / 1000000, (usedMemory() - usedBefore) / 1024));
+			stmt.close();
+		} finally {
+			con.createStatement().execute("SHUTDOWN");
+			con.close();
+		}
+	}
+
+	private static void createTable(Connection con, int rows) throws Exception {
+		long start = System.nanoTime();
+		Statement stmt = con.createStatement();
+		stmt.execute("CREATE TABLE big (id INTEGER NOT NULL PRIMARY KEY, name VARCHAR(30), amount DECIMAL(10, 2))");
+		stmt.close();
+		PreparedStatement ps = con.prepareStatement("INSERT INTO big VALUES (?, ?, ?)");
+		for (int i = 0; i < rows; i++) {
+			ps.setInt(1, i);
+			ps.setString(2, "customer " + i);
+			ps.setBigDecimal(3, java.math.BigDecimal.valueOf(i % 100000, 2));
+			ps.addBatch();
+			if (i % 10000 == 9999) {
+				ps.executeBatch();
+			}
+		}
+		ps.executeBatch();
+		ps.close();
+		System.out.println(String.format("created %,d rows in %,d ms", rows, (System.nanoTime() - start) / 1000000));
+	}
+
+	/**
+	 * Reads the given number of pages after the first one, or up to the end
+	 * of the result if it is shorter, and then reads a page that was dropped
+	 * from memory again.
+	 */
+	private static void browse(Connection con, String query, int pages) throws Exception {
+		System.gc();
+		long usedBefore = usedMemory();
+		long start = System.nanoTime();
+		ResultSetPager pager = new ResultSetPager(con, query, PAGE_SIZE, PAGES_IN_MEMORY);
+		long firstPage = System.nanoTime() - start;
+		int page = 0;
+		while (!pager.isComplete() && page < pages) {
+			pager.getPage(++page);
+		}
+		long toEnd = System.nanoTime() - start;
+		System.gc();
+		long held = usedMemory() - usedBefore;
+
+		start = System.nanoTime();
+		int back = page / 2;
+		pager.getPage(back);
+		long dropped = System.nanoTime() - start;
+		System.out.println(String.format("%s (%s): first page %,d us, %,d rows in %,d ms " +
+				"(%,d us per page), %,d KB held, dropped page %,d read again in %,d us",
+				query, pager.isKeysetPaging() ? "keyset" : "cursor", firstPage / 1000, pager.getRowCount(),
+				toEnd / 1000000, toEnd / 1000 / page, held / 1024, back, dropped / 1000));
+		pager.close();
+	}
+
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
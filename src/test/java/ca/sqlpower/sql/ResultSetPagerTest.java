@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import ca.sqlpower.sqlobject.DatabaseConnectedTestCase;
+
+public class ResultSetPagerTest extends DatabaseConnectedTestCase {
+
+	private static final int ROWS = 5000;
+
+	private static final int PAGE_SIZE = 100;
+
+	private Connection con;
+
+	private ResultSetPager pager;
+
+	/**
+	 * Creates a table of {@link #ROWS} rows with a unique id, a group number
+	 * shared by hundreds of rows and a parent id that is null for some rows.
+	 */
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		con = db.getConnection();
+		sqlx("CREATE TABLE pager_test (id INTEGER NOT NULL PRIMARY KEY, grp INTEGER NOT NULL, " +
+				"parent INTEGER, name VARCHAR(20) NOT NULL)");
+		PreparedStatement ps = con.prepareStatement("INSERT INTO pager_test VALUES (?, ?, ?, ?)");
+		for (int i = 0; i < ROWS; i++) {
+			ps.setInt(1, i);
+			ps.setInt(2, i % 7);
+			if (i % 50 < 2) {
+				ps.setNull(3, java.sql.Types.INTEGER);
+			} else {
+				ps.setInt(3, i / 50);
+			}
+			ps.setString(4, "row " + i);
+			ps.addBatch();
+		}
+		ps.executeBatch();
+		ps.close();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		if (pager != null) pager.close();
+		con.close();
+		super.tearDown();
+	}
+
+	public void testKeysetPagesMatchQueryOrder() throws Exception {
+		pager = new ResultSetPager(con, "SELECT * FROM pager_test ORDER BY pager_test.id DESC;", PAGE_SIZE, 3);
+		assertTrue(pager.isKeysetPaging());
+		assertEquals(PAGE_SIZE, pager.getRowCount());
+		assertFalse(pager.isComplete());
+
+		for (int row = 0; row < ROWS; row++) {
+			assertEquals(ROWS - 1 - row, ((Number) pager.getRow(row)[0]).intValue());
+		}
+		assertTrue(pager.getPage(ROWS / PAGE_SIZE).isEmpty());
+		assertTrue(pager.isComplete());
+		assertEquals(ROWS, pager.getRowCount());
+
+		// the first pages were dropped from memory and are read again
+		assertEquals(ROWS - 1 - 150, ((Number) pager.getRow(150)[0]).intValue());
+		assertEquals(0, pager.getCursorReadCount());
+		assertEquals(ROWS / PAGE_SIZE + 2, pager.getKeysetReadCount());
+	}
+
+	/**
+	 * Each group has more rows than fit on a page so the rows tied with the
+	 * last row of a page carry over several pages.
+	 */
+	public void testTiedOrderingKeys() throws Exception {
+		pager = new ResultSetPager(con, "SELECT id, grp FROM pager_test WHERE id >= 10 OR grp = 0 ORDER BY grp", PAGE_SIZE, 2);
+		assertTrue(pager.isKeysetPaging());
+		Set<Integer> ids = new HashSet<Integer>();
+		int lastGroup = -1;
+		for (int page = 0; !pager.isComplete(); page++) {
+			for (Object[] row : pager.getPage(page)) {
+				assertTrue(ids.add(((Number) row[0]).intValue()));
+				int group = ((Number) row[1]).intValue();
+				assertTrue(group >= lastGroup);
+				lastGroup = group;
+			}
+		}
+		assertEquals(ROWS - 8, ids.size());
+		assertEquals(ROWS - 8, pager.getRowCount());
+		assertEquals(0, pager.getCursorReadCount());
+	}
+
+	/**
+	 * The keyset predicate never selects rows with a null ordering column, so
+	 * a nullable ordering column must be paged with the cursor. Sorted in
+	 * descending order the null parents come after every other row.
+	 */
+	public void testNullableOrderingKeysUseCursor() throws Exception {
+		for (String order : new String[] {"parent, id", "parent DESC, id"}) {
+			pager = new ResultSetPager(con, "SELECT parent, id FROM pager_test ORDER BY " + order, PAGE_SIZE, 2);
+			assertFalse(order, pager.isKeysetPaging());
+			Set<Integer> ids = new HashSet<Integer>();
+			for (int page = 0; !pager.isComplete(); page++) {
+				for (Object[] row : pager.getPage(page)) {
+					assertTrue(ids.add(((Number) row[1]).intValue()));
+				}
+			}
+			assertEquals(order, ROWS, ids.size());
+			assertEquals(order, ROWS, pager.getRowCount());
+			assertTrue(order, pager.getCursorReadCount() > 0);
+			pager.close();
+		}
+	}
+
+	public void testCursorPaging() throws Exception {
+		pager = new ResultSetPager(con, "SELECT name, id * 2 AS twice FROM pager_test WHERE id < 1050", PAGE_SIZE, 2);
+		assertFalse(pager.isKeysetPaging());
+		assertEquals("TWICE", pager.getMetaData().getColumnLabel(2).toUpperCase());
+		List<Object[]> last = pager.getPage(10);
+		assertEquals(50, last.size());
+		assertTrue(pager.isComplete());
+		assertEquals(1050, pager.getRowCount());
+
+		List<Object[]> first = pager.getPage(0);
+		assertEquals(PAGE_SIZE, first.size());
+		Set<Object> names = new HashSet<Object>();
+		for (int row = 0; row < pager.getRowCount(); row++) {
+			names.add(pager.getRow(row)[0]);
+		}
+		assertEquals(1050, names.size());
+		assertEquals(0, pager.getKeysetReadCount());
+	}
+
+	/**
+	 * An ordering column renamed by an alias cannot be used in the keyset
+	 * predicate, which refers to the table's column.
+	 */
+	public void testAliasedOrderingColumnUsesCursor() throws Exception {
+		pager = new ResultSetPager(con, "SELECT grp AS id, id AS other FROM pager_test ORDER BY id", PAGE_SIZE, 2);
+		assertFalse(pager.isKeysetPaging());
+	}
+
+	/**
+	 * The row limit ends the result part way through a page for both ways of
+	 * paging, and every statement the pager runs is reported to its listener
+	 * and reported finished once the page is read.
+	 */
+	public void testRowLimit() throws Exception {
+		final List<Statement> running = new ArrayList<Statement>();
+		final int[] started = new int[1];
+		ResultSetPager.StatementListener listener = new ResultSetPager.StatementListener() {
+			public void statementStarted(Statement stmt) {
+				running.add(stmt);
+				started[0]++;
+			}
+			public void statementFinished(Statement stmt) {
+				assertTrue(running.remove(stmt));
+			}
+		};
+		for (String query : new String[] {"SELECT * FROM pager_test ORDER BY id", "SELECT * FROM pager_test"}) {
+			started[0] = 0;
+			pager = new ResultSetPager(con, query, PAGE_SIZE, 2, 250, listener);
+			assertFalse(query, pager.isComplete());
+			assertEquals(query, 50, pager.getPage(2).size());
+			assertTrue(query, pager.isComplete());
+			assertEquals(query, 250, pager.getRowCount());
+			assertTrue(query, pager.getPage(3).isEmpty());
+			assertEquals(query, 249, ((Number) pager.getRow(249)[0]).intValue());
+			assertTrue(query, running.isEmpty());
+			assertTrue(query, started[0] >= 3);
+			pager.close();
+		}
+
+		pager = new ResultSetPager(con, "SELECT * FROM pager_test ORDER BY id", PAGE_SIZE, 2, 200, null);
+		assertEquals(PAGE_SIZE, pager.getPage(1).size());
+		assertTrue(pager.isComplete());
+		assertEquals(200, pager.getRowCount());
+	}
+
+	public void testReadAll() throws Exception {
+		pager = new ResultSetPager(con, "SELECT id FROM pager_test ORDER BY id", PAGE_SIZE, 2, 250, null);
+		final int[] rows = new int[1];
+		pager.readAll(new ResultSetPager.ResultReader() {
+			public void read(ResultSet rs) throws SQLException {
+				while (rs.next()) {
+					assertEquals(rows[0], rs.getInt(1));
+					rows[0]++;
+				}
+			}
+		});
+		assertEquals(250, rows[0]);
+		assertEquals(PAGE_SIZE, pager.getRowCount());
+	}
+
+	public void testIsPageable() throws Exception {
+		assertTrue(ResultSetPager.isPageable(" select * from pager_test ; "));
+		assertTrue(ResultSetPager.isPageable("SELECT ';' FROM pager_test"));
+		assertFalse(ResultSetPager.isPageable("SELECT 1 FROM pager_test; SELECT 2 FROM pager_test"));
+		assertFalse(ResultSetPager.isPageable("UPDATE pager_test SET grp = 1"));
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import ca.sqlpower.sql.SQLScript.StatementKind;
+
+public class SQLScriptTest extends TestCase {
+
+	public void testSplitStatements() throws Exception {
+		String script = "select 'a;b' from t; -- comment; here\n" +
+				"insert into \"x;y\" values (1) /* more; */;\n" +
+				"  ; -- only a comment;\n" +
+				"select 2 from t";
+		assertEquals(Arrays.asList(
+				"select 'a;b' from t",
+				"-- comment; here\ninsert into \"x;y\" values (1) /* more; */",
+				"-- only a comment;\nselect 2 from t"),
+				SQLScript.splitStatements(script));
+	}
+
+	public void testSplitUnterminatedQuote() throws Exception {
+		assertEquals(Arrays.asList("select 1", "select 'a;"),
+				SQLScript.splitStatements("select 1; select 'a;"));
+	}
+
+	/**
+	 * Semicolons in a dollar-quoted function body do not end the statement,
+	 * and the words in the body do not make it a block.
+	 */
+	public void testSplitDollarQuotedBody() throws Exception {
+		String function = "create function f() returns integer as $body$\n" +
+				"begin\n  perform 1; return $1;\nend;\n$body$ language plpgsql";
+		String script = function + ";\nselect $$a;b$$ from t; select 2 from t";
+		assertEquals(Arrays.asList(function, "select $$a;b$$ from t", "select 2 from t"),
+				SQLScript.splitStatements(script));
+		assertFalse(SQLScript.hasBlock(SQLScript.splitStatements(script)));
+		assertEquals(StatementKind.UPDATE, SQLScript.classify(function));
+	}
+
+	/**
+	 * A PL/SQL block is cut at the semicolons in it, which must be detected
+	 * so the script is run whole. Transactions started with BEGIN are not
+	 * blocks.
+	 */
+	public void testBlocks() throws Exception {
+		assertTrue(SQLScript.hasBlock(SQLScript.splitStatements(
+				"begin\n  update t set a = 1;\n  commit;\nend;")));
+		assertTrue(SQLScript.hasBlock(SQLScript.splitStatements(
+				"declare x integer; begin select 1 into x from dual; end;")));
+		assertTrue(SQLScript.hasBlock(SQLScript.splitStatements(
+				"create or replace procedure p as begin delete from t; end;")));
+		assertFalse(SQLScript.hasBlock(SQLScript.splitStatements(
+				"begin; select 1 from t; select 2 from t; commit")));
+		assertFalse(SQLScript.hasBlock(SQLScript.splitStatements(
+				"begin transaction; select 'begin' from t; commit")));
+	}
+
+	public void testClassifyQueries() throws Exception {
+		assertEquals(StatementKind.QUERY, SQLScript.classify("select * from t where name = 'insert'"));
+		assertEquals(StatementKind.QUERY, SQLScript.classify("/* into */ WITH x AS (SELECT 1) SELECT * FROM x"));
+		assertEquals(StatementKind.QUERY, SQLScript.classify("select \"update\" from t -- delete"));
+	}
+
+	public void testClassifyQueriesThatWrite() throws Exception {
+		assertEquals(StatementKind.SESSION, SQLScript.classify("select * into t2 from t"));
+		assertEquals(StatementKind.SESSION, SQLScript.classify("select * from t for update"));
+		assertEquals(StatementKind.SESSION, SQLScript.classify("with x as (select 1) insert into t select * from x"));
+	}
+
+	public void testClassifyUpdates() throws Exception {
+		assertEquals(StatementKind.UPDATE, SQLScript.classify("insert into t values (1)"));
+		assertEquals(StatementKind.UPDATE, SQLScript.classify("-- c\n  delete from t"));
+		assertEquals(StatementKind.UPDATE, SQLScript.classify("create table t (id integer)"));
+		assertEquals(StatementKind.UPDATE, SQLScript.classify("drop table t"));
+	}
+
+	public void testClassifySessionStatements() throws Exception {
+		assertEquals(StatementKind.SESSION, SQLScript.classify("create temporary table t (id integer)"));
+		assertEquals(StatementKind.SESSION, SQLScript.classify("create global temp table t (id integer)"));
+		assertEquals(StatementKind.SESSION, SQLScript.classify("create table #t (id integer)"));
+		assertEquals(StatementKind.SESSION, SQLScript.classify("set schema other"));
+		assertEquals(StatementKind.SESSION, SQLScript.classify("commit"));
+		assertEquals(StatementKind.SESSION, SQLScript.classify("call my_procedure()"));
+		assertEquals(StatementKind.SESSION, SQLScript.classify(""));
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ca.sqlpower.sql;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+
+import junit.framework.TestCase;
+
+public class SortedDataSourceListTest extends TestCase {
+
+	/**
+	 * Records each list data event as its type and indices.
+	 */
+	private static class RecordingListener implements ListDataListener {
+
+		private final List<String> events = new ArrayList<String>();
+
+		public void intervalAdded(ListDataEvent e) {
+			events.add("added " + e.getIndex0());
+		}
+
+		public void intervalRemoved(ListDataEvent e) {
+			events.add("removed " + e.getIndex0());
+		}
+
+		public void contentsChanged(ListDataEvent e) {
+			events.add("changed " + e.getIndex0());
+		}
+	}
+
+	private PlDotIni plini;
+
+	@Override
+	protected void setUp() throws Exception {
+		plini = new PlDotIni();
+	}
+
+	private JDBCDataSource addJDBCDataSource(String name) {
+		JDBCDataSource ds = new JDBCDataSource(plini);
+		ds.setName(name);
+		plini.addDataSource(ds);
+		return ds;
+	}
+
+	private static List<String> namesOf(List<? extends SPDataSource> dataSources) {
+		List<String> names = new ArrayList<String>();
+		for (SPDataSource ds : dataSources) {
+			names.add(ds.getName());
+		}
+		return names;
+	}
+
+	public void testListFollowsAddsRemovesAndRenames() throws Exception {
+		addJDBCDataSource("charlie");
+		JDBCDataSource alpha = addJDBCDataSource("alpha");
+		SortedDataSourceList<? extends SPDataSource> list = SortedDataSourceList.create(plini);
+		RecordingListener listener = new RecordingListener();
+		list.addListDataListener(listener);
+		assertEquals("[alpha, charlie]", namesOf(list).toString());
+
+		addJDBCDataSource("Bravo");
+		assertEquals("[alpha, Bravo, charlie]", namesOf(list).toString());
+		assertEquals("[added 1]", listener.events.toString());
+
+		listener.events.clear();
+		alpha.setName("delta");
+		assertEquals("[Bravo, charlie, delta]", namesOf(list).toString());
+		assertEquals("[removed 0, added 2]", listener.events.toString());
+
+		listener.events.clear();
+		alpha.setName("echo");
+		assertEquals("[changed 2]", listener.events.toString());
+
+		listener.events.clear();
+		JDBCDataSource sameName = new JDBCDataSource(plini);
+		sameName.setName("charlie");
+		plini.removeDataSource(sameName);
+		assertEquals("[Bravo, echo]", namesOf(list).toString());
+		assertEquals("[removed 1]", listener.events.toString());
+
+		list.cleanup();
+		listener.events.clear();
+		addJDBCDataSource("foxtrot");
+		alpha.setName("aardvark");
+		assertEquals(2, list.size());
+		assertSame(alpha, list.get(1));
+		assertTrue(listener.events.isEmpty());
+	}
+
+	/**
+	 * A list of a collection of one type of data source only holds that
+	 * type, and the lists behind {@link PlDotIni#getConnections(Class)} stay
+	 * sorted as data sources change.
+	 */
+	public void testTypedConnections() throws Exception {
+		addJDBCDataSource("b");
+		Olap4jDataSource olap = new Olap4jDataSource(plini);
+		olap.setName("a");
+		plini.addDataSource(olap);
+		JDBCDataSource c = addJDBCDataSource("c");
+
+		assertEquals("[a, b, c]", namesOf(plini.getConnections()).toString());
+		assertEquals("[b, c]", namesOf(plini.getConnections(JDBCDataSource.class)).toString());
+
+		SortedDataSourceList<? extends SPDataSource> list = SortedDataSourceList.create(
+				new SpecificDataSourceCollection<JDBCDataSource>(plini, JDBCDataSource.class));
+		Olap4jDataSource olap2 = new Olap4jDataSource(plini);
+		olap2.setName("d");
+		plini.addDataSource(olap2);
+		c.setName("0");
+		addJDBCDataSource("e");
+		assertEquals("[0, b, e]", namesOf(list).toString());
+		assertEquals("[0, b, e]", namesOf(plini.getConnections(JDBCDataSource.class)).toString());
+		assertEquals("[0, a, b, d, e]", namesOf(plini.getConnections()).toString());
+		list.cleanup();
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.sql;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Statement;
+
+import ca.sqlpower.sqlobject.DatabaseConnectedTestCase;
+
+public class StatementStatisticsTest extends DatabaseConnectedTestCase {
+
+	private Connection con;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		con = db.getConnection();
+		sqlx("CREATE TABLE stats_test (id INTEGER NOT NULL PRIMARY KEY, name VARCHAR(20))");
+		sqlx("INSERT INTO stats_test VALUES (1, 'one')");
+		sqlx("INSERT INTO stats_test VALUES (2, 'two')");
+		sqlx("INSERT INTO stats_test VALUES (3, NULL)");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		con.close();
+		super.tearDown();
+	}
+
+	public void testMeasuredRows() throws Exception {
+		StatementStatistics statistics = new StatementStatistics("SELECT * FROM stats_test");
+		Statement stmt = con.createStatement();
+		statistics.executionStarted();
+		stmt.execute(statistics.getStatement());
+		statistics.executionFinished();
+		CachedRowSet crs = new CachedRowSet();
+		crs.populate(statistics.measure(stmt, stmt.getResultSet()));
+		stmt.close();
+
+		assertEquals(3, crs.size());
+		assertEquals(3, statistics.getRowCount());
+		assertEquals(3 * 4 + 2 * "one".length() + 2 * "two".length(), statistics.getBytesFetched());
+		assertTrue(statistics.getFirstRowNanos() >= statistics.getExecuteNanos());
+		assertTrue(statistics.getFetchNanos() > 0);
+		assertNull(statistics.getPlan());
+	}
+
+	public void testNoRows() throws Exception {
+		StatementStatistics statistics = new StatementStatistics("SELECT * FROM stats_test WHERE id < 0");
+		Statement stmt = con.createStatement();
+		statistics.executionStarted();
+		stmt.execute(statistics.getStatement());
+		statistics.executionFinished();
+		new CachedRowSet().populate(statistics.measure(stmt, stmt.getResultSet()));
+		stmt.close();
+
+		assertEquals(0, statistics.getRowCount());
+		assertEquals(-1, statistics.getFirstRowNanos());
+	}
+
+	public void testEstimateSize() throws Exception {
+		assertEquals(0, StatementStatistics.estimateSize(null));
+		assertEquals(8, StatementStatistics.estimateSize(new java.sql.Timestamp(0)));
+		assertEquals(6, StatementStatistics.estimateSize(new BigDecimal("123.45")));
+		assertEquals(3, StatementStatistics.estimateSize(new byte[3]));
+	}
+
+	/**
+	 * The HSQLDB type in the regression data source collection uses the
+	 * HSQLDB fetcher, which uses EXPLAIN PLAN FOR.
+	 */
+	public void testHSQLDBExplainPlan() throws Exception {
+		ExplainPlanFetcher fetcher = db.getDataSource().getParentType().createExplainPlanFetcher();
+		assertTrue(fetcher instanceof HSQLDBExplainPlanFetcher);
+		String plan = fetcher.fetchPlan(con, "SELECT * FROM stats_test WHERE id = 2;");
+		assertTrue(plan, plan.toUpperCase().indexOf("STATS_TEST") >= 0);
+		assertTrue(plan, plan.indexOf('\n') > 0);
+	}
+
+	public void testNoFetcher() throws Exception {
+		JDBCDataSourceType type = new JDBCDataSourceType();
+		assertNull(type.createExplainPlanFetcher());
+		type.setExplainPlanFetcherClass(ExplainStatementPlanFetcher.class.getName());
+		assertTrue(type.createExplainPlanFetcher() instanceof ExplainStatementPlanFetcher);
+	}
+}
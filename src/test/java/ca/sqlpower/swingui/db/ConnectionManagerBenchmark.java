@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ca.sqlpower.swingui.db;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.swing.JTable;
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.TableCellRenderer;
+import javax.swing.table.TableModel;
+
+import ca.sqlpower.sql.JDBCDataSource;
+import ca.sqlpower.sql.PlDotIni;
+import ca.sqlpower.sql.SPDataSource;
+
+/**
+ * Times rendering the rows of the connection manager's table for a
+ * collection of 5,000 data sources. The table model is compared against a
+ * reference model that gets a newly sorted list of the connections for each
+ * cell, as the model used to. Renaming data sources is also timed, along with
+ * the events the table model fires. This is not part of the test suite; run
+ * the main method with the number of data sources as an optional argument.
+ */
+public class ConnectionManagerBenchmark {
+
+	/**
+	 * A model that looks up the connections for each cell as the connection
+	 * manager's model did before it kept a sorted list.
+	 */
+	private static class ReferenceTableModel extends AbstractTableModel {
+
+		private final PlDotIni plini;
+
+		ReferenceTableModel(PlDotIni plini) {
+			this.plini = plini;
+		}
+
+		private List<SPDataSource> getConnections() {
+			List<SPDataSource> connections = new ArrayList<SPDataSource>(plini.getConnections());
+			Collections.sort(connections);
+			return connections;
+		}
+
+		public int getRowCount() {
+			return getConnections().size();
+		}
+
+		public int getColumnCount() {
+			return 1;
+		}
+
+		public Object getValueAt(int rowIndex, int columnIndex) {
+			return getConnections().get(rowIndex);
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+		PlDotIni plini = new PlDotIni();
+		List<JDBCDataSource> dataSources = new ArrayList<JDBCDataSource>();
+		for (int i = 0; i < count; i++) {
+			JDBCDataSource ds = new JDBCDataSource(plini);
+			ds.setName("connection " + ((i * 7919L) % count));
+			plini.addDataSource(ds);
+			dataSources.add(ds);
+		}
+
+		DatabaseConnectionManager.ConnectionTableModel model = new DatabaseConnectionManager.ConnectionTableModel(plini);
+		final int[] rowEvents = new int[1];
+		model.addTableModelListener(new TableModelListener() {
+			public void tableChanged(TableModelEvent e) {
+				if (e.getFirstRow() == TableModelEvent.HEADER_ROW || e.getLastRow() == Integer.MAX_VALUE) {
+					throw new AssertionError("The model fired a data changed event instead of a row event");
+				}
+				rowEvents[0]++;
+			}
+		});
+		ReferenceTableModel reference = new ReferenceTableModel(plini);
+
+		for (int round = 0; round < 5; round++) {
+			long referencePage = renderRows(new JTable(reference), 40);
+			long page = renderRows(new JTable(model), 40);
+			long referenceAll = renderRows(new JTable(reference), 500);
+			long all = renderRows(new JTable(model), count);
+
+			rowEvents[0] = 0;
+			long start = System.nanoTime();
+			for (int i = 0; i < 100; i++) {
+				JDBCDataSource ds = dataSources.get(i * (count / 100));
+				ds.setName("renamed " + round + " " + ds.getName());
+			}
+			long renames = System.nanoTime() - start;
+
+			System.out.println(String.format(
+					"%,d data sources: 40 row page %,d us (reference %,d us), " +
+					"all rows %,d ns per row (reference %,d ns per row), " +
+					"rename %,d us each with %d row events",
+					count, page / 1000, referencePage / 1000, all / count, referenceAll / 500,
+					renames / 100000, rowEvents[0]));
+		}
+		model.cleanup();
+	}
+
+	/**
+	 * Renders the first rows of the table the way painting the table would
+	 * and returns the time it took in nanoseconds.
+	 */
+	private static long renderRows(JTable table, int rows) {
+		TableModel model = table.getModel();
+		long start = System.nanoTime();
+		int rowCount = Math.min(rows, model.getRowCount());
+		for (int row = 0; row < rowCount; row++) {
+			TableCellRenderer renderer = table.getCellRenderer(row, 0);
+			table.prepareRenderer(renderer, row, 0);
+		}
+		return System.nanoTime() - start;
+	}
+}
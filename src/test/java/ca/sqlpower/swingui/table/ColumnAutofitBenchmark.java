@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.swingui.table;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.util.Random;
+
+import javax.swing.JTable;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Times fitting the columns of a table of generated rows with the sampling
+ * {@link ColumnWidthSampler} against measuring every cell, fitting them
+ * again from the width cache, and prints how far the sampled widths are
+ * from the exhaustive ones. This is not part of the test suite; run the main
+ * method with the number of rows to generate as an optional argument.
+ */
+public class ColumnAutofitBenchmark {
+
+	private static final String[] COLUMN_NAMES = new String[] {"id", "customer", "amount", "shipped", "notes"};
+
+	/**
+	 * A table of generated orders whose values are made when they are asked
+	 * for, so large tables take no memory.
+	 */
+	private static class OrderTableModel extends AbstractTableModel {
+
+		private final int rows;
+
+		OrderTableModel(int rows) {
+			this.rows = rows;
+		}
+
+		public int getRowCount() {
+			return rows;
+		}
+
+		public int getColumnCount() {
+			return COLUMN_NAMES.length;
+		}
+
+		@Override
+		public String getColumnName(int column) {
+			return COLUMN_NAMES[column];
+		}
+
+		@Override
+		public Class<?> getColumnClass(int columnIndex) {
+			switch (columnIndex) {
+			case 0: return Integer.class;
+			case 2: return BigDecimal.class;
+			case 3: return Date.class;
+			default: return String.class;
+			}
+		}
+
+		public Object getValueAt(int rowIndex, int columnIndex) {
+			Random random = new Random(rowIndex * 31L + columnIndex);
+			switch (columnIndex) {
+			case 0: return Integer.valueOf(rowIndex);
+			case 1: return "customer " + random.nextInt(50000);
+			case 2: return BigDecimal.valueOf(random.nextInt(100000000), 2);
+			case 3: return new Date(1262304000000L + random.nextInt(365) * 86400000L);
+			default:
+				StringBuilder notes = new StringBuilder();
+				for (int i = random.nextInt(8); i >= 0; i--) {
+					notes.append("lorem ipsum ");
+				}
+				return notes.toString();
+			}
+		}
+	}
+
+	public static void main(String[] args) {
+		int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		OrderTableModel model = new OrderTableModel(rows);
+		for (int round = 0; round < 5; round++) {
+			int[] exhaustive = new int[COLUMN_NAMES.length];
+			long start = System.nanoTime();
+			JTable table = new JTable(model);
+			ColumnWidthSampler all = new ColumnWidthSampler(Integer.MAX_VALUE, 0);
+			for (int i = 0; i < exhaustive.length; i++) {
+				exhaustive[i] = all.measure(table, i, -1);
+			}
+			long exhaustiveTime = System.nanoTime() - start;
+
+			int[] sampled = new int[COLUMN_NAMES.length];
+			start = System.nanoTime();
+			table = new JTable(model);
+			ColumnWidthSampler sampler = new ColumnWidthSampler();
+			for (int i = 0; i < sampled.length; i++) {
+				sampled[i] = sampler.measure(table, i, -1);
+			}
+			long sampledTime = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (int i = 0; i < sampled.length; i++) {
+				sampler.measure(table, i, -1);
+			}
+			long cachedTime = System.nanoTime() - start;
+
+			int worstDifference = 0;
+			for (int i = 0; i < sampled.length; i++) {
+				worstDifference = Math.max(worstDifference, exhaustive[i] - sampled[i]);
+			}
+			System.out.println(String.format(
+					"%,d rows, %d columns: every cell %,d ms, sampled %,d ms, cached %,d us; " +
+					"sampled widths at most %d pixels narrower",
+					rows, COLUMN_NAMES.length, exhaustiveTime / 1000000, sampledTime / 1000000,
+					cachedTime / 1000, worstDifference));
+		}
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.swingui.table;
+
+import java.awt.Rectangle;
+import java.util.Random;
+
+import javax.swing.JTable;
+import javax.swing.table.DefaultTableModel;
+
+import junit.framework.TestCase;
+
+public class ColumnWidthSamplerTest extends TestCase {
+
+	/**
+	 * A table that is not on screen but reports the given rows as visible.
+	 */
+	private static class ScrolledTable extends JTable {
+
+		private int firstVisibleRow = -1;
+
+		private int visibleRows;
+
+		ScrolledTable(DefaultTableModel model) {
+			super(model);
+		}
+
+		@Override
+		public Rectangle getVisibleRect() {
+			if (firstVisibleRow < 0) return new Rectangle();
+			return new Rectangle(0, firstVisibleRow * getRowHeight(), 100, visibleRows * getRowHeight());
+		}
+	}
+
+	private DefaultTableModel model;
+
+	private ScrolledTable table;
+
+	/**
+	 * Fills the table with the given number of rows of text whose length is
+	 * drawn from a fixed random sequence.
+	 */
+	private void createTable(int rows) {
+		Random random = new Random(3);
+		Object[][] data = new Object[rows][1];
+		for (int i = 0; i < rows; i++) {
+			char[] text = new char[1 + random.nextInt(30)];
+			for (int j = 0; j < text.length; j++) {
+				text[j] = (char) ('a' + random.nextInt(26));
+			}
+			data[i][0] = new String(text);
+		}
+		model = new DefaultTableModel(data, new Object[] {"name"});
+		table = new ScrolledTable(model);
+	}
+
+	private int measureAll() {
+		return new ColumnWidthSampler(Integer.MAX_VALUE, 0).measure(new JTable(model), 0, -1);
+	}
+
+	public void testSmallTableMeasuresEveryRow() throws Exception {
+		createTable(500);
+		ColumnWidthSampler sampler = new ColumnWidthSampler();
+		assertEquals(measureAll(), sampler.measure(table, 0, -1));
+		assertEquals(502, sampler.getMeasuredCells());
+	}
+
+	public void testSampleIsWithinToleranceOfExhaustiveWidth() throws Exception {
+		createTable(200000);
+		int exhaustive = measureAll();
+		ColumnWidthSampler sampler = new ColumnWidthSampler(1000, 0);
+		int sampled = sampler.measure(table, 0, -1);
+		assertTrue(sampled <= exhaustive);
+		assertTrue("Sampled " + sampled + " of " + exhaustive, sampled >= exhaustive * 0.9);
+		assertEquals(1002, sampler.getMeasuredCells());
+		assertEquals(sampled, new ColumnWidthSampler(1000, 0).measure(new ScrolledTable(model), 0, -1));
+	}
+
+	/**
+	 * The last row and the visible rows are always measured, however few
+	 * other rows are sampled.
+	 */
+	public void testLastAndVisibleRowsAreMeasured() throws Exception {
+		createTable(200000);
+		int width = new ColumnWidthSampler(10, 0).measure(new ScrolledTable(model), 0, -1);
+		model.setValueAt("a much longer value than any other row has in it", 199999, 0);
+		int lastRowWidth = new ColumnWidthSampler(10, 0).measure(new ScrolledTable(model), 0, -1);
+		assertTrue(lastRowWidth > width);
+
+		model.setValueAt("an even longer value than the one in the last row of the table", 123456, 0);
+		table.firstVisibleRow = 123440;
+		table.visibleRows = 30;
+		ColumnWidthSampler sampler = new ColumnWidthSampler(10, 0);
+		assertTrue(sampler.measure(table, 0, -1) > lastRowWidth);
+		assertEquals(30 + 2 + 10, sampler.getMeasuredCells());
+	}
+
+	public void testTimeBudget() throws Exception {
+		createTable(200000);
+		ColumnWidthSampler sampler = new ColumnWidthSampler(100000, 1);
+		sampler.measure(table, 0, -1);
+		assertEquals(2 + 16, sampler.getMeasuredCells());
+	}
+
+	/**
+	 * Measuring again only samples rows appended since, and any other change
+	 * measures the column again.
+	 */
+	public void testWidthCache() throws Exception {
+		createTable(200000);
+		int width = new ColumnWidthSampler().measure(table, 0, -1);
+		ColumnWidthSampler sampler = new ColumnWidthSampler();
+		assertEquals(width, sampler.measure(table, 0, -1));
+		assertEquals(2, sampler.getMeasuredCells());
+
+		for (int i = 0; i < 5; i++) {
+			model.addRow(new Object[] {"an appended row that is wider than the others " + i});
+		}
+		int appendedWidth = sampler.measure(table, 0, -1);
+		assertTrue(appendedWidth > width);
+		assertEquals(2 + 5, sampler.getMeasuredCells());
+
+		model.setValueAt("x", 200004, 0);
+		sampler.measure(table, 0, -1);
+		assertEquals(1002, sampler.getMeasuredCells());
+	}
+
+	public void testMaxWidth() throws Exception {
+		createTable(1000);
+		assertEquals(20, new ColumnWidthSampler().measure(table, 0, 20));
+		TableUtils.fitColumnWidth(table, 0, 20, 5);
+		assertEquals(25, table.getColumnModel().getColumn(0).getPreferredWidth());
+	}
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.swingui.table;
+
+import javax.swing.SwingUtilities;
+
+import junit.framework.TestCase;
+import ca.sqlpower.testutil.MockJDBCResultSet;
+
+public class ResultSetTableModelTest extends TestCase {
+
+	private static final int ROWS = 10000;
+
+	private static final int COLUMNS = 5;
+
+	/**
+	 * Counts the moves of the cursor. All of the other positioning methods of
+	 * the mock result set move through these two.
+	 */
+	private static class CountingResultSet extends MockJDBCResultSet {
+
+		private int moves;
+
+		CountingResultSet() {
+			super(COLUMNS);
+		}
+
+		@Override
+		public boolean absolute(int row) {
+			moves++;
+			return super.absolute(row);
+		}
+
+		@Override
+		public boolean relative(int nrows) {
+			moves++;
+			return super.relative(nrows);
+		}
+	}
+
+	private CountingResultSet rs;
+
+	private ResultSetTableModel model;
+
+	@Override
+	protected void setUp() throws Exception {
+		rs = new CountingResultSet();
+		for (int row = 0; row < ROWS; row++) {
+			Object[] values = new Object[COLUMNS];
+			for (int column = 0; column < COLUMNS; column++) {
+				values[column] = row + "," + column;
+			}
+			rs.addRow(values);
+		}
+		model = new ResultSetTableModel(rs);
+	}
+
+	public void testRowCountIsCached() throws Exception {
+		assertEquals(ROWS, model.getRowCount());
+		int moves = rs.moves;
+		for (int i = 0; i < 1000; i++) {
+			assertEquals(ROWS, model.getRowCount());
+		}
+		assertEquals(moves, rs.moves);
+	}
+
+	/**
+	 * Painting the visible rows of a table over and over again, and
+	 * scrolling a row at a time, should only move the cursor when the
+	 * visible rows leave the window.
+	 */
+	public void testScrollingReadsWindows() throws Exception {
+		int visibleRows = 40;
+		for (int top = 0; top + visibleRows <= ROWS; top++) {
+			for (int repaint = 0; repaint < 3; repaint++) {
+				for (int row = top; row < top + visibleRows; row++) {
+					for (int column = 0; column < COLUMNS; column++) {
+						assertEquals(row + "," + column, model.getValueAt(row, column));
+					}
+				}
+			}
+		}
+		int windows = ROWS / (ResultSetTableModel.WINDOW_ROWS / 2) + 1;
+		assertTrue("The cursor moved " + rs.moves + " times", rs.moves <= windows * (ResultSetTableModel.WINDOW_ROWS + 2));
+		int moves = rs.moves;
+		assertEquals((ROWS - 1) + ",0", model.getValueAt(ROWS - 1, 0));
+		assertEquals(moves, rs.moves);
+	}
+
+	public void testCursorIsRestored() throws Exception {
+		rs.absolute(17);
+		model.getRowCount();
+		model.getValueAt(5000, 2);
+		model.getValueAt(3, 4);
+		assertEquals(17, rs.getRow());
+	}
+
+	public void testDataChangedReadsAgain() throws Exception {
+		assertEquals(ROWS, model.getRowCount());
+		assertEquals("0,0", model.getValueAt(0, 0));
+		rs.addRow(new Object[] {"new", null, null, null, null});
+		assertEquals(ROWS, model.getRowCount());
+		SwingUtilities.invokeAndWait(new Runnable() {
+			public void run() {
+				model.dataChanged();
+			}
+		});
+		assertEquals(ROWS + 1, model.getRowCount());
+		assertEquals("new", model.getValueAt(ROWS, 0));
+		assertNull(model.getValueAt(ROWS, 1));
+	}
+
+	public void testRowPastTheEnd() throws Exception {
+		try {
+			model.getValueAt(ROWS, 0);
+			fail("There is no row " + ROWS);
+		} catch (RuntimeException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.swingui.table;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableModel;
+
+import junit.framework.TestCase;
+import au.com.bytecode.opencsv.CSVWriter;
+import ca.sqlpower.testutil.MockJDBCResultSet;
+
+public class StreamingExportFormatterTest extends TestCase {
+
+	private static final Object[][] DATA = new Object[][] {
+		{"a\"b", null, "", Integer.valueOf(42)},
+		{"x,y\nz", "back\\slash", "'q'", Double.valueOf(1.5)},
+		{"\"", "\"\"", "plain", null}
+	};
+
+	private static final String[] NAMES = new String[] {"one", "two \"2\"", "three", "four"};
+
+	/**
+	 * Discards everything written to it but counts the lines.
+	 */
+	private static class LineCountingWriter extends Writer {
+
+		private long lines;
+
+		@Override
+		public void write(char[] cbuf, int off, int len) {
+			for (int i = off; i < off + len; i++) {
+				if (cbuf[i] == '\n') lines++;
+			}
+		}
+
+		@Override
+		public void flush() {
+			// nothing to flush
+		}
+
+		@Override
+		public void close() {
+			// nothing to close
+		}
+	}
+
+	/**
+	 * The CSV output must not change from when it was written by the opencsv
+	 * CSVWriter.
+	 */
+	public void testCSVMatchesCSVWriter() throws Exception {
+		StringWriter expected = new StringWriter();
+		CSVWriter csvWriter = new CSVWriter(expected);
+		List<String[]> rows = new ArrayList<String[]>();
+		rows.add(NAMES);
+		for (Object[] row : DATA) {
+			String[] values = new String[row.length];
+			for (int i = 0; i < row.length; i++) {
+				values[i] = row[i] == null ? "" : row[i].toString();
+			}
+			rows.add(values);
+		}
+		csvWriter.writeAll(rows);
+		csvWriter.close();
+
+		StringWriter actual = new StringWriter();
+		new TableModelCSVFormatter().formatToStream(new DefaultTableModel(DATA, NAMES), new PrintWriter(actual));
+		assertEquals(expected.toString(), actual.toString());
+
+		MockJDBCResultSet rs = new MockJDBCResultSet(NAMES.length);
+		for (int i = 0; i < NAMES.length; i++) {
+			rs.setColumnName(i + 1, NAMES[i]);
+		}
+		for (Object[] row : DATA) {
+			rs.addRow(row);
+		}
+		StringWriter fromResultSet = new StringWriter();
+		new TableModelCSVFormatter().formatToStream(rs, new PrintWriter(fromResultSet));
+		assertEquals(expected.toString(), fromResultSet.toString());
+	}
+
+	public void testHTMLSelectedRows() throws Exception {
+		StringWriter out = new StringWriter();
+		TableModelHTMLFormatter formatter = new TableModelHTMLFormatter();
+		formatter.formatToStream(new DefaultTableModel(DATA, NAMES), new PrintWriter(out), new int[] {2});
+		String nl = System.getProperty("line.separator");
+		assertEquals("<table>" + nl + " <tr>" + nl +
+				"  <th>one</th>" + nl + "  <th>two \"2\"</th>" + nl + "  <th>three</th>" + nl + "  <th>four</th>" + nl +
+				" </tr>" + nl + " <tr>" + nl +
+				"  <td>\"</td>" + nl + "  <td>\"\"</td>" + nl + "  <td>plain</td>" + nl + "  <td></td>" + nl +
+				" </tr>" + nl + "</table>" + nl, out.toString());
+		assertEquals(Integer.valueOf(1), formatter.getJobSize());
+		assertEquals(1, formatter.getProgress());
+		assertTrue(formatter.isFinished());
+	}
+
+	/**
+	 * Cancelling the export stops it after the current row.
+	 */
+	public void testCancel() throws Exception {
+		final TableModelCSVFormatter formatter = new TableModelCSVFormatter();
+		AbstractTableModel model = new AbstractTableModel() {
+			public int getRowCount() {
+				return 1000;
+			}
+
+			public int getColumnCount() {
+				return 1;
+			}
+
+			public Object getValueAt(int rowIndex, int columnIndex) {
+				if (rowIndex == 10) {
+					formatter.setCancelled(true);
+				}
+				return Integer.valueOf(rowIndex);
+			}
+		};
+		LineCountingWriter out = new LineCountingWriter();
+		formatter.formatToStream(model, new PrintWriter(out));
+		assertEquals(12, out.lines);
+		assertEquals(11, formatter.getProgress());
+		assertTrue(formatter.isCancelled());
+		assertTrue(formatter.isFinished());
+	}
+
+	/**
+	 * A cancel that arrives before the export starts is not lost.
+	 */
+	public void testCancelBeforeStart() throws Exception {
+		TableModelCSVFormatter formatter = new TableModelCSVFormatter();
+		formatter.setCancelled(true);
+		LineCountingWriter out = new LineCountingWriter();
+		formatter.formatToStream(new DefaultTableModel(DATA, NAMES), new PrintWriter(out));
+		assertEquals(1, out.lines);
+		assertEquals(0, formatter.getProgress());
+		assertTrue(formatter.isCancelled());
+		assertTrue(formatter.isFinished());
+	}
+
+	/**
+	 * Exports five million generated rows. Each row must reach the output
+	 * within a buffer's length of being read, so the export takes the same
+	 * memory however many rows there are.
+	 */
+	public void testStreamsLargeExport() throws Exception {
+		final int rows = 5000000;
+		final int bufferSize = 8192;
+		final LineCountingWriter out = new LineCountingWriter();
+		final long[] maxLag = new long[1];
+		AbstractTableModel model = new AbstractTableModel() {
+			public int getRowCount() {
+				return rows;
+			}
+
+			public int getColumnCount() {
+				return 3;
+			}
+
+			public Object getValueAt(int rowIndex, int columnIndex) {
+				if (columnIndex == 0) {
+					maxLag[0] = Math.max(maxLag[0], rowIndex + 1 - out.lines);
+					return Integer.valueOf(rowIndex);
+				}
+				return columnIndex == 1 ? "name \"" + (rowIndex % 100) + "\"" : null;
+			}
+		};
+		TableModelCSVFormatter formatter = new TableModelCSVFormatter();
+		formatter.formatToStream(model, new PrintWriter(new BufferedWriter(out, bufferSize)));
+		assertEquals(rows + 1, out.lines);
+		assertEquals(rows, formatter.getProgress());
+		// every row is more than ten characters long
+		assertTrue("Rows waited " + maxLag[0] + " rows behind", maxLag[0] <= bufferSize / 10 + 2);
+	}
+
+	public void testWriteErrorIsReported() throws Exception {
+		Writer failing = new Writer() {
+			@Override
+			public void write(char[] cbuf, int off, int len) throws IOException {
+				throw new IOException("disk full");
+			}
+
+			@Override
+			public void flush() {
+				// nothing to flush
+			}
+
+			@Override
+			public void close() {
+				// nothing to close
+			}
+		};
+		try {
+			new TableModelHTMLFormatter().formatToStream(new DefaultTableModel(DATA, NAMES),
+					new PrintWriter(failing), null);
+			fail("The write error was not reported");
+		} catch (RuntimeException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.swingui.table;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.swing.event.TableModelEvent;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Times searching a table of generated rows with the {@link TableTextIndex}
+ * against scanning and lower casing every cell, which is what the
+ * {@link TableModelSearchDecorator} did on each keystroke before it had an
+ * index. The search text is typed one character at a time. This is not part
+ * of the test suite; run the main method with the number of rows to generate
+ * as an optional argument.
+ */
+public class TableModelSearchBenchmark {
+
+	private static final String[] FIRST_NAMES = new String[] {
+		"James", "Mary", "John", "Patricia", "Robert", "Jennifer", "Michael", "Linda",
+		"William", "Elizabeth", "David", "Barbara", "Richard", "Susan", "Joseph", "Jessica"
+	};
+
+	private static final String[] LAST_NAMES = new String[] {
+		"Smith", "Johnson", "Williams", "Brown", "Jones", "Garcia", "Miller", "Davis",
+		"Rodriguez", "Martinez", "Hernandez", "Lopez", "Gonzalez", "Wilson", "Anderson", "Thomas"
+	};
+
+	private static final String[] CITIES = new String[] {
+		"Toronto", "Montreal", "Vancouver", "Calgary", "Edmonton", "Ottawa", "Winnipeg", "Quebec City"
+	};
+
+	private static final String[] TYPED = new String[] {
+		"t", "th", "tho", "thom", "thoma", "thomas", "thomas w", "thomas wi", "thomas win"
+	};
+
+	private static final TableTextConverter CONVERTER = new TableTextConverter() {
+		public String getTextForCell(Object cellValue) {
+			return cellValue == null ? "" : cellValue.toString();
+		}
+
+		public int modelIndex(int viewIndex) {
+			return viewIndex;
+		}
+	};
+
+	/**
+	 * A table of generated customers that can have rows added at the end.
+	 */
+	private static class CustomerTableModel extends AbstractTableModel {
+
+		private final List<Object[]> rows = new ArrayList<Object[]>();
+
+		private final Random random = new Random(11);
+
+		void addRows(int count) {
+			int first = rows.size();
+			for (int i = 0; i < count; i++) {
+				int id = rows.size();
+				rows.add(new Object[] {
+						Integer.valueOf(id),
+						FIRST_NAMES[random.nextInt(FIRST_NAMES.length)],
+						LAST_NAMES[random.nextInt(LAST_NAMES.length)],
+						CITIES[random.nextInt(CITIES.length)],
+						Double.valueOf(random.nextInt(1000000) / 100.0)
+				});
+			}
+			fireTableRowsInserted(first, rows.size() - 1);
+		}
+
+		public int getColumnCount() {
+			return 5;
+		}
+
+		public int getRowCount() {
+			return rows.size();
+		}
+
+		public Object getValueAt(int rowIndex, int columnIndex) {
+			return rows.get(rowIndex)[columnIndex];
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int rowCount = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		final CustomerTableModel model = new CustomerTableModel();
+		model.addRows(rowCount);
+
+		for (int round = 0; round < 3; round++) {
+			long start = System.nanoTime();
+			int scanned = 0;
+			for (String text : TYPED) {
+				scanned += scan(model, text).size();
+			}
+			long scanTime = System.nanoTime() - start;
+
+			final TableTextIndex index = new TableTextIndex(model, CONVERTER);
+			long memoryBefore = usedMemory();
+			start = System.nanoTime();
+			index.search("");
+			long buildTime = System.nanoTime() - start;
+			long indexMemory = usedMemory() - memoryBefore;
+
+			start = System.nanoTime();
+			int found = 0;
+			for (String text : TYPED) {
+				found += index.search(text).size();
+			}
+			long searchTime = System.nanoTime() - start;
+
+			int appended = rowCount / 100;
+			model.addRows(appended);
+			start = System.nanoTime();
+			index.tableChanged(new TableModelEvent(model, rowCount, rowCount + appended - 1,
+					TableModelEvent.ALL_COLUMNS, TableModelEvent.INSERT));
+			int afterAppend = index.search(TYPED[TYPED.length - 1]).size();
+			long appendTime = System.nanoTime() - start;
+			model.rows.subList(rowCount, model.rows.size()).clear();
+
+			if (found != scanned) {
+				throw new AssertionError("The index found " + found + " rows but the scan found " + scanned);
+			}
+			System.out.println(String.format(
+					"%,d rows, %d keystrokes: scan %,d ms (%,d ms per keystroke); " +
+					"index build %,d ms, about %,d MB; indexed search %,d ms (%,d us per keystroke); " +
+					"append %,d rows and search again %,d ms (%,d matches)",
+					rowCount, TYPED.length, scanTime / 1000000, scanTime / TYPED.length / 1000000,
+					buildTime / 1000000, indexMemory / (1024 * 1024),
+					searchTime / 1000000, searchTime / TYPED.length / 1000,
+					appended, appendTime / 1000000, afterAppend));
+		}
+	}
+
+	/**
+	 * Searches the way the search decorator did before it had an index.
+	 */
+	private static List<Integer> scan(CustomerTableModel model, String searchText) {
+		List<Integer> rows = new ArrayList<Integer>();
+		String[] words = searchText.split(" ");
+		for (int row = 0; row < model.getRowCount(); row++) {
+			boolean rowMatches = true;
+			for (String word : words) {
+				boolean match = false;
+				for (int column = 0; column < model.getColumnCount(); column++) {
+					String value = CONVERTER.getTextForCell(model.getValueAt(row, column));
+					if (value.toLowerCase().indexOf(word.toLowerCase()) >= 0) {
+						match = true;
+						break;
+					}
+				}
+				if (!match) {
+					rowMatches = false;
+					break;
+				}
+			}
+			if (rowMatches) {
+				rows.add(row);
+			}
+		}
+		return rows;
+	}
+
+	private static long usedMemory() {
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
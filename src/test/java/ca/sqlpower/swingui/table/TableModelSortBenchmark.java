@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.swingui.table;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Times sorting a table of generated rows with the {@link RowOrder} used by
+ * the {@link TableModelSortDecorator} against sorting row objects that get
+ * and compare the model's values on each comparison, which is what the
+ * decorator did before. Also times appending rows in batches to a sorted
+ * table, merging them in against sorting all of the rows again after each
+ * batch. This is not part of the test suite; run the main method with the
+ * number of rows to generate as an optional argument.
+ */
+public class TableModelSortBenchmark {
+
+	private static final int APPEND_BATCHES = 100;
+
+	private static final int APPEND_BATCH_ROWS = 1000;
+
+	/**
+	 * A table of generated orders that can have rows added at the end.
+	 */
+	private static class OrderTableModel extends AbstractTableModel {
+
+		private final List<Object[]> rows = new ArrayList<Object[]>();
+
+		private final Random random = new Random(13);
+
+		void addRows(int count) {
+			int first = rows.size();
+			for (int i = 0; i < count; i++) {
+				rows.add(new Object[] {
+						Integer.valueOf(random.nextInt(100000)),
+						Double.valueOf(random.nextInt(10000000) / 100.0),
+						"customer " + random.nextInt(50000)
+				});
+			}
+			fireTableRowsInserted(first, rows.size() - 1);
+		}
+
+		public int getColumnCount() {
+			return 3;
+		}
+
+		public int getRowCount() {
+			return rows.size();
+		}
+
+		public Object getValueAt(int rowIndex, int columnIndex) {
+			return rows.get(rowIndex)[columnIndex];
+		}
+
+		@Override
+		public Class<?> getColumnClass(int columnIndex) {
+			return columnIndex == 0 ? Integer.class : (columnIndex == 1 ? Double.class : String.class);
+		}
+	}
+
+	/**
+	 * A row compared the way the decorator compared rows before it read the
+	 * values into arrays.
+	 */
+	private static class Row implements Comparable<Row> {
+
+		private final OrderTableModel model;
+
+		private final int[] columns;
+
+		private final int modelIndex;
+
+		Row(OrderTableModel model, int[] columns, int modelIndex) {
+			this.model = model;
+			this.columns = columns;
+			this.modelIndex = modelIndex;
+		}
+
+		@SuppressWarnings("unchecked")
+		public int compareTo(Row o) {
+			for (int column : columns) {
+				Object o1 = model.getValueAt(modelIndex, column);
+				Object o2 = model.getValueAt(o.modelIndex, column);
+				int comparison;
+				if (o1 == null && o2 == null) {
+					comparison = 0;
+				} else if (o1 == null) {
+					comparison = -1;
+				} else if (o2 == null) {
+					comparison = 1;
+				} else {
+					comparison = TableModelSortDecorator.COMPARABLE_COMAPRATOR.compare(o1, o2);
+				}
+				if (comparison != 0) return comparison;
+			}
+			return 0;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int rowCount = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		OrderTableModel model = new OrderTableModel();
+		model.addRows(rowCount);
+
+		for (int round = 0; round < 3; round++) {
+			for (int[] columns : new int[][] {{0}, {1}, {2}, {0, 1}}) {
+				long start = System.nanoTime();
+				int[] before = sortRows(model, columns);
+				long rowTime = System.nanoTime() - start;
+
+				start = System.nanoTime();
+				RowOrder order = createOrder(model, columns);
+				order.read(model, rowCount);
+				long readTime = System.nanoTime() - start;
+				start = System.nanoTime();
+				int[] sorted = order.sort();
+				long sortTime = System.nanoTime() - start;
+
+				if (!Arrays.equals(before, sorted)) {
+					throw new AssertionError("The orders differ for columns " + Arrays.toString(columns));
+				}
+				System.out.println(String.format(
+						"%,d rows by columns %s: row objects %,d ms; read keys %,d ms and sort %,d ms",
+						rowCount, Arrays.toString(columns), rowTime / 1000000,
+						readTime / 1000000, sortTime / 1000000));
+			}
+		}
+
+		int[] columns = new int[] {1};
+		RowOrder order = createOrder(model, columns);
+		order.read(model, rowCount);
+		int[] sorted = order.sort();
+		long mergeTime = 0;
+		long resortTime = 0;
+		for (int batch = 0; batch < APPEND_BATCHES; batch++) {
+			int first = model.getRowCount();
+			model.addRows(APPEND_BATCH_ROWS);
+			long start = System.nanoTime();
+			order.read(model, model.getRowCount());
+			sorted = order.merge(sorted, first);
+			mergeTime += System.nanoTime() - start;
+			if (batch % 10 == 0) {
+				start = System.nanoTime();
+				RowOrder resort = createOrder(model, columns);
+				resort.read(model, model.getRowCount());
+				int[] resorted = resort.sort();
+				resortTime += (System.nanoTime() - start) * 10;
+				if (!Arrays.equals(resorted, sorted)) {
+					throw new AssertionError("Merging appended rows gave a different order");
+				}
+			}
+		}
+		System.out.println(String.format(
+				"%d batches of %,d appended rows: merge %,d ms per batch, sort all rows again %,d ms per batch",
+				APPEND_BATCHES, APPEND_BATCH_ROWS, mergeTime / APPEND_BATCHES / 1000000,
+				resortTime / APPEND_BATCHES / 1000000));
+	}
+
+	private static int[] sortRows(OrderTableModel model, int[] columns) {
+		Row[] rows = new Row[model.getRowCount()];
+		for (int i = 0; i < rows.length; i++) {
+			rows[i] = new Row(model, columns, i);
+		}
+		Arrays.sort(rows);
+		int[] modelIndexes = new int[rows.length];
+		for (int i = 0; i < rows.length; i++) {
+			modelIndexes[i] = rows[i].modelIndex;
+		}
+		return modelIndexes;
+	}
+
+	private static RowOrder createOrder(OrderTableModel model, int[] columns) {
+		int[] directions = new int[columns.length];
+		Comparator<?>[] comparators = new Comparator<?>[columns.length];
+		Class<?>[] columnClasses = new Class<?>[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			directions[i] = TableModelSortDecorator.ASCENDING;
+			comparators[i] = TableModelSortDecorator.COMPARABLE_COMAPRATOR;
+			columnClasses[i] = model.getColumnClass(columns[i]);
+		}
+		return new RowOrder(columns, directions, comparators, columnClasses);
+	}
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.swingui.table;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import javax.swing.SwingUtilities;
+import javax.swing.table.DefaultTableModel;
+
+import junit.framework.TestCase;
+
+public class TableModelSortDecoratorTest extends TestCase {
+
+	private static final Class<?>[] COLUMN_CLASSES = new Class<?>[] {
+		Integer.class, Double.class, String.class, Object.class, Boolean.class, Integer.class
+	};
+
+	private DefaultTableModel model;
+
+	private TableModelSortDecorator decorator;
+
+	private Random random;
+
+	@Override
+	protected void setUp() throws Exception {
+		random = new Random(5);
+		model = new DefaultTableModel(new String[] {"int", "double", "string", "object", "boolean", "mixed"}, 0) {
+			@Override
+			public Class<?> getColumnClass(int columnIndex) {
+				return COLUMN_CLASSES[columnIndex];
+			}
+		};
+		addRows(2000);
+		decorator = new TableModelSortDecorator(model);
+	}
+
+	private void addRows(int count) {
+		for (int i = 0; i < count; i++) {
+			model.addRow(new Object[] {
+					random.nextInt(10) == 0 ? null : Integer.valueOf(random.nextInt(50) - 25),
+					random.nextInt(10) == 0 ? null : Double.valueOf(random.nextInt(100) / 4.0 - 10),
+					random.nextInt(10) == 0 ? null : "s" + random.nextInt(30),
+					random.nextInt(10) == 0 ? null : new StringBuilder("o" + random.nextInt(30)),
+					random.nextInt(10) == 0 ? null : Boolean.valueOf(random.nextBoolean()),
+					random.nextBoolean() ? Integer.valueOf(random.nextInt(20)) : Long.valueOf(random.nextInt(20))
+			});
+		}
+	}
+
+	/**
+	 * Returns the model rows sorted the way the decorator sorted them before
+	 * it read the sort keys into arrays.
+	 */
+	private List<Integer> expectedOrder(final int[] columns, final int[] directions) {
+		List<Integer> rows = new ArrayList<Integer>();
+		for (int row = 0; row < model.getRowCount(); row++) {
+			rows.add(row);
+		}
+		Collections.sort(rows, new Comparator<Integer>() {
+			@SuppressWarnings("unchecked")
+			public int compare(Integer row1, Integer row2) {
+				for (int i = 0; i < columns.length; i++) {
+					Object o1 = model.getValueAt(row1, columns[i]);
+					Object o2 = model.getValueAt(row2, columns[i]);
+					int comparison;
+					if (o1 == null && o2 == null) {
+						comparison = 0;
+					} else if (o1 == null) {
+						comparison = -1;
+					} else if (o2 == null) {
+						comparison = 1;
+					} else if (Comparable.class.isAssignableFrom(model.getColumnClass(columns[i]))) {
+						if (o1 instanceof Number && o1.getClass() != o2.getClass()) {
+							comparison = Long.valueOf(((Number) o1).longValue()).compareTo(((Number) o2).longValue());
+						} else {
+							comparison = ((Comparable) o1).compareTo(o2);
+						}
+					} else {
+						comparison = o1.toString().compareTo(o2.toString());
+					}
+					if (comparison != 0) {
+						return directions[i] == TableModelSortDecorator.DESCENDING ? -comparison : comparison;
+					}
+				}
+				return 0;
+			}
+		});
+		return rows;
+	}
+
+	private List<Integer> actualOrder() {
+		List<Integer> rows = new ArrayList<Integer>();
+		for (int row = 0; row < decorator.getRowCount(); row++) {
+			rows.add(decorator.modelIndex(row));
+		}
+		return rows;
+	}
+
+	private void setSorting(int[] columns, int[] directions) {
+		for (int column = 0; column < model.getColumnCount(); column++) {
+			decorator.setSortingStatus(column, TableModelSortDecorator.NOT_SORTED);
+		}
+		for (int i = 0; i < columns.length; i++) {
+			decorator.setSortingStatus(columns[i], directions[i]);
+		}
+	}
+
+	private void assertSortedBy(int[] columns, int[] directions) {
+		assertEquals(expectedOrder(columns, directions), actualOrder());
+	}
+
+	public void testSortEachColumn() throws Exception {
+		for (int column = 0; column < model.getColumnCount(); column++) {
+			for (int direction : new int[] {TableModelSortDecorator.ASCENDING, TableModelSortDecorator.DESCENDING}) {
+				int[] columns = new int[] {column};
+				int[] directions = new int[] {direction};
+				setSorting(columns, directions);
+				assertSortedBy(columns, directions);
+			}
+		}
+	}
+
+	public void testSortSeveralColumns() throws Exception {
+		int[] columns = new int[] {4, 2, 1};
+		int[] directions = new int[] {TableModelSortDecorator.DESCENDING,
+				TableModelSortDecorator.ASCENDING, TableModelSortDecorator.DESCENDING};
+		setSorting(columns, directions);
+		assertSortedBy(columns, directions);
+	}
+
+	public void testNotSortedIsModelOrder() throws Exception {
+		for (int row = 0; row < model.getRowCount(); row++) {
+			assertEquals(row, decorator.modelIndex(row));
+		}
+	}
+
+	public void testAppendedRowsAreMerged() throws Exception {
+		int[] columns = new int[] {0, 2};
+		int[] directions = new int[] {TableModelSortDecorator.ASCENDING, TableModelSortDecorator.DESCENDING};
+		setSorting(columns, directions);
+		assertSortedBy(columns, directions);
+		for (int i = 0; i < 20; i++) {
+			addRows(1 + random.nextInt(30));
+			assertSortedBy(columns, directions);
+		}
+	}
+
+	/**
+	 * A timestamp in a date column cannot be compared as a long, so the
+	 * column is compared as objects once one is added.
+	 */
+	public void testUnexpectedValueClass() throws Exception {
+		DefaultTableModel dates = new DefaultTableModel(new String[] {"date"}, 0) {
+			@Override
+			public Class<?> getColumnClass(int columnIndex) {
+				return java.util.Date.class;
+			}
+		};
+		for (int i = 0; i < 100; i++) {
+			dates.addRow(new Object[] {new java.util.Date(random.nextInt(1000))});
+		}
+		decorator = new TableModelSortDecorator(dates);
+		decorator.setSortingStatus(0, TableModelSortDecorator.ASCENDING);
+		decorator.getValueAt(0, 0);
+		java.sql.Timestamp timestamp = new java.sql.Timestamp(500);
+		timestamp.setNanos(500000001);
+		dates.addRow(new Object[] {timestamp});
+		dates.addRow(new Object[] {new java.util.Date(500)});
+		java.util.Date previous = null;
+		for (int row = 0; row < decorator.getRowCount(); row++) {
+			java.util.Date date = (java.util.Date) decorator.getValueAt(row, 0);
+			if (previous != null) {
+				assertTrue(previous.compareTo(date) <= 0);
+			}
+			previous = date;
+		}
+		assertEquals(dates.getRowCount(), decorator.getRowCount());
+	}
+
+	public void testBackgroundSort() throws Exception {
+		decorator.setBackgroundSortRows(100);
+		final int[] columns = new int[] {1};
+		final int[] directions = new int[] {TableModelSortDecorator.DESCENDING};
+		SwingUtilities.invokeAndWait(new Runnable() {
+			public void run() {
+				setSorting(columns, directions);
+				decorator.getRowCount();
+				decorator.modelIndex(0);
+				// rows appended while the sort is running are merged in when it is done
+				addRows(50);
+				assertEquals(model.getRowCount(), actualOrder().size());
+			}
+		});
+		for (int i = 0; i < 100 && decorator.isSortPending(); i++) {
+			Thread.sleep(50);
+			SwingUtilities.invokeAndWait(new Runnable() {
+				public void run() {
+					// let the sort be swapped in
+				}
+			});
+		}
+		SwingUtilities.invokeAndWait(new Runnable() {
+			public void run() {
+				assertFalse(decorator.isSortPending());
+				assertSortedBy(columns, directions);
+				addRows(10);
+				assertSortedBy(columns, directions);
+			}
+		});
+	}
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Library.
+ *
+ * SQL Power Library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.swingui.table;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+import javax.swing.table.DefaultTableModel;
+
+import junit.framework.TestCase;
+
+public class TableTextIndexTest extends TestCase {
+
+	private static final String[] WORDS = new String[] {
+		"Smith", "smithers", "JONES", "Jonesy", "o'brien", "caf\u00e9", "ab", "a b", "", null
+	};
+
+	private static final String[] SEARCHES = new String[] {
+		"s", "sm", "smi", "smith", "smith j", "smith jo", "smithers", "jones", "a", "a b",
+		"ab", "o'b", "CAF\u00c9", "zzz", "", " ", "nu", "null", "1", "12"
+	};
+
+	private final TableTextConverter converter = new TableTextConverter() {
+		public String getTextForCell(Object cellValue) {
+			return cellValue == null ? "null" : cellValue.toString();
+		}
+
+		public int modelIndex(int viewIndex) {
+			return viewIndex;
+		}
+	};
+
+	private DefaultTableModel model;
+
+	private TableTextIndex index;
+
+	private Random random;
+
+	@Override
+	protected void setUp() throws Exception {
+		random = new Random(3);
+		model = new DefaultTableModel(new String[] {"a", "b", "c"}, 0);
+		for (int i = 0; i < 300; i++) {
+			model.addRow(randomRow());
+		}
+		index = new TableTextIndex(model, converter);
+		model.addTableModelListener(new TableModelListener() {
+			public void tableChanged(TableModelEvent e) {
+				index.tableChanged(e);
+			}
+		});
+	}
+
+	private Object[] randomRow() {
+		return new Object[] {
+				WORDS[random.nextInt(WORDS.length)],
+				WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)],
+				Integer.valueOf(random.nextInt(200))
+		};
+	}
+
+	/**
+	 * Searches the model the way the search decorator did before it had an
+	 * index.
+	 */
+	private List<Integer> scan(String searchText) {
+		List<Integer> rows = new ArrayList<Integer>();
+		String[] words = searchText.split(" ");
+		for (int row = 0; row < model.getRowCount(); row++) {
+			boolean rowMatches = true;
+			for (String word : words) {
+				boolean match = false;
+				for (int column = 0; column < model.getColumnCount(); column++) {
+					String value = converter.getTextForCell(model.getValueAt(row, column));
+					if (value.toLowerCase().indexOf(word.toLowerCase()) >= 0) {
+						match = true;
+						break;
+					}
+				}
+				if (!match) {
+					rowMatches = false;
+					break;
+				}
+			}
+			if (rowMatches) {
+				rows.add(row);
+			}
+		}
+		return rows;
+	}
+
+	private void assertSearchesMatchScan() {
+		for (String search : SEARCHES) {
+			assertEquals("Searching for \"" + search + "\"", scan(search), index.search(search));
+		}
+	}
+
+	public void testSearch() throws Exception {
+		assertSearchesMatchScan();
+		// searching again narrows from the remembered results
+		assertSearchesMatchScan();
+	}
+
+	public void testRowsAppended() throws Exception {
+		assertSearchesMatchScan();
+		for (int i = 0; i < 50; i++) {
+			model.addRow(randomRow());
+			assertEquals(scan("smith"), index.search("smith"));
+		}
+		assertSearchesMatchScan();
+	}
+
+	public void testRowsUpdated() throws Exception {
+		assertSearchesMatchScan();
+		for (int i = 0; i < 50; i++) {
+			int row = random.nextInt(model.getRowCount());
+			model.setValueAt(WORDS[random.nextInt(WORDS.length)], row, random.nextInt(3));
+			assertEquals(scan("smi"), index.search("smi"));
+			assertEquals(scan("smith"), index.search("smith"));
+		}
+		assertSearchesMatchScan();
+	}
+
+	public void testRowsInsertedAndRemoved() throws Exception {
+		assertSearchesMatchScan();
+		model.insertRow(10, randomRow());
+		assertSearchesMatchScan();
+		model.removeRow(20);
+		assertSearchesMatchScan();
+		model.removeRow(model.getRowCount() - 1);
+		assertSearchesMatchScan();
+		model.setRowCount(0);
+		assertSearchesMatchScan();
+		model.addRow(randomRow());
+		assertSearchesMatchScan();
+	}
+
+	public void testSearchDecoratorFiltersRows() throws Exception {
+		TableModelSearchDecorator decorator = new TableModelSearchDecorator(model);
+		decorator.setTableTextConverter(converter);
+		decorator.setSearchText("smith jo");
+		for (int i = 0; i < 20; i++) {
+			model.addRow(randomRow());
+			List<Integer> expected = scan("smith jo");
+			assertEquals(expected.size(), decorator.getRowCount());
+			for (int row = 0; row < expected.size(); row++) {
+				assertEquals(model.getValueAt(expected.get(row), 1), decorator.getValueAt(row, 1));
+			}
+		}
+		decorator.cleanup();
+	}
+}